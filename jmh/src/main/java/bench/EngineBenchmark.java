@@ -0,0 +1,77 @@
+package bench;
+
+import model.*;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Formula evaluation: {@link FormulaContent#evaluate(model.formula.CellValues)} on simple
+ * arithmetic, nested parentheses and SUMA over ranges, and
+ * {@link FunctionEvaluator#evaluateFunction}, over a sheet of 1,000 rows of numbers.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EngineBenchmark {
+
+    private static final int COLUMNS = 10;
+
+    private Spreadsheet spreadsheet;
+    private FunctionEvaluator functions;
+    private final FormulaContent simple = new FormulaContent("=A1+B1*2");
+    private final FormulaContent nested = new FormulaContent("=((A1+B1)*(C1-(D1/2)))+((E1*3)-(F1+1))");
+    private final FormulaContent sumColumn = new FormulaContent("=SUMA(A1:A1000)");
+    private final FormulaContent sumBlock = new FormulaContent("=SUMA(A1:J1000)");
+
+    @Setup
+    public void setUp() {
+        spreadsheet = new Spreadsheet(new TiledCellStorage());
+        spreadsheet.beginBatch();
+        for (int row = 1; row <= 1000; row++) {
+            for (int col = 0; col < COLUMNS; col++) {
+                spreadsheet.addOrModifyCell(row, col, new NumericContent(row + col));
+            }
+        }
+        spreadsheet.commit();
+        functions = new FunctionEvaluator(spreadsheet);
+    }
+
+    @Benchmark
+    public double evaluateSimpleArithmetic() throws Exception {
+        return evaluate(simple);
+    }
+
+    @Benchmark
+    public double evaluateNestedParentheses() throws Exception {
+        return evaluate(nested);
+    }
+
+    @Benchmark
+    public double evaluateSumaColumn() throws Exception {
+        return evaluate(sumColumn);
+    }
+
+    @Benchmark
+    public double evaluateSumaBlock() throws Exception {
+        return evaluate(sumBlock);
+    }
+
+    @Benchmark
+    public double evaluateFunctionSuma() {
+        return functions.evaluateFunction("SUMA(A1:A1000)");
+    }
+
+    @Benchmark
+    public double evaluateFunctionMax() {
+        return functions.evaluateFunction("MAX(A1:J100;B2;3)");
+    }
+
+    private double evaluate(FormulaContent formula) throws Exception {
+        formula.evaluate(spreadsheet);
+        return formula.getValueAsNumber();
+    }
+}
@@ -0,0 +1,89 @@
+package bench;
+
+import model.*;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The dependency graph: {@link Spreadsheet#addOrModifyCell} building and editing a long chain
+ * and a wide fan-out of {@value #CHAIN} formulas, and {@link Spreadsheet#hasCircularDependency}
+ * over the chain. Builds are reported per formula added.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GraphBenchmark {
+
+    static final int CHAIN = 10_000;    // Formulas in the chain and the fan-out
+
+    private Spreadsheet chain;
+    private Spreadsheet fanOut;
+    private int edits;
+    // Closing the chain into a cycle searches all of it; a new formula at its end searches nothing
+    private final FormulaContent cycle = new FormulaContent("=A" + CHAIN + "+1");
+    private final FormulaContent acyclic = new FormulaContent("=A" + CHAIN + "+1");
+
+    @Setup
+    public void setUp() {
+        chain = chain();
+        fanOut = fanOut();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CHAIN)
+    public int buildChain() {
+        return chain().getCellCount();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CHAIN)
+    public int buildFanOut() {
+        return fanOut().getCellCount();
+    }
+
+    @Benchmark
+    public double editHeadOfChain() throws Exception {
+        chain.addOrModifyCell(1, 0, new NumericContent(++edits));
+        return chain.getCell(CHAIN, 0).getContent().getValueAsNumber();
+    }
+
+    @Benchmark
+    public double editSourceOfFanOut() throws Exception {
+        fanOut.addOrModifyCell(1, 0, new NumericContent(++edits));
+        return fanOut.getCell(CHAIN, 1).getContent().getValueAsNumber();
+    }
+
+    @Benchmark
+    public boolean hasCircularDependencyCycle() {
+        return chain.hasCircularDependency("A1", cycle);
+    }
+
+    @Benchmark
+    public boolean hasCircularDependencyNoCycle() {
+        return chain.hasCircularDependency("B1", acyclic);
+    }
+
+    // A1 holds a number and every following cell of column A adds one to the cell above it
+    private static Spreadsheet chain() {
+        Spreadsheet spreadsheet = new Spreadsheet(new TiledCellStorage());
+        spreadsheet.addOrModifyCell(1, 0, new NumericContent(0));
+        for (int row = 2; row <= CHAIN; row++) {
+            spreadsheet.addOrModifyCell(row, 0, new FormulaContent("=A" + (row - 1) + "+1"));
+        }
+        return spreadsheet;
+    }
+
+    // A1 holds a number read by every cell of column B
+    private static Spreadsheet fanOut() {
+        Spreadsheet spreadsheet = new Spreadsheet(new TiledCellStorage());
+        spreadsheet.addOrModifyCell(1, 0, new NumericContent(0));
+        for (int row = 1; row <= CHAIN; row++) {
+            spreadsheet.addOrModifyCell(row, 1, new FormulaContent("=A1*2"));
+        }
+        return spreadsheet;
+    }
+}
@@ -0,0 +1,69 @@
+package bench;
+
+import io.FileManager;
+import model.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Reports the throughput of loading an S2V file, serially and in parallel.
+ * <p>
+ * Usage: {@code java bench.ImportThroughput <file.s2v> [maxThreads]} (default: available processors).
+ * Loads the file into a {@link TiledCellStorage} once with the serial loader and then with
+ * 1, 2, 4, ... threads up to {@code maxThreads}, printing MB/s per thread count and checking
+ * that every parallel load holds the same cells as the serial one.
+ */
+public class ImportThroughput {
+
+    public static void main(String[] args) throws IOException {
+        String path = args[0];
+        int maxThreads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        double megabytes = new File(path).length() / (1024.0 * 1024.0);
+        FileManager fileManager = new FileManager();
+
+        System.out.printf("%s: %.1f MB%n", path, megabytes);
+        long start = System.nanoTime();
+        Spreadsheet serial = fileManager.loadSpreadsheet(path, new TiledCellStorage());
+        report("serial", megabytes, start, serial);
+
+        for (int threads = 1; threads <= maxThreads; threads *= 2) {
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            try {
+                start = System.nanoTime();
+                Spreadsheet parallel = fileManager.loadSpreadsheet(path, new TiledCellStorage(), pool);
+                report(threads + " thread(s)", megabytes, start, parallel);
+                if (!sameCells(serial, parallel)) {
+                    System.out.println("  MISMATCH with the serial load");
+                }
+            } finally {
+                pool.shutdown();
+            }
+        }
+    }
+
+    private static void report(String name, double megabytes, long start, Spreadsheet spreadsheet) {
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%-14s %8.2f s  %8.1f MB/s  %,d cells%n",
+                name, seconds, megabytes / seconds, spreadsheet.getCellCount());
+    }
+
+    private static boolean sameCells(Spreadsheet expected, Spreadsheet actual) {
+        if (expected.getCellCount() != actual.getCellCount()) {
+            return false;
+        }
+        int maxRow = expected.getMaxRow();
+        int maxColumn = expected.getMaxColumn();
+        for (int row = 1; row <= maxRow; row++) {
+            for (int col = 0; col <= maxColumn; col++) {
+                Cell a = expected.getCell(row, col);
+                Cell b = actual.getCell(row, col);
+                if (a == null ? b != null : b == null || !a.getValueAsString().equals(b.getValueAsString())) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,80 @@
+package bench;
+
+import io.FileManager;
+import model.*;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * S2V input/output: {@link FileManager#loadSpreadsheet(String, CellStorage)} and
+ * {@link FileManager#saveSpreadsheet(String, Spreadsheet)} on generated files of 10,000 to
+ * 1,000,000 cells. Pass {@code -p cells=10000000 -jvmArgs -Xmx8g} for 10M cells.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class IoBenchmark {
+
+    private static final int COLUMNS = 10;      // Columns of the generated files; the last is a formula
+
+    @Param({"10000", "100000", "1000000"})
+    public int cells;
+
+    private final FileManager fileManager = new FileManager();
+    private Path directory;
+    private String path;
+    private String copyPath;
+    private Spreadsheet spreadsheet;
+
+    @Setup
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("iobenchmark");
+        path = directory.resolve("generated.s2v").toString();
+        copyPath = directory.resolve("copy.s2v").toString();
+        spreadsheet = generate(cells);
+        fileManager.saveSpreadsheet(path, spreadsheet);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(directory.resolve("generated.s2v"));
+        Files.deleteIfExists(directory.resolve("copy.s2v"));
+        Files.deleteIfExists(directory);
+    }
+
+    @Benchmark
+    public long saveSpreadsheet() throws IOException {
+        fileManager.saveSpreadsheet(copyPath, spreadsheet);
+        return new File(copyPath).length();
+    }
+
+    @Benchmark
+    public int loadSpreadsheet() throws IOException {
+        return fileManager.loadSpreadsheet(path, new TiledCellStorage()).getCellCount();
+    }
+
+    // Rows of numbers, each ending with a formula adding up the first two cells of its row
+    private static Spreadsheet generate(int cells) {
+        Spreadsheet spreadsheet = new Spreadsheet(new TiledCellStorage());
+        spreadsheet.beginBatch();
+        for (int i = 0; i < cells; i++) {
+            int row = i / COLUMNS + 1;
+            int col = i % COLUMNS;
+            if (col == COLUMNS - 1) {
+                spreadsheet.addOrModifyCell(row, col, new FormulaContent("=A" + row + "+B" + row));
+            } else {
+                spreadsheet.addOrModifyCell(row, col, new NumericContent(row * 0.5 + col));
+            }
+        }
+        spreadsheet.commit();
+        return spreadsheet;
+    }
+}
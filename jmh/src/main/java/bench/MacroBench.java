@@ -0,0 +1,141 @@
+package bench;
+
+import io.FileManager;
+import model.*;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Runs a whole workload against a sheet and reports the numbers to track across versions.
+ * <p>
+ * Usage: {@code java bench.MacroBench <topology> <size> [edits] [script.txt]} to generate a sheet
+ * with {@link Workload} (default: 1,000 random edits of its inputs), or
+ * {@code java bench.MacroBench <file.s2v> <script.txt>} to run a script against an existing file.
+ * <p>
+ * The sheet is saved to and loaded from a temporary S2V file, then the edits are replayed one by
+ * one on the loaded sheet. The report gives the build, save and load times, the latency
+ * percentiles of the edits, the formulas they recalculated, and the peak heap: the sum of the
+ * peak usage of each heap memory pool, so an upper bound of the heap in use at any one time.
+ * Every line is a {@code key value} pair, to be compared with the output of another version.
+ */
+public class MacroBench {
+
+    public static void main(String[] args) throws IOException {
+        resetPeakHeap();
+        FileManager fileManager = new FileManager();
+        Path directory = Files.createTempDirectory("macrobench");
+        Path path = directory.resolve("workload.s2v");
+        try {
+            List<String> script;
+            if (args[0].endsWith(".s2v")) {
+                Files.copy(Paths.get(args[0]), path);
+                script = Files.readAllLines(Paths.get(args[1]));
+                report("workload", args[0]);
+            } else {
+                String topology = args[0];
+                int size = Integer.parseInt(args[1]);
+                int edits = args.length > 2 ? Integer.parseInt(args[2]) : 1000;
+                script = args.length > 3 ? Files.readAllLines(Paths.get(args[3]))
+                        : Workload.editScript(topology, size, edits, 42);
+                report("workload", topology + " " + size);
+
+                long start = System.nanoTime();
+                Spreadsheet generated = Workload.build(topology, size);
+                report("build.ms", millis(start));
+                start = System.nanoTime();
+                fileManager.saveSpreadsheet(path.toString(), generated);
+                report("save.ms", millis(start));
+            }
+
+            long start = System.nanoTime();
+            Spreadsheet spreadsheet = fileManager.loadSpreadsheet(path.toString(), new TiledCellStorage());
+            report("load.ms", millis(start));
+            report("cells", spreadsheet.getCellCount());
+            replay(spreadsheet, script);
+            report("peak.heap.mb", String.format("%.1f", peakHeap() / (1024.0 * 1024.0)));
+        } finally {
+            Files.deleteIfExists(path);
+            Files.deleteIfExists(directory);
+        }
+    }
+
+    private static void replay(Spreadsheet spreadsheet, List<String> script) {
+        long[] latencies = new long[script.size()];
+        long evaluations = 0;
+        long dirty = 0;
+        int edits = 0;
+        for (String line : script) {
+            line = line.trim();
+            int space = line.indexOf(' ');
+            if (line.isEmpty() || space < 0) {
+                continue;
+            }
+            String coordinate = line.substring(0, space).toUpperCase();
+            Content content = Workload.parseContent(line.substring(space + 1).trim());
+
+            long start = System.nanoTime();
+            spreadsheet.addOrModifyCell(coordinate, content);
+            latencies[edits++] = System.nanoTime() - start;
+            evaluations += spreadsheet.getLastEvaluationCount();
+            dirty += spreadsheet.getLastDirtyCount();
+        }
+
+        report("edits", edits);
+        if (edits == 0) {
+            return;
+        }
+        long[] sorted = Arrays.copyOf(latencies, edits);
+        Arrays.sort(sorted);
+        report("edit.p50.us", micros(percentile(sorted, 0.50)));
+        report("edit.p90.us", micros(percentile(sorted, 0.90)));
+        report("edit.p99.us", micros(percentile(sorted, 0.99)));
+        report("edit.max.us", micros(sorted[edits - 1]));
+        report("recalculated.total", evaluations);
+        report("recalculated.per.edit", String.format("%.1f", (double) evaluations / edits));
+        report("dirty.per.edit", String.format("%.1f", (double) dirty / edits));
+    }
+
+    // Nearest-rank percentile of sorted values
+    private static long percentile(long[] sorted, double fraction) {
+        int rank = (int) Math.ceil(fraction * sorted.length);
+        return sorted[Math.max(0, rank - 1)];
+    }
+
+    private static void report(String key, Object value) {
+        System.out.printf("%-24s %s%n", key, value);
+    }
+
+    private static long millis(long start) {
+        return (System.nanoTime() - start) / 1_000_000;
+    }
+
+    private static String micros(long nanos) {
+        return String.format("%.1f", nanos / 1000.0);
+    }
+
+    private static void resetPeakHeap() {
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                pool.resetPeakUsage();
+            }
+        }
+    }
+
+    private static long peakHeap() {
+        long peak = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                peak += pool.getPeakUsage().getUsed();
+            }
+        }
+        return peak;
+    }
+}
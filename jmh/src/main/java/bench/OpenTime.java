@@ -0,0 +1,61 @@
+package bench;
+
+import io.FileManager;
+import io.SnapshotFile;
+import model.*;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Compares the time to open a sheet from S2V text and from an S2B snapshot.
+ * <p>
+ * Usage: {@code java bench.OpenTime <file.s2v>}. Saves the S2V file as a snapshot next to it,
+ * times opening each of the two files, and checks that both hold the same cells and values.
+ */
+public class OpenTime {
+
+    public static void main(String[] args) throws IOException {
+        String path = args[0];
+        String snapshotPath = path.replaceFirst("\\.s2v$", "") + SnapshotFile.EXTENSION;
+        FileManager fileManager = new FileManager();
+
+        fileManager.saveSpreadsheet(snapshotPath, fileManager.loadSpreadsheet(path, new TiledCellStorage()));
+        System.out.printf("S2V %,d bytes, S2B %,d bytes%n", new File(path).length(), new File(snapshotPath).length());
+
+        // Each open starts from a collected heap, so neither pays for the other's garbage
+        System.gc();
+        long start = System.nanoTime();
+        Spreadsheet text = fileManager.loadSpreadsheet(path, new TiledCellStorage());
+        double textSeconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("S2V open %8.2f s%n", textSeconds);
+
+        text = null;
+        System.gc();
+        start = System.nanoTime();
+        Spreadsheet snapshot = fileManager.loadSpreadsheet(snapshotPath, new TiledCellStorage());
+        double snapshotSeconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("S2B open %8.2f s  (%.1fx)%n", snapshotSeconds, textSeconds / snapshotSeconds);
+
+        text = fileManager.loadSpreadsheet(path, new TiledCellStorage());
+        System.out.println(sameValues(text, snapshot) ? "Same cells and values" : "MISMATCH between S2V and S2B");
+    }
+
+    private static boolean sameValues(Spreadsheet expected, Spreadsheet actual) {
+        if (expected.getCellCount() != actual.getCellCount()) {
+            return false;
+        }
+        int maxRow = expected.getMaxRow();
+        int maxColumn = expected.getMaxColumn();
+        for (int row = 1; row <= maxRow; row++) {
+            for (int col = 0; col <= maxColumn; col++) {
+                Cell a = expected.getCell(row, col);
+                Cell b = actual.getCell(row, col);
+                if (a == null ? b != null : b == null || !a.getValueAsString().equals(b.getValueAsString())) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+}
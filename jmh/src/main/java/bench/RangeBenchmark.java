@@ -0,0 +1,83 @@
+package bench;
+
+import model.*;
+import model.formula.Aggregate;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Aggregation of a column of {@value #ROWS} rows: {@link ColumnAggregates} building the tree of
+ * the column, serially and on the common pool, answering the range from it, and scanning the
+ * same range, as its first read and with {@link CellStorage#forEachInRange}, for each storage engine.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = "-Xmx3g")
+public class RangeBenchmark {
+
+    static final int ROWS = 1_000_000;
+
+    @Param({"tiled", "hash"})
+    public String engine;
+
+    private CellStorage storage;
+    private ColumnAggregates built;
+
+    @Setup
+    public void setUp() {
+        storage = engine.equals("tiled") ? new TiledCellStorage() : new HashCellStorage();
+        Spreadsheet spreadsheet = new Spreadsheet(storage);
+        spreadsheet.beginBatch();
+        for (int row = 1; row <= ROWS; row++) {
+            spreadsheet.addOrModifyCell(row, 0, new NumericContent(row % 1000 * 0.25));
+        }
+        spreadsheet.commit();
+        built = new ColumnAggregates(storage);
+        built.prepare(0);
+    }
+
+    @Benchmark
+    public double buildColumnTree() {
+        ColumnAggregates aggregates = new ColumnAggregates(storage);
+        aggregates.prepare(0);
+        return sum(aggregates);
+    }
+
+    @Benchmark
+    public double buildColumnTreeOnPool() {
+        ColumnAggregates aggregates = new ColumnAggregates(storage);
+        aggregates.setPool(ForkJoinPool.commonPool());
+        aggregates.prepare(0);
+        return sum(aggregates);
+    }
+
+    @Benchmark
+    public double queryColumnTree() {
+        return sum(built);
+    }
+
+    @Benchmark
+    public double scanColumn() {
+        Aggregate aggregate = new Aggregate();
+        new ColumnAggregates(storage).scan(0, 1, ROWS, aggregate);
+        return aggregate.getSum();
+    }
+
+    @Benchmark
+    public double forEachInRange() throws Exception {
+        Aggregate aggregate = new Aggregate();
+        storage.forEachInRange(1, 0, ROWS, 0, aggregate);
+        return aggregate.getSum();
+    }
+
+    private static double sum(ColumnAggregates aggregates) {
+        Aggregate aggregate = new Aggregate();
+        aggregates.aggregate(0, 1, ROWS, aggregate);
+        return aggregate.getSum();
+    }
+}
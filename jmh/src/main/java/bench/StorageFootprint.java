@@ -0,0 +1,58 @@
+package bench;
+
+import model.*;
+
+import java.lang.ref.Reference;
+
+/**
+ * Reports the heap cost per cell of the storage engines behind {@link Spreadsheet}.
+ * <p>
+ * Usage: {@code java bench.StorageFootprint [rows] [columns]} (default 1000 x 1000).
+ * Fills a sheet with numbers plus one text and one formula column, and measures the
+ * retained heap after a full collection.
+ */
+public class StorageFootprint {
+
+    public static void main(String[] args) {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        int columns = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+
+        System.out.printf("%d x %d cells%n", rows, columns);
+        report("HashCellStorage", new HashCellStorage(), rows, columns);
+        report("TiledCellStorage", new TiledCellStorage(), rows, columns);
+    }
+
+    private static void report(String name, CellStorage storage, int rows, int columns) {
+        long before = usedHeap();
+        fill(storage, rows, columns);
+        long after = usedHeap();
+
+        System.out.printf("%-18s %,14d bytes  %6.1f bytes/cell%n",
+                name, after - before, (after - before) / (double) storage.size());
+        Reference.reachabilityFence(storage); // Keep the storage alive until it has been measured
+    }
+
+    private static void fill(CellStorage storage, int rows, int columns) {
+        for (int row = 1; row <= rows; row++) {
+            for (int col = 0; col < columns; col++) {
+                Content content;
+                if (col == columns - 1) {
+                    content = new FormulaContent("=A" + row + "+B" + row);
+                } else if (col == columns - 2) {
+                    content = new TextContent("row " + row);
+                } else {
+                    content = new NumericContent(row * 0.5 + col);
+                }
+                storage.setContent(CellAddress.of(row, col), content);
+            }
+        }
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,161 @@
+package bench;
+
+import io.FileManager;
+import model.*;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Generates synthetic sheets with the shapes of real models, and edit scripts to replay on them.
+ * <p>
+ * Usage: {@code java bench.Workload <topology> <size> <file.s2v> [edits] [script.txt]}. Builds a
+ * sheet of the given topology and size, saves it as S2V and, when asked, writes a script of
+ * random edits of its input cells. The topologies are:
+ * <ul>
+ *     <li>chain: A1 holds a number and each cell below it adds one to the cell above
+ *     ({@code A2=A1+1}), {@code size} cells deep.</li>
+ *     <li>fanout: A1 holds a number read by {@code size} formulas in column B.</li>
+ *     <li>diamond: a lattice of about {@code size} cells; column A holds numbers and each
+ *     cell of the following columns adds up two neighbouring cells of the column before it,
+ *     so every input reaches many formulas through many paths.</li>
+ *     <li>ranges: {@code size} numbers in column A, read by 100 formulas of column B taking
+ *     the SUMA or PROMEDIO of long ranges of it.</li>
+ * </ul>
+ * A script holds one edit per line: a coordinate, a space and the content, as typed in the menu.
+ */
+public class Workload {
+
+    static final String[] TOPOLOGIES = {"chain", "fanout", "diamond", "ranges"};
+
+    private static final int RANGE_FORMULAS = 100;
+
+    public static void main(String[] args) throws IOException {
+        String topology = args[0];
+        int size = Integer.parseInt(args[1]);
+        String path = args[2];
+
+        Spreadsheet spreadsheet = build(topology, size);
+        new FileManager().saveSpreadsheet(path, spreadsheet);
+        System.out.printf("%s: %s of %,d cells%n", path, topology, spreadsheet.getCellCount());
+
+        if (args.length > 4) {
+            int edits = Integer.parseInt(args[3]);
+            try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(Paths.get(args[4])))) {
+                for (String edit : editScript(topology, size, edits, 42)) {
+                    out.println(edit);
+                }
+            }
+            System.out.printf("%s: %,d edits%n", args[4], edits);
+        }
+    }
+
+    /**
+     * Builds a sheet of a topology in one batch.
+     *
+     * @param topology One of {@link #TOPOLOGIES}.
+     * @param size     The number of cells, or of formulas for a fan-out.
+     * @throws IllegalArgumentException If the topology is unknown.
+     */
+    static Spreadsheet build(String topology, int size) {
+        Spreadsheet spreadsheet = new Spreadsheet(new TiledCellStorage());
+        spreadsheet.beginBatch();
+        switch (topology) {
+            case "chain":
+                spreadsheet.addOrModifyCell(1, 0, new NumericContent(1));
+                for (int row = 2; row <= size; row++) {
+                    spreadsheet.addOrModifyCell(row, 0, new FormulaContent("=A" + (row - 1) + "+1"));
+                }
+                break;
+            case "fanout":
+                spreadsheet.addOrModifyCell(1, 0, new NumericContent(1));
+                for (int row = 1; row <= size; row++) {
+                    spreadsheet.addOrModifyCell(row, 1, new FormulaContent("=A1*" + row));
+                }
+                break;
+            case "diamond":
+                int height = diamondHeight(size);
+                for (int row = 1; row <= height; row++) {
+                    spreadsheet.addOrModifyCell(row, 0, new NumericContent(row));
+                }
+                for (int col = 1; col < size / height; col++) {
+                    String previous = CellAddress.columnName(col - 1);
+                    for (int row = 1; row <= height; row++) {
+                        spreadsheet.addOrModifyCell(row, col, new FormulaContent(
+                                "=" + previous + row + "+" + previous + (row % height + 1)));
+                    }
+                }
+                break;
+            case "ranges":
+                for (int row = 1; row <= size; row++) {
+                    spreadsheet.addOrModifyCell(row, 0, new NumericContent(row % 100));
+                }
+                for (int row = 1; row <= RANGE_FORMULAS; row++) {
+                    // Ranges from the whole column down to its last tenth
+                    int start = (int) ((long) size * (row - 1) * 9 / (10 * RANGE_FORMULAS)) + 1;
+                    String function = row % 2 == 0 ? "PROMEDIO" : "SUMA";
+                    spreadsheet.addOrModifyCell(row, 1, new FormulaContent(
+                            "=" + function + "(A" + start + ":A" + size + ")"));
+                }
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown topology: " + topology);
+        }
+        spreadsheet.commit();
+        return spreadsheet;
+    }
+
+    /**
+     * Generates random edits of the input cells of a topology.
+     *
+     * @param seed The seed of the random numbers, so the same script can be generated again.
+     * @return The edits, in the script format.
+     */
+    static List<String> editScript(String topology, int size, int edits, long seed) {
+        Random random = new Random(seed);
+        int inputs;
+        switch (topology) {
+            case "chain":
+            case "fanout":
+                inputs = 1;
+                break;
+            case "diamond":
+                inputs = diamondHeight(size);
+                break;
+            case "ranges":
+                inputs = size;
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown topology: " + topology);
+        }
+        List<String> script = new ArrayList<>(edits);
+        for (int i = 0; i < edits; i++) {
+            script.add("A" + (random.nextInt(inputs) + 1) + " " + random.nextInt(1000));
+        }
+        return script;
+    }
+
+    /**
+     * Parses the content of an edit the way the menu does.
+     */
+    static Content parseContent(String input) {
+        if (input.startsWith("=")) {
+            return new FormulaContent(input.toUpperCase());
+        }
+        try {
+            return new NumericContent(Double.parseDouble(input));
+        } catch (NumberFormatException e) {
+            return new TextContent(input);
+        }
+    }
+
+    // The lattice is about as tall as it is wide
+    private static int diamondHeight(int size) {
+        return Math.max(1, (int) Math.sqrt(size));
+    }
+}
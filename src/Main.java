@@ -1,7 +1,6 @@
 import ui.*;
 
 import io.FileManager;
-import utils.Evaluator;
 
 import java.io.IOException;
 import java.util.*;
@@ -0,0 +1,500 @@
+package io;
+
+import model.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * Saves a spreadsheet file incrementally. Instead of rewriting the whole file, each save appends
+ * the cell edits made since the previous save to a write-ahead journal next to it (the file path
+ * followed by {@code .journal}), so saving takes time proportional to the edits, not to the sheet.
+ * <p>
+ * Edits are {@link #record recorded} in memory as they are made and written by {@link #sync()}
+ * with a single {@code fsync}; records appended by other threads while a sync is writing are
+ * written together by the next one (group commit). Loading reads the file, then replays the
+ * journal on top of it. A record is its payload length and CRC-32 followed by the payload
+ * (cell address, content type, number or UTF-8 text), so a record torn by a crash is detected
+ * and dropped, together with anything after it.
+ * <p>
+ * Once the journal grows past a threshold, a sync moves it aside ({@code .journal.old}), starts
+ * a fresh one, and folds the old one into a new copy of the file on a background thread, which
+ * then replaces the file. The compaction rebuilds the sheet from the files, so it never touches
+ * the spreadsheet being edited, and does so through a file manager of its own, without metrics,
+ * so that its loads and saves are not counted as the user's. Each journal starts with the size and modification time of the
+ * file it applies to, so whatever step a crash interrupts, loading replays exactly the edits the
+ * file on disk does not hold yet.
+ */
+public class EditJournal implements Closeable {
+    public static final String EXTENSION = ".journal";
+    public static final long DEFAULT_COMPACTION_BYTES = 16L << 20;
+
+    private static final int MAGIC = 0x53324a31;           // "S2J1"
+    private static final int HEADER_BYTES = 36;             // Magic and two file stamps
+    private static final int RECORD_HEADER_BYTES = 8;       // Payload length and CRC-32
+    private static final int MIN_PAYLOAD_BYTES = 9;         // Address and content type
+
+    // Record types
+    private static final byte NUMBER = 1;
+    private static final byte TEXT = 2;
+    private static final byte FORMULA = 3;
+
+    private final Path file;                // The last full save of the sheet
+    private final Path journal;             // Edits since then
+    private final Path folding;             // Edits being folded into a new full save
+    private final FileManager fileManager;
+    private final FileManager compactionFiles = new FileManager();     // Reads and writes for the compaction
+    private final long compactionBytes;
+    private final ExecutorService compactor = Executors.newSingleThreadExecutor(task -> {
+        Thread thread = new Thread(task, "journal-compaction");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final ByteArrayOutputStream pending = new ByteArrayOutputStream();  // Records not written yet
+    private long appended;                  // Records recorded so far, guarded by pending
+    private long synced;                    // Records written and forced so far
+    private FileChannel channel;            // The open journal, positioned at its end
+    private volatile Future<?> compaction;
+
+    /**
+     * Creates a journal for the given file, compacted once it reaches
+     * {@link #DEFAULT_COMPACTION_BYTES}. Nothing is opened until {@link #load()} or {@link #save}.
+     *
+     * @param filePath    The path of the spreadsheet file.
+     * @param fileManager The file manager reading and writing the spreadsheet file.
+     */
+    public EditJournal(String filePath, FileManager fileManager) {
+        this(filePath, fileManager, DEFAULT_COMPACTION_BYTES);
+    }
+
+    /**
+     * Creates a journal for the given file.
+     *
+     * @param filePath        The path of the spreadsheet file.
+     * @param fileManager     The file manager reading and writing the spreadsheet file.
+     * @param compactionBytes The journal size from which a sync folds the journal into the file.
+     */
+    public EditJournal(String filePath, FileManager fileManager, long compactionBytes) {
+        this.file = Paths.get(filePath);
+        this.journal = Paths.get(filePath + EXTENSION);
+        this.folding = Paths.get(filePath + EXTENSION + ".old");
+        this.fileManager = fileManager;
+        this.compactionBytes = compactionBytes;
+    }
+
+    /**
+     * Loads the spreadsheet from the file and the edits journaled since it was saved,
+     * and opens the journal for further edits.
+     *
+     * @return A populated Spreadsheet object.
+     * @throws IOException If an I/O error occurs.
+     */
+    public synchronized Spreadsheet load() throws IOException {
+        awaitCompaction();
+        closeChannel();
+        Spreadsheet spreadsheet = fileManager.loadSpreadsheet(file.toString());
+        Stamp base = Stamp.of(file);
+
+        // A journal applies to the file it was started on, or, while a compaction is unfinished,
+        // to the file before it after the edits being folded; any other journal belongs to an
+        // older version of the file
+        Header current = readHeader(journal);
+        Header old = readHeader(folding);
+        boolean folds = old != null && old.base.equals(base) && (current == null || current.folded.equals(base));
+        long end = -1;
+        if (folds) {
+            replay(folding, spreadsheet);
+            if (current != null) {
+                end = replay(journal, spreadsheet);
+            }
+        } else if (current != null && current.base.equals(base)) {
+            end = replay(journal, spreadsheet);
+        }
+        if (old != null && !folds) {
+            Files.delete(folding);
+        }
+
+        if (end < 0) {
+            startJournal(folds ? Stamp.NONE : base, folds ? base : Stamp.NONE);
+        } else {
+            // Drop a record torn by a crash, so new records follow the last complete one
+            channel = FileChannel.open(journal, StandardOpenOption.WRITE);
+            channel.truncate(end);
+            channel.position(end);
+        }
+        resetPending();
+        return spreadsheet;
+    }
+
+    /**
+     * Saves the whole spreadsheet to the file and starts an empty journal on top of it.
+     * Use this for a spreadsheet that was not loaded through this journal; edits recorded
+     * before are covered by the save and discarded.
+     *
+     * @param spreadsheet The spreadsheet to save.
+     * @throws IOException If an I/O error occurs.
+     */
+    public synchronized void save(Spreadsheet spreadsheet) throws IOException {
+        awaitCompaction();
+        closeChannel();
+        Path temporary = temporaryFile();
+        fileManager.saveSpreadsheet(temporary.toString(), spreadsheet);
+
+        // The old journal stops applying the moment the new file replaces the old one
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        startJournal(Stamp.of(file), Stamp.NONE);
+        Files.deleteIfExists(folding);
+        resetPending();
+    }
+
+    /**
+     * Records a cell edit, to be written by the next {@link #sync()}.
+     *
+     * @param address The packed address of the edited cell (see {@link CellAddress}).
+     * @param content The new content of the cell.
+     */
+    public void record(long address, Content content) {
+        byte type;
+        byte[] text = null;
+        double number = 0;
+        if (content instanceof FormulaContent) {
+            type = FORMULA;
+            text = ((FormulaContent) content).getFormula().getBytes(StandardCharsets.UTF_8);
+        } else if (content instanceof NumericContent) {
+            type = NUMBER;
+            number = ((NumericContent) content).getValueAsNumber();
+        } else if (content instanceof TextContent) {
+            type = TEXT;
+            text = content.getValueAsString().getBytes(StandardCharsets.UTF_8);
+        } else {
+            throw new IllegalArgumentException("Cannot journal content " + content.getClass().getName());
+        }
+
+        int length = MIN_PAYLOAD_BYTES + (text != null ? text.length : Double.BYTES);
+        ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_BYTES + length);
+        record.position(RECORD_HEADER_BYTES);
+        record.putLong(address).put(type);
+        if (text != null) {
+            record.put(text);
+        } else {
+            record.putDouble(number);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(record.array(), RECORD_HEADER_BYTES, length);
+        record.putInt(0, length).putInt(4, (int) crc.getValue());
+
+        synchronized (pending) {
+            pending.write(record.array(), 0, record.capacity());
+            appended++;
+        }
+    }
+
+    /**
+     * Durably writes every edit recorded so far. If another thread is writing, this waits for it
+     * and then writes its own records together with any recorded meanwhile, or returns at once
+     * if that write already covered them. Starts a compaction once the journal is large enough.
+     *
+     * @throws IOException If an I/O error occurs; the unwritten records are kept for a retry.
+     */
+    public void sync() throws IOException {
+        long target;
+        synchronized (pending) {
+            target = appended;
+        }
+        synchronized (this) {
+            if (channel == null) {
+                throw new IllegalStateException("The journal is not open; load or save the file first");
+            }
+            if (synced < target) {
+                byte[] records;
+                long count;
+                synchronized (pending) {
+                    records = pending.toByteArray();
+                    count = appended;
+                    pending.reset();
+                }
+                long end = channel.position();
+                try {
+                    ByteBuffer buffer = ByteBuffer.wrap(records);
+                    while (buffer.hasRemaining()) {
+                        channel.write(buffer);
+                    }
+                    channel.force(false);
+                } catch (IOException e) {
+                    // Put the records back in front of the ones recorded meanwhile, and cut off
+                    // whatever part of them reached the journal
+                    synchronized (pending) {
+                        byte[] later = pending.toByteArray();
+                        pending.reset();
+                        pending.write(records, 0, records.length);
+                        pending.write(later, 0, later.length);
+                    }
+                    channel.truncate(end);
+                    channel.position(end);
+                    throw e;
+                }
+                synced = count;
+            }
+
+            Future<?> running = compaction;
+            if ((running == null || running.isDone())
+                    && (Files.exists(folding) || channel.size() >= compactionBytes)) {
+                startCompaction();
+            }
+        }
+    }
+
+    /**
+     * Waits for a running compaction and closes the journal. Edits recorded since the last
+     * {@link #sync()} are discarded, like unsaved edits.
+     *
+     * @throws IOException If an I/O error occurs.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        awaitCompaction();
+        compactor.shutdown();
+        closeChannel();
+    }
+
+    // Moves the journal aside, unless an earlier compaction left one, and folds it in the background
+    private void startCompaction() throws IOException {
+        if (!Files.exists(folding)) {
+            Stamp base = Stamp.of(file);
+            closeChannel();
+            Files.move(journal, folding, StandardCopyOption.ATOMIC_MOVE);
+            channel = FileChannel.open(journal, StandardOpenOption.WRITE, StandardOpenOption.CREATE_NEW);
+            writeHeader(channel, Stamp.NONE, base);
+            channel.position(HEADER_BYTES);
+        }
+        FileChannel current = channel;
+        compaction = compactor.submit(() -> {
+            try {
+                compact(current);
+            } catch (IOException e) {
+                // The files are left as they were; the next sync tries again
+                System.err.println("Error compacting journal " + folding + ": " + e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Folds the moved-aside journal into a new copy of the file. Runs without holding the
+     * journal's lock: the file and the old journal do not change meanwhile, and the current
+     * journal's header is written in place, apart from the records appended after it.
+     */
+    private void compact(FileChannel current) throws IOException {
+        Stamp base = Stamp.of(file);
+        Spreadsheet folded = compactionFiles.loadSpreadsheet(file.toString());
+        replay(folding, folded);
+        Path temporary = temporaryFile();
+        compactionFiles.saveSpreadsheet(temporary.toString(), folded);
+
+        // The move keeps the new file's stamp, so the current journal can name it beforehand
+        // and applies both before the move (after the old journal) and after it
+        writeHeader(current, Stamp.of(temporary), base);
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        Files.delete(folding);
+    }
+
+    private void awaitCompaction() throws IOException {
+        Future<?> running = compaction;
+        if (running == null) {
+            return;
+        }
+        try {
+            running.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the journal compaction");
+        } catch (ExecutionException e) {
+            // Reported by the compaction itself
+        }
+        compaction = null;
+    }
+
+    // Starts an empty journal with the given header; a crash leaves either the old journal or the new one
+    private void startJournal(Stamp base, Stamp folded) throws IOException {
+        Path temporary = Paths.get(journal + ".tmp");
+        try (FileChannel fresh = FileChannel.open(temporary, StandardOpenOption.WRITE,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            writeHeader(fresh, base, folded);
+        }
+        Files.move(temporary, journal, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        channel = FileChannel.open(journal, StandardOpenOption.WRITE);
+        channel.position(HEADER_BYTES);
+    }
+
+    private void closeChannel() throws IOException {
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+    }
+
+    private void resetPending() {
+        synchronized (pending) {
+            pending.reset();
+            synced = appended;
+        }
+    }
+
+    // The file path with ".tmp" before its extension, which selects the format
+    private Path temporaryFile() {
+        String name = file.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        return file.resolveSibling(dot < 0 ? name + ".tmp" : name.substring(0, dot) + ".tmp" + name.substring(dot));
+    }
+
+    /**
+     * Replays the complete records of a journal in one batch.
+     *
+     * @return The offset after the last complete record.
+     */
+    private static long replay(Path path, Spreadsheet spreadsheet) throws IOException {
+        ByteBuffer in;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Journal too large: " + path);
+            }
+            in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        in.position(HEADER_BYTES);
+
+        CRC32 crc = new CRC32();
+        spreadsheet.beginBatch();
+        try {
+            while (in.remaining() >= RECORD_HEADER_BYTES) {
+                int start = in.position();
+                int length = in.getInt(start);
+                int checksum = in.getInt(start + 4);
+                if (length < MIN_PAYLOAD_BYTES || length > in.remaining() - RECORD_HEADER_BYTES) {
+                    break;
+                }
+                ByteBuffer payload = in.duplicate();
+                payload.position(start + RECORD_HEADER_BYTES).limit(start + RECORD_HEADER_BYTES + length);
+                crc.reset();
+                crc.update(payload.duplicate());
+                if ((int) crc.getValue() != checksum) {
+                    break;
+                }
+                apply(payload, spreadsheet);
+                in.position(start + RECORD_HEADER_BYTES + length);
+            }
+        } finally {
+            spreadsheet.commit();
+        }
+        return in.position();
+    }
+
+    private static void apply(ByteBuffer payload, Spreadsheet spreadsheet) throws IOException {
+        long address = payload.getLong();
+        byte type = payload.get();
+        Content content;
+        if (type == NUMBER) {
+            content = new NumericContent(payload.getDouble());
+        } else {
+            String text = StandardCharsets.UTF_8.decode(payload).toString();
+            if (type == FORMULA) {
+                content = new FormulaContent(text);
+            } else if (type == TEXT) {
+                content = new TextContent(text);
+            } else {
+                throw new IOException("Unknown journal record type " + type);
+            }
+        }
+        spreadsheet.addOrModifyCell(CellAddress.row(address), CellAddress.column(address), content);
+    }
+
+    // Returns null for a missing file or one without a complete header
+    private static Header readHeader(Path path) throws IOException {
+        if (!Files.exists(path)) {
+            return null;
+        }
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            while (header.hasRemaining() && channel.read(header) >= 0) {
+                // Keep reading until the header is complete or the file ends
+            }
+        }
+        if (header.hasRemaining() || header.getInt(0) != MAGIC) {
+            return null;
+        }
+        header.position(4);
+        return new Header(new Stamp(header.getLong(), header.getLong()), new Stamp(header.getLong(), header.getLong()));
+    }
+
+    // Writes the header in place and forces it, leaving the channel position alone
+    private static void writeHeader(FileChannel channel, Stamp base, Stamp folded) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        header.putInt(MAGIC)
+                .putLong(base.size).putLong(base.modified)
+                .putLong(folded.size).putLong(folded.modified)
+                .flip();
+        long position = 0;
+        while (header.hasRemaining()) {
+            position += channel.write(header, position);
+        }
+        channel.force(false);
+    }
+
+    /**
+     * A journal header: the file the journal applies to directly, and the file it applies to
+     * after the journal being folded into it (the one the file had before the compaction).
+     */
+    private static class Header {
+        final Stamp base;
+        final Stamp folded;
+
+        Header(Stamp base, Stamp folded) {
+            this.base = base;
+            this.folded = folded;
+        }
+    }
+
+    /**
+     * Identifies a version of the spreadsheet file by its size and modification time.
+     */
+    private static class Stamp {
+        static final Stamp NONE = new Stamp(-1, -1);
+
+        final long size;
+        final long modified;
+
+        Stamp(long size, long modified) {
+            this.size = size;
+            this.modified = modified;
+        }
+
+        static Stamp of(Path path) throws IOException {
+            return new Stamp(Files.size(path), Files.getLastModifiedTime(path).to(TimeUnit.NANOSECONDS));
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof Stamp && ((Stamp) other).size == size && ((Stamp) other).modified == modified;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(size) * 31 + Long.hashCode(modified);
+        }
+    }
+}
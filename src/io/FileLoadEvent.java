@@ -0,0 +1,30 @@
+package io;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight Recorder event for a file loaded into a spreadsheet, recalculation included.
+ */
+@Name("spreadsheet.FileLoad")
+@Label("File Load")
+@Category("Spreadsheet")
+@Description("Spreadsheet loaded from a file")
+final class FileLoadEvent extends jdk.jfr.Event {
+    @Label("Path")
+    String path;
+
+    @Label("Mode")
+    @Description("serial, parallel, paged or snapshot")
+    String mode;
+
+    @Label("Size")
+    @DataAmount
+    long bytes;
+
+    @Label("Cells")
+    int cells;
+}
@@ -2,13 +2,43 @@ package io;
 
 import model.*;
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
 /**
- * FileManager handles reading from and writing to S2V (Semicolon Separated Values) files.
+ * FileManager handles reading from and writing to S2V (Semicolon Separated Values) files,
+ * and to S2B binary snapshots (see {@link SnapshotFile}) for paths ending in {@code .s2b}.
  */
 public class FileManager {
 
+    // Files smaller than this per thread are not worth splitting for a parallel load
+    private static final long MIN_CHUNK_BYTES = 1 << 20;
+
+    // Rows read at a time by a spreadsheet opened in paged mode
+    private static final int PAGE_ROWS = 1024;
+
+    private SpreadsheetMetrics metrics;     // Collected metrics, or null when not collected
+
+    /**
+     * Starts or stops collecting metrics of the loads and saves of this file manager. The
+     * spreadsheets it loads collect their own metrics into the same object. Independently of
+     * them, loads and saves are reported to the Flight Recorder when it is recording.
+     *
+     * @param metrics The metrics to record into, or null to stop.
+     */
+    public void setMetrics(SpreadsheetMetrics metrics) {
+        this.metrics = metrics;
+    }
+
     /**
      * Saves the spreadsheet to a file in S2V format.
      *
@@ -56,108 +86,315 @@ public class FileManager {
      */
 
     public void saveSpreadsheet(String filePath, Spreadsheet spreadsheet) throws IOException {
-        try (BufferedWriter writer = new BufferedWriter(new FileWriter(filePath))) {
-            Map<String, Cell> cells = spreadsheet.getCells();
-
-            // Determine the maximum row and column used
-            int maxRow = 0;
-            int maxCol = 0;
-            for (String coordinate : cells.keySet()) {
-                int row = getRowNumber(coordinate);
-                int col = columnNameToIndex(getColumnPart(coordinate));
-                maxRow = Math.max(maxRow, row);
-                maxCol = Math.max(maxCol, col);
-            }
+        saveSpreadsheet(filePath, spreadsheet, false);
+    }
 
-            // Write each row
-            for (int row = 1; row <= maxRow; row++) {
-                List<String> rowContents = new ArrayList<>();
-                for (int col = 0; col <= maxCol; col++) {
-                    String coordinate = getCellCoordinate(col, row);
-                    Cell cell = cells.get(coordinate);
-
-                    if (cell != null && cell.getContent() != null) {
-                        String content;
-                        Content cellContent = cell.getContent();
-
-                        // If the content is a formula, store the formula string itself
-                        if (cellContent instanceof FormulaContent) {
-                            content = ((FormulaContent) cellContent).getFormula();
-                        } else {
-                            content = cellContent.getValueAsString();
-                        }
+    /**
+     * Saves the spreadsheet to a file in S2V format, optionally with the computed values of
+     * its formulas next to it (see {@link FormulaValues}), so loading it does not have to
+     * recalculate them. Snapshots always hold the values.
+     *
+     * @param filePath    The path of the file to save the spreadsheet.
+     * @param spreadsheet The spreadsheet to save.
+     * @param withValues  true to also save the formula values.
+     * @throws IOException If an I/O error occurs.
+     */
+    public void saveSpreadsheet(String filePath, Spreadsheet spreadsheet, boolean withValues) throws IOException {
+        FileSaveEvent event = new FileSaveEvent();
+        event.begin();
+        long start = System.nanoTime();
+        if (isSnapshot(filePath)) {
+            new SnapshotFile().write(filePath, spreadsheet);
+        } else {
+            write(filePath, spreadsheet, withValues);
+        }
 
-                        // Escape content for file (convert ";" in functions to ",")
-                        content = escapeContentForFile(content);
-                        rowContents.add(content);
-                    } else {
-                        rowContents.add(""); // Empty cell
-                    }
-                }
+        long bytes = new File(filePath).length();
+        if (metrics != null) {
+            metrics.recordSave(bytes, System.nanoTime() - start);
+        }
+        event.end();
+        if (event.shouldCommit()) {
+            event.path = filePath;
+            event.bytes = bytes;
+            event.cells = spreadsheet.getCellCount();
+            event.commit();
+        }
+    }
 
-                // Join the row contents with semicolons
-                writer.write(String.join(";", rowContents));
-                writer.newLine();
+    private void write(String filePath, Spreadsheet spreadsheet, boolean withValues) throws IOException {
+        // Values saved for the previous contents no longer apply
+        FormulaValues.delete(filePath);
+        FormulaValues values = withValues ? new FormulaValues() : null;
+        try (FileChannel channel = FileChannel.open(Paths.get(filePath),
+                StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            // Walk the occupied cells in row-major order straight from the storage engine
+            RowWriter rows = new RowWriter(channel, values);
+            try {
+                spreadsheet.getStorage().forEachCell(rows);
+                rows.finish();
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
             }
         }
+        if (values != null) {
+            values.write(filePath);
+        }
+    }
+
+    public Spreadsheet loadSpreadsheet(String filePath) throws IOException {
+        return loadSpreadsheet(filePath, new HashCellStorage());
     }
 
     /**
-     * Converts a column name (e.g., "A", "B", "AA") to a zero-based column index.
+     * Loads a spreadsheet from an S2V file into the given storage engine
+     * (e.g., {@link TiledCellStorage} for large dense files).
      *
-     * @param columnName The column name.
-     * @return The zero-based column index.
+     * @param filePath The path of the file to load.
+     * @param storage  The empty storage engine to load the cells into.
+     * @return A populated Spreadsheet object.
+     * @throws IOException If an I/O error occurs.
      */
-    private int columnNameToIndex(String columnName) {
-        int index = 0;
-        for (char ch : columnName.toCharArray()) {
-            index = index * 26 + (ch - 'A' + 1);
+    public Spreadsheet loadSpreadsheet(String filePath, CellStorage storage) throws IOException {
+        FileLoadEvent event = new FileLoadEvent();
+        event.begin();
+        long start = System.nanoTime();
+        if (isSnapshot(filePath)) {
+            return loaded(new SnapshotFile().read(filePath, storage), "snapshot", filePath, start, event);
+        }
+
+        Spreadsheet spreadsheet = new Spreadsheet(storage);
+        spreadsheet.setMetrics(metrics);
+        FormulaValues values = FormulaValues.read(filePath);
+
+        // Load every cell first, then recalculate all formulas once in dependency order,
+        // unless their saved values can be restored instead
+        spreadsheet.beginBatch();
+        try (FileChannel channel = FileChannel.open(Paths.get(filePath), StandardOpenOption.READ)) {
+            new RowReader(channel, 0, channel.size(), (row, column, content) -> {
+                spreadsheet.addOrModifyCell(row, column, content);
+                if (values != null) {
+                    values.collect(content);
+                }
+            }).read();
+        } finally {
+            spreadsheet.commit(values == null || !values.restore());
         }
-        return index - 1; // Convert to zero-based index
+
+        return loaded(spreadsheet, "serial", filePath, start, event);
     }
 
+    /**
+     * Loads a spreadsheet from an S2V file, parsing it on several threads.
+     * <p>
+     * The file is split into chunks at line starts, and the chunks are parsed concurrently
+     * into per-chunk cell buffers, formulas included. The buffers are then added to the
+     * spreadsheet in file order, with their rows shifted by the lines of the chunks before
+     * them, so the result is identical to {@link #loadSpreadsheet(String, CellStorage)}.
+     * Chunks are added as soon as they and the chunks before them are parsed.
+     *
+     * @param filePath The path of the file to load.
+     * @param storage  The empty storage engine to load the cells into.
+     * @param pool     The pool parsing the chunks.
+     * @return A populated Spreadsheet object.
+     * @throws IOException If an I/O error occurs.
+     */
+    public Spreadsheet loadSpreadsheet(String filePath, CellStorage storage, ForkJoinPool pool) throws IOException {
+        FileLoadEvent event = new FileLoadEvent();
+        event.begin();
+        long start = System.nanoTime();
+        if (isSnapshot(filePath)) {
+            return loaded(new SnapshotFile().read(filePath, storage), "snapshot", filePath, start, event);
+        }
 
-    public Spreadsheet loadSpreadsheet(String filePath) throws IOException {
-        Spreadsheet spreadsheet = new Spreadsheet();
-
-        try (BufferedReader reader = new BufferedReader(new FileReader(filePath))) {
-            String line;
-            int rowNumber = 1;
-
-            while ((line = reader.readLine()) != null) {
-                // Split line by semicolons
-                String[] contents = line.split(";");
-
-                // Process each cell in the row
-                for (int colIndex = 0; colIndex < contents.length; colIndex++) {
-                    String content = unescapeContentFromFile(contents[colIndex]);
-
-                    // If the content is not empty, process it
-                    if (!content.isEmpty()) {
-                        String coordinate = getCellCoordinate(colIndex, rowNumber);
-
-                        Content cellContent;
-                        if (content.startsWith("=")) {
-                            // If the content starts with '=', it is a formula
-                            cellContent = new FormulaContent(content);
-                        } else {
-                            // Otherwise, it could be a numeric or text content
-                            cellContent = parseContent(content);
-                        }
+        Spreadsheet spreadsheet = new Spreadsheet(storage);
+        spreadsheet.setMetrics(metrics);
+        FormulaValues values = FormulaValues.read(filePath);
+
+        spreadsheet.beginBatch();
+        try (FileChannel channel = FileChannel.open(Paths.get(filePath), StandardOpenOption.READ)) {
+            long size = channel.size();
+            int chunks = (int) Math.max(1, Math.min(pool.getParallelism() * 4L, size / MIN_CHUNK_BYTES));
+            long[] bounds = chunkBounds(channel, size, chunks);
+
+            // Parse every chunk on the pool
+            List<ForkJoinTask<ChunkCells>> tasks = new ArrayList<>(chunks);
+            for (int i = 0; i < chunks; i++) {
+                long from = bounds[i];
+                long to = bounds[i + 1];
+                tasks.add(pool.submit(() -> {
+                    ChunkCells cells = new ChunkCells();
+                    RowReader reader = new RowReader(channel, from, to, cells);
+                    reader.read();
+                    cells.lines = reader.rowNumber - 1;
+                    return cells;
+                }));
+            }
 
-                        // Add the parsed content to the spreadsheet
-                        spreadsheet.addOrModifyCell(coordinate, cellContent);
+            // Add the chunks in file order, continuing the row numbers of the previous chunk
+            int rowOffset = 0;
+            for (int i = 0; i < chunks; i++) {
+                ChunkCells cells = join(tasks.get(i));
+                tasks.set(i, null);
+                for (int j = 0; j < cells.size; j++) {
+                    spreadsheet.addOrModifyCell(cells.rows[j] + rowOffset, cells.columns[j], cells.contents[j]);
+                    if (values != null) {
+                        values.collect(cells.contents[j]);
                     }
                 }
+                rowOffset += cells.lines;
+            }
+        } finally {
+            spreadsheet.commit(values == null || !values.restore());
+        }
+
+        return loaded(spreadsheet, "parallel", filePath, start, event);
+    }
+
+    /**
+     * Opens an S2V file in paged mode, for files larger than memory.
+     * <p>
+     * Rows are read in pages on first access and evicted least recently used first once the
+     * resident pages exceed the memory budget (see {@link PagedCellStorage}). Only the pages
+     * holding formulas are read when opening: the formulas and the cells they reference are
+     * pinned in memory, and the formulas are evaluated once, which reads their ranges page by
+     * page, unless their values were saved with the file. The row-offset index locating the
+     * pages is cached next to the file (the file path followed by {@code .idx}) and rebuilt
+     * when the file changes.
+     *
+     * @param filePath     The path of the S2V file to open.
+     * @param memoryBudget The estimated bytes the resident pages may take.
+     * @return A Spreadsheet reading its cells from the file.
+     * @throws IOException If an I/O error occurs.
+     */
+    public Spreadsheet loadSpreadsheetPaged(String filePath, long memoryBudget) throws IOException {
+        if (isSnapshot(filePath)) {
+            throw new IOException("Paged mode reads S2V files: " + filePath);
+        }
+
+        FileLoadEvent event = new FileLoadEvent();
+        event.begin();
+        long start = System.nanoTime();
+        RowIndex index = RowIndex.of(filePath, PAGE_ROWS);
+        PagedFile source = new PagedFile(filePath, index);
+        Spreadsheet spreadsheet = new Spreadsheet(new PagedCellStorage(source, memoryBudget));
+        spreadsheet.setMetrics(metrics);
+        FormulaValues values = FormulaValues.read(filePath);
+
+        spreadsheet.beginBatch();
+        try {
+            for (int page = 0; page < index.pageCount; page++) {
+                if (!index.formulas[page]) {
+                    continue;
+                }
+                source.readPage(page, new CellStorage.Visitor() {
+                    @Override
+                    public void visitNumber(int row, int column, double value) {
+                        // Values are read from their pages when needed
+                    }
 
-                // Increment the row number
-                rowNumber++;
+                    @Override
+                    public void visitContent(int row, int column, Content content) {
+                        if (content instanceof FormulaContent) {
+                            spreadsheet.addOrModifyCell(row, column, content);
+                            if (values != null) {
+                                values.collect(content);
+                            }
+                        }
+                    }
+                });
             }
+        } finally {
+            spreadsheet.commit(values == null || !values.restore());
         }
 
+        return loaded(spreadsheet, "paged", filePath, start, event);
+    }
+
+    // Records a finished load in the metrics and the Flight Recorder
+    private Spreadsheet loaded(Spreadsheet spreadsheet, String mode, String filePath, long start, FileLoadEvent event) {
+        long bytes = new File(filePath).length();
+        if (metrics != null) {
+            spreadsheet.setMetrics(metrics);
+            metrics.recordLoad(bytes, System.nanoTime() - start);
+        }
+        event.end();
+        if (event.shouldCommit()) {
+            event.path = filePath;
+            event.mode = mode;
+            event.bytes = bytes;
+            event.cells = spreadsheet.getCellCount();
+            event.commit();
+        }
         return spreadsheet;
     }
 
+    private static boolean isSnapshot(String filePath) {
+        return filePath.toLowerCase(Locale.ROOT).endsWith(SnapshotFile.EXTENSION);
+    }
+
+    private static ChunkCells join(ForkJoinTask<ChunkCells> task) throws IOException {
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while loading");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    /**
+     * Splits a file into chunks of about the same size that all start at the start of a line.
+     *
+     * @return The chunk bounds: chunk i holds the bytes from bounds[i] up to bounds[i + 1].
+     */
+    private static long[] chunkBounds(FileChannel channel, long size, int chunks) throws IOException {
+        long[] bounds = new long[chunks + 1];
+        ByteBuffer window = ByteBuffer.allocate(4096);
+        for (int i = 1; i < chunks; i++) {
+            long position = Math.max(bounds[i - 1], size * i / chunks);
+            bounds[i] = nextLineStart(channel, position, size, window);
+        }
+        bounds[chunks] = size;
+        return bounds;
+    }
+
+    // Returns the start of the first line beginning after the position, or the size if there is none
+    private static long nextLineStart(FileChannel channel, long position, long size, ByteBuffer window) throws IOException {
+        while (position < size) {
+            window.clear();
+            int read = channel.read(window, position);
+            if (read <= 0) {
+                break;
+            }
+            for (int i = 0; i < read; i++) {
+                byte b = window.get(i);
+                if (b == '\n') {
+                    return position + i + 1;
+                }
+                if (b == '\r') {
+                    // A "\r\n" line break must stay in one chunk
+                    long next = position + i + 1;
+                    if (i + 1 < read) {
+                        return window.get(i + 1) == '\n' ? next + 1 : next;
+                    }
+                    ByteBuffer peek = ByteBuffer.allocate(1);
+                    return next < size && channel.read(peek, next) == 1 && peek.get(0) == '\n' ? next + 1 : next;
+                }
+            }
+            position += read;
+        }
+        return size;
+    }
+
 
     /**
      * Converts a file-safe content back into a standard content format.
@@ -182,59 +419,358 @@ public class FileManager {
     }
 
     /**
-     * Converts a column index (e.g., 0 -> A, 1 -> B) and row number into a cell coordinate.
+     * Parses a string content into the appropriate Content type.
      *
-     * @param colIndex  The zero-based column index.
-     * @param rowNumber The row number (1-based).
-     * @return The cell coordinate (e.g., "A1").
+     * @param content The string content to parse.
+     * @return A Content object (TextContent, NumericContent, or FormulaContent).
      */
-    private String getCellCoordinate(int colIndex, int rowNumber) {
-        return getColumnName(colIndex) + rowNumber;
+    private Content parseContent(String content) {
+        if (content.startsWith("=")) {
+            return new FormulaContent(content);
+        } else {
+            try {
+                return new NumericContent(Double.parseDouble(content));
+            } catch (NumberFormatException e) {
+                return new TextContent(content);
+            }
+        }
     }
 
     /**
-     * Converts a column index into a column name (e.g., 0 -> A, 1 -> B, 26 -> AA).
-     *
-     * @param colIndex The zero-based column index.
-     * @return The column name.
+     * Reads S2V rows straight from the bytes of a channel in a single pass.
+     * <p>
+     * Fields are delimited in place in a reusable buffer rather than split into line and field
+     * strings; only formulas and texts are decoded into strings, and plain decimal numbers are
+     * parsed from the bytes. The separators are ASCII, so this holds for any ASCII-compatible
+     * charset such as the default one used when saving.
      */
-    private String getColumnName(int colIndex) {
-        StringBuilder columnName = new StringBuilder();
-        while (colIndex >= 0) {
-            columnName.insert(0, (char) ('A' + (colIndex % 26)));
-            colIndex = (colIndex / 26) - 1;
+    private class RowReader {
+        private final FileChannel channel;
+        private final long end;             // End of the bytes to read
+        private final CellSink sink;
+        private final Charset charset = Charset.defaultCharset();
+        private long filePosition;          // Next byte to read from the channel
+        private byte[] buffer = new byte[1 << 16];
+        private int rowNumber = 1;
+        private int colIndex = 0;
+
+        /**
+         * Reads the bytes of the channel from {@code from} up to {@code to}, which must start a line.
+         * Positional reads leave the channel's own position alone, so several readers can share it.
+         */
+        RowReader(FileChannel channel, long from, long to, CellSink sink) {
+            this.channel = channel;
+            this.filePosition = from;
+            this.end = to;
+            this.sink = sink;
+        }
+
+        void read() throws IOException {
+            int start = 0;          // Start of the field being scanned
+            int position = 0;       // Next byte to scan
+            int limit = 0;          // End of the bytes read so far
+            boolean inLine = false; // Bytes were read since the last line break
+            boolean afterCarriageReturn = false;
+
+            while (true) {
+                if (position == limit) {
+                    // Keep the partial field at the front of the buffer and read more behind it
+                    if (start > 0) {
+                        System.arraycopy(buffer, start, buffer, 0, limit - start);
+                        limit -= start;
+                        position = limit;
+                        start = 0;
+                    }
+                    if (limit == buffer.length) {
+                        buffer = Arrays.copyOf(buffer, buffer.length * 2);
+                    }
+                    int length = (int) Math.min(buffer.length - limit, end - filePosition);
+                    int read = length > 0 ? channel.read(ByteBuffer.wrap(buffer, limit, length), filePosition) : -1;
+                    if (read < 0) {
+                        break;
+                    }
+                    filePosition += read;
+                    limit += read;
+                    continue;
+                }
+
+                byte b = buffer[position++];
+                if (b == '\n' && afterCarriageReturn) {
+                    // Second half of a "\r\n" line break
+                    afterCarriageReturn = false;
+                    start = position;
+                    continue;
+                }
+                afterCarriageReturn = b == '\r';
+
+                if (b == ';') {
+                    field(start, position - 1);
+                    colIndex++;
+                    start = position;
+                    inLine = true;
+                } else if (b == '\n' || b == '\r') {
+                    field(start, position - 1);
+                    rowNumber++;
+                    colIndex = 0;
+                    start = position;
+                    inLine = false;
+                } else {
+                    inLine = true;
+                }
+            }
+
+            // The last line may not end with a line break
+            if (inLine) {
+                field(start, limit);
+            }
+        }
+
+        // Passes the content of the field held in buffer[from, to) to the sink
+        private void field(int from, int to) {
+            if (from == to) {
+                return;     // Empty cells are left blank
+            }
+
+            Content cellContent;
+            double number = buffer[from] == '=' ? Double.NaN : parseDecimal(buffer, from, to);
+            if (!Double.isNaN(number)) {
+                cellContent = new NumericContent(number);
+            } else {
+                String content = unescapeContentFromFile(new String(buffer, from, to - from, charset));
+                cellContent = parseContent(content);
+            }
+            sink.cell(rowNumber, colIndex, cellContent);
         }
-        return columnName.toString();
     }
 
     /**
-     * Extracts the row number from a cell coordinate (e.g., "A1" -> 1).
+     * The pages of an S2V file located by its row index, each read with its own channel
+     * so the file is not held open between page faults.
      */
-    private int getRowNumber(String coordinate) {
-        return Integer.parseInt(coordinate.replaceAll("[A-Z]+", ""));
+    private class PagedFile implements PagedCellStorage.Source {
+        private final Path path;
+        private final RowIndex index;
+
+        PagedFile(String filePath, RowIndex index) {
+            this.path = Paths.get(filePath);
+            this.index = index;
+        }
+
+        @Override
+        public int getRowsPerPage() {
+            return index.rowsPerPage;
+        }
+
+        @Override
+        public int getPageCount() {
+            return index.pageCount;
+        }
+
+        @Override
+        public int getCellCount() {
+            return index.cellCount;
+        }
+
+        @Override
+        public int getMaxRow() {
+            return index.maxRow;
+        }
+
+        @Override
+        public int getMaxColumn() {
+            return index.maxColumn;
+        }
+
+        @Override
+        public void readPage(int page, CellStorage.Visitor visitor) throws IOException {
+            int rowOffset = page * index.rowsPerPage;
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                new RowReader(channel, index.offsets[page], index.offsets[page + 1], (row, column, content) -> {
+                    if (content instanceof NumericContent) {
+                        visitor.visitNumber(row + rowOffset, column, ((NumericContent) content).getValueAsNumber());
+                    } else {
+                        visitor.visitContent(row + rowOffset, column, content);
+                    }
+                }).read();
+            }
+        }
     }
 
     /**
-     * Extracts the column part from a cell coordinate (e.g., "A1" -> "A").
+     * Receives the non-empty cells read by a {@link RowReader}.
      */
-    private String getColumnPart(String coordinate) {
-        return coordinate.replaceAll("\\d+", "");
+    private interface CellSink {
+        void cell(int row, int column, Content content);
     }
 
     /**
-     * Parses a string content into the appropriate Content type.
+     * The cells of one chunk of a file, with rows counted from the start of the chunk.
+     */
+    private static class ChunkCells implements CellSink {
+        int[] rows = new int[1024];
+        int[] columns = new int[1024];
+        Content[] contents = new Content[1024];
+        int size;
+        int lines;      // Line breaks in the chunk, i.e. the rows it shifts the next chunk by
+
+        @Override
+        public void cell(int row, int column, Content content) {
+            if (size == rows.length) {
+                rows = Arrays.copyOf(rows, size * 2);
+                columns = Arrays.copyOf(columns, size * 2);
+                contents = Arrays.copyOf(contents, size * 2);
+            }
+            rows[size] = row;
+            columns[size] = column;
+            contents[size] = content;
+            size++;
+        }
+    }
+
+    // Powers of ten that are exact as doubles
+    private static final double[] EXACT_POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    /**
+     * Parses a plain decimal number such as {@code -12.5} from bytes, without allocating.
+     * Up to 15 digits the digits and the power of ten are both exact doubles, so a single
+     * division rounds correctly and gives the same result as {@link Double#parseDouble}.
      *
-     * @param content The string content to parse.
-     * @return A Content object (TextContent, NumericContent, or FormulaContent).
+     * @return The number, or NaN if the bytes are not such a number.
      */
-    private Content parseContent(String content) {
-        if (content.startsWith("=")) {
-            return new FormulaContent(content);
-        } else {
+    private static double parseDecimal(byte[] bytes, int from, int to) {
+        int i = from;
+        boolean negative = bytes[i] == '-';
+        if (negative || bytes[i] == '+') {
+            i++;
+        }
+
+        long digits = 0;
+        int digitCount = 0;
+        int fractionDigits = 0;
+        boolean point = false;
+        for (; i < to; i++) {
+            byte b = bytes[i];
+            if (b >= '0' && b <= '9') {
+                if (++digitCount > 15) {
+                    return Double.NaN;
+                }
+                digits = digits * 10 + (b - '0');
+                if (point) {
+                    fractionDigits++;
+                }
+            } else if (b == '.' && !point) {
+                point = true;
+            } else {
+                return Double.NaN;
+            }
+        }
+        if (digitCount == 0) {
+            return Double.NaN;
+        }
+
+        double value = digits / EXACT_POWERS_OF_TEN[fractionDigits];
+        return negative ? -value : value;
+    }
+
+    /**
+     * Writes the cells visited in row-major order as rows of semicolon separated values.
+     * <p>
+     * Only occupied cells are looked at: a row ends after its last cell, an empty row is an
+     * empty line, and the bytes go through one reusable buffer straight into the channel,
+     * so the cost follows the number of cells rather than the rows times columns of the sheet.
+     */
+    private class RowWriter implements CellStorage.Visitor {
+        private final WritableByteChannel channel;
+        private final FormulaValues values;     // Collects the formula values, or null
+        private final Charset charset = Charset.defaultCharset();
+        private final ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+        private int currentRow = 1;
+        private int currentColumn = 0;  // Column of the last cell written in the current row
+        private boolean empty = true;   // Nothing was written yet
+
+        RowWriter(WritableByteChannel channel, FormulaValues values) {
+            this.channel = channel;
+            this.values = values;
+        }
+
+        @Override
+        public void visitNumber(int row, int column, double value) {
+            put(row, column, String.valueOf(value));
+        }
+
+        @Override
+        public void visitContent(int row, int column, Content content) {
+            // If the content is a formula, store the formula string itself
+            String text = content instanceof FormulaContent
+                    ? ((FormulaContent) content).getFormula()
+                    : content.getValueAsString();
+
+            // Escape content for file (convert ";" in functions to ",")
+            put(row, column, escapeContentForFile(text));
+            if (values != null && text.startsWith("=")) {
+                values.add(content);
+            }
+        }
+
+        private void put(int row, int column, String text) {
+            // End the rows before this one, leaving the empty ones blank
+            while (currentRow < row) {
+                write((byte) '\n');
+                currentRow++;
+                currentColumn = 0;
+            }
+
+            // Separate this cell from the previous one, leaving the empty cells between them blank
+            while (currentColumn < column) {
+                write((byte) ';');
+                currentColumn++;
+            }
+            write(text.getBytes(charset));
+            empty = false;
+        }
+
+        // Ends the last row and writes out the buffer
+        void finish() {
+            if (!empty) {
+                write((byte) '\n');
+            }
+            flush();
+        }
+
+        private void write(byte b) {
+            if (!buffer.hasRemaining()) {
+                flush();
+            }
+            buffer.put(b);
+        }
+
+        private void write(byte[] bytes) {
+            if (bytes.length > buffer.remaining()) {
+                flush();
+                if (bytes.length > buffer.capacity()) {
+                    drain(ByteBuffer.wrap(bytes));
+                    return;
+                }
+            }
+            buffer.put(bytes);
+        }
+
+        private void flush() {
+            buffer.flip();
+            drain(buffer);
+            buffer.clear();
+        }
+
+        private void drain(ByteBuffer bytes) {
             try {
-                return new NumericContent(Double.parseDouble(content));
-            } catch (NumberFormatException e) {
-                return new TextContent(content);
+                while (bytes.hasRemaining()) {
+                    channel.write(bytes);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
             }
         }
     }
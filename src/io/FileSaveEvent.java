@@ -0,0 +1,26 @@
+package io;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight Recorder event for a spreadsheet saved to a file.
+ */
+@Name("spreadsheet.FileSave")
+@Label("File Save")
+@Category("Spreadsheet")
+@Description("Spreadsheet saved to a file")
+final class FileSaveEvent extends jdk.jfr.Event {
+    @Label("Path")
+    String path;
+
+    @Label("Size")
+    @DataAmount
+    long bytes;
+
+    @Label("Cells")
+    int cells;
+}
@@ -0,0 +1,163 @@
+package io;
+
+import model.Content;
+import model.FormulaContent;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32C;
+
+/**
+ * The computed values of the formulas of an S2V file, saved next to it (the file path followed
+ * by {@code .values}) so loading can restore them instead of recalculating every formula.
+ * <p>
+ * The values are listed in the order the formulas appear in the file, each with a flag telling
+ * whether the formula had a value. They are only trusted while the size and CRC-32C checksum of
+ * the file match the ones recorded when they were saved, so a file edited by other means is
+ * recalculated as usual.
+ */
+final class FormulaValues {
+    static final String EXTENSION = ".values";
+
+    private static final int MAGIC = 0x53325631;    // "S2V1"
+
+    private double[] values = new double[1024];
+    private boolean[] evaluated = new boolean[1024];
+    private int count;
+    private final List<FormulaContent> formulas = new ArrayList<>();   // Read back from the file
+
+    /**
+     * Adds the value of a field written to the file that will read back as a formula.
+     *
+     * @param content The content written; a text that only looks like a formula has no value.
+     */
+    void add(Content content) {
+        if (count == values.length) {
+            values = Arrays.copyOf(values, count * 2);
+            evaluated = Arrays.copyOf(evaluated, count * 2);
+        }
+        if (content instanceof FormulaContent) {
+            try {
+                // Reading the value also brings a stale formula up to date in lazy mode
+                values[count] = content.getValueAsNumber();
+                evaluated[count] = true;
+            } catch (Exception e) {
+                evaluated[count] = false;
+            }
+        }
+        count++;
+    }
+
+    /**
+     * Collects a content read from the file, keeping the formulas in file order.
+     */
+    void collect(Content content) {
+        if (content instanceof FormulaContent) {
+            formulas.add((FormulaContent) content);
+        }
+    }
+
+    /**
+     * Hands the saved values to the collected formulas.
+     *
+     * @return false if the file did not hold as many formulas as values, in which case
+     * nothing is restored and the formulas must be recalculated.
+     */
+    boolean restore() {
+        if (formulas.size() != count) {
+            return false;
+        }
+        for (int i = 0; i < count; i++) {
+            if (evaluated[i]) {
+                formulas.get(i).restore(values[i]);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Saves the values next to the S2V file they were collected from.
+     *
+     * @param filePath The path of the S2V file, already written.
+     * @throws IOException If an I/O error occurs.
+     */
+    void write(String filePath) throws IOException {
+        Path file = Paths.get(filePath);
+        long size = Files.size(file);
+        int checksum = checksum(file);
+        Path temporary = Paths.get(filePath + EXTENSION + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+            out.writeInt(MAGIC);
+            out.writeLong(size);
+            out.writeInt(checksum);
+            out.writeInt(count);
+            for (int i = 0; i < count; i++) {
+                out.writeBoolean(evaluated[i]);
+                out.writeDouble(values[i]);
+            }
+        }
+        Files.move(temporary, Paths.get(filePath + EXTENSION),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Reads the values saved next to an S2V file.
+     *
+     * @param filePath The path of the S2V file.
+     * @return The values, or null if there are none or they were saved for other contents.
+     * @throws IOException If the S2V file cannot be read.
+     */
+    static FormulaValues read(String filePath) throws IOException {
+        Path file = Paths.get(filePath);
+        Path path = Paths.get(filePath + EXTENSION);
+        if (!Files.exists(path)) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            if (in.readInt() != MAGIC || in.readLong() != Files.size(file) || in.readInt() != checksum(file)) {
+                return null;
+            }
+            FormulaValues saved = new FormulaValues();
+            saved.count = in.readInt();
+            saved.values = new double[saved.count];
+            saved.evaluated = new boolean[saved.count];
+            for (int i = 0; i < saved.count; i++) {
+                saved.evaluated[i] = in.readBoolean();
+                saved.values[i] = in.readDouble();
+            }
+            return saved;
+        } catch (EOFException e) {
+            // A truncated values file is ignored
+            return null;
+        }
+    }
+
+    /**
+     * Removes the values saved next to an S2V file, if any.
+     */
+    static void delete(String filePath) throws IOException {
+        Files.deleteIfExists(Paths.get(filePath + EXTENSION));
+    }
+
+    private static int checksum(Path file) throws IOException {
+        CRC32C crc = new CRC32C();
+        ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            while (channel.read(buffer) >= 0) {
+                buffer.flip();
+                crc.update(buffer);
+                buffer.clear();
+            }
+        }
+        return (int) crc.getValue();
+    }
+}
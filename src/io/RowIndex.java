@@ -0,0 +1,213 @@
+package io;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Row-offset index of an S2V file: the byte offset at which each page of rows starts, with
+ * the number of cells of each page and whether it holds formulas, so a page can be read
+ * on its own. The index is cached next to the file (the file path followed by {@code .idx})
+ * together with the file's size and modification time, and rebuilt when they change.
+ */
+final class RowIndex {
+    static final String EXTENSION = ".idx";
+
+    private static final int MAGIC = 0x53324931;    // "S2I1"
+
+    final int rowsPerPage;
+    final int pageCount;
+    final long[] offsets;       // Page p holds the bytes from offsets[p] up to offsets[p + 1]
+    final int[] cellCounts;
+    final boolean[] formulas;   // Whether the page holds a field starting with '='
+    final int cellCount;
+    final int maxRow;
+    final int maxColumn;
+
+    private RowIndex(int rowsPerPage, long[] offsets, int[] cellCounts, boolean[] formulas, int maxRow, int maxColumn) {
+        this.rowsPerPage = rowsPerPage;
+        this.pageCount = cellCounts.length;
+        this.offsets = offsets;
+        this.cellCounts = cellCounts;
+        this.formulas = formulas;
+        this.maxRow = maxRow;
+        this.maxColumn = maxColumn;
+        int cells = 0;
+        for (int count : cellCounts) {
+            cells += count;
+        }
+        this.cellCount = cells;
+    }
+
+    /**
+     * Returns the cached index of a file, or builds it and tries to cache it.
+     *
+     * @param filePath    The path of the S2V file.
+     * @param rowsPerPage The number of rows in each page.
+     * @throws IOException If the file cannot be read.
+     */
+    static RowIndex of(String filePath, int rowsPerPage) throws IOException {
+        Path file = Paths.get(filePath);
+        Path cache = Paths.get(filePath + EXTENSION);
+        long size = Files.size(file);
+        long modified = Files.getLastModifiedTime(file).to(TimeUnit.NANOSECONDS);
+
+        RowIndex index = read(cache, size, modified, rowsPerPage);
+        if (index != null) {
+            return index;
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            index = build(channel, rowsPerPage);
+        }
+        try {
+            write(cache, index, size, modified);
+        } catch (IOException e) {
+            // The index is only a cache; a file in a read-only place is indexed again next time
+        }
+        return index;
+    }
+
+    /**
+     * Scans the file once, counting rows and fields without parsing them. Line breaks and
+     * separators are handled exactly as when the rows are read.
+     */
+    static RowIndex build(FileChannel channel, int rowsPerPage) throws IOException {
+        long[] offsets = new long[16];
+        int[] cellCounts = new int[16];
+        boolean[] formulas = new boolean[16];
+        int page = 0;
+        int row = 1;
+        int column = 0;
+        int maxRow = 0;
+        int maxColumn = -1;
+        boolean fieldEmpty = true;
+        boolean afterCarriageReturn = false;
+
+        ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+        long position = 0;
+        while (true) {
+            buffer.clear();
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                break;
+            }
+            byte[] bytes = buffer.array();
+            for (int i = 0; i < read; i++) {
+                byte b = bytes[i];
+                if (b == '\n' && afterCarriageReturn) {
+                    // Second half of a "\r\n" line break, which the next page must not start with
+                    afterCarriageReturn = false;
+                    if (offsets[page] == position + i) {
+                        offsets[page]++;
+                    }
+                    continue;
+                }
+                afterCarriageReturn = b == '\r';
+
+                if (b == ';' || b == '\n' || b == '\r') {
+                    if (!fieldEmpty) {
+                        cellCounts[page]++;
+                        maxRow = row;
+                        maxColumn = Math.max(maxColumn, column);
+                    }
+                    fieldEmpty = true;
+                    column++;
+                    if (b != ';') {
+                        column = 0;
+                        if (row++ % rowsPerPage == 0) {
+                            // The next line starts a page
+                            page++;
+                            if (page == cellCounts.length) {
+                                offsets = Arrays.copyOf(offsets, page * 2);
+                                cellCounts = Arrays.copyOf(cellCounts, page * 2);
+                                formulas = Arrays.copyOf(formulas, page * 2);
+                            }
+                            offsets[page] = position + i + 1;
+                        }
+                    }
+                } else if (fieldEmpty) {
+                    fieldEmpty = false;
+                    if (b == '=') {
+                        formulas[page] = true;
+                    }
+                }
+            }
+            position += read;
+        }
+
+        // The last line may not end with a line break
+        if (!fieldEmpty) {
+            cellCounts[page]++;
+            maxRow = row;
+            maxColumn = Math.max(maxColumn, column);
+        }
+
+        // A page started by the final line break holds nothing
+        int pages = page + 1;
+        if (page > 0 && offsets[page] >= position) {
+            pages = page;
+        }
+        long[] bounds = Arrays.copyOf(offsets, pages + 1);
+        bounds[pages] = position;
+        return new RowIndex(rowsPerPage, bounds, Arrays.copyOf(cellCounts, pages),
+                Arrays.copyOf(formulas, pages), maxRow, maxColumn);
+    }
+
+    // Returns null if there is no cache for this version of the file and page size
+    private static RowIndex read(Path cache, long size, long modified, int rowsPerPage) {
+        if (!Files.exists(cache)) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(cache)))) {
+            if (in.readInt() != MAGIC || in.readLong() != size || in.readLong() != modified
+                    || in.readInt() != rowsPerPage) {
+                return null;
+            }
+            int pages = in.readInt();
+            int maxRow = in.readInt();
+            int maxColumn = in.readInt();
+            long[] offsets = new long[pages + 1];
+            int[] cellCounts = new int[pages];
+            boolean[] formulas = new boolean[pages];
+            for (int i = 0; i <= pages; i++) {
+                offsets[i] = in.readLong();
+            }
+            for (int i = 0; i < pages; i++) {
+                cellCounts[i] = in.readInt();
+                formulas[i] = in.readBoolean();
+            }
+            return new RowIndex(rowsPerPage, offsets, cellCounts, formulas, maxRow, maxColumn);
+        } catch (IOException e) {
+            // A damaged cache is rebuilt
+            return null;
+        }
+    }
+
+    private static void write(Path cache, RowIndex index, long size, long modified) throws IOException {
+        Path temporary = Paths.get(cache + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+            out.writeInt(MAGIC);
+            out.writeLong(size);
+            out.writeLong(modified);
+            out.writeInt(index.rowsPerPage);
+            out.writeInt(index.pageCount);
+            out.writeInt(index.maxRow);
+            out.writeInt(index.maxColumn);
+            for (long offset : index.offsets) {
+                out.writeLong(offset);
+            }
+            for (int i = 0; i < index.pageCount; i++) {
+                out.writeInt(index.cellCounts[i]);
+                out.writeBoolean(index.formulas[i]);
+            }
+        }
+        Files.move(temporary, cache, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
@@ -0,0 +1,363 @@
+package io;
+
+import model.*;
+import model.formula.Expression;
+import model.formula.ExpressionCodec;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads and writes S2B (binary snapshot) files, which open without parsing or evaluating anything.
+ * <p>
+ * The cells are stored in typed blocks laid out for {@link FileChannel#map}: numbers as raw
+ * address and {@code double} arrays, texts as indexes into a string dictionary, and formulas
+ * as their compiled expressions (see {@link ExpressionCodec}) with their computed values, in
+ * topological order. Opening a snapshot maps the file and installs the cells straight from the
+ * mapped blocks into the storage (see {@link Spreadsheet#restoreCell}): nothing is parsed or
+ * evaluated, each distinct string is decoded once, and the formulas are appended to the
+ * topological order as saved, without searching for cycles. Only the dependency graph is
+ * rebuilt, from the decoded expressions. Every cell is installed when the file is opened.
+ * <p>
+ * Layout (big-endian, every block starts at a multiple of 8 bytes):
+ * <pre>
+ * int magic, int version
+ * long n, long[n] addresses, double[n] values                                   numbers
+ * long t, long[t] addresses, int[t] strings                                     texts
+ * long f, long[f] addresses, double[f] values, int[f] strings, byte[f] flags    formulas
+ * long bytes, byte[bytes] expressions                                           formula expressions
+ * long s, int[s] lengths, byte[] UTF-8 strings                                  string dictionary
+ * </pre>
+ * A snapshot is mapped as a single buffer, so it is limited to 2 GB.
+ */
+public class SnapshotFile {
+    public static final String EXTENSION = ".s2b";
+
+    private static final int MAGIC = 0x53324231;    // "S2B1"
+    private static final int VERSION = 1;
+
+    // Formula flags
+    private static final byte EVALUATED = 1;        // The formula holds a computed value
+
+    /**
+     * Saves the spreadsheet as a snapshot.
+     *
+     * @param filePath    The path of the file to save the spreadsheet.
+     * @param spreadsheet The spreadsheet to save.
+     * @throws IOException If an I/O error occurs.
+     */
+    public void write(String filePath, Spreadsheet spreadsheet) throws IOException {
+        CellStorage storage = spreadsheet.getStorage();
+        Blocks blocks = new Blocks();
+        storage.forEachCell(blocks);
+
+        // Formulas in topological order, with their values and compiled expressions
+        long[] formulas = spreadsheet.getFormulasInOrder();
+        double[] formulaValues = new double[formulas.length];
+        int[] formulaStrings = new int[formulas.length];
+        byte[] formulaFlags = new byte[formulas.length];
+        ByteArrayOutputStream expressionBytes = new ByteArrayOutputStream();
+        DataOutputStream expressions = new DataOutputStream(expressionBytes);
+        for (int i = 0; i < formulas.length; i++) {
+            FormulaContent formula = (FormulaContent) storage.getContent(formulas[i]);
+            formulaStrings[i] = blocks.stringIndex(formula.getFormula());
+            try {
+                // Reading the value also brings a stale formula up to date in lazy mode
+                formulaValues[i] = formula.getValueAsNumber();
+                formulaFlags[i] = EVALUATED;
+            } catch (Exception e) {
+                formulaFlags[i] = 0;
+            }
+            ExpressionCodec.write(formula.getExpression(), expressions);
+        }
+        expressions.flush();
+        byte[] expressionBlock = expressionBytes.toByteArray();
+
+        byte[][] strings = new byte[blocks.strings.size()][];
+        long stringBytes = 0;
+        for (int i = 0; i < strings.length; i++) {
+            strings[i] = blocks.strings.get(i).getBytes(StandardCharsets.UTF_8);
+            stringBytes += strings[i].length;
+        }
+
+        long size = 8
+                + 8 + 16L * blocks.numberCount
+                + align(8 + 12L * blocks.textCount)
+                + align(8 + 21L * formulas.length)
+                + align(8 + expressionBlock.length)
+                + align(8 + 4L * strings.length) + stringBytes;
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("Snapshot too large: " + size + " bytes");
+        }
+
+        try (FileChannel channel = FileChannel.open(Paths.get(filePath), StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            MappedByteBuffer out = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            out.putInt(MAGIC);
+            out.putInt(VERSION);
+
+            out.putLong(blocks.numberCount);
+            out.asLongBuffer().put(blocks.numberAddresses, 0, blocks.numberCount);
+            skip(out, 8L * blocks.numberCount);
+            out.asDoubleBuffer().put(blocks.numberValues, 0, blocks.numberCount);
+            skip(out, 8L * blocks.numberCount);
+
+            out.putLong(blocks.textCount);
+            out.asLongBuffer().put(blocks.textAddresses, 0, blocks.textCount);
+            skip(out, 8L * blocks.textCount);
+            out.asIntBuffer().put(blocks.textStrings, 0, blocks.textCount);
+            skip(out, 4L * blocks.textCount);
+            pad(out);
+
+            out.putLong(formulas.length);
+            out.asLongBuffer().put(formulas);
+            skip(out, 8L * formulas.length);
+            out.asDoubleBuffer().put(formulaValues);
+            skip(out, 8L * formulas.length);
+            out.asIntBuffer().put(formulaStrings);
+            skip(out, 4L * formulas.length);
+            out.put(formulaFlags);
+            pad(out);
+
+            out.putLong(expressionBlock.length);
+            out.put(expressionBlock);
+            pad(out);
+
+            out.putLong(strings.length);
+            for (byte[] string : strings) {
+                out.putInt(string.length);
+            }
+            pad(out);
+            for (byte[] string : strings) {
+                out.put(string);
+            }
+            out.force();
+        }
+    }
+
+    /**
+     * Opens a snapshot into the given storage engine.
+     *
+     * @param filePath The path of the file to load.
+     * @param storage  The empty storage engine to load the cells into.
+     * @return A populated Spreadsheet object.
+     * @throws IOException If an I/O error occurs or the file is not a snapshot.
+     */
+    public Spreadsheet read(String filePath, CellStorage storage) throws IOException {
+        ByteBuffer in;
+        try (FileChannel channel = FileChannel.open(Paths.get(filePath), StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Snapshot too large: " + channel.size() + " bytes");
+            }
+            in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        if (in.remaining() < 8 || in.getInt() != MAGIC) {
+            throw new IOException("Not an S2B snapshot: " + filePath);
+        }
+        int version = in.getInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported S2B version " + version + ": " + filePath);
+        }
+
+        // Views of the blocks; the cells are read from the mapped file as they are installed
+        int numberCount = count(in);
+        LongBuffer numberAddresses = longs(in, numberCount);
+        DoubleBuffer numberValues = doubles(in, numberCount);
+
+        int textCount = count(in);
+        LongBuffer textAddresses = longs(in, textCount);
+        IntBuffer textStrings = ints(in, textCount);
+        pad(in);
+
+        int formulaCount = count(in);
+        LongBuffer formulaAddresses = longs(in, formulaCount);
+        DoubleBuffer formulaValues = doubles(in, formulaCount);
+        IntBuffer formulaStrings = ints(in, formulaCount);
+        ByteBuffer formulaFlags = in.slice();
+        skip(in, formulaCount);
+        pad(in);
+
+        int expressionBytes = count(in);
+        ByteBuffer expressions = in.slice();
+        expressions.limit(expressionBytes);
+        skip(in, expressionBytes);
+        pad(in);
+
+        Dictionary dictionary = new Dictionary(in);
+
+        // The formulas hold the values they had when saved, so nothing is recalculated
+        Spreadsheet spreadsheet = new Spreadsheet(storage);
+        try {
+            for (int i = 0; i < numberCount; i++) {
+                spreadsheet.restoreCell(numberAddresses.get(i), new NumericContent(numberValues.get(i)));
+            }
+            for (int i = 0; i < textCount; i++) {
+                spreadsheet.restoreCell(textAddresses.get(i), new TextContent(dictionary.get(textStrings.get(i))));
+            }
+            for (int i = 0; i < formulaCount; i++) {
+                String text = dictionary.get(formulaStrings.get(i));
+                Expression expression = ExpressionCodec.read(expressions);
+
+                // A formula with syntax errors is parsed again to report the same error
+                FormulaContent formula = expression != null
+                        ? new FormulaContent(text, expression)
+                        : new FormulaContent(text);
+                if ((formulaFlags.get(i) & EVALUATED) != 0) {
+                    formula.restore(formulaValues.get(i));
+                }
+                spreadsheet.restoreCell(formulaAddresses.get(i), formula);
+            }
+        } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+            throw new IOException("Corrupt S2B snapshot: " + filePath + ": " + e.getMessage(), e);
+        }
+        return spreadsheet;
+    }
+
+    /**
+     * Collects the numbers and texts visited in row-major order into typed blocks,
+     * and the strings they use into a dictionary. Formulas are written separately.
+     */
+    private static class Blocks implements CellStorage.Visitor {
+        long[] numberAddresses = new long[1024];
+        double[] numberValues = new double[1024];
+        int numberCount;
+        long[] textAddresses = new long[1024];
+        int[] textStrings = new int[1024];
+        int textCount;
+        final List<String> strings = new ArrayList<>();
+        final Map<String, Integer> stringIndexes = new HashMap<>();
+
+        @Override
+        public void visitNumber(int row, int column, double value) {
+            if (numberCount == numberAddresses.length) {
+                numberAddresses = Arrays.copyOf(numberAddresses, numberCount * 2);
+                numberValues = Arrays.copyOf(numberValues, numberCount * 2);
+            }
+            numberAddresses[numberCount] = CellAddress.of(row, column);
+            numberValues[numberCount] = value;
+            numberCount++;
+        }
+
+        @Override
+        public void visitContent(int row, int column, Content content) {
+            if (content instanceof NumericContent) {
+                visitNumber(row, column, ((NumericContent) content).getValueAsNumber());
+            } else if (content instanceof TextContent) {
+                if (textCount == textAddresses.length) {
+                    textAddresses = Arrays.copyOf(textAddresses, textCount * 2);
+                    textStrings = Arrays.copyOf(textStrings, textCount * 2);
+                }
+                textAddresses[textCount] = CellAddress.of(row, column);
+                textStrings[textCount] = stringIndex(content.getValueAsString());
+                textCount++;
+            }
+        }
+
+        int stringIndex(String string) {
+            Integer index = stringIndexes.get(string);
+            if (index == null) {
+                index = strings.size();
+                strings.add(string);
+                stringIndexes.put(string, index);
+            }
+            return index;
+        }
+    }
+
+    /**
+     * The string dictionary of a mapped snapshot; each string is decoded on first use.
+     */
+    private static class Dictionary {
+        private final ByteBuffer bytes;
+        private final int[] offsets;
+        private final String[] strings;
+
+        Dictionary(ByteBuffer in) throws IOException {
+            int count = count(in);
+            IntBuffer lengths = ints(in, count);
+            pad(in);
+            offsets = new int[count + 1];
+            for (int i = 0; i < count; i++) {
+                offsets[i + 1] = offsets[i] + lengths.get(i);
+            }
+            bytes = in.slice();
+            strings = new String[count];
+        }
+
+        String get(int index) {
+            String string = strings[index];
+            if (string == null) {
+                byte[] utf8 = new byte[offsets[index + 1] - offsets[index]];
+                ByteBuffer source = bytes.duplicate();
+                source.position(offsets[index]);
+                source.get(utf8);
+                string = new String(utf8, StandardCharsets.UTF_8);
+                strings[index] = string;
+            }
+            return string;
+        }
+    }
+
+    private static int count(ByteBuffer in) throws IOException {
+        long count = in.getLong();
+        if (count < 0 || count > in.remaining()) {
+            throw new IOException("Corrupt S2B snapshot");
+        }
+        return (int) count;
+    }
+
+    private static LongBuffer longs(ByteBuffer in, int count) throws IOException {
+        LongBuffer values = in.asLongBuffer();
+        check(values.remaining() >= count);
+        skip(in, 8L * count);
+        return values;
+    }
+
+    private static DoubleBuffer doubles(ByteBuffer in, int count) throws IOException {
+        DoubleBuffer values = in.asDoubleBuffer();
+        check(values.remaining() >= count);
+        skip(in, 8L * count);
+        return values;
+    }
+
+    private static IntBuffer ints(ByteBuffer in, int count) throws IOException {
+        IntBuffer values = in.asIntBuffer();
+        check(values.remaining() >= count);
+        skip(in, 4L * count);
+        return values;
+    }
+
+    private static void check(boolean valid) throws IOException {
+        if (!valid) {
+            throw new IOException("Corrupt S2B snapshot");
+        }
+    }
+
+    private static void skip(ByteBuffer buffer, long bytes) {
+        buffer.position(buffer.position() + (int) bytes);
+    }
+
+    // Moves to the next multiple of 8 bytes
+    private static void pad(ByteBuffer buffer) {
+        buffer.position((int) align(buffer.position()));
+    }
+
+    private static long align(long size) {
+        return (size + 7) & ~7L;
+    }
+}
@@ -0,0 +1,75 @@
+package model;
+
+import java.util.function.LongConsumer;
+
+/**
+ * Set of packed cell addresses (see {@link CellAddress}) backed by a {@link CellMap}.
+ */
+public class AddressSet {
+    private final CellMap<Boolean> map;
+
+    public AddressSet() {
+        this.map = new CellMap<>();
+    }
+
+    public AddressSet(int expectedSize) {
+        this.map = new CellMap<>(expectedSize);
+    }
+
+    /**
+     * @return true if the address was not already in the set.
+     */
+    public boolean add(long address) {
+        return map.put(address, Boolean.TRUE) == null;
+    }
+
+    /**
+     * @return true if the address was in the set.
+     */
+    public boolean remove(long address) {
+        return map.remove(address) != null;
+    }
+
+    public boolean contains(long address) {
+        return map.get(address) != null;
+    }
+
+    public int size() {
+        return map.size();
+    }
+
+    public boolean isEmpty() {
+        return map.isEmpty();
+    }
+
+    public void clear() {
+        map.clear();
+    }
+
+    /**
+     * Passes every address in the set to the consumer, in no particular order.
+     */
+    public void forEach(LongConsumer consumer) {
+        for (int slot = 0; slot < map.capacity(); slot++) {
+            long address = map.keyAt(slot);
+            if (address != 0L) {
+                consumer.accept(address);
+            }
+        }
+    }
+
+    /**
+     * @return The addresses in the set, in no particular order.
+     */
+    public long[] toArray() {
+        long[] addresses = new long[map.size()];
+        int count = 0;
+        for (int slot = 0; slot < map.capacity(); slot++) {
+            long address = map.keyAt(slot);
+            if (address != 0L) {
+                addresses[count++] = address;
+            }
+        }
+        return addresses;
+    }
+}
@@ -0,0 +1,177 @@
+package model;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * Adjacency lists of int-indexed nodes in compressed sparse row (CSR) form with a delta overlay.
+ * <p>
+ * The bulk of the lists lives in two flat arrays: the targets of node {@code i} are
+ * {@code targets[offsets[i]]} up to {@code targets[offsets[i + 1]]}. A list changed since the
+ * last compaction is copied into its own array in the overlay, which takes precedence over
+ * the CSR slice. Once enough lists have moved to the overlay, everything is packed back into
+ * fresh CSR arrays, so the memory per edge stays close to one {@code int}.
+ */
+public class Adjacency {
+    private static final int[] EMPTY = new int[0];
+
+    // Minimum number of changed lists before a compaction, so small graphs are not repacked on every edit
+    private static final int MIN_COMPACT_LISTS = 1024;
+
+    private int[] offsets = {0};    // CSR offsets of the packed lists, one more than the packed nodes
+    private int[] targets = EMPTY;  // CSR targets of the packed lists
+    private int packedNodes;        // Nodes covered by the CSR arrays
+
+    private int[][] overlay = new int[16][];    // Lists changed since the last compaction, or null
+    private int[] overlaySizes = new int[16];   // Number of targets used in each overlaid list
+    private int overlaidLists;                  // Number of non-null entries in the overlay
+    private int edges;                          // Current number of edges
+
+    /**
+     * @return The number of targets of the node.
+     */
+    public int degree(int node) {
+        if (node < overlay.length && overlay[node] != null) {
+            return overlaySizes[node];
+        }
+        return node < packedNodes ? offsets[node + 1] - offsets[node] : 0;
+    }
+
+    /**
+     * Passes every target of the node to the consumer, in insertion order.
+     */
+    public void forEach(int node, IntConsumer consumer) {
+        if (node < overlay.length && overlay[node] != null) {
+            int[] list = overlay[node];
+            for (int i = 0, size = overlaySizes[node]; i < size; i++) {
+                consumer.accept(list[i]);
+            }
+        } else if (node < packedNodes) {
+            for (int i = offsets[node], end = offsets[node + 1]; i < end; i++) {
+                consumer.accept(targets[i]);
+            }
+        }
+    }
+
+    /**
+     * Appends a target to the list of the node.
+     */
+    public void add(int node, int target) {
+        int[] list = overlaid(node);
+        int size = overlaySizes[node];
+        if (size == list.length) {
+            list = Arrays.copyOf(list, Math.max(4, size * 2));
+            overlay[node] = list;
+        }
+        list[size] = target;
+        overlaySizes[node] = size + 1;
+        edges++;
+        compactIfNeeded();
+    }
+
+    /**
+     * Removes one occurrence of a target from the list of the node.
+     *
+     * @return true if the target was in the list.
+     */
+    public boolean remove(int node, int target) {
+        if (degree(node) == 0) {
+            return false;
+        }
+        int[] list = overlaid(node);
+        int size = overlaySizes[node];
+        for (int i = 0; i < size; i++) {
+            if (list[i] == target) {
+                System.arraycopy(list, i + 1, list, i, size - i - 1);
+                overlaySizes[node] = size - 1;
+                edges--;
+                compactIfNeeded();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Removes every target of the node.
+     */
+    public void clear(int node) {
+        int degree = degree(node);
+        if (degree == 0) {
+            return;
+        }
+        overlaid(node);
+        overlay[node] = EMPTY;
+        overlaySizes[node] = 0;
+        edges -= degree;
+        compactIfNeeded();
+    }
+
+    /**
+     * @return The total number of edges.
+     */
+    public int edgeCount() {
+        return edges;
+    }
+
+    /**
+     * Packs every list back into the CSR arrays and empties the overlay.
+     */
+    public void compact() {
+        int nodes = Math.max(packedNodes, overlay.length);
+        while (nodes > 0 && degree(nodes - 1) == 0) {
+            nodes--;
+        }
+
+        int[] newOffsets = new int[nodes + 1];
+        int[] newTargets = new int[edges];
+        int count = 0;
+        for (int node = 0; node < nodes; node++) {
+            newOffsets[node] = count;
+            if (node < overlay.length && overlay[node] != null) {
+                System.arraycopy(overlay[node], 0, newTargets, count, overlaySizes[node]);
+                count += overlaySizes[node];
+            } else if (node < packedNodes) {
+                int start = offsets[node];
+                int length = offsets[node + 1] - start;
+                System.arraycopy(targets, start, newTargets, count, length);
+                count += length;
+            }
+        }
+        newOffsets[nodes] = count;
+
+        offsets = newOffsets;
+        targets = newTargets;
+        packedNodes = nodes;
+        Arrays.fill(overlay, null);
+        Arrays.fill(overlaySizes, 0);
+        overlaidLists = 0;
+    }
+
+    /**
+     * Returns the overlay list of the node, copying its CSR slice there first if needed.
+     */
+    private int[] overlaid(int node) {
+        if (node >= overlay.length) {
+            int capacity = Math.max(node + 1, overlay.length * 2);
+            overlay = Arrays.copyOf(overlay, capacity);
+            overlaySizes = Arrays.copyOf(overlaySizes, capacity);
+        }
+        int[] list = overlay[node];
+        if (list == null) {
+            list = node < packedNodes ? Arrays.copyOfRange(targets, offsets[node], offsets[node + 1]) : EMPTY;
+            overlay[node] = list;
+            overlaySizes[node] = list.length;
+            overlaidLists++;
+        }
+        return list;
+    }
+
+    private void compactIfNeeded() {
+        // Repack once the overlay holds a sizeable share of the lists, so copying the whole
+        // CSR arrays is amortized over many edits
+        if (overlaidLists >= Math.max(MIN_COMPACT_LISTS, packedNodes / 4)) {
+            compact();
+        }
+    }
+}
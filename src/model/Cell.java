@@ -1,18 +1,41 @@
 package model;
 
 public class Cell {
-    private String coordinate;
+    private final long address;   // Packed row and column (see CellAddress)
     private Content content;
 
     // Constructor
     public Cell(String coordinate) {
-        this.coordinate = coordinate;
+        this(CellAddress.parse(coordinate));
+        if (address == CellAddress.INVALID) {
+            throw new IllegalArgumentException("Invalid cell coordinate: " + coordinate);
+        }
+    }
+
+    // Constructor from a packed address
+    public Cell(long address) {
+        this.address = address;
         this.content = null;
     }
 
     // Get the coordinate of the cell (e.g., "A1", "B2")
     public String getCoordinate() {
-        return coordinate;
+        return CellAddress.toString(address);
+    }
+
+    // Get the packed address of the cell
+    public long getAddress() {
+        return address;
+    }
+
+    // Get the 1-based row number of the cell
+    public int getRow() {
+        return CellAddress.row(address);
+    }
+
+    // Get the 0-based column index of the cell
+    public int getColumn() {
+        return CellAddress.column(address);
     }
 
     // Set the content of the cell
@@ -48,6 +71,6 @@ public class Cell {
 
     @Override
     public String toString() {
-        return coordinate + ": " + (content != null ? content.getValueAsString() : "Empty");
+        return getCoordinate() + ": " + (content != null ? content.getValueAsString() : "Empty");
     }
 }
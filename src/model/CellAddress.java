@@ -0,0 +1,132 @@
+package model;
+
+/**
+ * Packs cell coordinates into a single {@code long}: the 1-based row number in the
+ * high 32 bits and the 0-based column index in the low 32 bits.
+ * <p>
+ * Addresses sort in row-major order, and an address is never 0, which storage
+ * structures use to mark empty slots. String coordinates (e.g., "AA10") are only
+ * needed at the UI and file boundaries.
+ */
+public final class CellAddress {
+
+    /** Returned by {@link #parse(CharSequence)} for malformed coordinates. */
+    public static final long INVALID = -1L;
+
+    /** The most letters a column name may have, so its index fits in an int. */
+    public static final int MAX_COLUMN_LETTERS = 6;
+
+    private CellAddress() {
+    }
+
+    /**
+     * Packs a row and a column into an address.
+     *
+     * @param row    The 1-based row number.
+     * @param column The 0-based column index (A -> 0).
+     * @return The packed address.
+     */
+    public static long of(int row, int column) {
+        return ((long) row << 32) | (column & 0xFFFFFFFFL);
+    }
+
+    /**
+     * @return The 1-based row number of an address.
+     */
+    public static int row(long address) {
+        return (int) (address >>> 32);
+    }
+
+    /**
+     * @return The 0-based column index of an address.
+     */
+    public static int column(long address) {
+        return (int) address;
+    }
+
+    /**
+     * Parses a coordinate such as "A1" or "aa10" (letters are case-insensitive).
+     *
+     * @param coordinate The coordinate to parse.
+     * @return The packed address, or {@link #INVALID} if the coordinate is malformed.
+     */
+    public static long parse(CharSequence coordinate) {
+        int length = coordinate.length();
+        int split = 0;
+        while (split < length && isLetter(coordinate.charAt(split))) {
+            split++;
+        }
+        if (split == 0 || split == length || split > MAX_COLUMN_LETTERS) {
+            return INVALID;
+        }
+
+        long row = 0;
+        for (int i = split; i < length; i++) {
+            char ch = coordinate.charAt(i);
+            if (ch < '0' || ch > '9') {
+                return INVALID;
+            }
+            row = row * 10 + (ch - '0');
+            if (row > Integer.MAX_VALUE) {
+                return INVALID;
+            }
+        }
+        if (row < 1) {
+            return INVALID;
+        }
+        return of((int) row, columnIndex(coordinate, 0, split));
+    }
+
+    /**
+     * Converts column letters (e.g., "A", "AA") to a zero-based column index.
+     *
+     * @param text  The text containing the column letters.
+     * @param start The index of the first letter.
+     * @param end   The index after the last letter.
+     * @return The zero-based column index.
+     */
+    public static int columnIndex(CharSequence text, int start, int end) {
+        int index = 0;
+        for (int i = start; i < end; i++) {
+            index = index * 26 + (Character.toUpperCase(text.charAt(i)) - 'A' + 1);
+        }
+        return index - 1;
+    }
+
+    /**
+     * Converts a zero-based column index into a column name (e.g., 0 -> A, 26 -> AA).
+     */
+    public static String columnName(int column) {
+        StringBuilder columnName = new StringBuilder();
+        appendColumnName(columnName, column);
+        return columnName.toString();
+    }
+
+    /**
+     * Converts a zero-based column index and a row number into a coordinate (e.g., 1, 2 -> "B2").
+     */
+    public static String toCoordinate(int column, int row) {
+        StringBuilder coordinate = new StringBuilder(8);
+        appendColumnName(coordinate, column);
+        return coordinate.append(row).toString();
+    }
+
+    /**
+     * Converts an address into a coordinate (e.g., "B2").
+     */
+    public static String toString(long address) {
+        return toCoordinate(column(address), row(address));
+    }
+
+    private static void appendColumnName(StringBuilder sb, int column) {
+        int start = sb.length();
+        while (column >= 0) {
+            sb.insert(start, (char) ('A' + (column % 26)));
+            column = (column / 26) - 1;
+        }
+    }
+
+    private static boolean isLetter(char ch) {
+        return (ch >= 'A' && ch <= 'Z') || (ch >= 'a' && ch <= 'z');
+    }
+}
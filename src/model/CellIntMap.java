@@ -0,0 +1,165 @@
+package model;
+
+import java.util.Arrays;
+
+/**
+ * Open-addressing hash map from packed cell addresses (see {@link CellAddress}) to
+ * primitive {@code int} values, with the same layout as {@link CellMap}.
+ */
+public class CellIntMap {
+    private static final long EMPTY = 0L;   // Never a valid address since rows start at 1
+
+    private long[] keys;
+    private int[] values;
+    private int mask;
+    private int size;
+    private int resizeAt;
+
+    public CellIntMap() {
+        this(16);
+    }
+
+    public CellIntMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(4, expectedSize * 3 / 2) - 1) << 1;
+        allocate(capacity);
+    }
+
+    /**
+     * @return The value stored at the address, or {@code missing} if there is none.
+     */
+    public int get(long address, int missing) {
+        int slot = slotOf(address);
+        while (true) {
+            long key = keys[slot];
+            if (key == EMPTY) {
+                return missing;
+            }
+            if (key == address) {
+                return values[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    public boolean containsKey(long address) {
+        int slot = slotOf(address);
+        while (true) {
+            long key = keys[slot];
+            if (key == EMPTY) {
+                return false;
+            }
+            if (key == address) {
+                return true;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    /**
+     * Stores a value at the address, replacing any previous value.
+     *
+     * @throws IllegalArgumentException If the address is 0, which marks empty slots.
+     */
+    public void put(long address, int value) {
+        if (address == EMPTY) {
+            throw new IllegalArgumentException("Not a cell address: 0");
+        }
+        int slot = slotOf(address);
+        while (true) {
+            long key = keys[slot];
+            if (key == address) {
+                values[slot] = value;
+                return;
+            }
+            if (key == EMPTY) {
+                keys[slot] = address;
+                values[slot] = value;
+                if (++size >= resizeAt) {
+                    allocate(keys.length * 2);
+                }
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    /**
+     * Removes the value stored at the address.
+     *
+     * @return true if there was a value.
+     */
+    public boolean remove(long address) {
+        int slot = slotOf(address);
+        while (true) {
+            long key = keys[slot];
+            if (key == EMPTY) {
+                return false;
+            }
+            if (key == address) {
+                break;
+            }
+            slot = (slot + 1) & mask;
+        }
+        size--;
+
+        // Backward-shift deletion: move later entries of the probe chain into the hole
+        int hole = slot;
+        int next = slot;
+        while (true) {
+            next = (next + 1) & mask;
+            long key = keys[next];
+            if (key == EMPTY) {
+                break;
+            }
+            int ideal = slotOf(key);
+            boolean movable = next > hole ? (ideal <= hole || ideal > next) : (ideal <= hole && ideal > next);
+            if (movable) {
+                keys[hole] = key;
+                values[hole] = values[next];
+                hole = next;
+            }
+        }
+        keys[hole] = EMPTY;
+        values[hole] = 0;
+        return true;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void clear() {
+        Arrays.fill(keys, EMPTY);
+        Arrays.fill(values, 0);
+        size = 0;
+    }
+
+    private int slotOf(long address) {
+        long hash = address * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32)) & mask;
+    }
+
+    private void allocate(int capacity) {
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+
+        keys = new long[capacity];
+        values = new int[capacity];
+        mask = capacity - 1;
+        resizeAt = capacity / 4 * 3;
+
+        if (oldKeys != null) {
+            for (int i = 0; i < oldKeys.length; i++) {
+                long key = oldKeys[i];
+                if (key != EMPTY) {
+                    int slot = slotOf(key);
+                    while (keys[slot] != EMPTY) {
+                        slot = (slot + 1) & mask;
+                    }
+                    keys[slot] = key;
+                    values[slot] = oldValues[i];
+                }
+            }
+        }
+    }
+}
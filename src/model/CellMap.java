@@ -0,0 +1,193 @@
+package model;
+
+import java.util.Arrays;
+
+/**
+ * Open-addressing hash map from packed cell addresses (see {@link CellAddress}) to values.
+ * <p>
+ * Keys are stored in a primitive {@code long[]} with linear probing, so lookups never box
+ * or allocate. Entries can be visited without allocation through {@link #capacity()},
+ * {@link #keyAt(int)} and {@link #valueAt(int)}; empty slots have the key 0, which is
+ * therefore never stored nor found.
+ *
+ * @param <V> The type of the values.
+ */
+public class CellMap<V> {
+    private static final long EMPTY = 0L;   // Never a valid address since rows start at 1
+
+    private long[] keys;
+    private Object[] values;
+    private int mask;
+    private int size;
+    private int resizeAt;
+
+    public CellMap() {
+        this(16);
+    }
+
+    public CellMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(4, expectedSize * 3 / 2) - 1) << 1;
+        allocate(capacity);
+    }
+
+    /**
+     * @return The value stored at the address, or null if there is none.
+     */
+    @SuppressWarnings("unchecked")
+    public V get(long address) {
+        int slot = slotOf(address);
+        while (true) {
+            long key = keys[slot];
+            if (key == EMPTY) {
+                return null;
+            }
+            if (key == address) {
+                return (V) values[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    public boolean containsKey(long address) {
+        return get(address) != null;
+    }
+
+    /**
+     * Stores a non-null value at the address.
+     *
+     * @return The previous value, or null if there was none.
+     * @throws IllegalArgumentException If the address is 0, which marks empty slots.
+     */
+    @SuppressWarnings("unchecked")
+    public V put(long address, V value) {
+        if (address == EMPTY) {
+            throw new IllegalArgumentException("Not a cell address: 0");
+        }
+        int slot = slotOf(address);
+        while (true) {
+            long key = keys[slot];
+            if (key == address) {
+                V previous = (V) values[slot];
+                values[slot] = value;
+                return previous;
+            }
+            if (key == EMPTY) {
+                keys[slot] = address;
+                values[slot] = value;
+                if (++size >= resizeAt) {
+                    allocate(keys.length * 2);
+                }
+                return null;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    /**
+     * Removes the value stored at the address.
+     *
+     * @return The removed value, or null if there was none.
+     */
+    @SuppressWarnings("unchecked")
+    public V remove(long address) {
+        int slot = slotOf(address);
+        while (true) {
+            long key = keys[slot];
+            if (key == EMPTY) {
+                return null;
+            }
+            if (key == address) {
+                break;
+            }
+            slot = (slot + 1) & mask;
+        }
+        V removed = (V) values[slot];
+        size--;
+
+        // Backward-shift deletion: move later entries of the probe chain into the hole
+        int hole = slot;
+        int next = slot;
+        while (true) {
+            next = (next + 1) & mask;
+            long key = keys[next];
+            if (key == EMPTY) {
+                break;
+            }
+            int ideal = slotOf(key);
+            boolean movable = next > hole ? (ideal <= hole || ideal > next) : (ideal <= hole && ideal > next);
+            if (movable) {
+                keys[hole] = key;
+                values[hole] = values[next];
+                hole = next;
+            }
+        }
+        keys[hole] = EMPTY;
+        values[hole] = null;
+        return removed;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void clear() {
+        Arrays.fill(keys, EMPTY);
+        Arrays.fill(values, null);
+        size = 0;
+    }
+
+    /**
+     * @return The number of slots, for iterating with {@link #keyAt(int)} and {@link #valueAt(int)}.
+     */
+    public int capacity() {
+        return keys.length;
+    }
+
+    /**
+     * @return The address stored in a slot, or 0 if the slot is empty.
+     */
+    public long keyAt(int slot) {
+        return keys[slot];
+    }
+
+    /**
+     * @return The value stored in a slot, or null if the slot is empty.
+     */
+    @SuppressWarnings("unchecked")
+    public V valueAt(int slot) {
+        return (V) values[slot];
+    }
+
+    private int slotOf(long address) {
+        long hash = address * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32)) & mask;
+    }
+
+    private void allocate(int capacity) {
+        long[] oldKeys = keys;
+        Object[] oldValues = values;
+
+        keys = new long[capacity];
+        values = new Object[capacity];
+        mask = capacity - 1;
+        resizeAt = capacity / 4 * 3;
+
+        if (oldKeys != null) {
+            for (int i = 0; i < oldKeys.length; i++) {
+                long key = oldKeys[i];
+                if (key != EMPTY) {
+                    int slot = slotOf(key);
+                    while (keys[slot] != EMPTY) {
+                        slot = (slot + 1) & mask;
+                    }
+                    keys[slot] = key;
+                    values[slot] = oldValues[i];
+                }
+            }
+        }
+    }
+}
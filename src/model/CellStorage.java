@@ -0,0 +1,109 @@
+package model;
+
+import java.util.function.DoubleConsumer;
+
+/**
+ * Storage engine holding the contents of a {@link Spreadsheet}, addressed by packed
+ * cell address (see {@link CellAddress}).
+ * <p>
+ * Engines may keep contents in a compact form and only materialise {@link Cell} and
+ * {@link Content} objects when they are asked for, so callers must write through
+ * {@link #setContent(long, Content)} rather than mutating the cells they read.
+ */
+public interface CellStorage {
+
+    // Cell states reported by readColumn
+    byte EMPTY_CELL = 0;
+    byte NUMBER_CELL = 1;
+    byte OTHER_CELL = 2;
+
+    /**
+     * Receives the cells visited by {@link #forEachCell(Visitor)}.
+     */
+    interface Visitor {
+
+        /**
+         * Visits a cell holding a plain number.
+         */
+        void visitNumber(int row, int column, double value);
+
+        /**
+         * Visits a cell holding any other content (text, formula).
+         */
+        void visitContent(int row, int column, Content content);
+    }
+
+    /**
+     * @return The cell at the address, or null if it is empty.
+     */
+    Cell getCell(long address);
+
+    /**
+     * @return The content at the address, or null if the cell is empty.
+     */
+    Content getContent(long address);
+
+    /**
+     * Sets the content at the address; a null content empties the cell.
+     */
+    void setContent(long address, Content content);
+
+    /**
+     * Returns the numeric value of a cell without materialising its content.
+     *
+     * @throws Exception If the cell is empty or does not hold a numeric value.
+     */
+    double getNumber(long address) throws Exception;
+
+    /**
+     * Feeds the numeric value of every non-empty cell in a rectangular range to the consumer,
+     * in row-major order, so that aggregates come out the same on every engine.
+     *
+     * @throws Exception If a cell in the range does not hold a numeric value.
+     */
+    void forEachInRange(int startRow, int startColumn, int endRow, int endColumn,
+                        DoubleConsumer consumer) throws Exception;
+
+    /**
+     * Copies the numbers of rows {@code startRow..endRow} of a column into contiguous arrays,
+     * row {@code startRow} going to index {@code offset}. Plain numbers are written to
+     * {@code values} and flagged {@link #NUMBER_CELL}; other contents (text, formulas) are
+     * flagged {@link #OTHER_CELL} without being read, so that reading them, which may evaluate
+     * a formula, is left to the caller. Nothing is written for empty cells.
+     * <p>
+     * Engines should override this to copy from their blocks of numbers; it may be called
+     * concurrently for disjoint rows, as long as the storage is not modified meanwhile.
+     */
+    default void readColumn(int column, int startRow, int endRow, double[] values, byte[] states, int offset) {
+        for (int row = startRow; row <= endRow; row++) {
+            Content content = getContent(CellAddress.of(row, column));
+            int index = offset + row - startRow;
+            if (content instanceof NumericContent) {
+                values[index] = ((NumericContent) content).getValueAsNumber();
+                states[index] = NUMBER_CELL;
+            } else if (content != null) {
+                states[index] = OTHER_CELL;
+            }
+        }
+    }
+
+    /**
+     * Visits every non-empty cell in row-major order.
+     */
+    void forEachCell(Visitor visitor);
+
+    /**
+     * @return The number of non-empty cells.
+     */
+    int size();
+
+    /**
+     * @return The highest row number holding a cell, or 0 if the storage is empty.
+     */
+    int getMaxRow();
+
+    /**
+     * @return The highest column index holding a cell, or -1 if the storage is empty.
+     */
+    int getMaxColumn();
+}
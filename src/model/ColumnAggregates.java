@@ -0,0 +1,462 @@
+package model;
+
+import model.formula.Aggregate;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Incrementally maintained aggregates over the columns of a sheet, used to answer
+ * SUMA, MIN, MAX and PROMEDIO over tall ranges in O(log n) per column.
+ * <p>
+ * Each tracked column keeps a segment tree holding, per node, the sum, count, minimum and
+ * maximum of its numeric cells plus the number of cells that cannot be read as a number
+ * (text or failed formulas). Range sums are combined from O(log n) nodes rather than from
+ * differences of prefix sums, so they do not suffer cancellation error. Columns are only
+ * tracked once tall ranges have read them twice, and must then be kept up to date through
+ * {@link #update(long, Content)} whenever a cell's value changes. The first read of a column
+ * is answered by scanning it, so a column read only once never pays for a tree.
+ * Queries share a read lock, so the formulas of a parallel recalculation level aggregate
+ * concurrently; building, updating and the pool take the write lock. Parallel recalculation
+ * builds the columns a level reads beforehand (see {@link #prepare}), so its workers only read.
+ * <p>
+ * Scans add the numbers of a range in the order a query of the tree adds them: pairwise within
+ * the aligned blocks of rows the tree holds, then block by block as the query visits them.
+ * A range therefore sums to the same bits whether it is scanned or queried, whatever was read
+ * before and whichever thread reads it.
+ * <p>
+ * Columns are copied from the storage with {@link CellStorage#readColumn}, in slices of
+ * {@value #SLICE_ROWS} rows that are read on the given pool, if any, when the range is taller
+ * than one slice.
+ * <p>
+ * Columns of a {@link PagedCellStorage} are never tracked: a tree would keep a whole column of a
+ * sheet larger than memory resident, and building it would read every page. Their ranges are
+ * always scanned, reading only the pages they span.
+ */
+public class ColumnAggregates {
+    private static final int SLICE_ROWS = 1 << 16;
+
+    private final CellStorage storage;
+    private final boolean tracking;     // False if every range is scanned
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private Column[] columns = new Column[16];
+    private final BitSet scanned = new BitSet();            // Untracked columns already read once
+    private ForkJoinPool pool;          // Pool reading the slices of tall columns, or null
+
+    public ColumnAggregates(CellStorage storage) {
+        this.storage = storage;
+        this.tracking = !(storage instanceof PagedCellStorage);
+    }
+
+    /**
+     * Sets the pool reading tall columns in slices.
+     *
+     * @param pool The pool, or null to read them on the calling thread.
+     */
+    public void setPool(ForkJoinPool pool) {
+        lock.writeLock().lock();
+        try {
+            this.pool = pool;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Adds the numeric cells of rows {@code startRow..endRow} of a column to an aggregate.
+     *
+     * @return false if the range holds cells that cannot be read as a number; nothing is
+     * added then, so the caller can visit the cells and report the error.
+     */
+    public boolean aggregate(int column, int startRow, int endRow, Aggregate aggregate) {
+        if (!tracking) {
+            return scan(column, startRow, endRow, aggregate);
+        }
+        lock.readLock().lock();
+        try {
+            Column tree = columns.length > column ? columns[column] : null;
+            if (tree != null) {
+                return tree.query(startRow - 1, Math.min(endRow, tree.capacity), aggregate);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        ForkJoinPool scanPool;
+        lock.writeLock().lock();
+        try {
+            if (column < columns.length && columns[column] != null || scanned.get(column)) {
+                Column tree = track(column);
+                return tree.query(startRow - 1, Math.min(endRow, tree.capacity), aggregate);
+            }
+            scanned.set(column);
+            scanPool = pool;
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        // Scanned without the lock, so the pool never waits for it
+        return scan(column, startRow, endRow, aggregate, scanPool);
+    }
+
+    /**
+     * Adds the numeric cells of rows {@code startRow..endRow} of a column to an aggregate by
+     * scanning them, without tracking the column, in the same order as {@link #aggregate}.
+     *
+     * @return false if the range holds cells that cannot be read as a number; nothing is
+     * added then.
+     */
+    public boolean scan(int column, int startRow, int endRow, Aggregate aggregate) {
+        ForkJoinPool scanPool;
+        lock.readLock().lock();
+        try {
+            scanPool = pool;
+        } finally {
+            lock.readLock().unlock();
+        }
+        return scan(column, startRow, endRow, aggregate, scanPool);
+    }
+
+    /**
+     * Starts tracking a column, if it is not tracked yet, loading its current cells from the storage.
+     * Does nothing for a paged storage.
+     *
+     * @param column The column; reading its formulas may evaluate them.
+     */
+    public void prepare(int column) {
+        if (!tracking) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            track(column);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Records the current value of a cell, if its column is tracked.
+     *
+     * @param address The packed address of the cell.
+     * @param content The content of the cell, or null if it is empty.
+     */
+    public void update(long address, Content content) {
+        int column = CellAddress.column(address);
+        lock.writeLock().lock();
+        try {
+            if (column < columns.length && columns[column] != null) {
+                columns[column].set(CellAddress.row(address) - 1, content);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return true if the column's aggregates are being maintained.
+     */
+    public boolean isTracked(int column) {
+        lock.readLock().lock();
+        try {
+            return column < columns.length && columns[column] != null;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Aggregates rows startRow..endRow of a column from a copy of them, summing as the tree would
+    private boolean scan(int column, int startRow, int endRow, Aggregate aggregate, ForkJoinPool pool) {
+        int lastRow = Math.min(endRow, storage.getMaxRow());
+        if (lastRow < startRow) {
+            return true;
+        }
+        int length = lastRow - startRow + 1;
+        double[] values = new double[length];
+        byte[] states = new byte[length];
+        read(pool, column, startRow, lastRow, values, states, 0);
+
+        long count = 0;
+        double min = Double.POSITIVE_INFINITY;
+        double max = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < length; i++) {
+            if (states[i] == CellStorage.OTHER_CELL) {
+                // Text and formulas are read here, since reading a formula may evaluate it
+                try {
+                    values[i] = storage.getContent(CellAddress.of(startRow + i, column)).getValueAsNumber();
+                } catch (Exception e) {
+                    return false;
+                }
+            } else if (states[i] != CellStorage.NUMBER_CELL) {
+                continue;
+            }
+            count++;
+            min = Math.min(min, values[i]);
+            max = Math.max(max, values[i]);
+        }
+        // Summed over the whole range, like the tree, since the blocks depend on where it ends
+        aggregate.merge(count, sum(values, startRow - 1, endRow), min, max);
+        return true;
+    }
+
+    /**
+     * Sums the leaves {@code [from, to)} of a column in the order {@link Column#query} adds them,
+     * given the leaves from {@code from} on; leaves past the end of the array are empty.
+     * Overwrites the leaves with partial sums.
+     */
+    static double sum(double[] leaves, int from, int to) {
+        double total = 0;
+        for (int level = 0, left = from, right = to; left < right; level++, left >>>= 1, right >>>= 1) {
+            if ((left & 1) == 1) {
+                total += block(leaves, (left << level) - from, 1 << level);
+                left++;
+            }
+            if ((right & 1) == 1) {
+                right--;
+                total += block(leaves, (right << level) - from, 1 << level);
+            }
+        }
+        return total;
+    }
+
+    // Sums an aligned block of leaves pairwise, as the nodes above them are pulled
+    private static double block(double[] leaves, int first, int size) {
+        if (first >= leaves.length) {
+            return 0;
+        }
+        for (int step = 1; step < size; step <<= 1) {
+            for (int i = first; i < first + size && i < leaves.length; i += 2 * step) {
+                // Still added when empty, as the tree does, which turns -0.0 into 0.0
+                leaves[i] += i + step < leaves.length ? leaves[i + step] : 0;
+            }
+        }
+        return leaves[first];
+    }
+
+    // Copies rows startRow..endRow of a column, row startRow going to index offset
+    private void read(ForkJoinPool pool, int column, int startRow, int endRow, double[] values, byte[] states, int offset) {
+        if (pool != null && endRow - startRow >= SLICE_ROWS) {
+            pool.invoke(new ReadTask(storage, column, values, states, offset, startRow, endRow));
+            return;
+        }
+        for (int first = startRow; first <= endRow; first += SLICE_ROWS) {
+            int last = Math.min(endRow, first + SLICE_ROWS - 1);
+            storage.readColumn(column, first, last, values, states, offset + first - startRow);
+        }
+    }
+
+    // Returns the tree of a column, building it if needed; called with the write lock held
+    private Column track(int column) {
+        Column tree = columns.length > column ? columns[column] : null;
+        return tree != null ? tree : build(column);
+    }
+
+    // Starts tracking a column, loading its current cells from the storage
+    private Column build(int column) {
+        if (column >= columns.length) {
+            Column[] grown = new Column[Math.max(column + 1, columns.length * 2)];
+            System.arraycopy(columns, 0, grown, 0, columns.length);
+            columns = grown;
+        }
+
+        int maxRow = storage.getMaxRow();
+        Column tree = new Column(Math.max(1, maxRow));
+        byte[] states = new byte[tree.sum.length];      // Aligned with the nodes, only leaves are set
+        if (maxRow > 0) {
+            read(pool, column, 1, maxRow, tree.sum, states, tree.capacity);
+            tree.setNumberLeaves(states, tree.capacity, maxRow);
+        }
+
+        // Text and formulas are read here, since reading a formula may evaluate it
+        for (int row = 1; row <= maxRow; row++) {
+            if (states[tree.capacity + row - 1] == CellStorage.OTHER_CELL) {
+                tree.setLeaf(row - 1, storage.getContent(CellAddress.of(row, column)));
+            }
+        }
+        tree.rebuild();
+        columns[column] = tree;
+        return tree;
+    }
+
+    /**
+     * Copies a slice of rows of a column into contiguous arrays, splitting the slice across the pool.
+     */
+    private static final class ReadTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final CellStorage storage;
+        private final int column;
+        private final double[] values;
+        private final byte[] states;
+        private final int offset;       // Index of startRow in the arrays
+        private final int startRow;
+        private final int endRow;
+
+        ReadTask(CellStorage storage, int column, double[] values, byte[] states, int offset, int startRow, int endRow) {
+            this.storage = storage;
+            this.column = column;
+            this.values = values;
+            this.states = states;
+            this.offset = offset;
+            this.startRow = startRow;
+            this.endRow = endRow;
+        }
+
+        @Override
+        protected void compute() {
+            if (endRow - startRow >= SLICE_ROWS) {
+                int middle = startRow + ((endRow - startRow) >>> 1);
+                invokeAll(new ReadTask(storage, column, values, states, offset, startRow, middle),
+                        new ReadTask(storage, column, values, states, offset + middle + 1 - startRow, middle + 1, endRow));
+                return;
+            }
+            storage.readColumn(column, startRow, endRow, values, states, offset);
+        }
+    }
+
+    /**
+     * Segment tree over the rows of one column; leaf i holds row i + 1.
+     */
+    private static final class Column {
+        int capacity;       // Number of leaves, a power of two
+        double[] sum;
+        double[] min;
+        double[] max;
+        int[] count;        // Numeric cells
+        int[] invalid;      // Cells that cannot be read as a number
+
+        Column(int rows) {
+            allocate(Integer.highestOneBit(Math.max(1, rows - 1)) << 1);
+        }
+
+        private void allocate(int leaves) {
+            capacity = leaves;
+            sum = new double[2 * leaves];
+            min = new double[2 * leaves];
+            max = new double[2 * leaves];
+            count = new int[2 * leaves];
+            invalid = new int[2 * leaves];
+            Arrays.fill(min, Double.POSITIVE_INFINITY);
+            Arrays.fill(max, Double.NEGATIVE_INFINITY);
+        }
+
+        // Completes the leaves whose sum holds a number just copied from the storage, given their states
+        void setNumberLeaves(byte[] states, int first, int length) {
+            for (int node = first; node < first + length; node++) {
+                if (states[node] == CellStorage.NUMBER_CELL) {
+                    min[node] = sum[node];
+                    max[node] = sum[node];
+                    count[node] = 1;
+                }
+            }
+        }
+
+        // Sets a leaf without updating its ancestors
+        void setLeaf(int index, Content content) {
+            int node = capacity + index;
+            sum[node] = 0;
+            count[node] = 0;
+            invalid[node] = 0;
+            min[node] = Double.POSITIVE_INFINITY;
+            max[node] = Double.NEGATIVE_INFINITY;
+            if (content == null) {
+                return;
+            }
+
+            try {
+                double value = content.getValueAsNumber();
+                sum[node] = value;
+                min[node] = value;
+                max[node] = value;
+                count[node] = 1;
+            } catch (Exception e) {
+                invalid[node] = 1;
+            }
+        }
+
+        void set(int index, Content content) {
+            if (index >= capacity) {
+                grow(index + 1);
+            }
+            setLeaf(index, content);
+            for (int node = (capacity + index) >>> 1; node > 0; node >>>= 1) {
+                pull(node);
+            }
+        }
+
+        void rebuild() {
+            for (int node = capacity - 1; node > 0; node--) {
+                pull(node);
+            }
+        }
+
+        private void pull(int node) {
+            int left = 2 * node;
+            int right = left + 1;
+            sum[node] = sum[left] + sum[right];
+            count[node] = count[left] + count[right];
+            invalid[node] = invalid[left] + invalid[right];
+            min[node] = Math.min(min[left], min[right]);
+            max[node] = Math.max(max[left], max[right]);
+        }
+
+        private void grow(int rows) {
+            int oldCapacity = capacity;
+            double[] oldSum = sum;
+            double[] oldMin = min;
+            double[] oldMax = max;
+            int[] oldCount = count;
+            int[] oldInvalid = invalid;
+
+            int leaves = capacity;
+            while (leaves < rows) {
+                leaves *= 2;
+            }
+            allocate(leaves);
+            System.arraycopy(oldSum, oldCapacity, sum, capacity, oldCapacity);
+            System.arraycopy(oldMin, oldCapacity, min, capacity, oldCapacity);
+            System.arraycopy(oldMax, oldCapacity, max, capacity, oldCapacity);
+            System.arraycopy(oldCount, oldCapacity, count, capacity, oldCapacity);
+            System.arraycopy(oldInvalid, oldCapacity, invalid, capacity, oldCapacity);
+            rebuild();
+        }
+
+        // Aggregates leaves [from, to); returns false if any of them is invalid
+        boolean query(int from, int to, Aggregate aggregate) {
+            long totalCount = 0;
+            long totalInvalid = 0;
+            double totalSum = 0;
+            double totalMin = Double.POSITIVE_INFINITY;
+            double totalMax = Double.NEGATIVE_INFINITY;
+
+            for (int left = from + capacity, right = to + capacity; left < right; left >>>= 1, right >>>= 1) {
+                if ((left & 1) == 1) {
+                    totalCount += count[left];
+                    totalInvalid += invalid[left];
+                    totalSum += sum[left];
+                    totalMin = Math.min(totalMin, min[left]);
+                    totalMax = Math.max(totalMax, max[left]);
+                    left++;
+                }
+                if ((right & 1) == 1) {
+                    right--;
+                    totalCount += count[right];
+                    totalInvalid += invalid[right];
+                    totalSum += sum[right];
+                    totalMin = Math.min(totalMin, min[right]);
+                    totalMax = Math.max(totalMax, max[right]);
+                }
+            }
+
+            if (totalInvalid > 0) {
+                return false;
+            }
+            aggregate.merge(totalCount, totalSum, totalMin, totalMax);
+            return true;
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package model;
+
+import java.util.Arrays;
+import java.util.function.LongConsumer;
+
+/**
+ * Direct cell-to-cell dependencies, kept in both directions: the precedents of a formula
+ * (the cells it reads) and the dependents of a cell (the formulas reading it).
+ * <p>
+ * Cells taking part in a dependency are given dense int ids, and both directions are stored
+ * as {@link Adjacency} lists over those ids. Replacing a formula's references therefore only
+ * touches its own old and new references, never the rest of the sheet. Ids are recycled once
+ * a cell has no edges left. Ranges are not stored here; see {@link RangeIndex}.
+ */
+public class DependencyGraph {
+    private final CellIntMap ids = new CellIntMap();   // Maps a cell to its id
+    private long[] addresses = new long[16];            // Maps an id back to its cell
+    private int[] freeIds = new int[16];                // Ids released for reuse
+    private int freeCount;
+    private int nextId;
+
+    private final Adjacency precedents = new Adjacency();  // Cells read by each formula
+    private final Adjacency dependents = new Adjacency();  // Formulas reading each cell
+
+    /**
+     * Replaces the cells read by a formula. Repeated references are recorded once.
+     *
+     * @param address The packed address of the formula.
+     * @param refs    The packed addresses of the cells it reads.
+     */
+    public void setPrecedents(long address, long[] refs) {
+        clearPrecedents(address);
+        if (refs.length == 0) {
+            return;
+        }
+
+        long[] sorted = refs.clone();
+        Arrays.sort(sorted);
+        int owner = idOf(address);
+        for (int i = 0; i < sorted.length; i++) {
+            if (i > 0 && sorted[i] == sorted[i - 1]) {
+                continue;
+            }
+            int target = idOf(sorted[i]);
+            precedents.add(owner, target);
+            dependents.add(target, owner);
+        }
+    }
+
+    /**
+     * Removes every cell read by a formula.
+     *
+     * @param address The packed address of the formula.
+     */
+    public void clearPrecedents(long address) {
+        int owner = ids.get(address, -1);
+        if (owner < 0 || precedents.degree(owner) == 0) {
+            return;
+        }
+
+        int[] targets = new int[precedents.degree(owner)];
+        int[] count = {0};
+        precedents.forEach(owner, target -> targets[count[0]++] = target);
+        precedents.clear(owner);
+        for (int target : targets) {
+            dependents.remove(target, owner);
+            releaseIfUnused(target);
+        }
+        releaseIfUnused(owner);
+    }
+
+    /**
+     * Passes every formula reading the cell directly to the consumer.
+     */
+    public void forEachDependent(long address, LongConsumer consumer) {
+        int id = ids.get(address, -1);
+        if (id >= 0) {
+            dependents.forEach(id, dependent -> consumer.accept(addresses[dependent]));
+        }
+    }
+
+    /**
+     * Passes every cell read directly by the formula to the consumer.
+     */
+    public void forEachPrecedent(long address, LongConsumer consumer) {
+        int id = ids.get(address, -1);
+        if (id >= 0) {
+            precedents.forEach(id, precedent -> consumer.accept(addresses[precedent]));
+        }
+    }
+
+    /**
+     * @return The number of formulas reading the cell directly.
+     */
+    public int dependentCount(long address) {
+        int id = ids.get(address, -1);
+        return id >= 0 ? dependents.degree(id) : 0;
+    }
+
+    /**
+     * @return The number of cell-to-cell dependencies.
+     */
+    public int edgeCount() {
+        return precedents.edgeCount();
+    }
+
+    private int idOf(long address) {
+        int id = ids.get(address, -1);
+        if (id < 0) {
+            if (freeCount > 0) {
+                id = freeIds[--freeCount];
+            } else {
+                id = nextId++;
+                if (id == addresses.length) {
+                    addresses = Arrays.copyOf(addresses, id * 2);
+                }
+            }
+            ids.put(address, id);
+            addresses[id] = address;
+        }
+        return id;
+    }
+
+    private void releaseIfUnused(int id) {
+        // A released id has no address, so a cell reading itself is not released twice
+        if (addresses[id] != 0L && precedents.degree(id) == 0 && dependents.degree(id) == 0) {
+            ids.remove(addresses[id]);
+            addresses[id] = 0L;
+            if (freeCount == freeIds.length) {
+                freeIds = Arrays.copyOf(freeIds, freeCount * 2);
+            }
+            freeIds[freeCount++] = id;
+        }
+    }
+}
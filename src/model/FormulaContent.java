@@ -1,402 +1,198 @@
 package model;
-import java.util.Map;
-import java.util.Stack;
-import java.util.List;
-import java.util.ArrayList;
 
+import model.formula.CellValues;
+import model.formula.Expression;
+import model.formula.FormulaCompiler;
+import model.formula.FormulaParser;
+import model.formula.MapCellValues;
+import model.formula.ReferenceCollector;
 
-import java.util.regex.Pattern;
-import java.util.regex.Matcher;
-import javax.script.ScriptEngine;
-import javax.script.ScriptEngineManager;
-import javax.script.ScriptException;
+import java.util.Map;
 
 /**
  * Represents formula-based content in a cell.
+ * The formula is compiled once into an {@link Expression} tree when the content is created,
+ * so re-evaluating it never re-parses the formula string. Formulas evaluated often enough
+ * are further compiled to bytecode by {@link FormulaCompiler}.
  */
 public class FormulaContent implements Content {
-    private String formula;  // The raw formula string (e.g., "=A1+B2")
+
+    /**
+     * Evaluates a stale formula, together with the stale formulas it reads, when its value
+     * is read (see {@link Spreadsheet#setLazyEvaluation(boolean)}).
+     */
+    public interface Resolver {
+        void resolve(long address);
+    }
+
+    private final String formula;        // The raw formula string (e.g., "=A1+B2")
+    private final Expression expression; // The compiled formula, or null if it has syntax errors
+    private final String parseError;     // The syntax error message, or null if the formula is valid
+    private final FormulaCompiler.Tier tier = new FormulaCompiler.Tier(); // Bytecode compilation state
     private double cachedValue;  // Cached result of the formula after evaluation
     private boolean isEvaluated;  // Indicates if the formula has been evaluated
+    private boolean stale;        // Inputs changed since the last evaluation (lazy evaluation only)
+    private Resolver resolver;    // Evaluates the formula on read while stale, or null
+    private long address;         // The packed address of the cell holding the formula
 
     // Constructor
     public FormulaContent(String formula) {
         this.formula = formula;
         this.isEvaluated = false;
-    }
 
-
-
-
-    /*
-    // Evaluate the formula and update the cached value
-    public void evaluate(Map<String, Cell> cells) throws Exception {
-        if (!formula.startsWith("=")) {
-            throw new Exception("Invalid formula: " + formula);
+        Expression compiled = null;
+        String error = null;
+        try {
+            compiled = FormulaParser.parse(formula);
+        } catch (Exception e) {
+            error = e.getMessage();
         }
-
-        // Remove the '=' sign and any whitespace from the formula
-        String expression = formula.substring(1).replace(" ", "");
-
-        // Evaluate the expression using the updated evaluateExpression method
-        double result = evaluateExpression(expression, cells);
-        cachedValue = result;
-        isEvaluated = true;
+        this.expression = compiled;
+        this.parseError = error;
     }
 
-    // Helper method to evaluate the expression with support for aggregate functions
-    private double evaluateExpression(String expression, Map<String, Cell> cells) throws Exception {
-        // Create an instance of FunctionEvaluator to handle aggregate functions
-        FunctionEvaluator functionEvaluator = new FunctionEvaluator(new SpreadsheetWrapper(cells));
-
-        // Replace all function calls with their computed values
-        expression = replaceFunctionsWithValues(expression, functionEvaluator);
-
-        // Evaluate the final expression (supports basic arithmetic operations)
-        return evaluateArithmeticExpression(expression, cells);
+    /**
+     * Creates a formula from an expression compiled earlier (e.g., read from a snapshot),
+     * without parsing the formula string again.
+     *
+     * @param formula    The raw formula string.
+     * @param expression The compiled formula; must not be null.
+     */
+    public FormulaContent(String formula, Expression expression) {
+        this.formula = formula;
+        this.expression = expression;
+        this.parseError = null;
     }
 
-
-    */
+    /**
+     * Evaluates the compiled formula and updates the cached value.
+     *
+     * @param cells The cells of the spreadsheet, keyed by coordinate.
+     * @throws Exception If the formula is invalid or cannot be evaluated.
+     */
     public void evaluate(Map<String, Cell> cells) throws Exception {
-        if (!formula.startsWith("=")) {
-            throw new Exception("Invalid formula: " + formula);
-        }
-
-        String expression = formula.substring(1).replace(" ", "");
-        double result = evaluateExpression(expression, cells);
-        cachedValue = result;
-        isEvaluated = true;
-    }
-
-    // Helper method to evaluate expressions with basic operators (+, -, *, /, %)
-    private double evaluateExpression(String expression, Map<String, Cell> cells) throws Exception {
-
-
-        return parseAndEvaluate(expression, cells);
+        evaluate(new MapCellValues(cells));
     }
 
-    // Function to parse and evaluate the expression with operator precedence
-    // Function to parse and evaluate the expression with operator precedence and functions
-    private double parseAndEvaluate(String expression, Map<String, Cell> cells) throws Exception {
-        Stack<Double> values = new Stack<>();
-        Stack<Character> operators = new Stack<>();
-        int i = 0;
-
-        while (i < expression.length()) {
-            char ch = expression.charAt(i);
-
-            // Skip spaces
-            if (ch == ' ') {
-                i++;
-                continue;
-            }
-
-            // Handle numbers, cell references, and functions
-            if (Character.isDigit(ch) || Character.isLetter(ch)) {
-                StringBuilder sb = new StringBuilder();
-
-                // Extract the token (number, cell reference, or function argument)
-                while (i < expression.length() && (Character.isDigit(expression.charAt(i)) ||
-                        expression.charAt(i) == '.' ||
-                        Character.isLetter(expression.charAt(i)) ||
-                        expression.charAt(i) == ':' ||  // For ranges (e.g., A1:B2)
-                        expression.charAt(i) == ',' || // For function arguments
-                        expression.charAt(i) == '(' || // Handle opening parentheses for functions
-                        expression.charAt(i) == ')')) { // Handle closing parentheses for functions
-                    sb.append(expression.charAt(i));
-                    i++;
-                }
-
-                String token = sb.toString();
-
-               //  System.out.println("Token: " + token);
-
-                // Check for functions (SUMA, MIN, MAX, PROMEDIO)
-                if (token.startsWith("SUMA(") || token.startsWith("MIN(") ||
-                        token.startsWith("MAX(") || token.startsWith("PROMEDIO(")) {
-
-                    // System.out.println("Detected function: " + token);
-                    values.push(evaluateFunction(token, cells));
-                } else {
-                    // Handle cell reference or number
-                    double value;
-                    if (cells.containsKey(token)) {
-                        value = cells.get(token).getValueAsNumber();
-                    } else {
-                        try {
-                            value = Double.parseDouble(token);  // Parse as number
-                        } catch (NumberFormatException e) {
-                            throw new Exception("Invalid token: " + token);  // Handle invalid tokens
-                        }
-                    }
-                    values.push(value);
-                }
-
-                continue;
-            }
-
-            // Handle operators
-            if (ch == '+' || ch == '-' || ch == '*' || ch == '/' || ch == '%') {
-                // Apply operator precedence
-                while (!operators.isEmpty() && hasPrecedence(ch, operators.peek())) {
-                    values.push(applyOperation(operators.pop(), values.pop(), values.pop()));
-                }
-                operators.push(ch);  // Push the current operator
-                i++;  // Move past the operator
-                continue;
-            }
-
-            // Handle parentheses (for grouping expressions)
-            if (ch == '(') {
-                operators.push(ch);  // Push the opening parenthesis
-                i++;
-                continue;
-            } else if (ch == ')') {
-                // Apply operators until matching '(' is found
-                while (!operators.isEmpty() && operators.peek() != '(') {
-                    values.push(applyOperation(operators.pop(), values.pop(), values.pop()));
-                }
-                operators.pop();  // Pop the '('
-                i++;
-                continue;
-            }
-
-            i++;
-        }
-
-        // Apply remaining operations
-        while (!operators.isEmpty()) {
-            values.push(applyOperation(operators.pop(), values.pop(), values.pop()));
-        }
-
-        return values.pop();
-    }
-
-    // Evaluate aggregate functions: SUMA, MIN, MAX, PROMEDIO
-    private double evaluateFunction(String token, Map<String, Cell> cells) throws Exception {
-        if (!token.endsWith(")")) {
-            throw new Exception("Invalid function syntax: " + token);
-        }
-
-        int start = token.indexOf('(') + 1;
-        int end = token.lastIndexOf(')');
-        String arguments = token.substring(start, end);
-
-        List<Double> values = getValuesFromArguments(arguments, cells);
-     //   System.out.println("Values for function " + token + ": " + values);
-
-        if (token.startsWith("SUMA")) {
-          //  System.out.println("come to suma");
-            return values.stream().mapToDouble(Double::doubleValue).sum();
-        } else if (token.startsWith("MIN")) {
-            return values.stream().mapToDouble(Double::doubleValue).min().orElseThrow(() -> new Exception("No values for MIN"));
-        } else if (token.startsWith("MAX")) {
-            return values.stream().mapToDouble(Double::doubleValue).max().orElseThrow(() -> new Exception("No values for MAX"));
-        } else if (token.startsWith("PROMEDIO")) {
-            return values.stream().mapToDouble(Double::doubleValue).average().orElseThrow(() -> new Exception("No values for PROMEDIO"));
+    /**
+     * Evaluates the formula and updates the cached value, running the compiled
+     * form of the formula once it has been evaluated often enough.
+     *
+     * @param values The values of the cells of the spreadsheet.
+     * @throws Exception If the formula is invalid or cannot be evaluated.
+     */
+    public void evaluate(CellValues values) throws Exception {
+        // A failed evaluation is not retried until the inputs change again
+        stale = false;
+        if (expression == null) {
+            throw new Exception(parseError);
         }
 
-        throw new Exception("Unknown function: " + token);
+        cachedValue = FormulaCompiler.evaluate(expression, tier, values);
+        isEvaluated = true;
     }
 
-    // Helper to get values from function arguments
-    private List<Double> getValuesFromArguments(String arguments, Map<String, Cell> cells) throws Exception {
-        List<Double> values = new ArrayList<>();
-        String[] parts = arguments.split(",");
-
-        for (String part : parts) {
-            part = part.trim();
-            if (cells.containsKey(part)) {
-                values.add(cells.get(part).getValueAsNumber());
-            } else if (part.contains(":")) {
-                // Handle ranges (e.g., A1:B2)
-                values.addAll(getValuesFromRange(part, cells));
-            } else {
-                values.add(Double.parseDouble(part));
-            }
-        }
-        return values;
+    /**
+     * Sets the cached value to one computed earlier (e.g., read from a snapshot), so the
+     * formula does not need to be evaluated again.
+     *
+     * @param value The value of the formula.
+     */
+    public void restore(double value) {
+        cachedValue = value;
+        isEvaluated = true;
+        stale = false;
     }
 
-    // Helper to get values from a range (e.g., A1:B2)
-    private List<Double> getValuesFromRange(String range, Map<String, Cell> cells) throws Exception {
-        List<Double> values = new ArrayList<>();
-
-        // First, check if the range is a simple comma-separated list of numbers
-        if (range.contains(",")) {
-            // Split by commas and treat each as an individual number
-            String[] numStrings = range.split(",");
-            for (String numStr : numStrings) {
-                values.add(Double.parseDouble(numStr.trim()));  // Parse each number
-            }
-            return values;
-        }
-
-        // If the range has a colon ":", it refers to a range of cells
-        if (range.contains(":")) {
-            String[] bounds = range.split(":");
-
-            if (bounds.length != 2) {
-                throw new Exception("Invalid range syntax: " + range);
-            }
-
-            String start = bounds[0].trim();
-            String end = bounds[1].trim();
-
-            // For the range of cells, we need to figure out the coordinates
-            int startRow = getRowFromCell(start);
-            int startCol = getColFromCell(start);
-            int endRow = getRowFromCell(end);
-            int endCol = getColFromCell(end);
-
-            // Iterate through the range of cells and collect values
-            for (String cellRef : cells.keySet()) {
-                int cellRow = getRowFromCell(cellRef);
-                int cellCol = getColFromCell(cellRef);
-
-                // Check if the cell is within the bounds of the range
-                if (cellRow >= startRow && cellRow <= endRow && cellCol >= startCol && cellCol <= endCol) {
-                    values.add(cells.get(cellRef).getValueAsNumber());
-                }
-            }
-            return values;
-        }
-
-        // If it's not a comma-separated list or a range, it's an individual cell reference
-        // This case is treated as a degenerate range (start and end are the same)
-        values.add(cells.get(range).getValueAsNumber());
-        return values;
+    /**
+     * @return true if the formula holds a computed value.
+     */
+    public boolean isEvaluated() {
+        return isEvaluated;
     }
 
-    // Helper method to extract row from cell reference (e.g., A1 -> 1)
-    private int getRowFromCell(String cellRef) {
-        StringBuilder rowBuilder = new StringBuilder();
-        for (char ch : cellRef.toCharArray()) {
-            if (Character.isDigit(ch)) {
-                rowBuilder.append(ch);
-            }
-        }
-        return Integer.parseInt(rowBuilder.toString());
+    /**
+     * Binds the formula to the cell holding it, so it can be evaluated on read while stale.
+     */
+    void bind(Resolver resolver, long address) {
+        this.resolver = resolver;
+        this.address = address;
     }
 
-    // Helper method to extract column from cell reference (e.g., A1 -> A)
-    private int getColFromCell(String cellRef) {
-        StringBuilder colBuilder = new StringBuilder();
-        for (char ch : cellRef.toCharArray()) {
-            if (Character.isLetter(ch)) {
-                colBuilder.append(ch);
-            }
-        }
-
-        // Convert the column letters to a number (e.g., A -> 1, B -> 2)
-        int colNum = 0;
-        for (char ch : colBuilder.toString().toUpperCase().toCharArray()) {
-            colNum = colNum * 26 + (ch - 'A' + 1);
-        }
-        return colNum;
+    /**
+     * Marks the formula as needing evaluation before its value is next read.
+     */
+    void invalidate() {
+        stale = true;
     }
 
-    // Dummy method to check if a cell reference is within a range (needs proper implementation)
-    private boolean isInRange(String cellRef, String start, String end) {
-        // Implement actual logic to determine if cellRef is within the start and end bounds
-        return cellRef.compareTo(start) >= 0 && cellRef.compareTo(end) <= 0;
+    /**
+     * @return true if the inputs changed since the formula was last evaluated.
+     */
+    public boolean isStale() {
+        return stale;
     }
-    // Check operator precedence
-    private boolean hasPrecedence(char op1, char op2) {
-
 
-        if ((op1 == '*' || op1 == '/' || op1 == '%') && (op2 == '+' || op2 == '-')) {
-            return false;
+    /**
+     * Reports the cells and ranges referenced by this formula to the given collector.
+     *
+     * @param references The collector receiving the references.
+     */
+    public void collectReferences(ReferenceCollector references) {
+        if (expression != null) {
+            expression.collectReferences(references);
         }
-        return true;
     }
 
-    // Apply an operation to two operands
-    private double applyOperation(char operator, double b, double a) throws Exception {
-        switch (operator) {
-            case '+': return a + b;
-            case '-': return a - b;
-            case '*': return a * b;
-            case '/':
-                if (b == 0) throw new Exception("Division by zero");
-                return a / b;
-            case '%':
-                if (b == 0) throw new Exception("Division by zero");
-                return a % b;
-            default: throw new Exception("Invalid operator: " + operator);
-        }
+    /**
+     * @return true if the formula was compiled without syntax errors.
+     */
+    public boolean isValid() {
+        return expression != null;
     }
 
-
     /**
-     * Replaces aggregate function calls in the expression with their computed values.
-     *
-     * @param expression The original expression containing function calls.
-     * @param functionEvaluator The FunctionEvaluator instance to evaluate functions.
-     * @return The expression with function calls replaced by their computed values.
-     * @throws Exception If there's an error evaluating the functions.
+     * @return The syntax error found while compiling the formula, or null if it is valid.
      */
-    private String replaceFunctionsWithValues(String expression, FunctionEvaluator functionEvaluator) throws Exception {
-        // Regex to match aggregate function calls (e.g., SUMA(A1:B3;C1;3))
-        Pattern pattern = Pattern.compile("(SUMA|MIN|MAX|PROMEDIO)\\(([^()]+)\\)");
-        Matcher matcher = pattern.matcher(expression);
-
-        // Replace each function call with its computed value
-        while (matcher.find()) {
-            String functionCall = matcher.group(0);
-            String result = String.valueOf(functionEvaluator.evaluateFunction(functionCall));
-            expression = expression.replace(functionCall, result);
-        }
-
-        return expression;
+    public String getParseError() {
+        return parseError;
     }
 
     /**
-     * Evaluates a basic arithmetic expression (supports +, -, *, /).
-     *
-     * @param expression The arithmetic expression to evaluate.
-     * @param cells The map of cells to get values from.
-     * @return The computed result of the expression.
-     * @throws Exception If there's an error during evaluation.
+     * @return true if the formula is running as compiled bytecode.
      */
-    private double evaluateArithmeticExpression(String expression, Map<String, Cell> cells) throws Exception {
-        // Replace cell references with their numeric values
-        Pattern cellPattern = Pattern.compile("[A-Z]+\\d+");
-        Matcher matcher = cellPattern.matcher(expression);
-
-        while (matcher.find()) {
-            String cellRef = matcher.group();
-            Cell cell = cells.get(cellRef);
-            double cellValue = (cell != null) ? cell.getValueAsNumber() : 0.0;
-            expression = expression.replace(cellRef, String.valueOf(cellValue));
-        }
-
-        // Evaluate the arithmetic expression using JavaScript's built-in engine for simplicity
-        ScriptEngineManager manager = new ScriptEngineManager();
-        ScriptEngine engine = manager.getEngineByName("JavaScript");
-
-        try {
-            return ((Number) engine.eval(expression)).doubleValue();
-        } catch (Exception e) {
-            throw new Exception("Error evaluating expression: " + expression);
-        }
+    public boolean isCompiled() {
+        return tier.isCompiled();
     }
 
+    /**
+     * @return The compiled formula, or null if it has syntax errors.
+     */
+    public Expression getExpression() {
+        return expression;
+    }
 
     @Override
     public String getValueAsString() {
+        resolveIfStale();
         return isEvaluated ? String.valueOf(cachedValue) : "Uncomputed";
     }
 
     @Override
     public double getValueAsNumber() throws Exception {
+        resolveIfStale();
         if (!isEvaluated) {
             throw new Exception("Formula not evaluated yet: " + formula);
         }
         return cachedValue;
     }
 
+    private void resolveIfStale() {
+        if (stale && resolver != null) {
+            resolver.resolve(address);
+        }
+    }
+
     @Override
     public String toString() {
         return formula;
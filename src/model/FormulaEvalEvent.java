@@ -0,0 +1,28 @@
+package model;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Threshold;
+
+/**
+ * Flight Recorder event for the evaluation of one formula. Only evaluations longer than the
+ * threshold (1 ms unless the recording sets another) are recorded, since a recalculation may
+ * evaluate millions of formulas.
+ */
+@Name("spreadsheet.FormulaEval")
+@Label("Formula Evaluation")
+@Category("Spreadsheet")
+@Description("Evaluation of a formula")
+@Threshold("1 ms")
+final class FormulaEvalEvent extends jdk.jfr.Event {
+    @Label("Cell")
+    String cell;
+
+    @Label("Formula")
+    String formula;
+
+    @Label("Failed")
+    boolean failed;
+}
@@ -0,0 +1,204 @@
+package model;
+
+import model.formula.ReferenceCollector;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Accumulates the cost of every formula evaluated by a spreadsheet, per cell, to find the
+ * formulas that dominate recalculation time (see {@link Spreadsheet#setProfiler(FormulaProfiler)}).
+ * <p>
+ * For each cell it records the number of evaluations, their total and maximum time, and the
+ * number of cells the formula reads through its references and ranges. Evaluations may be
+ * recorded from several threads at once by parallel recalculation.
+ */
+public class FormulaProfiler {
+    private final ConcurrentHashMap<Long, CellProfile> profiles = new ConcurrentHashMap<>();
+
+    /**
+     * Records one evaluation of the formula of a cell.
+     *
+     * @param address The packed address of the cell.
+     * @param formula The formula evaluated.
+     * @param nanos   The time the evaluation took.
+     */
+    void record(long address, FormulaContent formula, long nanos) {
+        CellProfile profile = profiles.computeIfAbsent(address, CellProfile::new);
+        synchronized (profile) {
+            if (profile.formula != formula) {
+                // The cell holds another formula now; its cost so far still counts
+                profile.formula = formula;
+                profile.cellsRead = cellsRead(formula);
+            }
+            profile.evaluations++;
+            profile.totalNanos += nanos;
+            profile.maxNanos = Math.max(profile.maxNanos, nanos);
+        }
+    }
+
+    /**
+     * Forgets the profile of a cell whose formula was replaced by a value or emptied.
+     *
+     * @param address The packed address of the cell.
+     */
+    void remove(long address) {
+        profiles.remove(address);
+    }
+
+    /**
+     * Returns the cells whose formulas took the most evaluation time in total.
+     *
+     * @param count The maximum number of cells to return.
+     * @return The profiles of the cells, from the most expensive.
+     */
+    public List<CellProfile> getHottest(int count) {
+        List<CellProfile> hottest = new ArrayList<>();
+        for (CellProfile profile : profiles.values()) {
+            synchronized (profile) {
+                hottest.add(profile.copy());
+            }
+        }
+        hottest.sort((a, b) -> Long.compare(b.totalNanos, a.totalNanos));
+        return hottest.subList(0, Math.min(count, hottest.size()));
+    }
+
+    /**
+     * @return The profile of a cell, or null if no formula of the cell was evaluated.
+     */
+    public CellProfile getProfile(long address) {
+        CellProfile profile = profiles.get(address);
+        if (profile == null) {
+            return null;
+        }
+        synchronized (profile) {
+            return profile.copy();
+        }
+    }
+
+    /**
+     * Forgets everything recorded so far.
+     */
+    public void reset() {
+        profiles.clear();
+    }
+
+    /**
+     * Formats the hottest cells as a table, with the critical path of the spreadsheet: the
+     * longest chain of formulas each reading the one before it, which bounds how far a
+     * recalculation can be split into parallel levels.
+     *
+     * @param spreadsheet The spreadsheet profiled.
+     * @param count       The maximum number of cells to list.
+     * @return The report, one line per cell.
+     */
+    public String report(Spreadsheet spreadsheet, int count) {
+        StringBuilder report = new StringBuilder(String.format("%-8s %10s %12s %10s %10s %10s  %s%n",
+                "Cell", "Evals", "Total ms", "Mean us", "Max us", "Cells read", "Formula"));
+        for (CellProfile profile : getHottest(count)) {
+            report.append(String.format("%-8s %10d %12.3f %10.1f %10.1f %10d  %s%n",
+                    CellAddress.toString(profile.address), profile.evaluations, profile.totalNanos / 1e6,
+                    profile.getMeanNanos() / 1e3, profile.maxNanos / 1e3, profile.cellsRead,
+                    profile.formula.getFormula()));
+        }
+
+        long[] path = spreadsheet.getCriticalPath();
+        if (path.length == 0) {
+            report.append("Critical path: no formulas");
+            return report.toString();
+        }
+        double pathNanos = 0;
+        for (long address : path) {
+            CellProfile profile = getProfile(address);
+            if (profile != null) {
+                pathNanos += profile.getMeanNanos();
+            }
+        }
+        report.append(String.format("Critical path: %d formulas, %s to %s, %.1f us per evaluation of all of them",
+                path.length, CellAddress.toString(path[0]), CellAddress.toString(path[path.length - 1]),
+                pathNanos / 1e3));
+        return report.toString();
+    }
+
+    // The single cells plus the cells of the ranges of a formula, empty or not
+    private static long cellsRead(FormulaContent formula) {
+        long[] cells = {0};
+        formula.collectReferences(new ReferenceCollector() {
+            @Override
+            public void cell(long ref) {
+                cells[0]++;
+            }
+
+            @Override
+            public void range(int startRow, int startColumn, int endRow, int endColumn) {
+                cells[0] += (long) (endRow - startRow + 1) * (endColumn - startColumn + 1);
+            }
+        });
+        return cells[0];
+    }
+
+    /**
+     * The cost of the formula of one cell.
+     */
+    public static class CellProfile {
+        private final long address;
+        private FormulaContent formula;     // The formula last evaluated
+        private long cellsRead;
+        private long evaluations;
+        private long totalNanos;
+        private long maxNanos;
+
+        CellProfile(long address) {
+            this.address = address;
+        }
+
+        private CellProfile copy() {
+            CellProfile copy = new CellProfile(address);
+            copy.formula = formula;
+            copy.cellsRead = cellsRead;
+            copy.evaluations = evaluations;
+            copy.totalNanos = totalNanos;
+            copy.maxNanos = maxNanos;
+            return copy;
+        }
+
+        /**
+         * @return The packed address of the cell.
+         */
+        public long getAddress() {
+            return address;
+        }
+
+        /**
+         * @return The formula last evaluated in the cell.
+         */
+        public FormulaContent getFormula() {
+            return formula;
+        }
+
+        /**
+         * @return The number of cells the formula reads: its single references plus the
+         * cells of its ranges, empty or not.
+         */
+        public long getCellsRead() {
+            return cellsRead;
+        }
+
+        public long getEvaluations() {
+            return evaluations;
+        }
+
+        public long getTotalNanos() {
+            return totalNanos;
+        }
+
+        public long getMaxNanos() {
+            return maxNanos;
+        }
+
+        public double getMeanNanos() {
+            return evaluations == 0 ? 0 : (double) totalNanos / evaluations;
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package model;
+
+import java.util.Arrays;
+import java.util.function.DoubleConsumer;
+
+/**
+ * Default storage engine: one {@link Cell} per non-empty cell in a {@link CellMap}.
+ * Suited to sparse sheets and to callers that keep references to cells.
+ */
+public class HashCellStorage implements CellStorage {
+    private final CellMap<Cell> cells = new CellMap<>();
+
+    @Override
+    public Cell getCell(long address) {
+        return cells.get(address);
+    }
+
+    @Override
+    public Content getContent(long address) {
+        Cell cell = cells.get(address);
+        return cell != null ? cell.getContent() : null;
+    }
+
+    @Override
+    public void setContent(long address, Content content) {
+        if (content == null) {
+            cells.remove(address);
+            return;
+        }
+
+        Cell cell = cells.get(address);
+        if (cell == null) {
+            cell = new Cell(address);
+            cells.put(address, cell);
+        }
+        cell.setContent(content);
+    }
+
+    @Override
+    public double getNumber(long address) throws Exception {
+        Cell cell = cells.get(address);
+        if (cell == null) {
+            throw new Exception("Invalid token: " + CellAddress.toString(address));
+        }
+        return cell.getValueAsNumber();
+    }
+
+    @Override
+    public void forEachInRange(int startRow, int startColumn, int endRow, int endColumn,
+                               DoubleConsumer consumer) throws Exception {
+        long area = (long) (endRow - startRow + 1) * (endColumn - startColumn + 1);
+
+        if (area <= cells.size()) {
+            // Small range: look up each address of the rectangle
+            for (int row = startRow; row <= endRow; row++) {
+                for (int col = startColumn; col <= endColumn; col++) {
+                    Cell cell = cells.get(CellAddress.of(row, col));
+                    if (cell != null) {
+                        consumer.accept(cell.getValueAsNumber());
+                    }
+                }
+            }
+            return;
+        }
+
+        // Large range over a small sheet: scan the existing cells instead, then visit them in
+        // row-major order, as packed addresses sort, so sums add up in the same order as above
+        long[] addresses = new long[cells.size()];
+        int count = 0;
+        for (int slot = 0; slot < cells.capacity(); slot++) {
+            long address = cells.keyAt(slot);
+            if (address == 0L) {
+                continue;
+            }
+            int row = CellAddress.row(address);
+            int col = CellAddress.column(address);
+            if (row >= startRow && row <= endRow && col >= startColumn && col <= endColumn) {
+                addresses[count++] = address;
+            }
+        }
+        Arrays.sort(addresses, 0, count);
+        for (int i = 0; i < count; i++) {
+            consumer.accept(cells.get(addresses[i]).getValueAsNumber());
+        }
+    }
+
+    @Override
+    public void forEachCell(Visitor visitor) {
+        // Packed addresses sort in row-major order
+        long[] addresses = new long[cells.size()];
+        int count = 0;
+        for (int slot = 0; slot < cells.capacity(); slot++) {
+            long address = cells.keyAt(slot);
+            if (address != 0L) {
+                addresses[count++] = address;
+            }
+        }
+        Arrays.sort(addresses, 0, count);
+
+        for (int i = 0; i < count; i++) {
+            long address = addresses[i];
+            Content content = cells.get(address).getContent();
+            if (content instanceof NumericContent) {
+                visitor.visitNumber(CellAddress.row(address), CellAddress.column(address),
+                        ((NumericContent) content).getValueAsNumber());
+            } else {
+                visitor.visitContent(CellAddress.row(address), CellAddress.column(address), content);
+            }
+        }
+    }
+
+    @Override
+    public int size() {
+        return cells.size();
+    }
+
+    @Override
+    public int getMaxRow() {
+        int maxRow = 0;
+        for (int slot = 0; slot < cells.capacity(); slot++) {
+            long address = cells.keyAt(slot);
+            if (address != 0L) {
+                maxRow = Math.max(maxRow, CellAddress.row(address));
+            }
+        }
+        return maxRow;
+    }
+
+    @Override
+    public int getMaxColumn() {
+        int maxColumn = -1;
+        for (int slot = 0; slot < cells.capacity(); slot++) {
+            long address = cells.keyAt(slot);
+            if (address != 0L) {
+                maxColumn = Math.max(maxColumn, CellAddress.column(address));
+            }
+        }
+        return maxColumn;
+    }
+}
@@ -4,7 +4,7 @@ package model;
  * Represents numerical content in a cell.
  */
 public class NumericContent implements Content {
-    private double value;
+    private final double value;
 
     // Constructor
     public NumericContent(double value) {
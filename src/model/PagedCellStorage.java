@@ -0,0 +1,420 @@
+package model;
+
+import model.formula.ReferenceCollector;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.DoubleConsumer;
+
+/**
+ * Storage engine for sheets larger than memory, reading their rows from a file on demand.
+ * <p>
+ * The rows are split into pages of {@link Source#getRowsPerPage()} rows. A page is read the
+ * first time one of its cells is asked for, and kept in a {@link TiledCellStorage} until the
+ * estimated size of the resident pages exceeds the memory budget, at which point the least
+ * recently used pages are dropped; they are read again on the next access.
+ * <p>
+ * Cells written through {@link #setContent(long, Content)} are pinned: they live in a separate
+ * storage that is never evicted and takes precedence over the file. Setting a formula also pins
+ * the cells it references, so formulas and their single-cell precedents stay in memory; ranges
+ * are read page by page as they are visited. Access is synchronized so parallel recalculation
+ * workers can fault pages in.
+ */
+public class PagedCellStorage implements CellStorage {
+
+    /**
+     * The file behind a paged storage.
+     */
+    public interface Source {
+
+        /**
+         * @return The number of rows in each page.
+         */
+        int getRowsPerPage();
+
+        /**
+         * @return The number of pages; page p holds rows {@code p * rowsPerPage + 1} onwards.
+         */
+        int getPageCount();
+
+        /**
+         * @return The number of non-empty cells in the file.
+         */
+        int getCellCount();
+
+        /**
+         * @return The highest row number holding a cell, or 0 if the file is empty.
+         */
+        int getMaxRow();
+
+        /**
+         * @return The highest column index holding a cell, or -1 if the file is empty.
+         */
+        int getMaxColumn();
+
+        /**
+         * Reads the non-empty cells of a page, with their row numbers in the sheet.
+         *
+         * @throws IOException If an I/O error occurs.
+         */
+        void readPage(int page, Visitor visitor) throws IOException;
+    }
+
+    // Estimated memory of a page: its tiles, which hold the numbers, and its content objects
+    private static final long TILE_BYTES = 9L * TiledCellStorage.TILE_SIZE * TiledCellStorage.TILE_SIZE;
+    private static final long CONTENT_BYTES = 64;
+
+    private final Source source;
+    private final long memoryBudget;
+    private final int rowsPerPage;
+    private final Map<Integer, Page> pages = new LinkedHashMap<>(16, 0.75f, true);   // In LRU order
+    private long residentBytes;
+    private final AddressSet pinned = new AddressSet();
+    private final HashCellStorage pinnedCells = new HashCellStorage();
+    private int pinnedFromFile;         // Pinned cells that were non-empty in the file
+
+    /**
+     * Creates a storage reading its cells from the given source.
+     *
+     * @param source       The file holding the cells.
+     * @param memoryBudget The estimated bytes the resident pages may take; at least one page is kept.
+     */
+    public PagedCellStorage(Source source, long memoryBudget) {
+        this.source = source;
+        this.memoryBudget = memoryBudget;
+        this.rowsPerPage = source.getRowsPerPage();
+    }
+
+    @Override
+    public synchronized Cell getCell(long address) {
+        if (pinned.contains(address)) {
+            return pinnedCells.getCell(address);
+        }
+        Content content = getContent(address);
+        if (content == null) {
+            return null;
+        }
+        Cell cell = new Cell(address);
+        cell.setContent(content);
+        return cell;
+    }
+
+    @Override
+    public synchronized Content getContent(long address) {
+        return storageOf(address).getContent(address);
+    }
+
+    @Override
+    public synchronized void setContent(long address, Content content) {
+        pin(address);
+        pinnedCells.setContent(address, content);
+        if (content instanceof FormulaContent) {
+            ((FormulaContent) content).collectReferences(new ReferenceCollector() {
+                @Override
+                public void cell(long ref) {
+                    pin(ref);
+                }
+
+                @Override
+                public void range(int startRow, int startColumn, int endRow, int endColumn) {
+                    // Ranges may span the whole file, so they are read page by page instead
+                }
+            });
+        }
+    }
+
+    @Override
+    public synchronized double getNumber(long address) throws Exception {
+        return storageOf(address).getNumber(address);
+    }
+
+    /**
+     * Visits the range page by page, with the pinned cells merged in at their place in
+     * row-major order.
+     */
+    @Override
+    public synchronized void forEachInRange(int startRow, int startColumn, int endRow, int endColumn,
+                                            DoubleConsumer consumer) throws Exception {
+        long[] pinnedInRange = pinnedIn(startRow, startColumn, endRow, endColumn);
+        int next = 0;
+        int row = startRow;
+        while (next < pinnedInRange.length) {
+            // The rows before the next pinned cell come from the pages in one go, then its row
+            // from the pages and the pinned cells in column order
+            int pinnedRow = CellAddress.row(pinnedInRange[next]);
+            forEachInPages(row, startColumn, pinnedRow - 1, endColumn, consumer);
+            int column = startColumn;
+            while (next < pinnedInRange.length && CellAddress.row(pinnedInRange[next]) == pinnedRow) {
+                int pinnedColumn = CellAddress.column(pinnedInRange[next]);
+                forEachInPages(pinnedRow, column, pinnedRow, pinnedColumn - 1, consumer);
+                consumer.accept(pinnedCells.getNumber(pinnedInRange[next]));
+                column = pinnedColumn + 1;
+                next++;
+            }
+            forEachInPages(pinnedRow, column, pinnedRow, endColumn, consumer);
+            row = pinnedRow + 1;
+        }
+        forEachInPages(row, startColumn, endRow, endColumn, consumer);
+    }
+
+    /**
+     * Copies the column page by page, reading only the pages of the rows asked for.
+     */
+    @Override
+    public synchronized void readColumn(int column, int startRow, int endRow, double[] values, byte[] states, int offset) {
+        int lastPage = Math.min(pageOf(endRow), source.getPageCount() - 1);
+        for (int page = pageOf(startRow); page <= lastPage; page++) {
+            int firstRow = Math.max(startRow, page * rowsPerPage + 1);
+            int lastRow = Math.min(endRow, (page + 1) * rowsPerPage);
+            load(page).cells.readColumn(column, firstRow, lastRow, values, states, offset + firstRow - startRow);
+        }
+        // Pinned cells are not in their pages, so they only fill in empty rows
+        pinnedCells.readColumn(column, startRow, endRow, values, states, offset);
+    }
+
+    /**
+     * Visits the cells page by page, reading the pages that are not resident, with the pinned
+     * cells merged in at their place in row-major order.
+     */
+    @Override
+    public synchronized void forEachCell(Visitor visitor) {
+        long[][] addresses = {new long[16]};
+        Content[][] contents = {new Content[16]};
+        int[] count = {0};
+        pinnedCells.forEachCell(new Visitor() {
+            @Override
+            public void visitNumber(int row, int column, double value) {
+                visitContent(row, column, new NumericContent(value));
+            }
+
+            @Override
+            public void visitContent(int row, int column, Content content) {
+                if (count[0] == addresses[0].length) {
+                    addresses[0] = Arrays.copyOf(addresses[0], count[0] * 2);
+                    contents[0] = Arrays.copyOf(contents[0], count[0] * 2);
+                }
+                addresses[0][count[0]] = CellAddress.of(row, column);
+                contents[0][count[0]] = content;
+                count[0]++;
+            }
+        });
+
+        // Visits the pinned cells that come before each cell of the pages
+        int[] next = {0};
+        Visitor merged = new Visitor() {
+            @Override
+            public void visitNumber(int row, int column, double value) {
+                flushPinned(CellAddress.of(row, column));
+                visitor.visitNumber(row, column, value);
+            }
+
+            @Override
+            public void visitContent(int row, int column, Content content) {
+                flushPinned(CellAddress.of(row, column));
+                visitor.visitContent(row, column, content);
+            }
+
+            private void flushPinned(long before) {
+                while (next[0] < count[0] && addresses[0][next[0]] < before) {
+                    visitPinned(visitor, addresses[0][next[0]], contents[0][next[0]]);
+                    next[0]++;
+                }
+            }
+        };
+        for (int page = 0; page < source.getPageCount(); page++) {
+            load(page).cells.forEachCell(merged);
+        }
+        while (next[0] < count[0]) {
+            visitPinned(visitor, addresses[0][next[0]], contents[0][next[0]]);
+            next[0]++;
+        }
+    }
+
+    // Numbers are visited as numbers, as the pages and the other engines visit them
+    private static void visitPinned(Visitor visitor, long address, Content content) {
+        int row = CellAddress.row(address);
+        int column = CellAddress.column(address);
+        if (content instanceof NumericContent) {
+            visitor.visitNumber(row, column, ((NumericContent) content).getValueAsNumber());
+        } else {
+            visitor.visitContent(row, column, content);
+        }
+    }
+
+    @Override
+    public synchronized int size() {
+        return source.getCellCount() - pinnedFromFile + pinnedCells.size();
+    }
+
+    /**
+     * @return The highest row number of the file or of a pinned cell; cells of the file emptied
+     * since it was opened still count.
+     */
+    @Override
+    public synchronized int getMaxRow() {
+        return Math.max(source.getMaxRow(), pinnedCells.getMaxRow());
+    }
+
+    /**
+     * @return The highest column index of the file or of a pinned cell; cells of the file emptied
+     * since it was opened still count.
+     */
+    @Override
+    public synchronized int getMaxColumn() {
+        return Math.max(source.getMaxColumn(), pinnedCells.getMaxColumn());
+    }
+
+    /**
+     * Keeps a cell in memory from now on, moving its content out of its page.
+     *
+     * @param address The packed address of the cell.
+     */
+    public synchronized void pin(long address) {
+        if (pinned.contains(address)) {
+            return;
+        }
+        // The page is read before the cell is marked, or reading it would skip the cell
+        int page = pageOf(CellAddress.row(address));
+        Page resident = page < source.getPageCount() ? load(page) : null;
+        pinned.add(address);
+        if (resident != null) {
+            Content content = resident.cells.getContent(address);
+            if (content != null) {
+                resident.cells.setContent(address, null);
+                pinnedCells.setContent(address, content);
+                pinnedFromFile++;
+            }
+        }
+    }
+
+    /**
+     * @return The number of pages currently in memory.
+     */
+    public synchronized int getResidentPageCount() {
+        return pages.size();
+    }
+
+    /**
+     * @return The number of cells kept in memory regardless of the budget.
+     */
+    public synchronized int getPinnedCount() {
+        return pinned.size();
+    }
+
+    // The storage holding a cell: the pinned cells, or the cell's page read in if needed
+    private CellStorage storageOf(long address) {
+        int page = pageOf(CellAddress.row(address));
+        if (pinned.contains(address) || page >= source.getPageCount()) {
+            return pinnedCells;
+        }
+        return load(page).cells;
+    }
+
+    // Visits the cells of the pages in a range, pinned cells excluded
+    private void forEachInPages(int startRow, int startColumn, int endRow, int endColumn,
+                                DoubleConsumer consumer) throws Exception {
+        if (endRow < startRow || endColumn < startColumn) {
+            return;
+        }
+        int lastPage = Math.min(pageOf(endRow), source.getPageCount() - 1);
+        for (int page = pageOf(startRow); page <= lastPage; page++) {
+            int firstRow = page * rowsPerPage + 1;
+            load(page).cells.forEachInRange(Math.max(startRow, firstRow), startColumn,
+                    Math.min(endRow, firstRow + rowsPerPage - 1), endColumn, consumer);
+        }
+    }
+
+    // The non-empty pinned cells of a range, in row-major order as packed addresses sort
+    private long[] pinnedIn(int startRow, int startColumn, int endRow, int endColumn) {
+        long[] addresses;
+        long area = (long) (endRow - startRow + 1) * (endColumn - startColumn + 1);
+        if (area <= pinned.size()) {
+            // Small range: every address of the rectangle
+            addresses = new long[(int) area];
+            int i = 0;
+            for (int row = startRow; row <= endRow; row++) {
+                for (int column = startColumn; column <= endColumn; column++) {
+                    addresses[i++] = CellAddress.of(row, column);
+                }
+            }
+        } else {
+            addresses = pinned.toArray();
+        }
+
+        int count = 0;
+        for (long address : addresses) {
+            int row = CellAddress.row(address);
+            int column = CellAddress.column(address);
+            if (row >= startRow && row <= endRow && column >= startColumn && column <= endColumn
+                    && pinnedCells.getContent(address) != null) {
+                addresses[count++] = address;
+            }
+        }
+        Arrays.sort(addresses, 0, count);
+        return Arrays.copyOf(addresses, count);
+    }
+
+    private int pageOf(int row) {
+        return (row - 1) / rowsPerPage;
+    }
+
+    // Returns a resident page, reading it and evicting the least recently used ones if needed
+    private Page load(int index) {
+        Page page = pages.get(index);
+        if (page != null) {
+            return page;
+        }
+
+        Page loaded = new Page();
+        AddressSet tiles = new AddressSet();
+        try {
+            source.readPage(index, new Visitor() {
+                @Override
+                public void visitNumber(int row, int column, double value) {
+                    visitContent(row, column, new NumericContent(value));
+                }
+
+                @Override
+                public void visitContent(int row, int column, Content content) {
+                    long address = CellAddress.of(row, column);
+                    if (pinned.contains(address)) {
+                        return;
+                    }
+                    loaded.cells.setContent(address, content);
+                    if (tiles.add(CellAddress.of((row - 1) / TiledCellStorage.TILE_SIZE + 1,
+                            column / TiledCellStorage.TILE_SIZE))) {
+                        loaded.bytes += TILE_BYTES;
+                    }
+                    if (content instanceof TextContent) {
+                        loaded.bytes += CONTENT_BYTES + 2L * content.getValueAsString().length();
+                    } else if (!(content instanceof NumericContent)) {
+                        loaded.bytes += CONTENT_BYTES;
+                    }
+                }
+            });
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        Iterator<Page> eldest = pages.values().iterator();
+        while (residentBytes + loaded.bytes > memoryBudget && eldest.hasNext()) {
+            residentBytes -= eldest.next().bytes;
+            eldest.remove();
+        }
+        pages.put(index, loaded);
+        residentBytes += loaded.bytes;
+        return loaded;
+    }
+
+    /**
+     * The cells of a resident page and their estimated memory.
+     */
+    private static final class Page {
+        final TiledCellStorage cells = new TiledCellStorage();
+        long bytes;
+    }
+}
@@ -0,0 +1,213 @@
+package model;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.LongConsumer;
+
+/**
+ * Spatial index of the ranges observed by formulas (e.g., the A1:A100000 in "=SUMA(A1:A100000)").
+ * <p>
+ * Each range is stored once, whatever its size, in an interval tree over rows: a treap
+ * ordered by first row where every node also records the largest last row of its subtree.
+ * Finding the formulas observing a cell visits only the subtrees whose rows can contain it,
+ * i.e. O(log n) plus the ranges overlapping the row, which are then filtered by column.
+ */
+public class RangeIndex {
+    private Node root;
+    private final CellMap<List<Node>> rangesByOwner = new CellMap<>();
+    private long sequence;
+    private int size;
+
+    /**
+     * Records that the formula at {@code owner} observes a rectangular range.
+     */
+    public void add(long owner, int startRow, int startColumn, int endRow, int endColumn) {
+        Node node = new Node(owner, startRow, startColumn, endRow, endColumn, sequence++);
+        root = insert(root, node);
+
+        List<Node> ranges = rangesByOwner.get(owner);
+        if (ranges == null) {
+            ranges = new ArrayList<>(1);
+            rangesByOwner.put(owner, ranges);
+        }
+        ranges.add(node);
+        size++;
+    }
+
+    /**
+     * Removes every range observed by the formula at {@code owner}.
+     */
+    public void removeOwner(long owner) {
+        List<Node> ranges = rangesByOwner.remove(owner);
+        if (ranges == null) {
+            return;
+        }
+        for (Node node : ranges) {
+            root = delete(root, node);
+            size--;
+        }
+    }
+
+    /**
+     * Passes the owner of every range containing the cell to the consumer; an owner
+     * observing the cell through several ranges is reported once per range.
+     */
+    public void forEachObserver(int row, int column, LongConsumer consumer) {
+        stab(root, row, column, consumer);
+    }
+
+    /**
+     * Passes every range observed by the formula at {@code owner} to the visitor.
+     */
+    public void forEachRange(long owner, RangeVisitor visitor) {
+        List<Node> ranges = rangesByOwner.get(owner);
+        if (ranges != null) {
+            for (Node node : ranges) {
+                visitor.visit(node.startRow, node.startColumn, node.endRow, node.endColumn);
+            }
+        }
+    }
+
+    /**
+     * @return The number of ranges in the index.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Receives the ranges visited by {@link #forEachRange(long, RangeVisitor)}.
+     */
+    public interface RangeVisitor {
+        void visit(int startRow, int startColumn, int endRow, int endColumn);
+    }
+
+    private static void stab(Node node, int row, int column, LongConsumer consumer) {
+        while (node != null && node.maxEndRow >= row) {
+            stab(node.left, row, column, consumer);
+            if (node.startRow > row) {
+                return; // Every range to the right starts below the row
+            }
+            if (node.endRow >= row && node.startColumn <= column && node.endColumn >= column) {
+                consumer.accept(node.owner);
+            }
+            node = node.right;
+        }
+    }
+
+    private static Node insert(Node node, Node inserted) {
+        if (node == null) {
+            return inserted;
+        }
+        if (inserted.compareTo(node) < 0) {
+            node.left = insert(node.left, inserted);
+            if (node.left.priority > node.priority) {
+                node = rotateRight(node);
+            }
+        } else {
+            node.right = insert(node.right, inserted);
+            if (node.right.priority > node.priority) {
+                node = rotateLeft(node);
+            }
+        }
+        node.update();
+        return node;
+    }
+
+    private static Node delete(Node node, Node deleted) {
+        if (node == null) {
+            return null;
+        }
+        if (node == deleted) {
+            return merge(node.left, node.right);
+        }
+        if (deleted.compareTo(node) < 0) {
+            node.left = delete(node.left, deleted);
+        } else {
+            node.right = delete(node.right, deleted);
+        }
+        node.update();
+        return node;
+    }
+
+    // Merges two treaps where every node of the left one sorts before the right one
+    private static Node merge(Node left, Node right) {
+        if (left == null) {
+            return right;
+        }
+        if (right == null) {
+            return left;
+        }
+        if (left.priority > right.priority) {
+            left.right = merge(left.right, right);
+            left.update();
+            return left;
+        }
+        right.left = merge(left, right.left);
+        right.update();
+        return right;
+    }
+
+    private static Node rotateRight(Node node) {
+        Node pivot = node.left;
+        node.left = pivot.right;
+        pivot.right = node;
+        node.update();
+        pivot.update();
+        return pivot;
+    }
+
+    private static Node rotateLeft(Node node) {
+        Node pivot = node.right;
+        node.right = pivot.left;
+        pivot.left = node;
+        node.update();
+        pivot.update();
+        return pivot;
+    }
+
+    /**
+     * A range in the treap, ordered by first row then insertion sequence.
+     */
+    private static final class Node {
+        final long owner;
+        final int startRow;
+        final int startColumn;
+        final int endRow;
+        final int endColumn;
+        final long sequence;
+        final int priority;
+        int maxEndRow;      // Largest endRow in this subtree
+        Node left;
+        Node right;
+
+        Node(long owner, int startRow, int startColumn, int endRow, int endColumn, long sequence) {
+            this.owner = owner;
+            this.startRow = startRow;
+            this.startColumn = startColumn;
+            this.endRow = endRow;
+            this.endColumn = endColumn;
+            this.sequence = sequence;
+            this.priority = Long.hashCode(sequence * 0x9E3779B97F4A7C15L);
+            this.maxEndRow = endRow;
+        }
+
+        int compareTo(Node other) {
+            if (startRow != other.startRow) {
+                return Integer.compare(startRow, other.startRow);
+            }
+            return Long.compare(sequence, other.sequence);
+        }
+
+        void update() {
+            int max = endRow;
+            if (left != null) {
+                max = Math.max(max, left.maxEndRow);
+            }
+            if (right != null) {
+                max = Math.max(max, right.maxEndRow);
+            }
+            maxEndRow = max;
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package model;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight Recorder event for a recalculation: an edit, or the commit of a batch.
+ */
+@Name("spreadsheet.Recalc")
+@Label("Recalculation")
+@Category("Spreadsheet")
+@Description("Recalculation of the cells edited by an edit or a batch and their dependents")
+final class RecalcEvent extends jdk.jfr.Event {
+    @Label("Edited Cells")
+    int edited;
+
+    @Label("Dirty Cells")
+    @Description("The edited cells and the cells depending on them")
+    int dirty;
+
+    @Label("Evaluated Formulas")
+    int evaluated;
+
+    @Label("Parallel")
+    boolean parallel;
+
+    @Label("Lazy")
+    @Description("Dirty formulas were only flagged, to be evaluated when read")
+    boolean lazy;
+}
@@ -1,19 +1,81 @@
 package model;
 
+import model.formula.Aggregate;
+import model.formula.CellValues;
+import model.formula.ReferenceCollector;
+
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.DoubleConsumer;
+import java.util.function.LongConsumer;
 
 /**
  * Represents a spreadsheet that contains cells identified by their coordinates.
  * Supports adding/modifying cells, recalculating values, and handling dependencies.
+ * <p>
+ * Cells are stored by packed address (see {@link CellAddress}) in a pluggable
+ * {@link CellStorage}; string coordinates are only parsed or built at the UI and file boundaries.
  */
-public class Spreadsheet {
-    private Map<String, Cell> cells;                 // Stores the cells by their coordinates (e.g., "A1", "B2")
-    private Map<String, Set<String>> dependencies;   // Maps a cell to the cells that depend on it
+public class Spreadsheet implements CellValues {
+    private final CellStorage cells;                    // Stores the cells by their packed address
+    private final DependencyGraph dependencies;         // Cells read by each formula, and the formulas reading each cell
+    private final RangeIndex rangeDependencies;         // Ranges observed by formulas, stored once each
+    private final ColumnAggregates columnAggregates;    // Per-column aggregates for tall ranges
+    private final TopologicalOrder order;               // Formulas ordered after the formulas they read
+    private final List<BitSet> formulaRows;             // Rows holding a formula, per column
+    private final AddressSet batchEdits;                // Cells edited in the open batch, recalculated at commit
+    private int batchDepth;                             // Number of nested open batches
+    private int lastDirtyCount;                         // Cells in the dirty set of the last edit
+    private int lastEvaluationCount;                    // Formulas evaluated by the last edit
+    private long totalEvaluationCount;                  // Formulas evaluated since creation
+    private boolean lazyEvaluation;                     // Formulas are evaluated when read rather than on edits
+    private final FormulaContent.Resolver resolver = this::evaluateOnDemand;
+    private ForkJoinPool parallelPool;                  // Pool for parallel recalculation, or null
+    private int parallelThreshold = 1024;               // Minimum dirty set size for parallel recalculation
+    private SpreadsheetMetrics metrics;                 // Collected metrics, or null when not collected
+    private FormulaProfiler profiler;                   // Per-cell evaluation costs, or null when not profiled
+
+    // Levels with fewer formulas than this are evaluated on the calling thread
+    private static final int PARALLEL_GRAIN = 256;
+
+    // Ranges with at least this many rows have their columns tracked by the column aggregates
+    private static final int AGGREGATE_MIN_ROWS = 64;
 
     // Constructor
     public Spreadsheet() {
-        this.cells = new HashMap<>();
-        this.dependencies = new HashMap<>();
+        this(new HashCellStorage());
+    }
+
+    /**
+     * Creates a spreadsheet backed by the given storage engine
+     * (e.g., {@link TiledCellStorage} for large dense sheets).
+     *
+     * @param storage The storage engine holding the cells.
+     */
+    public Spreadsheet(CellStorage storage) {
+        this.cells = storage;
+        this.dependencies = new DependencyGraph();
+        this.rangeDependencies = new RangeIndex();
+        this.columnAggregates = new ColumnAggregates(storage);
+        this.formulaRows = new ArrayList<>();
+        this.batchEdits = new AddressSet();
+        this.order = new TopologicalOrder(new TopologicalOrder.Graph() {
+            @Override
+            public void forEachSuccessor(long node, LongConsumer consumer) {
+                for (long dependent : dependentsOf(node)) {
+                    consumer.accept(dependent);
+                }
+            }
+
+            @Override
+            public void forEachPredecessor(long node, LongConsumer consumer) {
+                Content content = cells.getContent(node);
+                if (content instanceof FormulaContent) {
+                    forEachFormulaInput((FormulaContent) content, consumer);
+                }
+            }
+        });
     }
 
     /**
@@ -23,83 +85,236 @@ public class Spreadsheet {
      * @param content    The content to set in the cell.
      */
     public void addOrModifyCell(String coordinate, Content content) {
-        // Convert coordinate to uppercase to handle case insensitivity
-        coordinate = coordinate.toUpperCase();
+        addOrModifyCell(parseCoordinate(coordinate), content);
+    }
 
+    /**
+     * Adds or modifies a cell's content in the spreadsheet.
+     *
+     * @param row     The 1-based row number.
+     * @param column  The 0-based column index.
+     * @param content The content to set in the cell.
+     */
+    public void addOrModifyCell(int row, int column, Content content) {
+        addOrModifyCell(CellAddress.of(row, column), content);
+    }
+
+    private void addOrModifyCell(long address, Content content) {
+        if (metrics != null) {
+            metrics.recordEdit();
+        }
         if (content instanceof FormulaContent) {
             FormulaContent formulaContent = (FormulaContent) content;
 
             // Check for circular dependency before adding the cell
-            if (hasCircularDependency(coordinate, formulaContent)) {
-                System.out.println("Circular dependency detected! Cannot add this formula to cell " + coordinate);
+            if (hasCircularDependency(address, formulaContent)) {
+                System.out.println("Circular dependency detected! Cannot add this formula to cell "
+                        + CellAddress.toString(address));
                 return;
             }
 
             // Update cell content and dependencies
-            updateDependencies(coordinate, formulaContent);
+            updateDependencies(address, formulaContent);
+            formulaContent.bind(resolver, address);
+            cells.setContent(address, content);
+            columnAggregates.update(address, content);
+
+            // Place a new formula behind everything if nothing reads it yet, otherwise in front,
+            // then move it after the formulas it reads; only the out-of-order part of the
+            // order between them is searched
+            setFormulaRow(address, true);
+            if (dependentsOf(address).length == 0) {
+                order.addLast(address);
+            } else {
+                order.addFirst(address);
+            }
+            long[] inputs = formulaInputs(formulaContent);
+            for (long input : inputs) {
+                order.addEdge(input, address);
+            }
+        } else {
+            if (order.contains(address)) {
+                // The cell no longer holds a formula, so it no longer reads anything nor costs anything
+                removeDependencies(address);
+                setFormulaRow(address, false);
+                order.remove(address);
+                if (profiler != null) {
+                    profiler.remove(address);
+                }
+            }
+            cells.setContent(address, content);
+            columnAggregates.update(address, content);
         }
 
-        Cell cell = cells.getOrDefault(coordinate, new Cell(coordinate));
-        cell.setContent(content);
-        cells.put(coordinate, cell);
+        // Recalculate values of the current cell and its dependents, or once at commit in a batch;
+        // a value nothing reads yet needs no recalculation, and formulas reading it later are edits too
+        if (batchDepth > 0) {
+            if (content instanceof FormulaContent || hasDependents(address)) {
+                batchEdits.add(address);
+            }
+        } else {
+            recalculate(new long[]{address});
+        }
+    }
 
-        // Recalculate values of the current cell and its dependents
-        recalculateCellAndDependents(coordinate);
+    /**
+     * Starts a batch of edits. Until the matching {@link #commit()}, each edit is still checked
+     * for circular dependencies and applied to the cells and the dependency graph, but no
+     * formula is recalculated; the commit then recalculates the union of all dirty cells once.
+     * Batches may be nested, in which case only the outermost commit recalculates.
+     */
+    public void beginBatch() {
+        batchDepth++;
     }
 
     /**
-     * Checks for a circular dependency if adding the given formula to the specified cell.
+     * Ends the batch started by the matching {@link #beginBatch()}, recalculating every cell
+     * edited during the outermost batch and their dependents, each formula exactly once.
      *
-     * @param coordinate     The cell coordinate where the formula is being added.
-     * @param formulaContent The formula content to check.
-     * @return true if a circular dependency is detected, false otherwise.
+     * @throws IllegalStateException if no batch is open.
      */
-    public boolean hasCircularDependency(String coordinate, FormulaContent formulaContent) {
-        // Temporarily add the new dependencies for the check
-        Set<String> referencedCells = extractCellReferences(formulaContent);
-        updateDependencies(coordinate, formulaContent);
+    public void commit() {
+        commit(true);
+    }
+
+    /**
+     * Ends the batch started by the matching {@link #beginBatch()}.
+     *
+     * @param recalculate false if every formula of the batch already holds its current value
+     *                    (e.g., restored from a snapshot), so nothing needs recalculating.
+     * @throws IllegalStateException if no batch is open.
+     */
+    public void commit(boolean recalculate) {
+        if (batchDepth == 0) {
+            throw new IllegalStateException("No batch to commit");
+        }
+        if (--batchDepth == 0 && !batchEdits.isEmpty()) {
+            long[] edited = batchEdits.toArray();
+            batchEdits.clear();
+            if (recalculate) {
+                recalculate(edited);
+            }
+        }
+    }
 
-        // Perform DFS to detect cycles starting from this cell
-        Set<String> visited = new HashSet<>();
-        Set<String> stack = new HashSet<>();
+    /**
+     * Returns every formula cell in topological order: each formula comes after the
+     * formulas it reads, so adding them in this order never reorders the formulas.
+     *
+     * @return The packed addresses of the formula cells.
+     */
+    public long[] getFormulasInOrder() {
+        long[] formulas = new long[order.size()];
+        int count = 0;
+        for (int col = 0; col < formulaRows.size(); col++) {
+            BitSet rows = formulaRows.get(col);
+            for (int row = rows.nextSetBit(0); row >= 0; row = rows.nextSetBit(row + 1)) {
+                formulas[count++] = CellAddress.of(row, col);
+            }
+        }
+        order.sort(formulas, count);
+        return formulas;
+    }
 
-        boolean hasCycle = detectCycle(coordinate, visited, stack);
+    /**
+     * Installs a cell restored from a snapshot straight into the storage and the dependency
+     * graph, without checking for cycles or recalculating anything. Into an empty spreadsheet,
+     * every constant must be restored first, then the formulas in the order of
+     * {@link #getFormulasInOrder()}, holding their saved values: each formula is then placed
+     * last in the topological order as is.
+     *
+     * @param address The packed address of the cell.
+     * @param content The restored content.
+     * @throws IllegalArgumentException If a formula is restored after a formula reading it, or
+     *                                  reads its own cell; the cell is left unchanged.
+     */
+    public void restoreCell(long address, Content content) {
+        if (!(content instanceof FormulaContent)) {
+            cells.setContent(address, content);
+            columnAggregates.update(address, content);
+            return;
+        }
 
-        // Revert the temporary update to the dependency tree
-        dependencies.values().forEach(dependents -> dependents.remove(coordinate));
+        FormulaContent formulaContent = (FormulaContent) content;
+        if (hasDependents(address) || readsCell(formulaContent, address)) {
+            throw new IllegalArgumentException("Formula out of topological order at " + CellAddress.toString(address));
+        }
+        updateDependencies(address, formulaContent);
+        formulaContent.bind(resolver, address);
+        cells.setContent(address, content);
+        columnAggregates.update(address, content);
+        setFormulaRow(address, true);
+        order.addLast(address);
+    }
 
-        return hasCycle;
+    /**
+     * @return true if edits are being collected in a batch.
+     */
+    public boolean isInBatch() {
+        return batchDepth > 0;
     }
 
     /**
-     * Helper method to perform DFS and detect cycles in the dependency tree.
+     * Checks for a circular dependency if adding the given formula to the specified cell.
      *
-     * @param node    The current cell being visited.
-     * @param visited Set of visited cells.
-     * @param stack   Set of cells in the current DFS path (to detect cycles).
-     * @return true if a cycle is detected, false otherwise.
+     * @param coordinate     The cell coordinate where the formula is being added.
+     * @param formulaContent The formula content to check.
+     * @return true if a circular dependency is detected, false otherwise.
      */
-    private boolean detectCycle(String node, Set<String> visited, Set<String> stack) {
-        if (stack.contains(node)) {
-            return true; // Cycle detected
+    public boolean hasCircularDependency(String coordinate, FormulaContent formulaContent) {
+        return hasCircularDependency(parseCoordinate(coordinate), formulaContent);
+    }
+
+    /**
+     * A formula closes a cycle if it reads its own cell, or if its cell already reaches one of
+     * the formulas it reads. Only formulas placed between the cell and the latest of those
+     * inputs in the topological order can be on such a path, so the search stays within them.
+     * The dependency graph is not modified.
+     */
+    private boolean hasCircularDependency(long address, FormulaContent formulaContent) {
+        if (metrics == null) {
+            return closesCycle(address, formulaContent);
         }
+        long start = System.nanoTime();
+        boolean cycle = closesCycle(address, formulaContent);
+        metrics.recordCycleCheck(System.nanoTime() - start);
+        return cycle;
+    }
 
-        if (visited.contains(node)) {
-            return false; // Already processed this node
+    private boolean closesCycle(long address, FormulaContent formulaContent) {
+        if (readsCell(formulaContent, address)) {
+            return true;
         }
 
-        visited.add(node);
-        stack.add(node);
+        AddressSet inputs = new AddressSet();
+        int latest = TopologicalOrder.ABSENT;
+        for (long input : formulaInputs(formulaContent)) {
+            inputs.add(input);
+            latest = Math.max(latest, order.positionOf(input));
+        }
+        if (inputs.isEmpty() || latest < order.positionOf(address)) {
+            return false;   // Every input already comes before the cell
+        }
+        return order.reaches(address, inputs, latest);
+    }
 
-        Set<String> dependents = dependencies.getOrDefault(node, Collections.emptySet());
-        for (String dependent : dependents) {
-            if (detectCycle(dependent, visited, stack)) {
-                return true;
+    // Whether a formula reads a cell directly or through one of its ranges
+    private static boolean readsCell(FormulaContent formulaContent, long address) {
+        boolean[] reads = {false};
+        formulaContent.collectReferences(new ReferenceCollector() {
+            @Override
+            public void cell(long ref) {
+                reads[0] |= ref == address;
             }
-        }
 
-        stack.remove(node);
-        return false;
+            @Override
+            public void range(int startRow, int startColumn, int endRow, int endColumn) {
+                int row = CellAddress.row(address);
+                int column = CellAddress.column(address);
+                reads[0] |= row >= startRow && row <= endRow && column >= startColumn && column <= endColumn;
+            }
+        });
+        return reads[0];
     }
 
     /**
@@ -109,133 +324,847 @@ public class Spreadsheet {
      * @return The cell object, or null if it does not exist.
      */
     public Cell getCell(String coordinate) {
-        return cells.get(coordinate);
+        long address = CellAddress.parse(coordinate);
+        return address == CellAddress.INVALID ? null : cells.getCell(address);
+    }
+
+    /**
+     * Retrieves the cell at the specified row and column.
+     *
+     * @param row    The 1-based row number.
+     * @param column The 0-based column index.
+     * @return The cell object, or null if it does not exist.
+     */
+    public Cell getCell(int row, int column) {
+        return cells.getCell(CellAddress.of(row, column));
+    }
+
+    /**
+     * Returns the storage engine holding the cells, e.g. to walk them in row-major order.
+     *
+     * @return The storage engine.
+     */
+    public CellStorage getStorage() {
+        return cells;
     }
 
     /**
-     * Returns the map of all cells in the spreadsheet.
+     * Returns a read-only view of all cells in the spreadsheet keyed by coordinate.
+     * Coordinates are built on demand; prefer {@link #getCell(int, int)} on hot paths.
      *
      * @return The map of cells.
      */
     public Map<String, Cell> getCells() {
-        return cells;
+        return new CoordinateView();
+    }
+
+    /**
+     * @return The number of non-empty cells in the spreadsheet.
+     */
+    public int getCellCount() {
+        return cells.size();
+    }
+
+    /**
+     * @return The highest row number holding a cell, or 0 if the spreadsheet is empty.
+     */
+    public int getMaxRow() {
+        return cells.getMaxRow();
+    }
+
+    /**
+     * @return The highest column index holding a cell, or -1 if the spreadsheet is empty.
+     */
+    public int getMaxColumn() {
+        return cells.getMaxColumn();
+    }
+
+    @Override
+    public double get(int row, int column) throws Exception {
+        return cells.getNumber(CellAddress.of(row, column));
+    }
+
+    @Override
+    public void forEachInRange(int startRow, int startColumn, int endRow, int endColumn,
+                               DoubleConsumer consumer) throws Exception {
+        cells.forEachInRange(startRow, startColumn, endRow, endColumn, consumer);
     }
 
     /**
-     * Recalculates the specified cell and any cells that depend on it.
+     * Aggregates a range column by column. Tall ranges are answered from the incrementally
+     * maintained {@link ColumnAggregates} in O(log n); short ranges are scanned, adding their
+     * numbers in the same order, so a sum does not depend on which way it was answered.
+     * Columns holding cells that are not numbers are visited cell by cell to report the error.
+     */
+    @Override
+    public void aggregateRange(int startRow, int startColumn, int endRow, int endColumn,
+                               Aggregate aggregate) throws Exception {
+        boolean tall = endRow - startRow + 1 >= AGGREGATE_MIN_ROWS;
+        for (int col = startColumn; col <= endColumn; col++) {
+            boolean numeric = tall
+                    ? columnAggregates.aggregate(col, startRow, endRow, aggregate)
+                    : columnAggregates.scan(col, startRow, endRow, aggregate);
+            if (!numeric) {
+                cells.forEachInRange(startRow, col, endRow, col, aggregate);
+            }
+        }
+    }
+
+    /**
+     * Recalculates the specified cells and any cells that depend on them.
+     * <p>
+     * The cells reachable from the edited cells (the dirty set) are sorted by the maintained
+     * topological order, so each affected formula is evaluated exactly once and only after
+     * all of its dirty inputs have been updated.
      *
-     * @param coordinate The cell coordinate to recalculate.
+     * @param edited The packed addresses of the edited cells.
      */
-    private void recalculateCellAndDependents(String coordinate) {
-        Set<String> visited = new HashSet<>();
-        Queue<String> queue = new LinkedList<>();
-        queue.add(coordinate);
+    private void recalculate(long[] edited) {
+        RecalcEvent event = new RecalcEvent();
+        event.begin();
+        long start = metrics != null ? System.nanoTime() : 0;
 
-        while (!queue.isEmpty()) {
-            String current = queue.poll();
-            if (!visited.contains(current)) {
-                visited.add(current);
-                Cell cell = cells.get(current);
+        // Collect the dirty set: every cell reachable from the edited cells
+        AddressSet dirty = new AddressSet(edited.length);
+        long[] nodes = new long[Math.max(16, edited.length)];
+        int count = 0;
+        for (long address : edited) {
+            if (dirty.add(address)) {
+                nodes[count++] = address;
+            }
+        }
 
-                try {
-                    if (cell.getContent() instanceof FormulaContent) {
-                        ((FormulaContent) cell.getContent()).evaluate(cells);
+        for (int i = 0; i < count; i++) {
+            for (long dependent : dependentsOf(nodes[i])) {
+                // In lazy mode everything reading a stale formula is already stale
+                if (!dirty.contains(dependent) && !(lazyEvaluation && isStale(dependent))) {
+                    if (count == nodes.length) {
+                        nodes = Arrays.copyOf(nodes, count * 2);
                     }
-                } catch (Exception e) {
-                    System.err.println("Error evaluating cell " + current + ": " + e.getMessage());
+                    dirty.add(dependent);
+                    nodes[count++] = dependent;
                 }
+            }
+        }
 
-                // Add dependents to the queue for recalculation
-                if (dependencies.containsKey(current)) {
-                    queue.addAll(dependencies.get(current));
+        if (lazyEvaluation) {
+            // Only flag the dirty formulas; they are evaluated when read
+            for (int i = 0; i < count; i++) {
+                Content content = cells.getContent(nodes[i]);
+                if (content instanceof FormulaContent) {
+                    ((FormulaContent) content).invalidate();
                 }
             }
+            lastDirtyCount = count;
+            lastEvaluationCount = 0;
+            recalculated(event, start, edited.length, count, 0, false);
+            return;
+        }
+
+        boolean parallel = parallelPool != null && count >= parallelThreshold;
+        int evaluated = parallel ? evaluateByLevels(nodes, count) : evaluateInOrder(nodes, count);
+
+        lastDirtyCount = count;
+        lastEvaluationCount = evaluated;
+        totalEvaluationCount += evaluated;
+        recalculated(event, start, edited.length, count, evaluated, parallel);
+    }
+
+    // Records a finished recalculation in the metrics and the Flight Recorder
+    private void recalculated(RecalcEvent event, long start, int edited, int dirty, int evaluated, boolean parallel) {
+        if (metrics != null) {
+            metrics.recordRecalculation(evaluated, System.nanoTime() - start);
+        }
+        event.end();
+        if (event.shouldCommit()) {
+            event.edited = edited;
+            event.dirty = dirty;
+            event.evaluated = evaluated;
+            event.parallel = parallel;
+            event.lazy = lazyEvaluation;
+            event.commit();
         }
     }
 
     /**
-     * Updates the dependency graph for a cell with a formula.
+     * Evaluates a stale formula when it is read in lazy mode, along with every stale formula
+     * it reads directly or through its ranges. The stale formulas are collected with an
+     * explicit worklist, so deep chains cannot overflow the call stack, and evaluated in
+     * topological order, so each one only reads up-to-date values. Formulas that are not
+     * stale are left alone: nothing they read can be stale either.
      *
-     * @param coordinate     The cell coordinate.
-     * @param formulaContent The formula content.
+     * @param address The packed address of the formula being read.
      */
-    private void updateDependencies(String coordinate, FormulaContent formulaContent) {
-        // Remove existing dependencies for this cell
-        dependencies.values().forEach(dependents -> dependents.remove(coordinate));
+    private void evaluateOnDemand(long address) {
+        if (!isStale(address)) {
+            return;     // The cell was overwritten since the formula was read
+        }
 
-        // Extract cell references from the formula
-        Set<String> referencedCells = extractCellReferences(formulaContent);
+        AddressSet seen = new AddressSet();
+        long[][] stale = {new long[16]};
+        int[] count = {1};
+        seen.add(address);
+        stale[0][0] = address;
 
-        // Add new dependencies
-        for (String ref : referencedCells) {
-            dependencies.computeIfAbsent(ref, k -> new HashSet<>()).add(coordinate);
+        for (int i = 0; i < count[0]; i++) {
+            forEachFormulaInput((FormulaContent) cells.getContent(stale[0][i]), input -> {
+                if (isStale(input) && seen.add(input)) {
+                    if (count[0] == stale[0].length) {
+                        stale[0] = Arrays.copyOf(stale[0], count[0] * 2);
+                    }
+                    stale[0][count[0]++] = input;
+                }
+            });
         }
+
+        order.sort(stale[0], count[0]);
+        for (int i = 0; i < count[0]; i++) {
+            long current = stale[0][i];
+            FormulaContent formula = (FormulaContent) cells.getContent(current);
+            evaluateFormula(current, formula);
+            columnAggregates.update(current, formula);
+        }
+        totalEvaluationCount += count[0];
+    }
+
+    private boolean isStale(long address) {
+        Content content = cells.getContent(address);
+        return content instanceof FormulaContent && ((FormulaContent) content).isStale();
     }
 
     /**
-     * Extracts cell references from a formula content.
+     * Evaluates the dirty cells one at a time in topological order.
      *
-     * @param formulaContent The formula content.
-     * @return A set of cell references found in the formula.
+     * @return The number of formulas evaluated.
      */
-    private Set<String> extractCellReferences(FormulaContent formulaContent) {
-        Set<String> references = new HashSet<>();
-        String formula = formulaContent.toString().substring(1); // Remove the '=' sign
+    private int evaluateInOrder(long[] nodes, int count) {
+        order.sort(nodes, count);
+
+        int evaluated = 0;
+        for (int i = 0; i < count; i++) {
+            long current = nodes[i];
+            Content content = cells.getContent(current);
 
-        // Simple regex to match cell references (e.g., A1, B2, C3)
-        String regex = "[A-Z]+\\d+";
-        Scanner scanner = new Scanner(formula);
-        while (scanner.findInLine(regex) != null) {
-            references.add(scanner.match().group());
+            if (content instanceof FormulaContent) {
+                evaluated++;
+                evaluateFormula(current, (FormulaContent) content);
+                columnAggregates.update(current, content);
+            }
         }
+        return evaluated;
+    }
+
+    /**
+     * Evaluates the dirty cells level by level: all formulas of a level only depend on
+     * earlier levels, so they are evaluated concurrently on the recalculation pool.
+     * The results are identical to {@link #evaluateInOrder}.
+     *
+     * @return The number of formulas evaluated.
+     */
+    private int evaluateByLevels(long[] nodes, int count) {
+        // Count the dirty inputs of each dirty cell (Kahn's algorithm)
+        CellIntMap index = new CellIntMap(count);
+        for (int i = 0; i < count; i++) {
+            index.put(nodes[i], i);
+        }
+        int[] inDegree = new int[count];
+        for (int i = 0; i < count; i++) {
+            for (long dependent : dependentsOf(nodes[i])) {
+                inDegree[index.get(dependent, -1)]++;
+            }
+        }
+
+        int[] level = new int[count];
+        int levelSize = 0;
+        for (int i = 0; i < count; i++) {
+            if (inDegree[i] == 0) {
+                level[levelSize++] = i;
+            }
+        }
+
+        int evaluated = 0;
+        int[] nextLevel = new int[count];
+        long[] addresses = new long[count];
+        FormulaContent[] formulas = new FormulaContent[count];
+        String[] errors = new String[count];
+
+        while (levelSize > 0) {
+            // Gather the formulas of the level
+            int formulaCount = 0;
+            for (int i = 0; i < levelSize; i++) {
+                long address = nodes[level[i]];
+                Content content = cells.getContent(address);
+                if (content instanceof FormulaContent) {
+                    addresses[formulaCount] = address;
+                    formulas[formulaCount++] = (FormulaContent) content;
+                }
+            }
+
+            if (formulaCount >= PARALLEL_GRAIN) {
+                prepareAggregates(formulas, formulaCount);
+                parallelPool.invoke(new LevelTask(this, addresses, formulas, errors, 0, formulaCount));
+            } else {
+                new LevelTask(this, addresses, formulas, errors, 0, formulaCount).compute();
+            }
 
-        return references;
+            // Report errors in a deterministic order
+            for (int i = 0; i < formulaCount; i++) {
+                if (errors[i] != null) {
+                    System.err.println("Error evaluating cell " + CellAddress.toString(addresses[i]) + ": " + errors[i]);
+                    errors[i] = null;
+                }
+                columnAggregates.update(addresses[i], formulas[i]);
+                formulas[i] = null;
+            }
+            evaluated += formulaCount;
+
+            // The next level holds the cells whose last dirty input was in this level
+            int nextSize = 0;
+            for (int i = 0; i < levelSize; i++) {
+                for (long dependent : dependentsOf(nodes[level[i]])) {
+                    int j = index.get(dependent, -1);
+                    if (--inDegree[j] == 0) {
+                        nextLevel[nextSize++] = j;
+                    }
+                }
+            }
+
+            int[] swap = level;
+            level = nextLevel;
+            nextLevel = swap;
+            levelSize = nextSize;
+        }
+        return evaluated;
     }
 
     /**
-     * Prints the entire spreadsheet with cell coordinates and their values.
+     * Builds, on the calling thread, the column aggregates the tall ranges of a level read,
+     * so the workers evaluating it only query them under the shared lock.
      */
+    private void prepareAggregates(FormulaContent[] formulas, int count) {
+        ReferenceCollector collector = new ReferenceCollector() {
+            @Override
+            public void cell(long ref) {
+            }
+
+            @Override
+            public void range(int startRow, int startColumn, int endRow, int endColumn) {
+                if (endRow - startRow + 1 >= AGGREGATE_MIN_ROWS) {
+                    for (int col = startColumn; col <= endColumn; col++) {
+                        columnAggregates.prepare(col);
+                    }
+                }
+            }
+        };
+        for (int i = 0; i < count; i++) {
+            formulas[i].collectReferences(collector);
+        }
+    }
+
     /**
-     * Displays the spreadsheet in a tabular format with rows and columns.
+     * Evaluates a formula, reporting any error on the console.
      */
-    public void displaySpreadsheet() {
-        // Determine the maximum row and column dynamically based on the current cell keys
-        int maxRow = 0;
-        char maxCol = 'A';
+    private void evaluateFormula(long address, FormulaContent formula) {
+        try {
+            evaluate(address, formula);
+        } catch (Exception e) {
+            System.err.println("Error evaluating cell " + CellAddress.toString(address) + ": " + e.getMessage());
+        }
+    }
 
-        for (String coordinate : cells.keySet()) {
-            String colPart = coordinate.replaceAll("\\d", ""); // Extract letters (column part)
-            int rowPart = Integer.parseInt(coordinate.replaceAll("\\D", "")); // Extract numbers (row part)
+    /**
+     * Evaluates a formula, timing it when metrics are collected, the formulas are profiled or
+     * the Flight Recorder is on. Called concurrently by parallel recalculation.
+     */
+    private void evaluate(long address, FormulaContent formula) throws Exception {
+        FormulaEvalEvent event = new FormulaEvalEvent();
+        event.begin();
+        SpreadsheetMetrics metrics = this.metrics;
+        FormulaProfiler profiler = this.profiler;
+        long start = metrics != null || profiler != null ? System.nanoTime() : 0;
+        boolean failed = true;
+        try {
+            formula.evaluate(this);
+            failed = false;
+        } finally {
+            if (metrics != null || profiler != null) {
+                long nanos = System.nanoTime() - start;
+                if (metrics != null) {
+                    metrics.recordEvaluation(nanos);
+                }
+                if (profiler != null) {
+                    profiler.record(address, formula, nanos);
+                }
+            }
+            event.end();
+            if (event.shouldCommit()) {
+                event.cell = CellAddress.toString(address);
+                event.formula = formula.getFormula();
+                event.failed = failed;
+                event.commit();
+            }
+        }
+    }
+
+    /**
+     * Enables parallel recalculation on the given pool for edits whose dirty set holds at
+     * least {@code threshold} cells; smaller edits stay on the calling thread. The pool also
+     * reads tall columns in slices when a range first aggregates them.
+     *
+     * @param pool      The pool evaluating independent formulas, or null to always recalculate serially.
+     * @param threshold The minimum dirty set size for recalculating in parallel.
+     */
+    public void setParallelRecalculation(ForkJoinPool pool, int threshold) {
+        this.parallelPool = pool;
+        this.parallelThreshold = Math.max(1, threshold);
+        columnAggregates.setPool(pool);
+    }
+
+    /**
+     * Switches between eager evaluation, where every edit recalculates its dependents, and
+     * lazy evaluation, where edits only flag their dependents as stale and each formula is
+     * evaluated, with memoization, the next time its value is read. Switching back to eager
+     * evaluation brings every stale formula up to date.
+     *
+     * @param lazy true to evaluate formulas on read.
+     */
+    public void setLazyEvaluation(boolean lazy) {
+        if (lazyEvaluation == lazy) {
+            return;
+        }
+        lazyEvaluation = lazy;
+        if (!lazy) {
+            long[] stale = new long[16];
+            int count = 0;
+            for (int col = 0; col < formulaRows.size(); col++) {
+                BitSet rows = formulaRows.get(col);
+                for (int row = rows.nextSetBit(0); row >= 0; row = rows.nextSetBit(row + 1)) {
+                    long address = CellAddress.of(row, col);
+                    if (isStale(address)) {
+                        if (count == stale.length) {
+                            stale = Arrays.copyOf(stale, count * 2);
+                        }
+                        stale[count++] = address;
+                    }
+                }
+            }
+            if (count > 0) {
+                recalculate(Arrays.copyOf(stale, count));
+            }
+        }
+    }
+
+    /**
+     * @return true if formulas are evaluated when read rather than on every edit.
+     */
+    public boolean isLazyEvaluation() {
+        return lazyEvaluation;
+    }
+
+    /**
+     * @return The pool used for parallel recalculation, or null if recalculation is serial.
+     */
+    public ForkJoinPool getParallelPool() {
+        return parallelPool;
+    }
+
+    /**
+     * @return The number of cells in the dirty set of the last edit or batch (the edited cells and their dependents).
+     */
+    public int getLastDirtyCount() {
+        return lastDirtyCount;
+    }
+
+    /**
+     * @return The number of formulas evaluated by the last edit or batch.
+     */
+    public int getLastEvaluationCount() {
+        return lastEvaluationCount;
+    }
+
+    /**
+     * @return The number of formulas evaluated since the spreadsheet was created.
+     */
+    public long getTotalEvaluationCount() {
+        return totalEvaluationCount;
+    }
+
+    /**
+     * Starts or stops collecting metrics of the edits, recalculations, formula evaluations and
+     * circular dependency checks of this spreadsheet. Independently of them, recalculations and
+     * slow formula evaluations are reported to the Flight Recorder when it is recording.
+     *
+     * @param metrics The metrics to record into, possibly shared with other spreadsheets, or null to stop.
+     */
+    public void setMetrics(SpreadsheetMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * @return The metrics being collected, or null if none are.
+     */
+    public SpreadsheetMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Starts or stops recording the cost of each formula evaluated, per cell.
+     *
+     * @param profiler The profiler to record into, or null to stop.
+     */
+    public void setProfiler(FormulaProfiler profiler) {
+        this.profiler = profiler;
+    }
+
+    /**
+     * @return The profiler recording the formula costs, or null if none is.
+     */
+    public FormulaProfiler getProfiler() {
+        return profiler;
+    }
+
+    /**
+     * Finds the critical path of the dependency graph: the longest chain of formulas in which
+     * each formula reads the one before it, directly or through a range. A recalculation from
+     * its first formula evaluates them all one after the other, whatever the parallelism.
+     *
+     * @return The packed addresses of the formulas of the path, from the first one evaluated,
+     * or an empty array if there are no formulas.
+     */
+    public long[] getCriticalPath() {
+        long[] formulas = getFormulasInOrder();
+        CellIntMap index = new CellIntMap(formulas.length);
+        for (int i = 0; i < formulas.length; i++) {
+            index.put(formulas[i], i);
+        }
+
+        // In topological order, every formula comes after the formulas it reads
+        int[] length = new int[formulas.length];
+        int[] previous = new int[formulas.length];
+        int end = -1;
+        for (int i = 0; i < formulas.length; i++) {
+            int[] longest = {0, -1};
+            forEachFormulaInput((FormulaContent) cells.getContent(formulas[i]), input -> {
+                int j = index.get(input, -1);
+                if (j >= 0 && length[j] > longest[0]) {
+                    longest[0] = length[j];
+                    longest[1] = j;
+                }
+            });
+            length[i] = longest[0] + 1;
+            previous[i] = longest[1];
+            if (end < 0 || length[i] > length[end]) {
+                end = i;
+            }
+        }
+        if (end < 0) {
+            return new long[0];
+        }
+
+        long[] path = new long[length[end]];
+        for (int i = end, k = path.length - 1; i >= 0; i = previous[i], k--) {
+            path[k] = formulas[i];
+        }
+        return path;
+    }
+
+    /**
+     * Returns the formulas that read a cell, either directly or through one of their ranges.
+     * A formula reading the cell several times is listed once per reference, consistently
+     * between calls, so it can be used to count and release dependencies.
+     *
+     * @param address The packed address of the cell.
+     * @return The packed addresses of the dependent formulas.
+     */
+    private long[] dependentsOf(long address) {
+        long[][] observers = {new long[dependencies.dependentCount(address)]};
+        int[] count = {0};
+        LongConsumer collect = owner -> {
+            if (count[0] == observers[0].length) {
+                observers[0] = Arrays.copyOf(observers[0], Math.max(4, count[0] * 2));
+            }
+            observers[0][count[0]++] = owner;
+        };
+        dependencies.forEachDependent(address, collect);
+        rangeDependencies.forEachObserver(CellAddress.row(address), CellAddress.column(address), collect);
+        return count[0] == observers[0].length ? observers[0] : Arrays.copyOf(observers[0], count[0]);
+    }
+
+    private boolean hasDependents(long address) {
+        if (dependencies.dependentCount(address) > 0) {
+            return true;
+        }
+        boolean[] observed = {false};
+        rangeDependencies.forEachObserver(CellAddress.row(address), CellAddress.column(address), owner -> observed[0] = true);
+        return observed[0];
+    }
+
+    /**
+     * Updates the dependency graph for a cell with a formula.
+     * Single cell references replace the cell's precedents in the dependency graph, so only
+     * its old and new references are touched; ranges are recorded once in the range index.
+     *
+     * @param address        The packed address of the cell.
+     * @param formulaContent The formula content.
+     */
+    private void updateDependencies(long address, FormulaContent formulaContent) {
+        rangeDependencies.removeOwner(address);
+
+        // Add new dependencies for the cells and ranges referenced by the compiled formula
+        long[][] refs = {new long[4]};
+        int[] count = {0};
+        formulaContent.collectReferences(new ReferenceCollector() {
+            @Override
+            public void cell(long ref) {
+                if (count[0] == refs[0].length) {
+                    refs[0] = Arrays.copyOf(refs[0], count[0] * 2);
+                }
+                refs[0][count[0]++] = ref;
+            }
+
+            @Override
+            public void range(int startRow, int startColumn, int endRow, int endColumn) {
+                rangeDependencies.add(address, startRow, startColumn, endRow, endColumn);
+            }
+        });
+        dependencies.setPrecedents(address, Arrays.copyOf(refs[0], count[0]));
+    }
+
+    /**
+     * Removes the dependencies of a cell on the cells and ranges it used to read.
+     *
+     * @param address The packed address of the cell.
+     */
+    private void removeDependencies(long address) {
+        dependencies.clearPrecedents(address);
+        rangeDependencies.removeOwner(address);
+    }
 
-            if (rowPart > maxRow) {
-                maxRow = rowPart;
+    /**
+     * Passes every formula read by a formula to the consumer, either directly or through
+     * one of its ranges. Values and texts have no inputs and are left out.
+     */
+    private void forEachFormulaInput(FormulaContent formulaContent, LongConsumer consumer) {
+        formulaContent.collectReferences(new ReferenceCollector() {
+            @Override
+            public void cell(long ref) {
+                if (order.contains(ref)) {
+                    consumer.accept(ref);
+                }
             }
-            if (colPart.compareTo(String.valueOf(maxCol)) > 0) {
-                maxCol = colPart.charAt(0);
+
+            @Override
+            public void range(int startRow, int startColumn, int endRow, int endColumn) {
+                int lastColumn = Math.min(endColumn, formulaRows.size() - 1);
+                for (int col = startColumn; col <= lastColumn; col++) {
+                    BitSet rows = formulaRows.get(col);
+                    for (int row = rows.nextSetBit(startRow); row >= 0 && row <= endRow; row = rows.nextSetBit(row + 1)) {
+                        consumer.accept(CellAddress.of(row, col));
+                    }
+                }
             }
+        });
+    }
+
+    private long[] formulaInputs(FormulaContent formulaContent) {
+        long[][] inputs = {new long[4]};
+        int[] count = {0};
+        forEachFormulaInput(formulaContent, input -> {
+            if (count[0] == inputs[0].length) {
+                inputs[0] = Arrays.copyOf(inputs[0], count[0] * 2);
+            }
+            inputs[0][count[0]++] = input;
+        });
+        return Arrays.copyOf(inputs[0], count[0]);
+    }
+
+    private void setFormulaRow(long address, boolean formula) {
+        int column = CellAddress.column(address);
+        while (formulaRows.size() <= column) {
+            formulaRows.add(new BitSet());
         }
+        formulaRows.get(column).set(CellAddress.row(address), formula);
+    }
+
+    private static long parseCoordinate(String coordinate) {
+        long address = CellAddress.parse(coordinate);
+        if (address == CellAddress.INVALID) {
+            throw new IllegalArgumentException("Invalid cell coordinate: " + coordinate);
+        }
+        return address;
+    }
+
+    /**
+     * Displays the spreadsheet in a tabular format with rows and columns.
+     */
+    public void displaySpreadsheet() {
+        // Determine the maximum row and column based on the current cells
+        int maxRow = getMaxRow();
+        int maxCol = getMaxColumn();
 
         // Print the header row (column labels)
         System.out.print("    ");
-        for (char col = 'A'; col <= maxCol; col++) {
-            System.out.print(String.format("%-10s", col));
+        for (int col = 0; col <= maxCol; col++) {
+            System.out.print(String.format("%-10s", CellAddress.columnName(col)));
         }
         System.out.println();
 
-        // Print each row with its row label and cell values
-        for (int row = 1; row <= maxRow; row++) {
-            System.out.print(String.format("%-4d", row));
+        // Print each row with its row label and cell values, visiting the cells rather than
+        // looking up every coordinate, so no cell object is materialised
+        GridPrinter printer = new GridPrinter(maxCol);
+        cells.forEachCell(printer);
+        printer.finish(maxRow);
+    }
+
+    /**
+     * Prints the cells visited in row-major order as rows of a grid, empty cells as blanks.
+     */
+    private static final class GridPrinter implements CellStorage.Visitor {
+        private final int maxColumn;
+        private int row;        // The row being printed, 0 before the first
+        private int column;     // The next column to print in the row
+
+        GridPrinter(int maxColumn) {
+            this.maxColumn = maxColumn;
+        }
 
-            for (char col = 'A'; col <= maxCol; col++) {
-                String coordinate = "" + col + row;
-                Cell cell = cells.get(coordinate);
+        @Override
+        public void visitNumber(int row, int column, double value) {
+            print(row, column, String.valueOf(value));
+        }
 
-                // Print cell value or empty string if cell is not defined
-                String value = (cell != null) ? cell.getValueAsString() : "";
-                System.out.print(String.format("%-10s", value));
+        @Override
+        public void visitContent(int row, int column, Content content) {
+            print(row, column, content.getValueAsString());
+        }
+
+        // Prints the rows left up to the last one
+        void finish(int maxRow) {
+            advance(maxRow, maxColumn + 1);
+            if (row > 0) {
+                System.out.println();
             }
-            System.out.println();
+        }
+
+        private void print(int row, int column, String value) {
+            advance(row, column);
+            System.out.print(String.format("%-10s", value));
+            this.column = column + 1;
+        }
+
+        // Completes the rows before the given one, then prints blanks up to the given column
+        private void advance(int toRow, int toColumn) {
+            while (row < toRow) {
+                if (row > 0) {
+                    blanks(maxColumn + 1);
+                    System.out.println();
+                }
+                row++;
+                column = 0;
+                System.out.print(String.format("%-4d", row));
+            }
+            blanks(toColumn);
+        }
+
+        private void blanks(int toColumn) {
+            for (; column < toColumn; column++) {
+                System.out.print(String.format("%-10s", ""));
+            }
+        }
+    }
+
+    /**
+     * Read-only map view of the cells keyed by coordinate, for callers working with strings.
+     */
+    private class CoordinateView extends AbstractMap<String, Cell> {
+
+        @Override
+        public Cell get(Object key) {
+            return key instanceof String ? getCell((String) key) : null;
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return get(key) != null;
+        }
+
+        @Override
+        public int size() {
+            return cells.size();
+        }
+
+        @Override
+        public Set<Entry<String, Cell>> entrySet() {
+            return new AbstractSet<Entry<String, Cell>>() {
+                @Override
+                public int size() {
+                    return cells.size();
+                }
+
+                @Override
+                public Iterator<Entry<String, Cell>> iterator() {
+                    List<Entry<String, Cell>> entries = new ArrayList<>(cells.size());
+                    cells.forEachCell(new CellStorage.Visitor() {
+                        @Override
+                        public void visitNumber(int row, int column, double value) {
+                            add(row, column, new NumericContent(value));
+                        }
+
+                        @Override
+                        public void visitContent(int row, int column, Content content) {
+                            add(row, column, content);
+                        }
+
+                        private void add(int row, int column, Content content) {
+                            Cell cell = new Cell(CellAddress.of(row, column));
+                            cell.setContent(content);
+                            entries.add(new SimpleImmutableEntry<>(cell.getCoordinate(), cell));
+                        }
+                    });
+                    return entries.iterator();
+                }
+            };
         }
     }
 
+    /**
+     * Evaluates a slice of the formulas of one recalculation level, splitting it across the pool.
+     */
+    private static class LevelTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final Spreadsheet spreadsheet;
+        private final long[] addresses;
+        private final FormulaContent[] formulas;
+        private final String[] errors;
+        private final int from;
+        private final int to;
+
+        LevelTask(Spreadsheet spreadsheet, long[] addresses, FormulaContent[] formulas, String[] errors, int from, int to) {
+            this.spreadsheet = spreadsheet;
+            this.addresses = addresses;
+            this.formulas = formulas;
+            this.errors = errors;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > PARALLEL_GRAIN) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new LevelTask(spreadsheet, addresses, formulas, errors, from, middle),
+                        new LevelTask(spreadsheet, addresses, formulas, errors, middle, to));
+                return;
+            }
+
+            for (int i = from; i < to; i++) {
+                try {
+                    spreadsheet.evaluate(addresses[i], formulas[i]);
+                } catch (Exception e) {
+                    errors[i] = e.getMessage();
+                }
+            }
+        }
+    }
 }
@@ -0,0 +1,214 @@
+package model;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters and histograms of the work done by spreadsheets and the files they are loaded from
+ * and saved to, for finding out why an edit or a load is slow.
+ * <p>
+ * Metrics are only collected by the spreadsheets and file managers they are given to (see
+ * {@link Spreadsheet#setMetrics(SpreadsheetMetrics)}); without them, nothing is timed. They may
+ * be shared, and recorded from several threads at once, e.g. by parallel recalculation.
+ */
+public class SpreadsheetMetrics {
+    private final LongAdder edits = new LongAdder();
+    private final Histogram recalculatedCells = new Histogram();     // Formulas evaluated per recalculation
+    private final Histogram recalculationNanos = new Histogram();
+    private final Histogram evaluationNanos = new Histogram();       // Per formula
+    private final Histogram cycleCheckNanos = new Histogram();
+    private final LongAdder loadBytes = new LongAdder();
+    private final Histogram loadNanos = new Histogram();
+    private final LongAdder saveBytes = new LongAdder();
+    private final Histogram saveNanos = new Histogram();
+
+    void recordEdit() {
+        edits.increment();
+    }
+
+    void recordRecalculation(int evaluated, long nanos) {
+        recalculatedCells.record(evaluated);
+        recalculationNanos.record(nanos);
+    }
+
+    void recordEvaluation(long nanos) {
+        evaluationNanos.record(nanos);
+    }
+
+    void recordCycleCheck(long nanos) {
+        cycleCheckNanos.record(nanos);
+    }
+
+    /**
+     * Records a file read into a spreadsheet.
+     *
+     * @param bytes The size of the file.
+     * @param nanos The time taken, recalculation included.
+     */
+    public void recordLoad(long bytes, long nanos) {
+        loadBytes.add(bytes);
+        loadNanos.record(nanos);
+    }
+
+    /**
+     * Records a spreadsheet written to a file.
+     *
+     * @param bytes The size of the file written.
+     * @param nanos The time taken.
+     */
+    public void recordSave(long bytes, long nanos) {
+        saveBytes.add(bytes);
+        saveNanos.record(nanos);
+    }
+
+    /**
+     * @return The number of cells edited, including the cells added by loads.
+     */
+    public long getEdits() {
+        return edits.sum();
+    }
+
+    /**
+     * @return The formulas evaluated by each recalculation (an edit, or the commit of a batch).
+     */
+    public Histogram getRecalculatedCells() {
+        return recalculatedCells;
+    }
+
+    /**
+     * @return The duration of each recalculation, in nanoseconds.
+     */
+    public Histogram getRecalculationNanos() {
+        return recalculationNanos;
+    }
+
+    /**
+     * @return The duration of each formula evaluation, in nanoseconds.
+     */
+    public Histogram getEvaluationNanos() {
+        return evaluationNanos;
+    }
+
+    /**
+     * @return The duration of each circular dependency check, in nanoseconds.
+     */
+    public Histogram getCycleCheckNanos() {
+        return cycleCheckNanos;
+    }
+
+    /**
+     * @return The total bytes of the files loaded.
+     */
+    public long getLoadBytes() {
+        return loadBytes.sum();
+    }
+
+    /**
+     * @return The duration of each load, in nanoseconds.
+     */
+    public Histogram getLoadNanos() {
+        return loadNanos;
+    }
+
+    /**
+     * @return The total bytes of the files saved.
+     */
+    public long getSaveBytes() {
+        return saveBytes.sum();
+    }
+
+    /**
+     * @return The duration of each save, in nanoseconds.
+     */
+    public Histogram getSaveNanos() {
+        return saveNanos;
+    }
+
+    /**
+     * @return A summary of the metrics, one line each, with durations in microseconds.
+     */
+    @Override
+    public String toString() {
+        return "Edits:                " + getEdits() + "\n"
+                + "Recalculated cells:   " + recalculatedCells.summary(1) + "\n"
+                + "Recalculation (us):   " + recalculationNanos.summary(1000) + "\n"
+                + "Formula eval (us):    " + evaluationNanos.summary(1000) + "\n"
+                + "Cycle check (us):     " + cycleCheckNanos.summary(1000) + "\n"
+                + "Load (us):            " + loadNanos.summary(1000) + ", " + getLoadBytes() + " bytes\n"
+                + "Save (us):            " + saveNanos.summary(1000) + ", " + getSaveBytes() + " bytes";
+    }
+
+    /**
+     * Distribution of non-negative values in power-of-two buckets: bucket b counts the values
+     * below 2^b that are not in a lower bucket. Percentiles are reported as the upper bound of
+     * their bucket, so they are at most twice the exact value.
+     */
+    public static class Histogram {
+        private final LongAdder[] buckets = new LongAdder[64];
+        private final LongAdder count = new LongAdder();
+        private final LongAdder sum = new LongAdder();
+        private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+        Histogram() {
+            for (int i = 0; i < buckets.length; i++) {
+                buckets[i] = new LongAdder();
+            }
+        }
+
+        /**
+         * Records a value; negative values count as 0.
+         */
+        public void record(long value) {
+            value = Math.max(0, value);
+            buckets[64 - Long.numberOfLeadingZeros(value)].increment();
+            count.increment();
+            sum.add(value);
+            max.accumulate(value);
+        }
+
+        public long getCount() {
+            return count.sum();
+        }
+
+        public long getSum() {
+            return sum.sum();
+        }
+
+        public long getMax() {
+            return max.get();
+        }
+
+        /**
+         * @return The mean of the values, or 0 if there are none.
+         */
+        public double getMean() {
+            long values = getCount();
+            return values == 0 ? 0 : (double) getSum() / values;
+        }
+
+        /**
+         * Returns an upper bound of a percentile of the values.
+         *
+         * @param fraction The percentile as a fraction (e.g., 0.99).
+         * @return The upper bound of the bucket holding the percentile, or 0 if there are no values.
+         */
+        public long getPercentile(double fraction) {
+            long values = getCount();
+            long rank = Math.max(1, (long) Math.ceil(fraction * values));
+            long seen = 0;
+            for (int i = 0; i < buckets.length; i++) {
+                seen += buckets[i].sum();
+                if (seen >= rank) {
+                    return Math.min(getMax(), i == 63 ? Long.MAX_VALUE : (1L << i) - 1);
+                }
+            }
+            return getMax();
+        }
+
+        // The values divided by the unit, e.g. 1000 to show nanoseconds as microseconds
+        String summary(long unit) {
+            return String.format("count=%d mean=%.1f p50<=%d p99<=%d max=%d", getCount(), getMean() / unit,
+                    getPercentile(0.50) / unit, getPercentile(0.99) / unit, getMax() / unit);
+        }
+    }
+}
@@ -4,7 +4,7 @@ package model;
  * Represents text-based content in a cell.
  */
 public class TextContent implements Content {
-    private String value;
+    private final String value;
 
     // Constructor
     public TextContent(String value) {
@@ -18,6 +18,17 @@ public class TextContent implements Content {
 
     @Override
     public double getValueAsNumber() throws Exception {
+        return toNumber(value);
+    }
+
+    /**
+     * Converts text to a number; empty text counts as 0.
+     *
+     * @param value The text to convert.
+     * @return The numeric value of the text.
+     * @throws Exception if the text is not a number.
+     */
+    public static double toNumber(String value) throws Exception {
         if (value.isEmpty()) {
             return 0;
         }
@@ -0,0 +1,349 @@
+package model;
+
+import java.util.Arrays;
+import java.util.function.DoubleConsumer;
+
+/**
+ * Storage engine for large, dense sheets that groups cells into fixed-size tiles of
+ * {@value #TILE_SIZE} x {@value #TILE_SIZE} cells.
+ * <p>
+ * Each tile keeps numbers in a primitive {@code double[]} and a type tag per cell; a side
+ * array is only allocated for tiles holding text or formulas. Plain numbers therefore cost
+ * 9 bytes each instead of a {@link Cell} and a {@link NumericContent} object.
+ * Text and formulas are kept as their {@link Content}, formulas so their cached values are
+ * kept. {@link Cell} objects, and the {@link NumericContent} of numbers, are materialised on
+ * each read of {@link #getCell} or {@link #getContent}; bulk reads should go through
+ * {@link #getNumber}, {@link #forEachInRange} and {@link #forEachCell}, which create none.
+ */
+public class TiledCellStorage implements CellStorage {
+    public static final int TILE_SIZE = 64;
+    private static final int TILE_BITS = 6;
+    private static final int TILE_MASK = TILE_SIZE - 1;
+
+    // Type tags
+    private static final byte EMPTY = 0;
+    private static final byte NUMBER = 1;
+    private static final byte TEXT = 2;      // TextContent in the side array
+    private static final byte CONTENT = 3;   // Content (formulas and others) in the side array
+
+    private final CellMap<Tile> tiles = new CellMap<>();
+    private int size;
+
+    @Override
+    public Cell getCell(long address) {
+        Content content = getContent(address);
+        if (content == null) {
+            return null;
+        }
+        Cell cell = new Cell(address);
+        cell.setContent(content);
+        return cell;
+    }
+
+    @Override
+    public Content getContent(long address) {
+        int row = CellAddress.row(address);
+        int column = CellAddress.column(address);
+        Tile tile = tiles.get(tileKey(row, column));
+        if (tile == null) {
+            return null;
+        }
+
+        int index = indexInTile(row, column);
+        return tile.contentAt(index);
+    }
+
+    @Override
+    public void setContent(long address, Content content) {
+        int row = CellAddress.row(address);
+        int column = CellAddress.column(address);
+        long key = tileKey(row, column);
+        Tile tile = tiles.get(key);
+
+        if (tile == null) {
+            if (content == null) {
+                return;
+            }
+            tile = new Tile(((row - 1) & ~TILE_MASK) + 1, column & ~TILE_MASK);
+            tiles.put(key, tile);
+        }
+
+        int index = indexInTile(row, column);
+        boolean wasEmpty = tile.types[index] == EMPTY;
+        if (tile.objects != null) {
+            tile.objects[index] = null;
+        }
+
+        if (content == null) {
+            tile.types[index] = EMPTY;
+            tile.numbers[index] = 0;
+            if (!wasEmpty) {
+                size--;
+                if (--tile.count == 0) {
+                    tiles.remove(key);
+                }
+            }
+            return;
+        }
+
+        if (content instanceof NumericContent) {
+            tile.types[index] = NUMBER;
+            tile.numbers[index] = ((NumericContent) content).getValueAsNumber();
+        } else if (content instanceof TextContent) {
+            tile.types[index] = TEXT;
+            tile.sideArray()[index] = content;
+        } else {
+            tile.types[index] = CONTENT;
+            tile.sideArray()[index] = content;
+        }
+
+        if (wasEmpty) {
+            size++;
+            tile.count++;
+        }
+    }
+
+    @Override
+    public double getNumber(long address) throws Exception {
+        int row = CellAddress.row(address);
+        int column = CellAddress.column(address);
+        Tile tile = tiles.get(tileKey(row, column));
+        if (tile == null || tile.types[indexInTile(row, column)] == EMPTY) {
+            throw new Exception("Invalid token: " + CellAddress.toString(address));
+        }
+        return tile.numberAt(indexInTile(row, column));
+    }
+
+    @Override
+    public void forEachInRange(int startRow, int startColumn, int endRow, int endColumn,
+                               DoubleConsumer consumer) throws Exception {
+        int firstTileRow = (startRow - 1) >>> TILE_BITS;
+        int lastTileRow = (endRow - 1) >>> TILE_BITS;
+        int firstTileColumn = startColumn >>> TILE_BITS;
+        int lastTileColumn = endColumn >>> TILE_BITS;
+        long tileArea = (long) (lastTileRow - firstTileRow + 1) * (lastTileColumn - firstTileColumn + 1);
+
+        if (tileArea <= tiles.size()) {
+            // Look up each tile overlapping the range, one band of tiles sharing the same rows at a time
+            Tile[] band = new Tile[lastTileColumn - firstTileColumn + 1];
+            for (int tileRow = firstTileRow; tileRow <= lastTileRow; tileRow++) {
+                int count = 0;
+                for (int tileColumn = firstTileColumn; tileColumn <= lastTileColumn; tileColumn++) {
+                    Tile tile = tiles.get(CellAddress.of(tileRow + 1, tileColumn));
+                    if (tile != null) {
+                        band[count++] = tile;
+                    }
+                }
+                forEachInBand(band, count, startRow, startColumn, endRow, endColumn, consumer);
+            }
+            return;
+        }
+
+        // Large range over few tiles: scan the existing tiles instead, then visit the overlapping
+        // ones in order; tile keys sort by tile row, then tile column
+        long[] keys = new long[tiles.size()];
+        int count = 0;
+        for (int slot = 0; slot < tiles.capacity(); slot++) {
+            long key = tiles.keyAt(slot);
+            if (key != 0L && CellAddress.row(key) - 1 >= firstTileRow && CellAddress.row(key) - 1 <= lastTileRow
+                    && CellAddress.column(key) >= firstTileColumn && CellAddress.column(key) <= lastTileColumn) {
+                keys[count++] = key;
+            }
+        }
+        Arrays.sort(keys, 0, count);
+
+        Tile[] band = new Tile[count];
+        int groupStart = 0;
+        while (groupStart < count) {
+            int groupEnd = groupStart;
+            while (groupEnd < count && CellAddress.row(keys[groupEnd]) == CellAddress.row(keys[groupStart])) {
+                band[groupEnd - groupStart] = tiles.get(keys[groupEnd]);
+                groupEnd++;
+            }
+            forEachInBand(band, groupEnd - groupStart, startRow, startColumn, endRow, endColumn, consumer);
+            groupStart = groupEnd;
+        }
+    }
+
+    // Feeds the values of the cells of a band of tiles inside the range in row-major order, so
+    // that sums add up in the same order as on the other engines
+    private static void forEachInBand(Tile[] band, int count, int startRow, int startColumn, int endRow,
+                                      int endColumn, DoubleConsumer consumer) throws Exception {
+        if (count == 0) {
+            return;
+        }
+        int firstRow = band[0].firstRow;
+        int fromRow = Math.max(startRow, firstRow) - firstRow;
+        int toRow = Math.min(endRow, firstRow + TILE_MASK) - firstRow;
+        for (int r = fromRow; r <= toRow; r++) {
+            for (int t = 0; t < count; t++) {
+                band[t].forEachInRow(r, startColumn, endColumn, consumer);
+            }
+        }
+    }
+
+    /**
+     * Copies the column tile by tile, from the numbers of each tile a row of tiles apart.
+     */
+    @Override
+    public void readColumn(int column, int startRow, int endRow, double[] values, byte[] states, int offset) {
+        int columnInTile = column & TILE_MASK;
+        for (int tileRow = (startRow - 1) >>> TILE_BITS; tileRow <= (endRow - 1) >>> TILE_BITS; tileRow++) {
+            Tile tile = tiles.get(CellAddress.of(tileRow + 1, column >>> TILE_BITS));
+            if (tile == null) {
+                continue;
+            }
+            int from = Math.max(startRow, tile.firstRow) - tile.firstRow;
+            int to = Math.min(endRow, tile.firstRow + TILE_MASK) - tile.firstRow;
+            int index = offset + tile.firstRow + from - startRow;
+            for (int r = from; r <= to; r++, index++) {
+                int cell = (r << TILE_BITS) | columnInTile;
+                byte type = tile.types[cell];
+                if (type == NUMBER) {
+                    values[index] = tile.numbers[cell];
+                    states[index] = NUMBER_CELL;
+                } else if (type != EMPTY) {
+                    states[index] = OTHER_CELL;
+                }
+            }
+        }
+    }
+
+    @Override
+    public void forEachCell(Visitor visitor) {
+        long[] keys = new long[tiles.size()];
+        int count = 0;
+        for (int slot = 0; slot < tiles.capacity(); slot++) {
+            long key = tiles.keyAt(slot);
+            if (key != 0L) {
+                keys[count++] = key;
+            }
+        }
+        // Tile keys sort by tile row, then tile column
+        Arrays.sort(keys, 0, count);
+
+        int groupStart = 0;
+        while (groupStart < count) {
+            int groupEnd = groupStart;
+            while (groupEnd < count && CellAddress.row(keys[groupEnd]) == CellAddress.row(keys[groupStart])) {
+                groupEnd++;
+            }
+
+            // Walk the band of tiles sharing the same rows, one row at a time
+            for (int r = 0; r < TILE_SIZE; r++) {
+                for (int t = groupStart; t < groupEnd; t++) {
+                    Tile tile = tiles.get(keys[t]);
+                    int base = r << TILE_BITS;
+                    for (int c = 0; c < TILE_SIZE; c++) {
+                        byte type = tile.types[base + c];
+                        if (type == NUMBER) {
+                            visitor.visitNumber(tile.firstRow + r, tile.firstColumn + c, tile.numbers[base + c]);
+                        } else if (type != EMPTY) {
+                            visitor.visitContent(tile.firstRow + r, tile.firstColumn + c, tile.contentAt(base + c));
+                        }
+                    }
+                }
+            }
+            groupStart = groupEnd;
+        }
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public int getMaxRow() {
+        int maxRow = 0;
+        for (int slot = 0; slot < tiles.capacity(); slot++) {
+            Tile tile = tiles.valueAt(slot);
+            if (tile != null && tile.firstRow + TILE_MASK > maxRow) {
+                for (int index = TILE_SIZE * TILE_SIZE - 1; index >= 0; index--) {
+                    if (tile.types[index] != EMPTY) {
+                        maxRow = Math.max(maxRow, tile.firstRow + (index >>> TILE_BITS));
+                        break;
+                    }
+                }
+            }
+        }
+        return maxRow;
+    }
+
+    @Override
+    public int getMaxColumn() {
+        int maxColumn = -1;
+        for (int slot = 0; slot < tiles.capacity(); slot++) {
+            Tile tile = tiles.valueAt(slot);
+            if (tile != null && tile.firstColumn + TILE_MASK > maxColumn) {
+                for (int index = 0; index < TILE_SIZE * TILE_SIZE; index++) {
+                    if (tile.types[index] != EMPTY) {
+                        maxColumn = Math.max(maxColumn, tile.firstColumn + (index & TILE_MASK));
+                    }
+                }
+            }
+        }
+        return maxColumn;
+    }
+
+    private static long tileKey(int row, int column) {
+        return CellAddress.of(((row - 1) >>> TILE_BITS) + 1, column >>> TILE_BITS);
+    }
+
+    private static int indexInTile(int row, int column) {
+        return (((row - 1) & TILE_MASK) << TILE_BITS) | (column & TILE_MASK);
+    }
+
+    /**
+     * A block of cells: numbers and type tags in primitive arrays, text and formulas on the side.
+     */
+    private static final class Tile {
+        final int firstRow;
+        final int firstColumn;
+        final double[] numbers = new double[TILE_SIZE * TILE_SIZE];
+        final byte[] types = new byte[TILE_SIZE * TILE_SIZE];
+        Object[] objects;   // Only allocated once the tile holds text or formulas
+        int count;
+
+        Tile(int firstRow, int firstColumn) {
+            this.firstRow = firstRow;
+            this.firstColumn = firstColumn;
+        }
+
+        Object[] sideArray() {
+            if (objects == null) {
+                objects = new Object[TILE_SIZE * TILE_SIZE];
+            }
+            return objects;
+        }
+
+        // Numbers are the only contents materialised; text and formulas are stored as they are
+        Content contentAt(int index) {
+            switch (types[index]) {
+                case NUMBER: return new NumericContent(numbers[index]);
+                case TEXT:
+                case CONTENT: return (Content) objects[index];
+                default: return null;
+            }
+        }
+
+        double numberAt(int index) throws Exception {
+            return types[index] == NUMBER ? numbers[index] : ((Content) objects[index]).getValueAsNumber();
+        }
+
+        // Feeds the values of the cells of one row of this tile inside the columns of a range
+        void forEachInRow(int r, int startColumn, int endColumn, DoubleConsumer consumer) throws Exception {
+            int fromColumn = Math.max(startColumn, firstColumn) - firstColumn;
+            int toColumn = Math.min(endColumn, firstColumn + TILE_MASK) - firstColumn;
+            int base = r << TILE_BITS;
+            for (int c = fromColumn; c <= toColumn; c++) {
+                byte type = types[base + c];
+                if (type == NUMBER) {
+                    consumer.accept(numbers[base + c]);
+                } else if (type != EMPTY) {
+                    consumer.accept(numberAt(base + c));
+                }
+            }
+        }
+    }
+}
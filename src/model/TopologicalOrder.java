@@ -0,0 +1,205 @@
+package model;
+
+import java.util.Arrays;
+import java.util.function.LongConsumer;
+
+/**
+ * Dynamic topological order of the formula cells (Pearce-Kelly).
+ * <p>
+ * Every formula holds a position such that a formula always comes after the formulas it
+ * reads. Adding a dependency that already agrees with the order costs nothing; otherwise
+ * only the formulas whose positions lie between the two ends of the new edge are searched
+ * and reassigned among themselves. The same bounded search answers whether a new formula
+ * would close a cycle without touching the graph. All searches use explicit stacks, so
+ * long dependency chains cannot overflow the call stack.
+ */
+public class TopologicalOrder {
+
+    /**
+     * The dependency graph being ordered. Successors of a formula are the formulas reading
+     * it; predecessors are the formulas it reads.
+     */
+    public interface Graph {
+        void forEachSuccessor(long node, LongConsumer consumer);
+
+        void forEachPredecessor(long node, LongConsumer consumer);
+    }
+
+    /**
+     * Position reported for cells that are not in the order; they come before every formula.
+     */
+    public static final int ABSENT = Integer.MIN_VALUE;
+
+    private final Graph graph;
+    private final CellIntMap positions = new CellIntMap();
+    private int first;      // Position given to the next formula added in front
+    private int last;       // Position given to the next formula added at the back
+
+    public TopologicalOrder(Graph graph) {
+        this.graph = graph;
+    }
+
+    /**
+     * @return The position of the formula, or {@link #ABSENT} if it is not in the order.
+     */
+    public int positionOf(long node) {
+        return positions.get(node, ABSENT);
+    }
+
+    public boolean contains(long node) {
+        return positions.containsKey(node);
+    }
+
+    /**
+     * Adds a formula in front of all the others, which is valid as long as it reads no other formula yet.
+     */
+    public void addFirst(long node) {
+        if (!positions.containsKey(node)) {
+            positions.put(node, --first);
+        }
+    }
+
+    /**
+     * Adds a formula behind all the others, which is valid as long as no other formula reads it yet.
+     */
+    public void addLast(long node) {
+        if (!positions.containsKey(node)) {
+            positions.put(node, ++last);
+        }
+    }
+
+    /**
+     * Removes a formula; removing nodes or edges never invalidates the order of the rest.
+     */
+    public void remove(long node) {
+        positions.remove(node);
+    }
+
+    /**
+     * @return The number of formulas in the order.
+     */
+    public int size() {
+        return positions.size();
+    }
+
+    /**
+     * Checks whether one of the targets can be reached from a node, following successors
+     * no later than {@code upperBound} in the order.
+     */
+    public boolean reaches(long from, AddressSet targets, int upperBound) {
+        return search(from, true, ABSENT, upperBound, targets) == null;
+    }
+
+    /**
+     * Records that {@code to} reads {@code from}, restoring the order if needed.
+     *
+     * @throws IllegalStateException if the edge closes a cycle.
+     */
+    public void addEdge(long from, long to) {
+        int upper = positionOf(from);
+        int lower = positionOf(to);
+        if (upper == ABSENT || upper < lower) {
+            return;     // Values and texts have no inputs, and ordered edges need nothing
+        }
+        if (lower == ABSENT) {
+            throw new IllegalStateException("Cell " + CellAddress.toString(to) + " is not a formula");
+        }
+
+        AddressSet cycle = new AddressSet();
+        cycle.add(from);
+        long[] forward = search(to, true, lower, upper, cycle);
+        if (forward == null) {
+            throw new IllegalStateException("Circular dependency between "
+                    + CellAddress.toString(from) + " and " + CellAddress.toString(to));
+        }
+        long[] backward = search(from, false, lower, upper, null);
+
+        // Reassign the positions of the affected formulas: first everything reaching the
+        // edge from behind, then everything it reaches, each group keeping its relative order
+        sort(backward, backward.length);
+        sort(forward, forward.length);
+        int[] slots = new int[backward.length + forward.length];
+        int count = 0;
+        for (long node : backward) {
+            slots[count++] = positionOf(node);
+        }
+        for (long node : forward) {
+            slots[count++] = positionOf(node);
+        }
+        Arrays.sort(slots);
+
+        count = 0;
+        for (long node : backward) {
+            positions.put(node, slots[count++]);
+        }
+        for (long node : forward) {
+            positions.put(node, slots[count++]);
+        }
+    }
+
+    /**
+     * Sorts the first {@code count} nodes by position; cells that are not formulas come first.
+     */
+    public void sort(long[] nodes, int count) {
+        long[] keys = new long[count];
+        for (int i = 0; i < count; i++) {
+            keys[i] = (long) positionOf(nodes[i]) << 32 | i;
+        }
+        Arrays.sort(keys);
+
+        long[] sorted = new long[count];
+        for (int i = 0; i < count; i++) {
+            sorted[i] = nodes[(int) keys[i]];
+        }
+        System.arraycopy(sorted, 0, nodes, 0, count);
+    }
+
+    /**
+     * Collects the formulas reachable from {@code start} (itself included) whose positions
+     * lie within the bounds, following successors or predecessors.
+     *
+     * @return The formulas visited, or null if one of the targets was reached.
+     */
+    private long[] search(long start, boolean successors, int lower, int upper, AddressSet targets) {
+        AddressSet visited = new AddressSet();
+        long[][] buffers = {new long[16], new long[16]};   // Pending nodes, then visited nodes
+        int[] sizes = {1, 0};
+        boolean[] hit = {false};
+        visited.add(start);
+        buffers[0][0] = start;
+
+        LongConsumer visit = node -> {
+            if (hit[0] || visited.contains(node)) {
+                return;
+            }
+            if (targets != null && targets.contains(node)) {
+                hit[0] = true;
+                return;
+            }
+            int position = positionOf(node);
+            if (position == ABSENT || position < lower || position > upper) {
+                return;
+            }
+            visited.add(node);
+            if (sizes[0] == buffers[0].length) {
+                buffers[0] = Arrays.copyOf(buffers[0], sizes[0] * 2);
+            }
+            buffers[0][sizes[0]++] = node;
+        };
+
+        while (sizes[0] > 0 && !hit[0]) {
+            long node = buffers[0][--sizes[0]];
+            if (sizes[1] == buffers[1].length) {
+                buffers[1] = Arrays.copyOf(buffers[1], sizes[1] * 2);
+            }
+            buffers[1][sizes[1]++] = node;
+
+            if (successors) {
+                graph.forEachSuccessor(node, visit);
+            } else {
+                graph.forEachPredecessor(node, visit);
+            }
+        }
+        return hit[0] ? null : Arrays.copyOf(buffers[1], sizes[1]);
+    }
+}
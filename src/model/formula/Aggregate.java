@@ -0,0 +1,56 @@
+package model.formula;
+
+import java.util.function.DoubleConsumer;
+
+/**
+ * Running count, sum, minimum and maximum of the values fed to an aggregate function.
+ * Values can be added one at a time or merged in bulk from precomputed partial aggregates.
+ */
+public final class Aggregate implements DoubleConsumer {
+    private long count;
+    private double sum;
+    private double min = Double.POSITIVE_INFINITY;
+    private double max = Double.NEGATIVE_INFINITY;
+
+    @Override
+    public void accept(double value) {
+        count++;
+        sum += value;
+        min = Math.min(min, value);
+        max = Math.max(max, value);
+    }
+
+    /**
+     * Adds the aggregate of a group of values.
+     *
+     * @param count The number of values in the group.
+     * @param sum   The sum of the group.
+     * @param min   The minimum of the group.
+     * @param max   The maximum of the group.
+     */
+    public void merge(long count, double sum, double min, double max) {
+        if (count == 0) {
+            return;
+        }
+        this.count += count;
+        this.sum += sum;
+        this.min = Math.min(this.min, min);
+        this.max = Math.max(this.max, max);
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public double getSum() {
+        return sum;
+    }
+
+    public double getMin() {
+        return min;
+    }
+
+    public double getMax() {
+        return max;
+    }
+}
@@ -0,0 +1,80 @@
+package model.formula;
+
+/**
+ * An arithmetic operation (+, -, *, /, %) between two expressions.
+ */
+public final class BinaryOperation implements Expression {
+    private final char operator;
+    private final Expression left;
+    private final Expression right;
+
+    public BinaryOperation(char operator, Expression left, Expression right) {
+        this.operator = operator;
+        this.left = left;
+        this.right = right;
+    }
+
+    public char getOperator() {
+        return operator;
+    }
+
+    public Expression getLeft() {
+        return left;
+    }
+
+    public Expression getRight() {
+        return right;
+    }
+
+    @Override
+    public double evaluate(CellValues values) throws Exception {
+        return apply(operator, left.evaluate(values), right.evaluate(values));
+    }
+
+    /**
+     * Applies an arithmetic operator to two operands.
+     *
+     * @param operator The operator (+, -, *, /, %).
+     * @param a        The left operand.
+     * @param b        The right operand.
+     * @return The result of the operation.
+     * @throws Exception On division by zero or an unknown operator.
+     */
+    public static double apply(char operator, double a, double b) throws Exception {
+        switch (operator) {
+            case '+': return a + b;
+            case '-': return a - b;
+            case '*': return a * b;
+            case '/': return divide(a, b);
+            case '%': return remainder(a, b);
+            default: throw new Exception("Invalid operator: " + operator);
+        }
+    }
+
+    /**
+     * Divides two operands, failing on division by zero.
+     */
+    public static double divide(double a, double b) throws Exception {
+        if (b == 0) throw new Exception("Division by zero");
+        return a / b;
+    }
+
+    /**
+     * Computes the remainder of two operands, failing on division by zero.
+     */
+    public static double remainder(double a, double b) throws Exception {
+        if (b == 0) throw new Exception("Division by zero");
+        return a % b;
+    }
+
+    @Override
+    public void collectReferences(ReferenceCollector references) {
+        left.collectReferences(references);
+        right.collectReferences(references);
+    }
+
+    @Override
+    public String toString() {
+        return "(" + left + operator + right + ")";
+    }
+}
@@ -0,0 +1,45 @@
+package model.formula;
+
+import model.CellAddress;
+
+/**
+ * A reference to a single cell, resolved to its row and column when the formula is parsed.
+ */
+public final class CellReference implements Expression {
+    private final int row;            // 1-based row number
+    private final int column;         // 0-based column index (A -> 0)
+    private final long address;       // Packed address (see CellAddress)
+
+    public CellReference(int row, int column) {
+        this.row = row;
+        this.column = column;
+        this.address = CellAddress.of(row, column);
+    }
+
+    public int getRow() {
+        return row;
+    }
+
+    public int getColumn() {
+        return column;
+    }
+
+    public long getAddress() {
+        return address;
+    }
+
+    @Override
+    public double evaluate(CellValues values) throws Exception {
+        return values.get(row, column);
+    }
+
+    @Override
+    public void collectReferences(ReferenceCollector references) {
+        references.cell(address);
+    }
+
+    @Override
+    public String toString() {
+        return CellAddress.toString(address);
+    }
+}
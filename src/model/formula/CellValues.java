@@ -0,0 +1,49 @@
+package model.formula;
+
+import java.util.function.DoubleConsumer;
+
+/**
+ * Read access to the numeric values of cells, used to evaluate compiled formulas.
+ * Cells are addressed by 1-based row number and 0-based column index.
+ */
+public interface CellValues {
+
+    /**
+     * Returns the numeric value of a cell.
+     *
+     * @param row    The 1-based row number.
+     * @param column The 0-based column index.
+     * @return The numeric value of the cell.
+     * @throws Exception If the cell is empty or does not hold a numeric value.
+     */
+    double get(int row, int column) throws Exception;
+
+    /**
+     * Feeds the numeric value of every non-empty cell in a rectangular range to the consumer.
+     *
+     * @param startRow    The first row of the range.
+     * @param startColumn The first column of the range.
+     * @param endRow      The last row of the range (inclusive).
+     * @param endColumn   The last column of the range (inclusive).
+     * @param consumer    The consumer receiving the values.
+     * @throws Exception If a cell in the range does not hold a numeric value.
+     */
+    void forEachInRange(int startRow, int startColumn, int endRow, int endColumn,
+                        DoubleConsumer consumer) throws Exception;
+
+    /**
+     * Adds the numeric value of every non-empty cell in a rectangular range to an aggregate.
+     * Implementations may answer from precomputed aggregates instead of visiting each cell.
+     *
+     * @param startRow    The first row of the range.
+     * @param startColumn The first column of the range.
+     * @param endRow      The last row of the range (inclusive).
+     * @param endColumn   The last column of the range (inclusive).
+     * @param aggregate   The aggregate receiving the values.
+     * @throws Exception If a cell in the range does not hold a numeric value.
+     */
+    default void aggregateRange(int startRow, int startColumn, int endRow, int endColumn,
+                                Aggregate aggregate) throws Exception {
+        forEachInRange(startRow, startColumn, endRow, endColumn, aggregate);
+    }
+}
@@ -0,0 +1,252 @@
+package model.formula;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Minimal class file writer used by {@link FormulaCompiler}.
+ * <p>
+ * It only supports what generated formulas need: one final field, a constructor and a single
+ * method made of straight-line code. Since the code has no branches, no stack map frames are
+ * required and the class verifies as is.
+ */
+final class ClassFileBuilder {
+    // Opcodes used by the generated code
+    static final int ICONST_0 = 0x03;
+    static final int DCONST_0 = 0x0e;
+    static final int DCONST_1 = 0x0f;
+    static final int BIPUSH = 0x10;
+    static final int SIPUSH = 0x11;
+    static final int LDC_W = 0x13;
+    static final int LDC2_W = 0x14;
+    static final int ALOAD_0 = 0x2a;
+    static final int ALOAD_1 = 0x2b;
+    static final int AALOAD = 0x32;
+    static final int DADD = 0x63;
+    static final int DSUB = 0x67;
+    static final int DMUL = 0x6b;
+    static final int DNEG = 0x77;
+    static final int DRETURN = 0xaf;
+    static final int RETURN = 0xb1;
+    static final int GETFIELD = 0xb4;
+    static final int PUTFIELD = 0xb5;
+    static final int INVOKESPECIAL = 0xb7;
+    static final int INVOKESTATIC = 0xb8;
+    static final int INVOKEINTERFACE = 0xb9;
+
+    private static final int CLASS_VERSION = 52; // Java 8, the oldest version hidden classes are tested with
+    private static final int MAX_CODE_LENGTH = 65535;
+
+    private final ByteArrayOutputStream constantPoolBytes = new ByteArrayOutputStream();
+    private final DataOutputStream constantPool = new DataOutputStream(constantPoolBytes);
+    private final Map<String, Integer> constants = new HashMap<>();
+    private int constantCount = 1;
+
+    private final ByteArrayOutputStream methodBytes = new ByteArrayOutputStream();
+    private final DataOutputStream methods = new DataOutputStream(methodBytes);
+    private int methodCount = 0;
+
+    private final String className;
+
+    ClassFileBuilder(String className) {
+        this.className = className;
+    }
+
+    // ---- Constant pool ----
+
+    int utf8(String value) throws IOException {
+        Integer index = constants.get("U" + value);
+        if (index != null) {
+            return index;
+        }
+        constantPool.writeByte(1);
+        constantPool.writeUTF(value);
+        return register("U" + value, 1);
+    }
+
+    int classRef(String internalName) throws IOException {
+        Integer index = constants.get("C" + internalName);
+        if (index != null) {
+            return index;
+        }
+        int name = utf8(internalName);
+        constantPool.writeByte(7);
+        constantPool.writeShort(name);
+        return register("C" + internalName, 1);
+    }
+
+    int integer(int value) throws IOException {
+        Integer index = constants.get("I" + value);
+        if (index != null) {
+            return index;
+        }
+        constantPool.writeByte(3);
+        constantPool.writeInt(value);
+        return register("I" + value, 1);
+    }
+
+    int doubleConstant(double value) throws IOException {
+        String key = "D" + Double.doubleToRawLongBits(value);
+        Integer index = constants.get(key);
+        if (index != null) {
+            return index;
+        }
+        constantPool.writeByte(6);
+        constantPool.writeDouble(value);
+        return register(key, 2); // Doubles take two constant pool slots
+    }
+
+    int fieldRef(String owner, String name, String descriptor) throws IOException {
+        return memberRef(9, owner, name, descriptor);
+    }
+
+    int methodRef(String owner, String name, String descriptor) throws IOException {
+        return memberRef(10, owner, name, descriptor);
+    }
+
+    int interfaceMethodRef(String owner, String name, String descriptor) throws IOException {
+        return memberRef(11, owner, name, descriptor);
+    }
+
+    private int memberRef(int tag, String owner, String name, String descriptor) throws IOException {
+        String key = "M" + tag + owner + "." + name + descriptor;
+        Integer index = constants.get(key);
+        if (index != null) {
+            return index;
+        }
+        int ownerIndex = classRef(owner);
+        int nameAndType = nameAndType(name, descriptor);
+        constantPool.writeByte(tag);
+        constantPool.writeShort(ownerIndex);
+        constantPool.writeShort(nameAndType);
+        return register(key, 1);
+    }
+
+    private int nameAndType(String name, String descriptor) throws IOException {
+        String key = "N" + name + descriptor;
+        Integer index = constants.get(key);
+        if (index != null) {
+            return index;
+        }
+        int nameIndex = utf8(name);
+        int descriptorIndex = utf8(descriptor);
+        constantPool.writeByte(12);
+        constantPool.writeShort(nameIndex);
+        constantPool.writeShort(descriptorIndex);
+        return register(key, 1);
+    }
+
+    private int register(String key, int slots) {
+        int index = constantCount;
+        constants.put(key, index);
+        constantCount += slots;
+        return index;
+    }
+
+    // ---- Methods ----
+
+    /**
+     * Adds a method whose body is the given straight-line code.
+     */
+    void addMethod(int access, String name, String descriptor, Code code, int maxLocals) throws IOException {
+        byte[] bytes = code.toByteArray();
+        if (bytes.length > MAX_CODE_LENGTH) {
+            throw new IOException("Method too large: " + bytes.length + " bytes");
+        }
+
+        methods.writeShort(access);
+        methods.writeShort(utf8(name));
+        methods.writeShort(utf8(descriptor));
+        methods.writeShort(1);             // attributes_count
+        methods.writeShort(utf8("Code"));
+        methods.writeInt(12 + bytes.length);
+        methods.writeShort(code.maxStack);
+        methods.writeShort(maxLocals);
+        methods.writeInt(bytes.length);
+        methods.write(bytes);
+        methods.writeShort(0);             // exception_table_length
+        methods.writeShort(0);             // attributes_count
+        methodCount++;
+    }
+
+    /**
+     * Writes the class file with a single private final field and the methods added so far.
+     */
+    byte[] build(String superName, String interfaceName, String fieldName, String fieldDescriptor) throws IOException {
+        int thisClass = classRef(className);
+        int superClass = classRef(superName);
+        int interfaceClass = classRef(interfaceName);
+        int fieldNameIndex = utf8(fieldName);
+        int fieldDescriptorIndex = utf8(fieldDescriptor);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(0xCAFEBABE);
+        out.writeShort(0);
+        out.writeShort(CLASS_VERSION);
+        out.writeShort(constantCount);
+        out.write(constantPoolBytes.toByteArray());
+        out.writeShort(0x0031);            // ACC_PUBLIC | ACC_FINAL | ACC_SUPER
+        out.writeShort(thisClass);
+        out.writeShort(superClass);
+        out.writeShort(1);
+        out.writeShort(interfaceClass);
+        out.writeShort(1);                 // fields_count
+        out.writeShort(0x0012);            // ACC_PRIVATE | ACC_FINAL
+        out.writeShort(fieldNameIndex);
+        out.writeShort(fieldDescriptorIndex);
+        out.writeShort(0);
+        out.writeShort(methodCount);
+        out.write(methodBytes.toByteArray());
+        out.writeShort(0);                 // attributes_count
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Straight-line bytecode with operand stack depth tracking (in slots).
+     */
+    static final class Code {
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        private int stack;
+        private int maxStack;
+
+        void op(int opcode, int stackDelta) {
+            bytes.write(opcode);
+            adjust(stackDelta);
+        }
+
+        void op1(int opcode, int operand, int stackDelta) {
+            bytes.write(opcode);
+            bytes.write(operand);
+            adjust(stackDelta);
+        }
+
+        void op2(int opcode, int operand, int stackDelta) {
+            bytes.write(opcode);
+            bytes.write(operand >>> 8);
+            bytes.write(operand);
+            adjust(stackDelta);
+        }
+
+        void invokeInterface(int methodIndex, int argumentSlots, int stackDelta) {
+            bytes.write(INVOKEINTERFACE);
+            bytes.write(methodIndex >>> 8);
+            bytes.write(methodIndex);
+            bytes.write(argumentSlots + 1);
+            bytes.write(0);
+            adjust(stackDelta);
+        }
+
+        private void adjust(int delta) {
+            stack += delta;
+            maxStack = Math.max(maxStack, stack);
+        }
+
+        byte[] toByteArray() {
+            return bytes.toByteArray();
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package model.formula;
+
+/**
+ * A formula translated to JVM bytecode by {@link FormulaCompiler}.
+ */
+public interface CompiledFormula {
+
+    /**
+     * Evaluates the formula against the given cell values.
+     *
+     * @param values The values of the cells of the spreadsheet.
+     * @return The numeric result of the formula.
+     * @throws Exception If a referenced value is invalid or an operation fails.
+     */
+    double eval(CellValues values) throws Exception;
+}
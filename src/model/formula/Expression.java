@@ -0,0 +1,36 @@
+package model.formula;
+
+/**
+ * A node of a compiled formula. Formulas are parsed once by {@link FormulaParser}
+ * into an immutable tree of expressions that can be evaluated any number of times.
+ */
+public interface Expression {
+
+    /**
+     * Evaluates the expression against the given cell values.
+     *
+     * @param values The values of the cells of the spreadsheet.
+     * @return The numeric result of the expression.
+     * @throws Exception If a referenced value is invalid or an operation fails.
+     */
+    double evaluate(CellValues values) throws Exception;
+
+    /**
+     * Adds every value produced by this expression to an aggregate.
+     * Scalar expressions produce a single value, ranges produce one value per non-empty cell.
+     *
+     * @param values    The values of the cells of the spreadsheet.
+     * @param aggregate The aggregate receiving the values.
+     * @throws Exception If a referenced value is invalid or an operation fails.
+     */
+    default void aggregate(CellValues values, Aggregate aggregate) throws Exception {
+        aggregate.accept(evaluate(values));
+    }
+
+    /**
+     * Reports the cells and ranges referenced by this expression to the given collector.
+     *
+     * @param references The collector receiving the references.
+     */
+    void collectReferences(ReferenceCollector references);
+}
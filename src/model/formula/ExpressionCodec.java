@@ -0,0 +1,148 @@
+package model.formula;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Binary encoding of compiled formulas, so a saved formula can be restored without
+ * parsing it again. Each node is a one-byte tag followed by its fields, children first
+ * in the order they appear in the formula. Calls to built-in functions store the function's
+ * identifier; calls to functions registered by the application store its name, since their
+ * identifiers depend on the order they were registered in.
+ */
+public final class ExpressionCodec {
+    private static final byte NONE = 0;     // A formula with syntax errors has no expression
+    private static final byte NUMBER = 1;
+    private static final byte CELL = 2;
+    private static final byte RANGE = 3;
+    private static final byte NEGATION = 4;
+    private static final byte BINARY = 5;
+    private static final byte FUNCTION = 6;
+    private static final byte NAMED_FUNCTION = 7;
+
+    private ExpressionCodec() {
+    }
+
+    /**
+     * Writes an expression, or a marker for a missing one.
+     *
+     * @param expression The expression to write, or null.
+     * @param out        The output receiving the encoded expression.
+     * @throws IOException If the output fails.
+     */
+    public static void write(Expression expression, DataOutput out) throws IOException {
+        if (expression == null) {
+            out.writeByte(NONE);
+        } else if (expression instanceof NumberLiteral) {
+            out.writeByte(NUMBER);
+            out.writeDouble(((NumberLiteral) expression).getValue());
+        } else if (expression instanceof CellReference) {
+            CellReference cell = (CellReference) expression;
+            out.writeByte(CELL);
+            out.writeInt(cell.getRow());
+            out.writeInt(cell.getColumn());
+        } else if (expression instanceof RangeReference) {
+            RangeReference range = (RangeReference) expression;
+            out.writeByte(RANGE);
+            out.writeInt(range.getStartRow());
+            out.writeInt(range.getStartColumn());
+            out.writeInt(range.getEndRow());
+            out.writeInt(range.getEndColumn());
+        } else if (expression instanceof Negation) {
+            out.writeByte(NEGATION);
+            write(((Negation) expression).getOperand(), out);
+        } else if (expression instanceof BinaryOperation) {
+            BinaryOperation operation = (BinaryOperation) expression;
+            out.writeByte(BINARY);
+            out.writeChar(operation.getOperator());
+            write(operation.getLeft(), out);
+            write(operation.getRight(), out);
+        } else if (expression instanceof FunctionCall) {
+            FunctionCall call = (FunctionCall) expression;
+            FormulaFunction function = call.getFunction();
+            if (FunctionRegistry.isBuiltIn(function)) {
+                out.writeByte(FUNCTION);
+                out.writeByte(function.getId());
+            } else {
+                // Names are made of letters only, one byte each
+                out.writeByte(NAMED_FUNCTION);
+                out.writeShort(function.getName().length());
+                out.writeBytes(function.getName());
+            }
+            out.writeInt(call.getArguments().size());
+            for (Expression argument : call.getArguments()) {
+                write(argument, out);
+            }
+        } else {
+            throw new IOException("Cannot encode expression " + expression.getClass().getName());
+        }
+    }
+
+    /**
+     * Reads an expression written by {@link #write}, advancing the buffer past it.
+     *
+     * @param in The buffer positioned at the encoded expression.
+     * @return The expression, or null if a missing one was written.
+     * @throws IOException If the bytes are not a valid encoding.
+     */
+    public static Expression read(ByteBuffer in) throws IOException {
+        byte tag = in.get();
+        switch (tag) {
+            case NONE:
+                return null;
+            case NUMBER:
+                return new NumberLiteral(in.getDouble());
+            case CELL:
+                return new CellReference(in.getInt(), in.getInt());
+            case RANGE: {
+                CellReference start = new CellReference(in.getInt(), in.getInt());
+                CellReference end = new CellReference(in.getInt(), in.getInt());
+                return new RangeReference(start, end);
+            }
+            case NEGATION:
+                return new Negation(read(in));
+            case BINARY: {
+                char operator = in.getChar();
+                Expression left = read(in);
+                Expression right = read(in);
+                return new BinaryOperation(operator, left, right);
+            }
+            case FUNCTION:
+            case NAMED_FUNCTION: {
+                FormulaFunction function = tag == FUNCTION ? readBuiltIn(in) : readNamed(in);
+                int count = in.getInt();
+                List<Expression> arguments = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    arguments.add(read(in));
+                }
+                return new FunctionCall(function, arguments);
+            }
+            default:
+                throw new IOException("Unknown expression tag " + tag);
+        }
+    }
+
+    private static FormulaFunction readBuiltIn(ByteBuffer in) throws IOException {
+        int id = in.get() & 0xff;
+        FormulaFunction function = FunctionRegistry.forId(id);
+        if (function == null || !FunctionRegistry.isBuiltIn(function)) {
+            throw new IOException("Unknown function id " + id);
+        }
+        return function;
+    }
+
+    private static FormulaFunction readNamed(ByteBuffer in) throws IOException {
+        byte[] bytes = new byte[in.getShort()];
+        in.get(bytes);
+        String name = new String(bytes, StandardCharsets.US_ASCII);
+        FormulaFunction function = FunctionRegistry.forName(name);
+        if (function == null) {
+            throw new IOException("Unknown function " + name + "; register it before reading formulas calling it");
+        }
+        return function;
+    }
+}
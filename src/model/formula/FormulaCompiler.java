@@ -0,0 +1,241 @@
+package model.formula;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Translates hot formulas into hidden JVM classes implementing {@link CompiledFormula}.
+ * <p>
+ * Arithmetic and single-cell loads are emitted as bytecode so the JIT can inline them;
+ * function calls and any other node are delegated to the interpreted {@link Expression},
+ * which the generated class keeps in a field. Compilation is controlled by a global switch
+ * and a threshold of interpreted evaluations, and counters are kept so the interpreted and
+ * compiled tiers can be compared.
+ */
+public final class FormulaCompiler {
+    private static final String CLASS_NAME = "model/formula/GeneratedFormula";
+    private static final String INTERFACE_NAME = "model/formula/CompiledFormula";
+    private static final String EXPRESSION_NAME = "model/formula/Expression";
+    private static final String CELL_VALUES_NAME = "model/formula/CellValues";
+    private static final String NODES_FIELD = "nodes";
+    private static final String NODES_DESCRIPTOR = "[L" + EXPRESSION_NAME + ";";
+
+    private static volatile boolean enabled = true;
+    private static volatile int threshold = 1000;
+
+    private static final LongAdder interpretedEvaluations = new LongAdder();
+    private static final LongAdder compiledEvaluations = new LongAdder();
+    private static final LongAdder compilations = new LongAdder();
+    private static final LongAdder compilationFailures = new LongAdder();
+
+    private FormulaCompiler() {
+    }
+
+    /**
+     * Enables or disables compilation of hot formulas. Formulas already compiled keep running compiled.
+     */
+    public static void setEnabled(boolean value) {
+        enabled = value;
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Sets how many interpreted evaluations a formula needs before it is compiled.
+     */
+    public static void setThreshold(int value) {
+        threshold = Math.max(0, value);
+    }
+
+    public static int getThreshold() {
+        return threshold;
+    }
+
+    public static long getInterpretedEvaluations() {
+        return interpretedEvaluations.sum();
+    }
+
+    public static long getCompiledEvaluations() {
+        return compiledEvaluations.sum();
+    }
+
+    public static long getCompilations() {
+        return compilations.sum();
+    }
+
+    public static long getCompilationFailures() {
+        return compilationFailures.sum();
+    }
+
+    /**
+     * Resets all counters to zero.
+     */
+    public static void resetCounters() {
+        interpretedEvaluations.reset();
+        compiledEvaluations.reset();
+        compilations.reset();
+        compilationFailures.reset();
+    }
+
+    static void recordInterpreted() {
+        interpretedEvaluations.increment();
+    }
+
+    static void recordCompiled() {
+        compiledEvaluations.increment();
+    }
+
+    /**
+     * Evaluates an expression, compiling it once it has been interpreted often enough.
+     * Callers keep one {@link Tier} per formula.
+     */
+    public static double evaluate(Expression expression, Tier tier, CellValues values) throws Exception {
+        CompiledFormula compiled = tier.compiled;
+        if (compiled != null) {
+            recordCompiled();
+            return compiled.eval(values);
+        }
+
+        if (enabled && !tier.attempted && ++tier.evaluations >= threshold) {
+            tier.attempted = true;
+            tier.compiled = compile(expression);
+        }
+        recordInterpreted();
+        return expression.evaluate(values);
+    }
+
+    /**
+     * Compiles an expression into a hidden class.
+     *
+     * @param expression The expression to compile.
+     * @return The compiled formula, or null if compilation failed.
+     */
+    public static CompiledFormula compile(Expression expression) {
+        try {
+            List<Expression> nodes = new ArrayList<>();
+            byte[] bytes = generate(expression, nodes);
+
+            MethodHandles.Lookup lookup = MethodHandles.lookup().defineHiddenClass(bytes, true);
+            CompiledFormula compiled = (CompiledFormula) lookup
+                    .findConstructor(lookup.lookupClass(), MethodType.methodType(void.class, Expression[].class))
+                    .invoke((Object) nodes.toArray(new Expression[0]));
+            compilations.increment();
+            return compiled;
+        } catch (Throwable e) {
+            compilationFailures.increment();
+            return null;
+        }
+    }
+
+    // Generates the class file for an expression; nodes delegated to the interpreter are added to nodes
+    private static byte[] generate(Expression expression, List<Expression> nodes) throws Exception {
+        ClassFileBuilder builder = new ClassFileBuilder(CLASS_NAME);
+
+        // Constructor: super(); this.nodes = nodes;
+        ClassFileBuilder.Code init = new ClassFileBuilder.Code();
+        init.op(ClassFileBuilder.ALOAD_0, 1);
+        init.op2(ClassFileBuilder.INVOKESPECIAL, builder.methodRef("java/lang/Object", "<init>", "()V"), -1);
+        init.op(ClassFileBuilder.ALOAD_0, 1);
+        init.op(ClassFileBuilder.ALOAD_1, 1);
+        init.op2(ClassFileBuilder.PUTFIELD, builder.fieldRef(CLASS_NAME, NODES_FIELD, NODES_DESCRIPTOR), -2);
+        init.op(ClassFileBuilder.RETURN, 0);
+        builder.addMethod(0x0001, "<init>", "(" + NODES_DESCRIPTOR + ")V", init, 2);
+
+        // double eval(CellValues values)
+        ClassFileBuilder.Code eval = new ClassFileBuilder.Code();
+        emit(expression, builder, eval, nodes);
+        eval.op(ClassFileBuilder.DRETURN, -2);
+        builder.addMethod(0x0001, "eval", "(L" + CELL_VALUES_NAME + ";)D", eval, 2);
+
+        return builder.build("java/lang/Object", INTERFACE_NAME, NODES_FIELD, NODES_DESCRIPTOR);
+    }
+
+    // Emits code leaving the double value of the expression on the operand stack
+    private static void emit(Expression expression, ClassFileBuilder builder, ClassFileBuilder.Code code,
+                             List<Expression> nodes) throws Exception {
+        if (expression instanceof NumberLiteral) {
+            double value = ((NumberLiteral) expression).getValue();
+            if (Double.doubleToRawLongBits(value) == 0L) {
+                code.op(ClassFileBuilder.DCONST_0, 2);
+            } else if (value == 1.0) {
+                code.op(ClassFileBuilder.DCONST_1, 2);
+            } else {
+                code.op2(ClassFileBuilder.LDC2_W, builder.doubleConstant(value), 2);
+            }
+        } else if (expression instanceof CellReference) {
+            CellReference reference = (CellReference) expression;
+            code.op(ClassFileBuilder.ALOAD_1, 1);
+            pushInt(reference.getRow(), builder, code);
+            pushInt(reference.getColumn(), builder, code);
+            code.invokeInterface(builder.interfaceMethodRef(CELL_VALUES_NAME, "get", "(II)D"), 2, -1);
+        } else if (expression instanceof Negation) {
+            emit(((Negation) expression).getOperand(), builder, code, nodes);
+            code.op(ClassFileBuilder.DNEG, 0);
+        } else if (expression instanceof BinaryOperation) {
+            BinaryOperation operation = (BinaryOperation) expression;
+            emit(operation.getLeft(), builder, code, nodes);
+            emit(operation.getRight(), builder, code, nodes);
+            switch (operation.getOperator()) {
+                case '+': code.op(ClassFileBuilder.DADD, -2); break;
+                case '-': code.op(ClassFileBuilder.DSUB, -2); break;
+                case '*': code.op(ClassFileBuilder.DMUL, -2); break;
+                case '/':
+                    code.op2(ClassFileBuilder.INVOKESTATIC,
+                            builder.methodRef("model/formula/BinaryOperation", "divide", "(DD)D"), -2);
+                    break;
+                case '%':
+                    code.op2(ClassFileBuilder.INVOKESTATIC,
+                            builder.methodRef("model/formula/BinaryOperation", "remainder", "(DD)D"), -2);
+                    break;
+                default: throw new Exception("Invalid operator: " + operation.getOperator());
+            }
+        } else {
+            // Delegate to the interpreter: this.nodes[index].evaluate(values)
+            int index = nodes.size();
+            nodes.add(expression);
+            code.op(ClassFileBuilder.ALOAD_0, 1);
+            code.op2(ClassFileBuilder.GETFIELD, builder.fieldRef(CLASS_NAME, NODES_FIELD, NODES_DESCRIPTOR), 0);
+            pushInt(index, builder, code);
+            code.op(ClassFileBuilder.AALOAD, -1);
+            code.op(ClassFileBuilder.ALOAD_1, 1);
+            code.invokeInterface(builder.interfaceMethodRef(EXPRESSION_NAME, "evaluate",
+                    "(L" + CELL_VALUES_NAME + ";)D"), 1, 0);
+        }
+    }
+
+    private static void pushInt(int value, ClassFileBuilder builder, ClassFileBuilder.Code code) throws Exception {
+        if (value >= -1 && value <= 5) {
+            code.op(ClassFileBuilder.ICONST_0 + value, 1);
+        } else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+            code.op1(ClassFileBuilder.BIPUSH, value & 0xff, 1);
+        } else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+            code.op2(ClassFileBuilder.SIPUSH, value & 0xffff, 1);
+        } else {
+            code.op2(ClassFileBuilder.LDC_W, builder.integer(value), 1);
+        }
+    }
+
+    /**
+     * Per-formula compilation state: how often it was interpreted and its compiled form, if any.
+     * <p>
+     * The counter and the attempted flag are deliberately unsynchronized, as they are read on
+     * every interpreted evaluation. Threads evaluating the same formula can race on them, which
+     * at worst loses increments, delaying compilation, or compiles the formula twice, the last
+     * compiled class winning. Both outcomes are benign: every compiled class computes what the
+     * interpreter does, and the volatile {@code compiled} field publishes it fully constructed.
+     */
+    public static final class Tier {
+        private int evaluations;        // Racy, see above
+        private boolean attempted;      // Racy, see above
+        private volatile CompiledFormula compiled;
+
+        public boolean isCompiled() {
+            return compiled != null;
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package model.formula;
+
+import java.util.List;
+import java.util.function.DoubleBinaryOperator;
+import java.util.function.DoubleUnaryOperator;
+
+/**
+ * A function that can be called in formulas, registered in the {@link FunctionRegistry}.
+ * <p>
+ * Functions are resolved once, when a formula is parsed, so a call dispatches straight to
+ * its implementation. There are three kinds: functions of one or of two numbers, and
+ * aggregates taking any number of arguments, ranges included, whose values are reduced
+ * from an {@link Aggregate}.
+ */
+public abstract class FormulaFunction {
+
+    /**
+     * Reduces the values given to an aggregate function to its result.
+     */
+    public interface Reducer {
+        double reduce(Aggregate aggregate) throws Exception;
+    }
+
+    private final int id;
+    private final String name;
+
+    FormulaFunction(int id, String name) {
+        this.id = id;
+        this.name = name;
+    }
+
+    /**
+     * @return The identifier of the function, given in registration order: only those of the
+     * built-in functions are the same in every run, and saved in snapshots.
+     */
+    public int getId() {
+        return id;
+    }
+
+    /**
+     * @return The name of the function in upper case (e.g., "SUMA").
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Checks the arguments of a call when the formula is parsed.
+     *
+     * @throws Exception If the function cannot be called with these arguments.
+     */
+    abstract void checkArguments(List<Expression> arguments) throws Exception;
+
+    /**
+     * Evaluates a call with arguments accepted by {@link #checkArguments}.
+     */
+    abstract double apply(Expression[] arguments, CellValues values) throws Exception;
+
+    @Override
+    public String toString() {
+        return name;
+    }
+
+    /**
+     * A function of one number (e.g., "ABS(A1)").
+     */
+    static final class Unary extends FormulaFunction {
+        private final DoubleUnaryOperator operator;
+
+        Unary(int id, String name, DoubleUnaryOperator operator) {
+            super(id, name);
+            this.operator = operator;
+        }
+
+        @Override
+        void checkArguments(List<Expression> arguments) throws Exception {
+            checkScalars(this, arguments, 1);
+        }
+
+        @Override
+        double apply(Expression[] arguments, CellValues values) throws Exception {
+            return operator.applyAsDouble(arguments[0].evaluate(values));
+        }
+    }
+
+    /**
+     * A function of two numbers (e.g., "POTENCIA(A1;2)").
+     */
+    static final class Binary extends FormulaFunction {
+        private final DoubleBinaryOperator operator;
+
+        Binary(int id, String name, DoubleBinaryOperator operator) {
+            super(id, name);
+            this.operator = operator;
+        }
+
+        @Override
+        void checkArguments(List<Expression> arguments) throws Exception {
+            checkScalars(this, arguments, 2);
+        }
+
+        @Override
+        double apply(Expression[] arguments, CellValues values) throws Exception {
+            return operator.applyAsDouble(arguments[0].evaluate(values), arguments[1].evaluate(values));
+        }
+    }
+
+    /**
+     * A function of any number of values (e.g., "SUMA(A1:B3;C1;3)").
+     */
+    static final class Aggregating extends FormulaFunction {
+        private final Reducer reducer;
+
+        Aggregating(int id, String name, Reducer reducer) {
+            super(id, name);
+            this.reducer = reducer;
+        }
+
+        @Override
+        void checkArguments(List<Expression> arguments) {
+            // Any number of values and ranges
+        }
+
+        @Override
+        double apply(Expression[] arguments, CellValues values) throws Exception {
+            Aggregate aggregate = new Aggregate();
+            for (Expression argument : arguments) {
+                argument.aggregate(values, aggregate);
+            }
+            return reducer.reduce(aggregate);
+        }
+    }
+
+    private static void checkScalars(FormulaFunction function, List<Expression> arguments, int arity) throws Exception {
+        if (arguments.size() != arity) {
+            throw new Exception(function.name + " takes " + arity + (arity == 1 ? " argument" : " arguments"));
+        }
+        for (Expression argument : arguments) {
+            if (argument instanceof RangeReference) {
+                throw new Exception("Range " + argument + " can only be used in an aggregate function");
+            }
+        }
+    }
+}
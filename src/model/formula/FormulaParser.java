@@ -0,0 +1,222 @@
+package model.formula;
+
+import model.CellAddress;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compiles a formula string (e.g., "=SUMA(A1:B3;C1)*2") into an {@link Expression} tree.
+ * <p>
+ * Supported syntax: numbers, cell references, the operators + - * / % with the usual
+ * precedence, unary minus, parentheses and calls to the functions of the
+ * {@link FunctionRegistry}, whose arguments are separated by ';' or ',' and may be ranges
+ * (e.g., A1:B3) for aggregate functions.
+ * Whitespace is ignored and cell references are case-insensitive.
+ */
+public final class FormulaParser {
+    private final String text;
+    private int pos;
+
+    private FormulaParser(String text) {
+        this.text = text;
+        this.pos = 0;
+    }
+
+    /**
+     * Parses a formula.
+     *
+     * @param formula The formula, including the leading '='.
+     * @return The root of the expression tree.
+     * @throws Exception If the formula has syntax errors.
+     */
+    public static Expression parse(String formula) throws Exception {
+        if (formula == null || !formula.startsWith("=")) {
+            throw new Exception("Invalid formula: " + formula);
+        }
+
+        FormulaParser parser = new FormulaParser(formula);
+        parser.pos = 1;
+        Expression expression = parser.parseExpression();
+        parser.skipWhitespace();
+        if (parser.pos != formula.length()) {
+            throw new Exception("Syntax error near: " + formula.substring(parser.pos));
+        }
+        return expression;
+    }
+
+    // expression := term (('+' | '-') term)*
+    private Expression parseExpression() throws Exception {
+        Expression left = parseTerm();
+        while (true) {
+            char ch = peek();
+            if (ch != '+' && ch != '-') {
+                return left;
+            }
+            pos++;
+            left = new BinaryOperation(ch, left, parseTerm());
+        }
+    }
+
+    // term := unary (('*' | '/' | '%') unary)*
+    private Expression parseTerm() throws Exception {
+        Expression left = parseUnary();
+        while (true) {
+            char ch = peek();
+            if (ch != '*' && ch != '/' && ch != '%') {
+                return left;
+            }
+            pos++;
+            left = new BinaryOperation(ch, left, parseUnary());
+        }
+    }
+
+    // unary := ('-' | '+') unary | primary
+    private Expression parseUnary() throws Exception {
+        char ch = peek();
+        if (ch == '-') {
+            pos++;
+            Expression operand = parseUnary();
+            if (operand instanceof NumberLiteral) {
+                return new NumberLiteral(-((NumberLiteral) operand).getValue());
+            }
+            return new Negation(operand);
+        }
+        if (ch == '+') {
+            pos++;
+            return parseUnary();
+        }
+        return parsePrimary();
+    }
+
+    // primary := number | '(' expression ')' | function '(' arguments ')' | cell
+    private Expression parsePrimary() throws Exception {
+        char ch = peek();
+
+        if (ch == '(') {
+            pos++;
+            Expression inner = parseExpression();
+            expect(')');
+            return inner;
+        }
+        if (Character.isDigit(ch) || ch == '.') {
+            return parseNumber();
+        }
+        if (isLetter(ch)) {
+            int nameStart = pos;
+            while (pos < text.length() && isLetter(text.charAt(pos))) {
+                pos++;
+            }
+            String name = text.substring(nameStart, pos).toUpperCase();
+
+            if (peek() == '(') {
+                FormulaFunction function = FunctionRegistry.forName(name);
+                if (function == null) {
+                    throw new Exception("Unknown function: " + name);
+                }
+                pos++;
+                List<Expression> arguments = parseArguments();
+                function.checkArguments(arguments);
+                return new FunctionCall(function, arguments);
+            }
+            return parseCellReference(nameStart);
+        }
+
+        if (ch == 0) {
+            throw new Exception("Unexpected end of formula: " + text);
+        }
+        throw new Exception("Invalid token: " + ch);
+    }
+
+    // arguments := [argument ((';' | ',') argument)*] ')'
+    private List<Expression> parseArguments() throws Exception {
+        List<Expression> arguments = new ArrayList<>();
+        if (peek() == ')') {
+            pos++;
+            return arguments;
+        }
+
+        while (true) {
+            arguments.add(parseArgument());
+            char ch = peek();
+            pos++;
+            if (ch == ')') {
+                return arguments;
+            }
+            if (ch != ';' && ch != ',') {
+                throw new Exception("Invalid function syntax: " + text);
+            }
+        }
+    }
+
+    // argument := cell ':' cell | expression
+    private Expression parseArgument() throws Exception {
+        Expression argument = parseExpression();
+        if (peek() == ':') {
+            if (!(argument instanceof CellReference)) {
+                throw new Exception("Invalid range syntax: " + text);
+            }
+            pos++;
+            skipWhitespace();
+            int nameStart = pos;
+            while (pos < text.length() && isLetter(text.charAt(pos))) {
+                pos++;
+            }
+            return new RangeReference((CellReference) argument, parseCellReference(nameStart));
+        }
+        return argument;
+    }
+
+    // Parses the row digits of a cell reference whose letters start at nameStart
+    private CellReference parseCellReference(int nameStart) throws Exception {
+        int nameEnd = pos;
+        while (pos < text.length() && Character.isDigit(text.charAt(pos))) {
+            pos++;
+        }
+        if (nameEnd == nameStart || pos == nameEnd) {
+            throw new Exception("Invalid token: " + text.substring(nameStart, pos));
+        }
+
+        // Same limits as CellAddress.parse, so a reference can never wrap to another cell
+        long address = CellAddress.parse(text.substring(nameStart, pos));
+        if (address == CellAddress.INVALID) {
+            throw new Exception("Invalid token: " + text.substring(nameStart, pos));
+        }
+        return new CellReference(CellAddress.row(address), CellAddress.column(address));
+    }
+
+    private NumberLiteral parseNumber() throws Exception {
+        int start = pos;
+        while (pos < text.length() && (Character.isDigit(text.charAt(pos)) || text.charAt(pos) == '.')) {
+            pos++;
+        }
+        try {
+            return new NumberLiteral(Double.parseDouble(text.substring(start, pos)));
+        } catch (NumberFormatException e) {
+            throw new Exception("Invalid token: " + text.substring(start, pos));
+        }
+    }
+
+    private void expect(char expected) throws Exception {
+        if (peek() != expected) {
+            throw new Exception("Expected '" + expected + "' in formula: " + text);
+        }
+        pos++;
+    }
+
+    // Returns the next non-whitespace character without consuming it, or 0 at the end
+    private char peek() {
+        skipWhitespace();
+        return pos < text.length() ? text.charAt(pos) : 0;
+    }
+
+    private void skipWhitespace() {
+        while (pos < text.length() && Character.isWhitespace(text.charAt(pos))) {
+            pos++;
+        }
+    }
+
+    private static boolean isLetter(char ch) {
+        return (ch >= 'A' && ch <= 'Z') || (ch >= 'a' && ch <= 'z');
+    }
+}
@@ -0,0 +1,52 @@
+package model.formula;
+
+import java.util.List;
+
+/**
+ * A call to a function of the {@link FunctionRegistry} (e.g., "SUMA(A1:B3;C1;3)"), resolved
+ * when the formula was parsed.
+ */
+public final class FunctionCall implements Expression {
+    private final FormulaFunction function;
+    private final List<Expression> arguments;
+    private final Expression[] argumentArray;   // The arguments, iterated without an iterator
+
+    public FunctionCall(FormulaFunction function, List<Expression> arguments) {
+        this.function = function;
+        this.arguments = List.copyOf(arguments);
+        this.argumentArray = this.arguments.toArray(new Expression[0]);
+    }
+
+    public FormulaFunction getFunction() {
+        return function;
+    }
+
+    public List<Expression> getArguments() {
+        return arguments;
+    }
+
+    @Override
+    public double evaluate(CellValues values) throws Exception {
+        return function.apply(argumentArray, values);
+    }
+
+    @Override
+    public void collectReferences(ReferenceCollector references) {
+        for (Expression argument : argumentArray) {
+            argument.collectReferences(references);
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder(function.getName()).append('(');
+        for (int i = 0; i < argumentArray.length; i++) {
+            if (i > 0) {
+                sb.append(';');
+            }
+            sb.append(argumentArray[i]);
+        }
+        return sb.append(')').toString();
+    }
+
+}
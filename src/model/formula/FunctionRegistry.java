@@ -0,0 +1,123 @@
+package model.formula;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.DoubleBinaryOperator;
+import java.util.function.DoubleUnaryOperator;
+
+/**
+ * The functions that can be called in formulas, by name and by identifier.
+ * <p>
+ * The built-in functions are registered when the class is loaded, so their identifiers are
+ * the same in every run: SUMA, MIN, MAX and PROMEDIO aggregate any number of values and
+ * ranges, ABS takes one number and POTENCIA two. More functions can be registered before
+ * the formulas calling them are parsed; a formula naming an unknown function is invalid.
+ * Their identifiers follow in registration order, so they may differ between runs.
+ * Calls are resolved against the registry once, when their formula is parsed.
+ */
+public final class FunctionRegistry {
+    private static final Map<String, FormulaFunction> byName = new HashMap<>();
+    private static volatile FormulaFunction[] byId = new FormulaFunction[0];
+    private static final int BUILT_IN_COUNT;
+
+    static {
+        registerAggregate("SUMA", Aggregate::getSum);
+        registerAggregate("MIN", aggregate -> nonEmpty(aggregate, "MIN").getMin());
+        registerAggregate("MAX", aggregate -> nonEmpty(aggregate, "MAX").getMax());
+        registerAggregate("PROMEDIO", aggregate -> nonEmpty(aggregate, "PROMEDIO").getSum() / aggregate.getCount());
+        registerUnary("ABS", Math::abs);
+        registerBinary("POTENCIA", Math::pow);
+        BUILT_IN_COUNT = byId.length;
+    }
+
+    private FunctionRegistry() {
+    }
+
+    /**
+     * Registers a function of one number.
+     *
+     * @return The registered function.
+     * @throws IllegalArgumentException If a function with this name is already registered.
+     */
+    public static synchronized FormulaFunction registerUnary(String name, DoubleUnaryOperator operator) {
+        return register(new FormulaFunction.Unary(byId.length, normalize(name), operator));
+    }
+
+    /**
+     * Registers a function of two numbers.
+     *
+     * @return The registered function.
+     * @throws IllegalArgumentException If a function with this name is already registered.
+     */
+    public static synchronized FormulaFunction registerBinary(String name, DoubleBinaryOperator operator) {
+        return register(new FormulaFunction.Binary(byId.length, normalize(name), operator));
+    }
+
+    /**
+     * Registers a function of any number of values and ranges.
+     *
+     * @param reducer Computes the result from the aggregate of the values; it should fail
+     *                rather than return a value when the aggregate does not allow one.
+     * @return The registered function.
+     * @throws IllegalArgumentException If a function with this name is already registered.
+     */
+    public static synchronized FormulaFunction registerAggregate(String name, FormulaFunction.Reducer reducer) {
+        return register(new FormulaFunction.Aggregating(byId.length, normalize(name), reducer));
+    }
+
+    /**
+     * Resolves a function name (e.g., "SUMA").
+     *
+     * @param name The function name in upper case.
+     * @return The matching function, or null if the name is unknown.
+     */
+    public static synchronized FormulaFunction forName(String name) {
+        return byName.get(name);
+    }
+
+    /**
+     * Resolves a function identifier, as returned by {@link FormulaFunction#getId()}.
+     *
+     * @return The matching function, or null if the identifier is unknown.
+     */
+    public static FormulaFunction forId(int id) {
+        FormulaFunction[] functions = byId;
+        return id >= 0 && id < functions.length ? functions[id] : null;
+    }
+
+    /**
+     * @return Whether the function is one of the built-in ones, whose identifier never changes.
+     */
+    static boolean isBuiltIn(FormulaFunction function) {
+        return function.getId() < BUILT_IN_COUNT && forId(function.getId()) == function;
+    }
+
+    // Identifiers are given in registration order, so the built-in ones never change
+    private static FormulaFunction register(FormulaFunction function) {
+        if (byName.containsKey(function.getName())) {
+            throw new IllegalArgumentException("Function already registered: " + function.getName());
+        }
+        byName.put(function.getName(), function);
+        FormulaFunction[] functions = Arrays.copyOf(byId, byId.length + 1);
+        functions[function.getId()] = function;
+        byId = functions;
+        return function;
+    }
+
+    private static String normalize(String name) {
+        String upper = name.toUpperCase(Locale.ROOT);
+        if (upper.isEmpty() || !upper.chars().allMatch(ch -> ch >= 'A' && ch <= 'Z')) {
+            throw new IllegalArgumentException("Function names are made of letters: " + name);
+        }
+        return upper;
+    }
+
+    private static Aggregate nonEmpty(Aggregate aggregate, String name) throws Exception {
+        if (aggregate.getCount() == 0) {
+            throw new Exception("No values for " + name);
+        }
+        return aggregate;
+    }
+}
@@ -0,0 +1,58 @@
+package model.formula;
+
+import model.Cell;
+import model.CellAddress;
+
+import java.util.Map;
+import java.util.function.DoubleConsumer;
+
+/**
+ * {@link CellValues} backed by a map of cells keyed by coordinate (e.g., "A1").
+ */
+public final class MapCellValues implements CellValues {
+    private final Map<String, Cell> cells;
+
+    public MapCellValues(Map<String, Cell> cells) {
+        this.cells = cells;
+    }
+
+    @Override
+    public double get(int row, int column) throws Exception {
+        String coordinate = CellAddress.toCoordinate(column, row);
+        Cell cell = cells.get(coordinate);
+        if (cell == null) {
+            throw new Exception("Invalid token: " + coordinate);
+        }
+        return cell.getValueAsNumber();
+    }
+
+    @Override
+    public void forEachInRange(int startRow, int startColumn, int endRow, int endColumn,
+                               DoubleConsumer consumer) throws Exception {
+        long area = (long) (endRow - startRow + 1) * (endColumn - startColumn + 1);
+
+        if (area <= cells.size()) {
+            // Small range: look up each coordinate of the rectangle
+            for (int row = startRow; row <= endRow; row++) {
+                for (int col = startColumn; col <= endColumn; col++) {
+                    Cell cell = cells.get(CellAddress.toCoordinate(col, row));
+                    if (cell != null) {
+                        consumer.accept(cell.getValueAsNumber());
+                    }
+                }
+            }
+            return;
+        }
+
+        // Large range over a small sheet: scan the existing cells instead
+        for (Map.Entry<String, Cell> entry : cells.entrySet()) {
+            long address = CellAddress.parse(entry.getKey());
+            int row = CellAddress.row(address);
+            int col = CellAddress.column(address);
+
+            if (row >= startRow && row <= endRow && col >= startColumn && col <= endColumn) {
+                consumer.accept(entry.getValue().getValueAsNumber());
+            }
+        }
+    }
+}
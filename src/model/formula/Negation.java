@@ -0,0 +1,31 @@
+package model.formula;
+
+/**
+ * A unary minus applied to an expression (e.g., "-A1").
+ */
+public final class Negation implements Expression {
+    private final Expression operand;
+
+    public Negation(Expression operand) {
+        this.operand = operand;
+    }
+
+    public Expression getOperand() {
+        return operand;
+    }
+
+    @Override
+    public double evaluate(CellValues values) throws Exception {
+        return -operand.evaluate(values);
+    }
+
+    @Override
+    public void collectReferences(ReferenceCollector references) {
+        operand.collectReferences(references);
+    }
+
+    @Override
+    public String toString() {
+        return "-" + operand;
+    }
+}
@@ -0,0 +1,31 @@
+package model.formula;
+
+/**
+ * A numeric constant in a formula (e.g., "3.5").
+ */
+public final class NumberLiteral implements Expression {
+    private final double value;
+
+    public NumberLiteral(double value) {
+        this.value = value;
+    }
+
+    public double getValue() {
+        return value;
+    }
+
+    @Override
+    public double evaluate(CellValues values) {
+        return value;
+    }
+
+    @Override
+    public void collectReferences(ReferenceCollector references) {
+        // Constants do not reference any cell
+    }
+
+    @Override
+    public String toString() {
+        return String.valueOf(value);
+    }
+}
@@ -0,0 +1,58 @@
+package model.formula;
+
+/**
+ * A rectangular range of cells (e.g., "A1:B3"), only valid as a function argument.
+ */
+public final class RangeReference implements Expression {
+    private final CellReference start;
+    private final CellReference end;
+    private final int startRow;
+    private final int endRow;
+    private final int startColumn;
+    private final int endColumn;
+
+    public RangeReference(CellReference start, CellReference end) {
+        this.start = start;
+        this.end = end;
+        this.startRow = Math.min(start.getRow(), end.getRow());
+        this.endRow = Math.max(start.getRow(), end.getRow());
+        this.startColumn = Math.min(start.getColumn(), end.getColumn());
+        this.endColumn = Math.max(start.getColumn(), end.getColumn());
+    }
+
+    public int getStartRow() {
+        return startRow;
+    }
+
+    public int getEndRow() {
+        return endRow;
+    }
+
+    public int getStartColumn() {
+        return startColumn;
+    }
+
+    public int getEndColumn() {
+        return endColumn;
+    }
+
+    @Override
+    public double evaluate(CellValues values) throws Exception {
+        throw new Exception("Range " + this + " can only be used as a function argument");
+    }
+
+    @Override
+    public void aggregate(CellValues values, Aggregate aggregate) throws Exception {
+        values.aggregateRange(startRow, startColumn, endRow, endColumn, aggregate);
+    }
+
+    @Override
+    public void collectReferences(ReferenceCollector references) {
+        references.range(startRow, startColumn, endRow, endColumn);
+    }
+
+    @Override
+    public String toString() {
+        return start + ":" + end;
+    }
+}
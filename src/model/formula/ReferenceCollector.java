@@ -0,0 +1,24 @@
+package model.formula;
+
+/**
+ * Receives the cells and ranges referenced by an {@link Expression}.
+ */
+public interface ReferenceCollector {
+
+    /**
+     * Receives a single referenced cell.
+     *
+     * @param address The packed address of the cell (see {@link model.CellAddress}).
+     */
+    void cell(long address);
+
+    /**
+     * Receives a referenced rectangular range, reported once rather than cell by cell.
+     *
+     * @param startRow    The first row of the range.
+     * @param startColumn The first column of the range.
+     * @param endRow      The last row of the range (inclusive).
+     * @param endColumn   The last column of the range (inclusive).
+     */
+    void range(int startRow, int startColumn, int endRow, int endColumn);
+}
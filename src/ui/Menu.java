@@ -1,6 +1,7 @@
 package ui;
 
 import model.*;
+import io.EditJournal;
 import io.FileManager;
 
 import java.io.IOException;
@@ -13,11 +14,19 @@ public class Menu {
     private Spreadsheet spreadsheet;
     private FileManager fileManager;
     private Scanner scanner;
+    private EditJournal journal;    // Journal of the file last loaded or saved, null before that
+    private SpreadsheetMetrics metrics;
+    private FormulaProfiler profiler;
 
     // Constructor
     public Menu() {
+        this.metrics = new SpreadsheetMetrics();
+        this.profiler = new FormulaProfiler();
         this.spreadsheet = new Spreadsheet();
+        this.spreadsheet.setMetrics(metrics);
+        this.spreadsheet.setProfiler(profiler);
         this.fileManager = new FileManager();
+        this.fileManager.setMetrics(metrics);
         this.scanner = new Scanner(System.in);
     }
 
@@ -33,7 +42,9 @@ public class Menu {
             System.out.println("2. Display Spreadsheet");
             System.out.println("3. Save Spreadsheet to File");
             System.out.println("4. Load Spreadsheet from File");
-            System.out.println("5. Exit");
+            System.out.println("5. Show Metrics");
+            System.out.println("6. Show Hottest Cells");
+            System.out.println("7. Exit");
 
             System.out.print("Choose an option: ");
             String choice = scanner.nextLine();
@@ -52,7 +63,14 @@ public class Menu {
                     loadSpreadsheet();
                     break;
                 case "5":
+                    displayMetrics();
+                    break;
+                case "6":
+                    displayHottestCells();
+                    break;
+                case "7":
                     exit = true;
+                    closeJournal();
                     System.out.println("Exiting the program. Goodbye!");
                     break;
                 default:
@@ -62,39 +80,13 @@ public class Menu {
     }
 
     private boolean isValidCoordinate(String coordinate) {
-        // Regular expression to match cell coordinates like A1, B2, AA10, etc.
-        return coordinate.matches("[A-Z]+\\d+");
+        // Matches cell coordinates like A1, B2, AA10, etc.
+        return CellAddress.parse(coordinate) != CellAddress.INVALID;
     }
 
-    private boolean isValidFormula(String formula) {
-        // Ensure the formula starts with '='
-        if (!formula.startsWith("=")) {
-            return false;
-        }
-
-        // Remove the leading '=' for validation purposes
-        formula = formula.substring(1).trim();
-
-        // Regex to match cell references (e.g., A1, B2, AA10)
-        String cellRef = "[A-Z]+\\d+";
-
-        // Regex to match ranges (e.g., A1:B3)
-        String cellRange = cellRef + ":" + cellRef;
-
-        // Regex to match numbers (e.g., 10, 3.5)
-        String number = "\\d+(\\.\\d+)?";
-
-        // Regex to match aggregate functions with arguments (e.g., SUMA(A1:B3;C1;3))
-        String function = "(SUMA|MIN|MAX|PROMEDIO)\\(([^()]*)\\)";
-
-        // Combine all valid tokens (functions, ranges, cell references, numbers)
-        String validToken = String.format("(%s|%s|%s|%s)", function, cellRange, cellRef, number);
-
-        // Full regex to validate the entire formula with operators and parentheses
-        String formulaRegex = String.format("^(%s|[+\\-*/();\\s])+?$", validToken);
-
-        // Check if the formula matches the full regex pattern
-        return formula.matches(formulaRegex);
+    private boolean isValidFormula(FormulaContent formulaContent) {
+        // The formula is compiled once when the content is created; it is valid if that succeeded
+        return formulaContent.isValid();
     }
 
     /**
@@ -123,14 +115,14 @@ public class Menu {
             // Convert any lowercase cell references to uppercase in the formula
             contentInput = contentInput.toUpperCase();
 
-            // Validate the formula
-            if (!isValidFormula(contentInput)) {
-                System.out.println("Invalid formula syntax! Please ensure the formula contains valid cell coordinates.");
+            // Compile and validate the formula
+            FormulaContent formulaContent = new FormulaContent(contentInput);
+            if (!isValidFormula(formulaContent)) {
+                System.out.println("Invalid formula syntax! " + formulaContent.getParseError());
                 return;
             }
 
             // Check for circular dependencies before adding the formula
-            FormulaContent formulaContent = new FormulaContent(contentInput);
             if (spreadsheet.hasCircularDependency(coordinate, formulaContent)) {
                 System.out.println("Circular dependency detected! Cannot add this formula.");
                 return;
@@ -146,6 +138,9 @@ public class Menu {
         }
 
         spreadsheet.addOrModifyCell(coordinate, content);
+        if (journal != null) {
+            journal.record(CellAddress.parse(coordinate), content);
+        }
         System.out.println("Cell " + coordinate + " updated successfully.");
     }
 
@@ -158,7 +153,26 @@ public class Menu {
     }
 
     /**
-     * Saves the spreadsheet to a file.
+     * Displays the metrics collected since the program started.
+     */
+    private void displayMetrics() {
+        System.out.println("\nMetrics:");
+        System.out.println(metrics);
+    }
+
+    /**
+     * Displays the formulas that took the most evaluation time since the spreadsheet was
+     * created or loaded, and its critical path.
+     */
+    private void displayHottestCells() {
+        System.out.println("\nHottest Cells:");
+        System.out.print(profiler.report(spreadsheet, 10));
+        System.out.println();
+    }
+
+    /**
+     * Saves the spreadsheet to a file. The first save writes the whole file; later saves
+     * only append the edits made since to the file's journal.
      */
     private void saveSpreadsheet() {
 //        System.out.print("Enter file path to save the spreadsheet (e.g., spreadsheet.s2v): ");
@@ -166,7 +180,14 @@ public class Menu {
         String filePath = "src/spreedshet.s2v";
 
         try {
-            fileManager.saveSpreadsheet(filePath, spreadsheet);
+            if (journal == null) {
+                // Kept only once saved, as a journal that failed to save has nothing to sync to
+                EditJournal saved = new EditJournal(filePath, fileManager);
+                saved.save(spreadsheet);
+                journal = saved;
+            } else {
+                journal.sync();
+            }
             System.out.println("Spreadsheet saved to " + filePath);
         } catch (IOException e) {
             System.err.println("Error saving spreadsheet: " + e.getMessage());
@@ -174,17 +195,37 @@ public class Menu {
     }
 
     /**
-     * Loads a spreadsheet from a file.
+     * Loads a spreadsheet from a file, with the edits saved to its journal since.
      */
     private void loadSpreadsheet() {
 //        System.out.print("Enter file path to load the spreadsheet (e.g., spreadsheet.s2v): ");
 //        String filePath = scanner.nextLine();
         String filePath = "src/spreedshet.s2v";
         try {
-            this.spreadsheet = fileManager.loadSpreadsheet(filePath);
+            closeJournal();
+            journal = new EditJournal(filePath, fileManager);
+            this.spreadsheet = journal.load();
+            profiler.reset();
+            spreadsheet.setProfiler(profiler);
             System.out.println("Spreadsheet loaded successfully from " + filePath);
         } catch (IOException e) {
+            journal = null;
             System.err.println("Error loading spreadsheet: " + e.getMessage());
         }
     }
+
+    /**
+     * Closes the journal, waiting for a running compaction; unsaved edits are not written.
+     */
+    private void closeJournal() {
+        if (journal == null) {
+            return;
+        }
+        try {
+            journal.close();
+        } catch (IOException e) {
+            System.err.println("Error closing journal: " + e.getMessage());
+        }
+        journal = null;
+    }
 }
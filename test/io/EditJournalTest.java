@@ -0,0 +1,122 @@
+package io;
+
+import model.*;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EditJournalTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void replaysSyncedEditsOnTopOfTheFile() throws Exception {
+        String file = directory.resolve("sheet.s2v").toString();
+        try (EditJournal journal = new EditJournal(file, new FileManager())) {
+            journal.save(sample());
+            journal.record(CellAddress.of(1, 0), new NumericContent(10));
+            journal.record(CellAddress.of(2, 0), new TextContent("label"));
+            journal.record(CellAddress.of(3, 1), new FormulaContent("=A1*3"));
+            journal.sync();
+
+            // Only recorded, never synced, so lost like unsaved edits
+            journal.record(CellAddress.of(4, 0), new NumericContent(99));
+        }
+
+        Spreadsheet base = new FileManager().loadSpreadsheet(file);
+        assertEquals(1, base.get(1, 0));
+        assertNull(base.getCell(3, 1));
+
+        try (EditJournal journal = new EditJournal(file, new FileManager())) {
+            Spreadsheet replayed = journal.load();
+            assertEquals(10, replayed.get(1, 0));
+            assertEquals("label", replayed.getCell("A2").getValueAsString());
+            assertEquals(30, replayed.get(3, 1));
+            assertEquals(20, replayed.get(1, 1));
+            assertNull(replayed.getCell(4, 0));
+        }
+    }
+
+    @Test
+    void dropsARecordTornByACrash() throws Exception {
+        String file = directory.resolve("sheet.s2v").toString();
+        try (EditJournal journal = new EditJournal(file, new FileManager())) {
+            journal.save(sample());
+            journal.record(CellAddress.of(1, 0), new NumericContent(5));
+            journal.sync();
+        }
+        // Half a record: a length and checksum with no payload
+        Files.write(Path.of(file + EditJournal.EXTENSION), new byte[]{0, 0, 0, 17, 1, 2}, StandardOpenOption.APPEND);
+
+        try (EditJournal journal = new EditJournal(file, new FileManager())) {
+            Spreadsheet replayed = journal.load();
+            assertEquals(5, replayed.get(1, 0));
+
+            // New records follow the last complete one
+            journal.record(CellAddress.of(2, 0), new NumericContent(6));
+            journal.sync();
+        }
+        try (EditJournal journal = new EditJournal(file, new FileManager())) {
+            Spreadsheet replayed = journal.load();
+            assertEquals(5, replayed.get(1, 0));
+            assertEquals(6, replayed.get(2, 0));
+        }
+    }
+
+    @Test
+    void compactsTheJournalIntoTheFile() throws Exception {
+        String file = directory.resolve("sheet.s2v").toString();
+        try (EditJournal journal = new EditJournal(file, new FileManager(), 1)) {
+            journal.save(sample());
+            journal.record(CellAddress.of(1, 0), new NumericContent(7));
+            journal.record(CellAddress.of(5, 2), new TextContent("added"));
+            journal.sync();
+        }
+
+        // Closing waits for the compaction, which folds the edits into the file itself
+        Spreadsheet compacted = new FileManager().loadSpreadsheet(file);
+        assertEquals(7, compacted.get(1, 0));
+        assertEquals(14, compacted.get(1, 1));
+        assertEquals("added", compacted.getCell("C5").getValueAsString());
+        assertFalse(Files.exists(Path.of(file + EditJournal.EXTENSION + ".old")));
+
+        try (EditJournal journal = new EditJournal(file, new FileManager(), 1)) {
+            Spreadsheet replayed = journal.load();
+            assertEquals(compacted.getCellCount(), replayed.getCellCount());
+            assertEquals(7, replayed.get(1, 0));
+        }
+    }
+
+    @Test
+    void keepsTheCompactionOutOfTheMetrics() throws Exception {
+        String file = directory.resolve("sheet.s2v").toString();
+        SpreadsheetMetrics metrics = new SpreadsheetMetrics();
+        FileManager fileManager = new FileManager();
+        fileManager.setMetrics(metrics);
+        try (EditJournal journal = new EditJournal(file, fileManager, 1)) {
+            journal.save(sample());
+            journal.record(CellAddress.of(1, 0), new NumericContent(7));
+            journal.sync();
+        }
+
+        // Only the save asked for counts; the compaction loaded, edited and saved a copy
+        assertEquals(1, metrics.getSaveNanos().getCount());
+        assertEquals(0, metrics.getLoadNanos().getCount());
+        assertEquals(0, metrics.getEdits());
+        assertEquals(7, new FileManager().loadSpreadsheet(file).get(1, 0));
+    }
+
+    private static Spreadsheet sample() {
+        Spreadsheet spreadsheet = new Spreadsheet();
+        spreadsheet.addOrModifyCell("A1", new NumericContent(1));
+        spreadsheet.addOrModifyCell("B1", new FormulaContent("=A1*2"));
+        spreadsheet.addOrModifyCell("A2", new NumericContent(2));
+        return spreadsheet;
+    }
+}
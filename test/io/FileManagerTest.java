@@ -0,0 +1,191 @@
+package io;
+
+import model.*;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FileManagerTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void loadsNumbersTextsAndFormulas() throws Exception {
+        Path file = write("2.0;3;hello;;\n"
+                + "=B1-A1;;=SUMA(A1,B1)\n"
+                + "\n"
+                + ";;;= MAX(A1:B2)");
+        Spreadsheet spreadsheet = new FileManager().loadSpreadsheet(file.toString());
+
+        assertEquals(6, spreadsheet.getCellCount());
+        assertEquals(3, spreadsheet.get(1, 1));
+        assertEquals("hello", spreadsheet.getCell("C1").getValueAsString());
+        assertEquals(1, spreadsheet.get(2, 0));
+        assertEquals("=SUMA(A1;B1)", spreadsheet.getCell("C2").getContent().toString());
+        assertEquals(5, spreadsheet.get(2, 2));
+        assertNull(spreadsheet.getCell(3, 0));
+        assertEquals(3, spreadsheet.get(4, 3));
+    }
+
+    @Test
+    void loadsTheSameCellsIntoEveryStorageEngine() throws Exception {
+        Path file = write("1;2;=A1+B1\n;x;=C1*2\n");
+        Spreadsheet hash = new FileManager().loadSpreadsheet(file.toString(), new HashCellStorage());
+        Spreadsheet tiled = new FileManager().loadSpreadsheet(file.toString(), new TiledCellStorage());
+
+        assertSameCells(hash, tiled);
+    }
+
+    @Test
+    void loadsTheSameCellsInParallelChunks() throws Exception {
+        Path file = write(largeSheet(120_000));
+        assertTrue(Files.size(file) > 2 << 20, "The file must split into several chunks");
+        Spreadsheet serial = new FileManager().loadSpreadsheet(file.toString(), new TiledCellStorage());
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            Spreadsheet parallel = new FileManager().loadSpreadsheet(file.toString(), new TiledCellStorage(), pool);
+            assertSameCells(serial, parallel);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    void roundTripsThroughTheSparseWriter() throws Exception {
+        Spreadsheet spreadsheet = new Spreadsheet(new TiledCellStorage());
+        spreadsheet.addOrModifyCell("A1", new NumericContent(1.5));
+        spreadsheet.addOrModifyCell("D1", new TextContent("far right"));
+        spreadsheet.addOrModifyCell("B4", new FormulaContent("=SUMA(A1;A2;3)"));
+        spreadsheet.addOrModifyCell("A200", new FormulaContent("=B4*2"));
+        Path file = directory.resolve("saved.s2v");
+        FileManager fileManager = new FileManager();
+        fileManager.saveSpreadsheet(file.toString(), spreadsheet);
+
+        assertEquals("1.5;;;far right\n\n\n;=SUMA(A1,A2,3)\n",
+                new String(Files.readAllBytes(file), StandardCharsets.UTF_8).substring(0, 34));
+        assertSameCells(spreadsheet, fileManager.loadSpreadsheet(file.toString()));
+    }
+
+    @Test
+    void roundTripsALargeSheet() throws Exception {
+        FileManager fileManager = new FileManager();
+        Spreadsheet loaded = fileManager.loadSpreadsheet(write(largeSheet(20_000)).toString(), new TiledCellStorage());
+        Path copy = directory.resolve("copy.s2v");
+        fileManager.saveSpreadsheet(copy.toString(), loaded);
+
+        assertSameCells(loaded, fileManager.loadSpreadsheet(copy.toString(), new HashCellStorage()));
+    }
+
+    @Test
+    void restoresSavedFormulaValuesWithoutRecalculating() throws Exception {
+        FileManager fileManager = new FileManager();
+        Spreadsheet spreadsheet = fileManager.loadSpreadsheet(write(largeSheet(6000)).toString());
+        Path file = directory.resolve("valued.s2v");
+        fileManager.saveSpreadsheet(file.toString(), spreadsheet, true);
+        assertTrue(Files.exists(directory.resolve("valued.s2v" + FormulaValues.EXTENSION)));
+
+        Spreadsheet restored = fileManager.loadSpreadsheet(file.toString());
+        assertEquals(0, restored.getTotalEvaluationCount());
+        assertSameCells(spreadsheet, restored);
+
+        // Dependents of an edit are recalculated as usual
+        restored.addOrModifyCell("A1", new NumericContent(100));
+        assertEquals(200, restored.get(1, 2));
+        assertEquals(300, restored.get(5001, 2));
+    }
+
+    @Test
+    void ignoresSavedValuesOnceTheFileChanges() throws Exception {
+        FileManager fileManager = new FileManager();
+        Path file = write("2;=A1*10\n");
+        fileManager.saveSpreadsheet(file.toString(), fileManager.loadSpreadsheet(file.toString()), true);
+
+        Files.write(file, "3;=A1*10\n".getBytes(StandardCharsets.UTF_8));
+        Spreadsheet edited = fileManager.loadSpreadsheet(file.toString());
+        assertEquals(1, edited.getTotalEvaluationCount());
+        assertEquals(30, edited.get(1, 1));
+    }
+
+    @Test
+    void deletesSavedValuesWhenSavingWithoutThem() throws Exception {
+        FileManager fileManager = new FileManager();
+        Path file = write("2;=A1*10\n");
+        Spreadsheet spreadsheet = fileManager.loadSpreadsheet(file.toString());
+        fileManager.saveSpreadsheet(file.toString(), spreadsheet, true);
+        fileManager.saveSpreadsheet(file.toString(), spreadsheet);
+
+        assertFalse(Files.exists(directory.resolve("sheet.s2v" + FormulaValues.EXTENSION)));
+    }
+
+    @Test
+    void pagedLoadHoldsTheSameCellsAsAFullLoad() throws Exception {
+        FileManager fileManager = new FileManager();
+        Path file = write(largeSheet(10_000));
+        Spreadsheet full = fileManager.loadSpreadsheet(file.toString(), new TiledCellStorage());
+
+        // A budget far below the file, so pages are evicted and read again while comparing
+        Spreadsheet paged = fileManager.loadSpreadsheetPaged(file.toString(), 64 << 10);
+        assertSameCells(full, paged);
+        assertTrue(Files.exists(directory.resolve("sheet.s2v.idx")));
+
+        // Opening again reuses the cached row index
+        assertSameCells(full, fileManager.loadSpreadsheetPaged(file.toString(), 64 << 10));
+    }
+
+    @Test
+    void pagedLoadRecalculatesEditsLikeAFullLoad() throws Exception {
+        FileManager fileManager = new FileManager();
+        Path file = write(largeSheet(10_000));
+        Spreadsheet full = fileManager.loadSpreadsheet(file.toString(), new TiledCellStorage());
+        Spreadsheet paged = fileManager.loadSpreadsheetPaged(file.toString(), 64 << 10);
+
+        for (Spreadsheet spreadsheet : new Spreadsheet[]{full, paged}) {
+            spreadsheet.addOrModifyCell("A3", new NumericContent(-40));
+            spreadsheet.addOrModifyCell("B9000", new TextContent("edited"));
+        }
+        assertSameCells(full, paged);
+    }
+
+    // Numbers, texts, and formulas reading rows far above them, across chunk boundaries
+    static String largeSheet(int rows) {
+        StringBuilder text = new StringBuilder();
+        for (int row = 1; row <= rows; row++) {
+            text.append(row * 0.5).append(';');
+            if (row % 7 == 0) {
+                text.append("note ").append(row);
+            }
+            text.append(';');
+            if (row > 5000) {
+                text.append("=A").append(row - 5000).append("+C").append(row - 5000);
+            } else {
+                text.append("=SUMA(A1,A").append(row).append(')');
+            }
+            text.append('\n');
+        }
+        return text.toString();
+    }
+
+    private Path write(String text) throws IOException {
+        Path file = directory.resolve("sheet.s2v");
+        Files.write(file, text.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    static void assertSameCells(Spreadsheet expected, Spreadsheet actual) {
+        assertEquals(expected.getCellCount(), actual.getCellCount());
+        for (Cell cell : expected.getCells().values()) {
+            Cell other = actual.getCell(cell.getRow(), cell.getColumn());
+            assertNotNull(other, cell.getCoordinate());
+            assertEquals(cell.getContent().toString(), other.getContent().toString(), cell.getCoordinate());
+            assertEquals(cell.getValueAsString(), other.getValueAsString(), cell.getCoordinate());
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package io;
+
+import model.*;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SnapshotFileTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void roundTripsEveryKindOfCell() throws Exception {
+        Spreadsheet opened = roundTrip(sample());
+
+        assertEquals(7, opened.getCellCount());
+        assertEquals(2, opened.get(1, 0));
+        assertEquals("total", opened.getCell("B1").getValueAsString());
+        assertEquals(12, opened.get(3, 0));
+        assertEquals(18, opened.get(4, 0));
+        assertEquals("=SUMA(A1:A3)", opened.getCell("A4").getContent().toString());
+    }
+
+    @Test
+    void keepsSavedValuesWithoutEvaluating() throws Exception {
+        Spreadsheet opened = roundTrip(sample());
+
+        assertEquals(0, opened.getLastEvaluationCount());
+        assertEquals(18, opened.getCell("A4").getValueAsNumber());
+    }
+
+    @Test
+    void recalculatesDependentsOfCellsEditedAfterOpening() throws Exception {
+        Spreadsheet opened = roundTrip(sample());
+
+        opened.addOrModifyCell("A1", new NumericContent(5));
+        assertEquals(15, opened.get(3, 0));
+        assertEquals(24, opened.get(4, 0));
+        assertEquals(15, opened.getCell("C1").getValueAsNumber());
+    }
+
+    @Test
+    void keepsTheSavedTopologicalOrder() throws Exception {
+        Spreadsheet spreadsheet = sample();
+        Spreadsheet opened = roundTrip(spreadsheet);
+
+        assertArrayEquals(spreadsheet.getFormulasInOrder(), opened.getFormulasInOrder());
+    }
+
+    @Test
+    void rejectsFormulasOutOfTopologicalOrder() {
+        Spreadsheet spreadsheet = new Spreadsheet(new TiledCellStorage());
+        spreadsheet.restoreCell(CellAddress.of(1, 1), new FormulaContent("=A1+1"));
+
+        assertThrows(IllegalArgumentException.class,
+                () -> spreadsheet.restoreCell(CellAddress.of(1, 0), new FormulaContent("=C1")));
+        assertThrows(IllegalArgumentException.class,
+                () -> spreadsheet.restoreCell(CellAddress.of(1, 2), new FormulaContent("=C1*2")));
+    }
+
+    @Test
+    void rejectsTruncatedFiles() throws Exception {
+        Path file = directory.resolve("sheet" + SnapshotFile.EXTENSION);
+        new SnapshotFile().write(file.toString(), sample());
+        byte[] bytes = Files.readAllBytes(file);
+        Files.write(file, Arrays.copyOf(bytes, bytes.length / 2));
+
+        assertThrows(IOException.class, () -> new SnapshotFile().read(file.toString(), new TiledCellStorage()));
+    }
+
+    private static Spreadsheet sample() {
+        Spreadsheet spreadsheet = new Spreadsheet(new TiledCellStorage());
+        spreadsheet.addOrModifyCell("A1", new NumericContent(2));
+        spreadsheet.addOrModifyCell("A2", new NumericContent(4));
+        spreadsheet.addOrModifyCell("B1", new TextContent("total"));
+        spreadsheet.addOrModifyCell("C1", new FormulaContent("=A3"));
+        spreadsheet.addOrModifyCell("A3", new FormulaContent("=A1+A2*2.5"));
+        spreadsheet.addOrModifyCell("A4", new FormulaContent("=SUMA(A1:A3)"));
+        spreadsheet.addOrModifyCell("B2", new FormulaContent("=A4-"));
+        return spreadsheet;
+    }
+
+    private Spreadsheet roundTrip(Spreadsheet spreadsheet) throws IOException {
+        String file = directory.resolve("sheet" + SnapshotFile.EXTENSION).toString();
+        new SnapshotFile().write(file, spreadsheet);
+        return new SnapshotFile().read(file, new HashCellStorage());
+    }
+}
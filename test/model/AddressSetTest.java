@@ -0,0 +1,65 @@
+package model;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AddressSetTest {
+
+    @Test
+    void behavesLikeAHashSet() {
+        AddressSet set = new AddressSet();
+        Set<Long> expected = new HashSet<>();
+        Random random = new Random(5);
+        for (int i = 0; i < 20_000; i++) {
+            long address = CellAddress.of(1 + random.nextInt(200), random.nextInt(10));
+            if (random.nextBoolean()) {
+                assertEquals(expected.remove(address), set.remove(address));
+            } else {
+                assertEquals(expected.add(address), set.add(address));
+            }
+            assertEquals(expected.size(), set.size());
+        }
+
+        long[] addresses = set.toArray();
+        Arrays.sort(addresses);
+        assertArrayEquals(expected.stream().mapToLong(Long::longValue).sorted().toArray(), addresses);
+
+        Set<Long> visited = new HashSet<>();
+        set.forEach(address -> assertTrue(visited.add(address)));
+        assertEquals(expected, visited);
+        for (long address : addresses) {
+            assertTrue(set.contains(address));
+        }
+    }
+
+    @Test
+    void clearsEveryAddress() {
+        AddressSet set = new AddressSet(4);
+        for (int row = 1; row <= 1000; row++) {
+            set.add(CellAddress.of(row, row % 7));
+        }
+        assertEquals(1000, set.size());
+
+        set.clear();
+        assertTrue(set.isEmpty());
+        assertEquals(0, set.toArray().length);
+        assertFalse(set.contains(CellAddress.of(1, 1)));
+        assertFalse(set.contains(0L));
+    }
+
+    @Test
+    void neverHoldsTheEmptyAddress() {
+        AddressSet set = new AddressSet();
+        set.add(CellAddress.of(1, 0));
+        assertFalse(set.contains(0L));
+        assertFalse(set.remove(0L));
+        assertThrows(IllegalArgumentException.class, () -> set.add(0L));
+        assertEquals(1, set.size());
+    }
+}
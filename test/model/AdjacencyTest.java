@@ -0,0 +1,103 @@
+package model;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AdjacencyTest {
+
+    @Test
+    void keepsListsInInsertionOrder() {
+        Adjacency adjacency = new Adjacency();
+        adjacency.add(3, 7);
+        adjacency.add(3, 5);
+        adjacency.add(3, 7);
+        adjacency.add(0, 1);
+
+        assertEquals(List.of(7, 5, 7), targets(adjacency, 3));
+        assertTrue(adjacency.remove(3, 7));
+        assertFalse(adjacency.remove(3, 9));
+        assertFalse(adjacency.remove(8, 1));
+        assertEquals(List.of(5, 7), targets(adjacency, 3));
+
+        adjacency.compact();
+        assertEquals(List.of(5, 7), targets(adjacency, 3));
+        assertEquals(List.of(1), targets(adjacency, 0));
+        assertEquals(0, adjacency.degree(2));
+        assertEquals(0, adjacency.degree(100));
+        assertEquals(3, adjacency.edgeCount());
+
+        adjacency.clear(3);
+        adjacency.compact();
+        assertEquals(List.of(), targets(adjacency, 3));
+        assertEquals(1, adjacency.edgeCount());
+    }
+
+    @Test
+    void matchesPlainListsAcrossCompactions() {
+        // Enough nodes that both the fixed minimum and the share of packed nodes trigger compactions
+        int nodes = 20_000;
+        Adjacency adjacency = new Adjacency();
+        List<List<Integer>> expected = new ArrayList<>();
+        for (int node = 0; node < nodes; node++) {
+            expected.add(new ArrayList<>());
+        }
+
+        Random random = new Random(17);
+        for (int node = 0; node < nodes; node++) {
+            for (int i = random.nextInt(3); i > 0; i--) {
+                add(adjacency, expected, node, random.nextInt(nodes));
+            }
+        }
+        assertSameLists(expected, adjacency);
+
+        for (int step = 0; step < 200_000; step++) {
+            // Edits cluster on a few nodes now and then, so the overlay sometimes stays small
+            int node = step % 3 == 0 ? random.nextInt(100) : random.nextInt(nodes);
+            int operation = random.nextInt(10);
+            if (operation < 5) {
+                add(adjacency, expected, node, random.nextInt(nodes));
+            } else if (operation < 9) {
+                List<Integer> list = expected.get(node);
+                int target = list.isEmpty() || random.nextBoolean() ? random.nextInt(nodes) : list.get(random.nextInt(list.size()));
+                assertEquals(list.remove((Integer) target), adjacency.remove(node, target));
+            } else {
+                expected.get(node).clear();
+                adjacency.clear(node);
+            }
+
+            if (step % 20_000 == 0) {
+                assertSameLists(expected, adjacency);
+            }
+        }
+        assertSameLists(expected, adjacency);
+        adjacency.compact();
+        assertSameLists(expected, adjacency);
+    }
+
+    private static void add(Adjacency adjacency, List<List<Integer>> expected, int node, int target) {
+        adjacency.add(node, target);
+        expected.get(node).add(target);
+    }
+
+    private static void assertSameLists(List<List<Integer>> expected, Adjacency adjacency) {
+        int edges = 0;
+        for (int node = 0; node < expected.size(); node++) {
+            List<Integer> list = expected.get(node);
+            edges += list.size();
+            assertEquals(list.size(), adjacency.degree(node));
+            assertEquals(list, targets(adjacency, node));
+        }
+        assertEquals(edges, adjacency.edgeCount());
+    }
+
+    private static List<Integer> targets(Adjacency adjacency, int node) {
+        List<Integer> targets = new ArrayList<>();
+        adjacency.forEach(node, targets::add);
+        return targets;
+    }
+}
@@ -0,0 +1,50 @@
+package model;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CellAddressTest {
+
+    @Test
+    void packsRowsAndColumnsInRowMajorOrder() {
+        long address = CellAddress.of(7, 3);
+        assertEquals(7, CellAddress.row(address));
+        assertEquals(3, CellAddress.column(address));
+        assertTrue(CellAddress.of(1, 1000) < CellAddress.of(2, 0));
+        assertTrue(CellAddress.of(2, 0) < CellAddress.of(2, 1));
+        assertEquals(Integer.MAX_VALUE, CellAddress.row(CellAddress.of(Integer.MAX_VALUE, 0)));
+    }
+
+    @Test
+    void parsesCoordinatesCaseInsensitively() {
+        assertEquals(CellAddress.of(1, 0), CellAddress.parse("A1"));
+        assertEquals(CellAddress.of(10, 26), CellAddress.parse("aa10"));
+        assertEquals(CellAddress.of(10, 26), CellAddress.parse("aA10"));
+        assertEquals(CellAddress.of(Integer.MAX_VALUE, 701), CellAddress.parse("ZZ" + Integer.MAX_VALUE));
+        assertEquals(CellAddress.of(3, CellAddress.columnIndex("ZZZZZZ", 0, 6)), CellAddress.parse("ZZZZZZ3"));
+    }
+
+    @Test
+    void rejectsMalformedCoordinates() {
+        String[] malformed = {"", "A", "1", "A0", "A00", "1A", "A1B", "A-1", "A 1", "A1.5", "Ä1", "AAAAAAA1",
+                "A" + (Integer.MAX_VALUE + 1L), "A99999999999999999999"};
+        for (String coordinate : malformed) {
+            assertEquals(CellAddress.INVALID, CellAddress.parse(coordinate), coordinate);
+        }
+    }
+
+    @Test
+    void convertsBetweenColumnNamesAndIndexes() {
+        int[] columns = {0, 25, 26, 27, 51, 52, 701, 702, 18277, 18278};
+        for (int column : columns) {
+            String name = CellAddress.columnName(column);
+            assertEquals(column, CellAddress.columnIndex(name, 0, name.length()), name);
+        }
+        assertEquals("AB", CellAddress.columnName(27));
+        assertEquals("ZZ", CellAddress.columnName(701));
+        assertEquals("AAA", CellAddress.columnName(702));
+        assertEquals("B2", CellAddress.toCoordinate(1, 2));
+        assertEquals("AB12", CellAddress.toString(CellAddress.of(12, 27)));
+    }
+}
@@ -0,0 +1,69 @@
+package model;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CellIntMapTest {
+
+    @Test
+    void behavesLikeAHashMap() {
+        CellIntMap map = new CellIntMap(4);
+        Map<Long, Integer> expected = new HashMap<>();
+        Random random = new Random(11);
+
+        // Few distinct addresses, so probe chains are long and removals shift entries
+        for (int i = 0; i < 20_000; i++) {
+            long address = CellAddress.of(1 + random.nextInt(60), random.nextInt(3));
+            if (random.nextInt(3) == 0) {
+                assertEquals(expected.remove(address) != null, map.remove(address));
+            } else {
+                expected.put(address, i);
+                map.put(address, i);
+            }
+            assertEquals(expected.size(), map.size());
+        }
+        for (int row = 1; row <= 60; row++) {
+            for (int column = 0; column < 3; column++) {
+                long address = CellAddress.of(row, column);
+                assertEquals(expected.getOrDefault(address, -1), map.get(address, -1));
+                assertEquals(expected.containsKey(address), map.containsKey(address));
+            }
+        }
+    }
+
+    @Test
+    void keepsEveryEntryAcrossResizes() {
+        CellIntMap map = new CellIntMap();
+        for (int row = 1; row <= 100_000; row++) {
+            map.put(CellAddress.of(row, 2), -row);
+        }
+        assertEquals(100_000, map.size());
+        for (int row = 1; row <= 100_000; row++) {
+            assertEquals(-row, map.get(CellAddress.of(row, 2), 0));
+        }
+        assertEquals(7, map.get(CellAddress.of(1, 3), 7));
+
+        map.clear();
+        assertEquals(0, map.size());
+        assertFalse(map.containsKey(CellAddress.of(1, 2)));
+    }
+
+    @Test
+    void neverFindsTheEmptyKey() {
+        CellIntMap map = new CellIntMap(8);
+        map.put(CellAddress.of(1, 0), 5);
+        assertEquals(-1, map.get(0L, -1));
+        assertFalse(map.containsKey(0L));
+        assertFalse(map.remove(0L));
+        assertEquals(1, map.size());
+
+        assertThrows(IllegalArgumentException.class, () -> map.put(0L, 6));
+        assertEquals(1, map.size());
+        assertEquals(5, map.get(CellAddress.of(1, 0), -1));
+    }
+}
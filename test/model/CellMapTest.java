@@ -0,0 +1,129 @@
+package model;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CellMapTest {
+
+    private static final int CAPACITY = 16;     // Of a map created for 8 entries
+
+    @Test
+    void behavesLikeAHashMap() {
+        CellMap<String> map = new CellMap<>(8);
+        Map<Long, String> expected = new HashMap<>();
+        Random random = new Random(3);
+
+        // Few distinct addresses, so probe chains are long and removals shift entries
+        for (int i = 0; i < 20_000; i++) {
+            long address = CellAddress.of(1 + random.nextInt(40), random.nextInt(5));
+            if (random.nextInt(3) == 0) {
+                assertEquals(expected.remove(address), map.remove(address));
+            } else {
+                String value = "v" + i;
+                assertEquals(expected.put(address, value), map.put(address, value));
+            }
+            assertEquals(expected.size(), map.size());
+        }
+        for (int row = 1; row <= 40; row++) {
+            for (int column = 0; column < 5; column++) {
+                long address = CellAddress.of(row, column);
+                assertEquals(expected.get(address), map.get(address));
+                assertEquals(expected.containsKey(address), map.containsKey(address));
+            }
+        }
+    }
+
+    @Test
+    void shiftsTheProbeChainBackIntoRemovedSlots() {
+        // Three addresses hashing to the last slot wrap around to the first ones, followed by
+        // one hashing to slot 0
+        List<Long> last = addressesHashingTo(CAPACITY - 1, 3);
+        long first = addressesHashingTo(0, 1).get(0);
+
+        CellMap<String> map = new CellMap<>(8);
+        for (long address : last) {
+            map.put(address, CellAddress.toString(address));
+        }
+        map.put(first, CellAddress.toString(first));
+        assertEquals(first, map.keyAt(2));
+
+        map.remove(last.get(0));
+        assertEquals(last.get(1), map.keyAt(CAPACITY - 1));
+        assertEquals(last.get(2), map.keyAt(0));
+        assertEquals(first, map.keyAt(1));
+        assertEquals(0L, map.keyAt(2));
+        for (long address : new long[]{last.get(1), last.get(2), first}) {
+            assertEquals(CellAddress.toString(address), map.get(address));
+        }
+        assertNull(map.get(last.get(0)));
+        assertEquals(3, map.size());
+    }
+
+    @Test
+    void growsAtThreeQuartersFull() {
+        CellMap<Integer> map = new CellMap<>(8);
+        for (int row = 1; row < CAPACITY * 3 / 4; row++) {
+            map.put(CellAddress.of(row, 0), row);
+        }
+        assertEquals(CAPACITY, map.capacity());
+
+        map.put(CellAddress.of(CAPACITY, 0), CAPACITY);
+        assertEquals(CAPACITY * 2, map.capacity());
+        for (int row = 1; row <= 100_000; row++) {
+            map.put(CellAddress.of(row, 0), row);
+        }
+        for (int row = 1; row <= 100_000; row++) {
+            assertEquals(row, map.get(CellAddress.of(row, 0)));
+        }
+
+        int visited = 0;
+        for (int slot = 0; slot < map.capacity(); slot++) {
+            if (map.keyAt(slot) != 0L) {
+                assertEquals(CellAddress.row(map.keyAt(slot)), map.valueAt(slot));
+                visited++;
+            }
+        }
+        assertEquals(100_000, visited);
+        assertTrue(map.size() < map.capacity() * 3 / 4);
+
+        map.clear();
+        assertTrue(map.isEmpty());
+        assertNull(map.get(CellAddress.of(1, 0)));
+    }
+
+    // The slot of an address is where it lands in an otherwise empty map
+    private static List<Long> addressesHashingTo(int slot, int count) {
+        List<Long> addresses = new ArrayList<>();
+        for (int row = 1; addresses.size() < count; row++) {
+            long address = CellAddress.of(row, 0);
+            CellMap<String> probe = new CellMap<>(8);
+            probe.put(address, "");
+            assertEquals(CAPACITY, probe.capacity());
+            if (probe.keyAt(slot) == address) {
+                addresses.add(address);
+            }
+        }
+        return addresses;
+    }
+
+    @Test
+    void neverFindsTheEmptyKey() {
+        CellMap<String> map = new CellMap<>(8);
+        map.put(CellAddress.of(1, 0), "a");
+        assertNull(map.get(0L));
+        assertFalse(map.containsKey(0L));
+        assertNull(map.remove(0L));
+        assertEquals(1, map.size());
+
+        assertThrows(IllegalArgumentException.class, () -> map.put(0L, "b"));
+        assertEquals(1, map.size());
+        assertEquals("a", map.get(CellAddress.of(1, 0)));
+    }
+}
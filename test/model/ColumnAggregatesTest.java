@@ -0,0 +1,218 @@
+package model;
+
+import model.formula.Aggregate;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ColumnAggregatesTest {
+
+    private static final int ROWS = 200_000;       // Taller than a slice
+
+    @Test
+    void scansTheFirstReadAndBuildsTheTreeOnTheSecond() {
+        CellStorage storage = column(ROWS);
+        ColumnAggregates aggregates = new ColumnAggregates(storage);
+
+        Aggregate scanned = sum(aggregates, 1, ROWS);
+        assertFalse(aggregates.isTracked(0));
+        Aggregate queried = sum(aggregates, 1, ROWS);
+        assertTrue(aggregates.isTracked(0));
+
+        assertEquals(ROWS, scanned.getCount());
+        assertSame(queried, scanned);
+    }
+
+    @Test
+    void scansOnThePoolLikeOnTheCallingThread() {
+        CellStorage storage = column(ROWS);
+        new Spreadsheet(storage).addOrModifyCell(70_000, 0, new FormulaContent("=1+2"));
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            Aggregate serial = new Aggregate();
+            assertTrue(new ColumnAggregates(storage).scan(0, 3, ROWS - 5, serial));
+            ColumnAggregates aggregates = new ColumnAggregates(storage);
+            aggregates.setPool(pool);
+            Aggregate parallel = new Aggregate();
+            assertTrue(aggregates.scan(0, 3, ROWS - 5, parallel));
+
+            assertEquals(ROWS - 7, serial.getCount());
+            assertSame(serial, parallel);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    void sumsTheSameRangeToTheSameBitsOnEveryRead() throws Exception {
+        // Adding A1 and A5 first leaves 1, but the tree adds A1 and A3 first, and 1e16 + 1
+        // rounds back to 1e16; the scan of the first read must do the same
+        Spreadsheet spreadsheet = new Spreadsheet();
+        spreadsheet.addOrModifyCell("A1", new NumericContent(1e16));
+        spreadsheet.addOrModifyCell("A3", new NumericContent(1));
+        spreadsheet.addOrModifyCell("A5", new NumericContent(-1e16));
+        spreadsheet.addOrModifyCell("B1", new FormulaContent("=SUMA(A1:A64)"));
+        double scanned = spreadsheet.get(1, 1);
+        spreadsheet.addOrModifyCell("B2", new FormulaContent("=SUMA(A1:A64)"));
+        double queried = spreadsheet.get(2, 1);
+
+        assertEquals(0.0, scanned);
+        assertEquals(Double.doubleToRawLongBits(scanned), Double.doubleToRawLongBits(queried));
+    }
+
+    @Test
+    void scansInTheOrderOfTheTree() {
+        // Numbers of very different magnitudes and signs, so any change of order shows in the sums
+        Random random = new Random(5);
+        CellStorage storage = new TiledCellStorage();
+        for (int row = 1; row <= 3000; row++) {
+            storage.setContent(CellAddress.of(row, 0), number(random));
+        }
+        ColumnAggregates tracked = new ColumnAggregates(storage);
+        tracked.prepare(0);
+        ColumnAggregates scanned = new ColumnAggregates(storage);
+
+        for (int round = 0; round < 2; round++) {
+            for (int i = 0; i < 2000; i++) {
+                int startRow = 1 + random.nextInt(6000);
+                int endRow = startRow + random.nextInt(random.nextBoolean() ? 70 : 10_000);
+                Aggregate expected = new Aggregate();
+                assertTrue(tracked.aggregate(0, startRow, endRow, expected));
+                Aggregate actual = new Aggregate();
+                assertTrue(scanned.scan(0, startRow, endRow, actual));
+                assertSame(expected, actual);
+            }
+
+            // Rows past the end of the tree make it grow
+            for (int row = 3001; row <= 5000; row++) {
+                set(storage, tracked, row, number(random));
+            }
+        }
+    }
+
+    @Test
+    void sumsShortRangesInTheOrderOfTallOnes() throws Exception {
+        Random random = new Random(8);
+        CellStorage storage = new TiledCellStorage();
+        Spreadsheet spreadsheet = new Spreadsheet(storage);
+        for (int row = 1; row <= 200; row++) {
+            for (int column = 0; column < 3; column++) {
+                Content content = number(random);
+                if (content != null) {
+                    spreadsheet.addOrModifyCell(row, column, content);
+                }
+            }
+        }
+        ColumnAggregates tracked = new ColumnAggregates(storage);
+        for (int column = 0; column < 3; column++) {
+            tracked.prepare(column);
+        }
+
+        // Ranges of both sides of the cutoff, summed column by column from the trees
+        for (int i = 0; i < 300; i++) {
+            int startRow = 1 + random.nextInt(200);
+            int endRow = startRow + random.nextInt(random.nextBoolean() ? 64 : 150);
+            int endColumn = random.nextInt(3);
+            spreadsheet.addOrModifyCell(1, 5, new FormulaContent("=SUMA(A" + startRow + ":" + "ABC".charAt(endColumn) + endRow + ")"));
+
+            Aggregate expected = new Aggregate();
+            for (int column = 0; column <= endColumn; column++) {
+                assertTrue(tracked.aggregate(column, startRow, endRow, expected));
+            }
+            assertEquals(Double.doubleToRawLongBits(expected.getSum()), Double.doubleToRawLongBits(spreadsheet.get(1, 5)));
+        }
+    }
+
+    @Test
+    void rejectsScannedRangesHoldingText() {
+        CellStorage storage = column(ROWS);
+        storage.setContent(CellAddress.of(150_000, 0), new TextContent("x"));
+
+        assertFalse(new ColumnAggregates(storage).aggregate(0, 1, ROWS, new Aggregate()));
+        assertTrue(new ColumnAggregates(storage).aggregate(0, 1, 149_999, new Aggregate()));
+    }
+
+    @Test
+    void keepsTrackedColumnsUpToDate() throws Exception {
+        CellStorage storage = column(1000);
+        ColumnAggregates aggregates = new ColumnAggregates(storage);
+        aggregates.prepare(0);
+        assertTrue(aggregates.isTracked(0));
+
+        // Edits past the last row grow the tree
+        set(storage, aggregates, 10, new NumericContent(-50));
+        set(storage, aggregates, 20, null);
+        set(storage, aggregates, 5000, new NumericContent(7));
+
+        Aggregate all = sum(aggregates, 1, 5000);
+        Aggregate expected = new Aggregate();
+        for (int row = 1; row <= 5000; row++) {
+            Content content = storage.getContent(CellAddress.of(row, 0));
+            if (content != null) {
+                expected.accept(content.getValueAsNumber());
+            }
+        }
+        assertEquals(expected.getCount(), all.getCount());
+        assertEquals(expected.getSum(), all.getSum(), 1e-9);
+        assertEquals(-50, all.getMin());
+        assertEquals(99.9, all.getMax(), 1e-9);
+
+        Aggregate part = sum(aggregates, 15, 25);
+        assertEquals(10, part.getCount());
+    }
+
+    @Test
+    void rejectsTrackedRangesHoldingText() {
+        CellStorage storage = column(1000);
+        ColumnAggregates aggregates = new ColumnAggregates(storage);
+        aggregates.prepare(0);
+        set(storage, aggregates, 500, new TextContent("x"));
+
+        assertFalse(aggregates.aggregate(0, 1, 1000, new Aggregate()));
+        assertTrue(aggregates.aggregate(0, 501, 1000, new Aggregate()));
+
+        set(storage, aggregates, 500, new NumericContent(1));
+        assertTrue(aggregates.aggregate(0, 1, 1000, new Aggregate()));
+    }
+
+    private static void set(CellStorage storage, ColumnAggregates aggregates, int row, Content content) {
+        storage.setContent(CellAddress.of(row, 0), content);
+        aggregates.update(CellAddress.of(row, 0), content);
+    }
+
+    private static Content number(Random random) {
+        switch (random.nextInt(6)) {
+            case 0:
+                return null;
+            case 1:
+                return new NumericContent(-0.0);
+            default:
+                return new NumericContent((random.nextDouble() - 0.5) * Math.pow(10, random.nextInt(32)));
+        }
+    }
+
+    private static CellStorage column(int rows) {
+        CellStorage storage = new TiledCellStorage();
+        for (int row = 1; row <= rows; row++) {
+            storage.setContent(CellAddress.of(row, 0), new NumericContent(row % 1000 * 0.1));
+        }
+        return storage;
+    }
+
+    // Compares the bits of the sums, so that a change of order cannot hide in a delta
+    private static void assertSame(Aggregate expected, Aggregate actual) {
+        assertEquals(expected.getCount(), actual.getCount());
+        assertEquals(Double.doubleToRawLongBits(expected.getSum()), Double.doubleToRawLongBits(actual.getSum()));
+        assertEquals(expected.getMin(), actual.getMin());
+        assertEquals(expected.getMax(), actual.getMax());
+    }
+
+    private static Aggregate sum(ColumnAggregates aggregates, int startRow, int endRow) {
+        Aggregate aggregate = new Aggregate();
+        assertTrue(aggregates.aggregate(0, startRow, endRow, aggregate));
+        return aggregate;
+    }
+}
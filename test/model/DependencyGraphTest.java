@@ -0,0 +1,127 @@
+package model;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeSet;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DependencyGraphTest {
+
+    private static final long A1 = CellAddress.of(1, 0);
+    private static final long B1 = CellAddress.of(1, 1);
+    private static final long C1 = CellAddress.of(1, 2);
+    private static final long D1 = CellAddress.of(1, 3);
+
+    @Test
+    void recordsRepeatedReferencesOnce() {
+        DependencyGraph graph = new DependencyGraph();
+        graph.setPrecedents(C1, new long[]{B1, A1, B1, A1, B1});
+
+        assertEquals(List.of(A1, B1), precedents(graph, C1));
+        assertEquals(List.of(C1), dependents(graph, B1));
+        assertEquals(1, graph.dependentCount(A1));
+        assertEquals(2, graph.edgeCount());
+
+        // Replacing the references drops the old ones
+        graph.setPrecedents(C1, new long[]{D1, D1});
+        assertEquals(List.of(D1), precedents(graph, C1));
+        assertEquals(0, graph.dependentCount(A1));
+        assertEquals(1, graph.edgeCount());
+    }
+
+    @Test
+    void releasesTheIdOfACellReadingItselfOnce() {
+        DependencyGraph graph = new DependencyGraph();
+        graph.setPrecedents(A1, new long[]{A1});
+        assertEquals(List.of(A1), dependents(graph, A1));
+        graph.clearPrecedents(A1);
+        assertEquals(0, graph.edgeCount());
+
+        // Two cells given the same recycled id would read each other
+        graph.setPrecedents(B1, new long[]{C1});
+        graph.setPrecedents(D1, new long[]{B1});
+        assertEquals(List.of(C1), precedents(graph, B1));
+        assertEquals(List.of(), precedents(graph, C1));
+        assertEquals(List.of(B1), dependents(graph, C1));
+        assertEquals(List.of(D1), dependents(graph, B1));
+        assertEquals(List.of(), dependents(graph, A1));
+    }
+
+    @Test
+    void recyclesIdsWithoutMixingUpCells() {
+        DependencyGraph graph = new DependencyGraph();
+        Map<Long, TreeSet<Long>> expected = new HashMap<>();
+        Random random = new Random(13);
+
+        for (int step = 0; step < 20_000; step++) {
+            long formula = CellAddress.of(1 + random.nextInt(50), 0);
+            if (random.nextInt(3) == 0) {
+                graph.clearPrecedents(formula);
+                expected.remove(formula);
+            } else {
+                // Some formulas read themselves or repeat a reference
+                long[] refs = new long[random.nextInt(4)];
+                for (int i = 0; i < refs.length; i++) {
+                    refs[i] = CellAddress.of(1 + random.nextInt(50), random.nextInt(2));
+                }
+                graph.setPrecedents(formula, refs);
+                TreeSet<Long> set = new TreeSet<>();
+                for (long ref : refs) {
+                    set.add(ref);
+                }
+                if (set.isEmpty()) {
+                    expected.remove(formula);
+                } else {
+                    expected.put(formula, set);
+                }
+            }
+
+            if (step % 500 == 0) {
+                assertSameGraph(expected, graph);
+            }
+        }
+        assertSameGraph(expected, graph);
+    }
+
+    private static void assertSameGraph(Map<Long, TreeSet<Long>> expected, DependencyGraph graph) {
+        int edges = 0;
+        for (int row = 1; row <= 50; row++) {
+            for (int column = 0; column < 2; column++) {
+                long address = CellAddress.of(row, column);
+                List<Long> precedents = new ArrayList<>(expected.getOrDefault(address, new TreeSet<>()));
+                edges += precedents.size();
+                assertEquals(precedents, precedents(graph, address));
+
+                List<Long> dependents = new ArrayList<>();
+                for (Map.Entry<Long, TreeSet<Long>> entry : expected.entrySet()) {
+                    if (entry.getValue().contains(address)) {
+                        dependents.add(entry.getKey());
+                    }
+                }
+                dependents.sort(null);
+                assertEquals(dependents, dependents(graph, address));
+                assertEquals(dependents.size(), graph.dependentCount(address));
+            }
+        }
+        assertEquals(edges, graph.edgeCount());
+    }
+
+    private static List<Long> precedents(DependencyGraph graph, long address) {
+        List<Long> precedents = new ArrayList<>();
+        graph.forEachPrecedent(address, precedents::add);
+        return precedents;
+    }
+
+    private static List<Long> dependents(DependencyGraph graph, long address) {
+        List<Long> dependents = new ArrayList<>();
+        graph.forEachDependent(address, dependents::add);
+        dependents.sort(null);
+        return dependents;
+    }
+}
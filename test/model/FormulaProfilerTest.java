@@ -0,0 +1,149 @@
+package model;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FormulaProfilerTest {
+
+    private static final long A1 = CellAddress.of(1, 0);
+    private static final long B1 = CellAddress.of(1, 1);
+    private static final long C1 = CellAddress.of(1, 2);
+
+    @Test
+    void accumulatesTheCostOfEachCell() {
+        FormulaProfiler profiler = new FormulaProfiler();
+        FormulaContent sum = new FormulaContent("=SUMA(A1:B10)+C3");
+        profiler.record(A1, sum, 100);
+        profiler.record(A1, sum, 300);
+        profiler.record(B1, new FormulaContent("=1"), 50);
+
+        FormulaProfiler.CellProfile profile = profiler.getProfile(A1);
+        assertEquals(A1, profile.getAddress());
+        assertSame(sum, profile.getFormula());
+        assertEquals(2, profile.getEvaluations());
+        assertEquals(400, profile.getTotalNanos());
+        assertEquals(300, profile.getMaxNanos());
+        assertEquals(200, profile.getMeanNanos());
+        assertEquals(21, profile.getCellsRead());
+        assertNull(profiler.getProfile(C1));
+
+        // A new formula in the cell keeps the cost so far
+        FormulaContent replaced = new FormulaContent("=B1");
+        profiler.record(A1, replaced, 10);
+        profile = profiler.getProfile(A1);
+        assertSame(replaced, profile.getFormula());
+        assertEquals(1, profile.getCellsRead());
+        assertEquals(3, profile.getEvaluations());
+        assertEquals(410, profile.getTotalNanos());
+
+        profiler.reset();
+        assertNull(profiler.getProfile(A1));
+        assertEquals(List.of(), profiler.getHottest(5));
+    }
+
+    @Test
+    void listsTheHottestCellsFirst() {
+        FormulaProfiler profiler = new FormulaProfiler();
+        profiler.record(A1, new FormulaContent("=1"), 20);
+        profiler.record(B1, new FormulaContent("=2"), 500);
+        profiler.record(C1, new FormulaContent("=3"), 70);
+        profiler.record(C1, new FormulaContent("=3"), 70);
+
+        List<FormulaProfiler.CellProfile> hottest = profiler.getHottest(2);
+        assertEquals(2, hottest.size());
+        assertEquals(B1, hottest.get(0).getAddress());
+        assertEquals(C1, hottest.get(1).getAddress());
+        assertEquals(3, profiler.getHottest(10).size());
+    }
+
+    @Test
+    void reportsTheHottestCellsAndTheCriticalPath() {
+        Spreadsheet spreadsheet = chain();
+        FormulaProfiler profiler = new FormulaProfiler();
+        profiler.record(CellAddress.of(2, 0), new FormulaContent("=A1+1"), 2_000);
+        profiler.record(CellAddress.of(4, 0), new FormulaContent("=A3+1"), 9_000);
+
+        String[] lines = profiler.report(spreadsheet, 10).split(System.lineSeparator());
+        assertEquals(4, lines.length);
+        assertTrue(lines[0].startsWith("Cell"));
+        assertTrue(lines[1].startsWith("A4 "), lines[1]);
+        assertTrue(lines[1].endsWith("=A3+1"), lines[1]);
+        assertTrue(lines[2].startsWith("A2 "), lines[2]);
+        assertEquals("Critical path: 4 formulas, A2 to A5, 11.0 us per evaluation of all of them", lines[3]);
+
+        assertTrue(new FormulaProfiler().report(new Spreadsheet(), 10).endsWith("Critical path: no formulas"));
+    }
+
+    @Test
+    void profilesTheFormulasASpreadsheetEvaluates() {
+        Spreadsheet spreadsheet = chain();
+        FormulaProfiler profiler = new FormulaProfiler();
+        spreadsheet.setProfiler(profiler);
+        assertSame(profiler, spreadsheet.getProfiler());
+
+        spreadsheet.addOrModifyCell("A1", new NumericContent(2));
+        for (int row = 2; row <= 5; row++) {
+            assertEquals(1, profiler.getProfile(CellAddress.of(row, 0)).getEvaluations());
+        }
+        assertNull(profiler.getProfile(B1));
+
+        spreadsheet.setProfiler(null);
+        spreadsheet.addOrModifyCell("A1", new NumericContent(3));
+        assertEquals(1, profiler.getProfile(CellAddress.of(5, 0)).getEvaluations());
+    }
+
+    @Test
+    void forgetsCellsThatNoLongerHoldAFormula() {
+        Spreadsheet spreadsheet = chain();
+        FormulaProfiler profiler = new FormulaProfiler();
+        spreadsheet.setProfiler(profiler);
+        spreadsheet.addOrModifyCell("A1", new NumericContent(2));
+
+        spreadsheet.addOrModifyCell("A3", new NumericContent(5));
+        spreadsheet.addOrModifyCell("A4", null);
+        assertNull(profiler.getProfile(CellAddress.of(3, 0)));
+        assertNull(profiler.getProfile(CellAddress.of(4, 0)));
+        assertEquals(1, profiler.getProfile(CellAddress.of(2, 0)).getEvaluations());
+        for (FormulaProfiler.CellProfile profile : profiler.getHottest(10)) {
+            assertTrue(profile.getAddress() == CellAddress.of(2, 0) || profile.getAddress() == CellAddress.of(5, 0));
+        }
+    }
+
+    @Test
+    void followsTheLongestChainOfFormulas() {
+        Spreadsheet spreadsheet = chain();
+        assertArrayEquals(new long[]{CellAddress.of(2, 0), CellAddress.of(3, 0), CellAddress.of(4, 0), CellAddress.of(5, 0)},
+                spreadsheet.getCriticalPath());
+        assertArrayEquals(new long[0], new Spreadsheet().getCriticalPath());
+    }
+
+    @Test
+    void takesTheFirstInputOfADiamond() {
+        // B1 and C1 both read A1 and are both read by D1, which E1 reads; of two equally
+        // long chains, the path follows the input D1 references first
+        Spreadsheet spreadsheet = new Spreadsheet();
+        spreadsheet.addOrModifyCell("A1", new NumericContent(1));
+        spreadsheet.addOrModifyCell("E1", new FormulaContent("=D1"));
+        spreadsheet.addOrModifyCell("D1", new FormulaContent("=C1+B1"));
+        spreadsheet.addOrModifyCell("C1", new FormulaContent("=A1*2"));
+        spreadsheet.addOrModifyCell("B1", new FormulaContent("=A1+1"));
+
+        assertArrayEquals(new long[]{C1, CellAddress.of(1, 3), CellAddress.of(1, 4)}, spreadsheet.getCriticalPath());
+    }
+
+    // A1 holds a number, A2 to A4 each add one to the row above and A5 totals them through a range;
+    // B1 is a formula off the chain
+    private static Spreadsheet chain() {
+        Spreadsheet spreadsheet = new Spreadsheet();
+        spreadsheet.addOrModifyCell("A1", new NumericContent(1));
+        spreadsheet.addOrModifyCell("B1", new FormulaContent("=7"));
+        spreadsheet.addOrModifyCell("A2", new FormulaContent("=A1+1"));
+        spreadsheet.addOrModifyCell("A3", new FormulaContent("=A2+1"));
+        spreadsheet.addOrModifyCell("A4", new FormulaContent("=A3+1"));
+        spreadsheet.addOrModifyCell("A5", new FormulaContent("=SUMA(A1:A4)"));
+        return spreadsheet;
+    }
+}
@@ -0,0 +1,88 @@
+package model;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LazyEvaluationTest {
+
+    private static final int ROWS = 300;
+
+    @Test
+    void readsTheSameValuesAsEagerEvaluation() {
+        Spreadsheet eager = sheet();
+        Spreadsheet lazy = sheet();
+        lazy.setLazyEvaluation(true);
+
+        Random random = new Random(7);
+        for (int edit = 0; edit < 200; edit++) {
+            int row = 1 + random.nextInt(ROWS);
+            Content content = random.nextInt(10) == 0 ? new TextContent("x") : new NumericContent(random.nextInt(100));
+            eager.addOrModifyCell(row, 0, content);
+            lazy.addOrModifyCell(row, 0, content);
+
+            // Read only some cells in between, so stale formulas pile up
+            if (edit % 20 == 0) {
+                assertSameValues(eager, lazy);
+            } else {
+                int read = 1 + random.nextInt(ROWS);
+                assertEquals(eager.getCell(read, 3).getValueAsString(), lazy.getCell(read, 3).getValueAsString());
+            }
+        }
+        assertSameValues(eager, lazy);
+    }
+
+    @Test
+    void evaluatesOnlyWhatAReadNeeds() throws Exception {
+        Spreadsheet lazy = sheet();
+        lazy.setLazyEvaluation(true);
+        long before = lazy.getTotalEvaluationCount();
+
+        lazy.addOrModifyCell(1, 0, new NumericContent(50));
+        assertEquals(0, lazy.getLastEvaluationCount());
+        assertEquals(before, lazy.getTotalEvaluationCount());
+
+        // B1 and C1 are stale; D1 reads only B1
+        assertEquals(100, lazy.get(1, 3));
+        assertEquals(before + 2, lazy.getTotalEvaluationCount());
+    }
+
+    @Test
+    void switchingBackToEagerEvaluationUpdatesStaleFormulas() {
+        Spreadsheet eager = sheet();
+        Spreadsheet lazy = sheet();
+        lazy.setLazyEvaluation(true);
+        for (Spreadsheet spreadsheet : new Spreadsheet[]{eager, lazy}) {
+            spreadsheet.addOrModifyCell(ROWS / 2, 0, new NumericContent(-1));
+        }
+
+        lazy.setLazyEvaluation(false);
+        assertFalse(lazy.isLazyEvaluation());
+        assertSameValues(eager, lazy);
+    }
+
+    // Column A holds numbers, B doubles them, C totals a tall range of B and D reads B
+    private static Spreadsheet sheet() {
+        Spreadsheet spreadsheet = new Spreadsheet(new TiledCellStorage());
+        spreadsheet.beginBatch();
+        for (int row = 1; row <= ROWS; row++) {
+            spreadsheet.addOrModifyCell(row, 0, new NumericContent(row));
+            spreadsheet.addOrModifyCell(row, 1, new FormulaContent("=A" + row + "*2"));
+            spreadsheet.addOrModifyCell(row, 2, new FormulaContent("=SUMA(B1:B" + ROWS + ")-B" + row));
+            spreadsheet.addOrModifyCell(row, 3, new FormulaContent("=B" + row));
+        }
+        spreadsheet.commit();
+        return spreadsheet;
+    }
+
+    private static void assertSameValues(Spreadsheet expected, Spreadsheet actual) {
+        for (int row = 1; row <= ROWS; row++) {
+            for (int column = 0; column <= 3; column++) {
+                assertEquals(expected.getCell(row, column).getValueAsString(),
+                        actual.getCell(row, column).getValueAsString(), CellAddress.toString(CellAddress.of(row, column)));
+            }
+        }
+    }
+}
@@ -0,0 +1,192 @@
+package model;
+
+import model.formula.Aggregate;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PagedCellStorageTest {
+
+    private static final int ROWS_PER_PAGE = 4;
+
+    @Test
+    void visitsPinnedNumbersAsNumbers() {
+        TiledCellStorage file = new TiledCellStorage();
+        for (int row = 1; row <= 10; row++) {
+            file.setContent(CellAddress.of(row, 0), new NumericContent(row));
+            file.setContent(CellAddress.of(row, 1), new TextContent("t" + row));
+        }
+        PagedCellStorage paged = new PagedCellStorage(new StorageSource(file), 0);
+        TiledCellStorage expected = new TiledCellStorage();
+        file.forEachCell(copyInto(expected));
+
+        // Edited cells are pinned in memory, numbers and text alike
+        for (CellStorage storage : new CellStorage[]{paged, expected}) {
+            storage.setContent(CellAddress.of(2, 0), new NumericContent(-2));
+            storage.setContent(CellAddress.of(3, 1), new NumericContent(33));
+            storage.setContent(CellAddress.of(7, 0), new TextContent("seven"));
+            storage.setContent(CellAddress.of(12, 2), new NumericContent(120));
+        }
+
+        assertEquals(visits(expected), visits(paged));
+    }
+
+    @Test
+    void visitsRangesWithPinnedCellsInRowMajorOrder() throws Exception {
+        TiledCellStorage file = new TiledCellStorage();
+        for (int row = 1; row <= 10; row++) {
+            for (int column = 0; column < 3; column++) {
+                file.setContent(CellAddress.of(row, column), new NumericContent(row * 10 + column));
+            }
+        }
+        PagedCellStorage paged = new PagedCellStorage(new StorageSource(file), 0);
+        TiledCellStorage expected = new TiledCellStorage();
+        file.forEachCell(copyInto(expected));
+
+        for (CellStorage storage : new CellStorage[]{paged, expected}) {
+            storage.setContent(CellAddress.of(2, 1), new NumericContent(-21));
+            storage.setContent(CellAddress.of(2, 2), new NumericContent(-22));
+            storage.setContent(CellAddress.of(6, 0), new NumericContent(-60));
+            storage.setContent(CellAddress.of(7, 1), null);
+            storage.setContent(CellAddress.of(12, 1), new NumericContent(-121));
+        }
+
+        int[][] ranges = {{1, 0, 12, 2}, {2, 1, 6, 1}, {2, 0, 2, 2}, {6, 0, 9, 0}, {3, 0, 5, 2}, {11, 0, 14, 3}};
+        for (int[] range : ranges) {
+            assertEquals(values(expected, range), values(paged, range));
+        }
+
+        // Columns copy the same, pinned cells and rows past the end of the file included
+        double[] values = new double[14];
+        byte[] states = new byte[14];
+        double[] expectedValues = new double[14];
+        byte[] expectedStates = new byte[14];
+        paged.readColumn(1, 1, 13, values, states, 1);
+        expected.readColumn(1, 1, 13, expectedValues, expectedStates, 1);
+        assertArrayEquals(expectedValues, values);
+        assertArrayEquals(expectedStates, states);
+    }
+
+    @Test
+    void keepsTallRangesWithinTheBudget() throws Exception {
+        TiledCellStorage file = new TiledCellStorage();
+        double total = 0;
+        for (int row = 1; row <= 1000; row++) {
+            file.setContent(CellAddress.of(row, 0), new NumericContent(row * 0.5));
+            total += row * 0.5;
+        }
+        // Each page spans a single tile, so three pages fit
+        long pageBytes = 9L * TiledCellStorage.TILE_SIZE * TiledCellStorage.TILE_SIZE;
+        PagedCellStorage paged = new PagedCellStorage(new StorageSource(file), 3 * pageBytes);
+        Spreadsheet spreadsheet = new Spreadsheet(paged);
+
+        // Read repeatedly, which would track the column on a storage held in memory
+        for (int row = 1; row <= 3; row++) {
+            spreadsheet.addOrModifyCell(row, 1, new FormulaContent("=SUMA(A1:A1000)"));
+            assertEquals(total, spreadsheet.get(row, 1));
+            assertTrue(paged.getResidentPageCount() <= 3, "resident pages: " + paged.getResidentPageCount());
+        }
+        spreadsheet.addOrModifyCell(500, 0, new NumericContent(0));
+        assertEquals(total - 250, spreadsheet.get(1, 1));
+        assertTrue(paged.getResidentPageCount() <= 3);
+
+        ColumnAggregates aggregates = new ColumnAggregates(paged);
+        aggregates.prepare(0);
+        assertTrue(aggregates.aggregate(0, 1, 1000, new Aggregate()));
+        assertFalse(aggregates.isTracked(0));
+    }
+
+    private static List<Double> values(CellStorage storage, int[] range) throws Exception {
+        List<Double> values = new ArrayList<>();
+        storage.forEachInRange(range[0], range[1], range[2], range[3], values::add);
+        return values;
+    }
+
+    // The kind, address and value of every cell visited, in order
+    private static List<String> visits(CellStorage storage) {
+        List<String> visits = new ArrayList<>();
+        storage.forEachCell(new CellStorage.Visitor() {
+            @Override
+            public void visitNumber(int row, int column, double value) {
+                visits.add("number " + CellAddress.toString(CellAddress.of(row, column)) + " " + value);
+            }
+
+            @Override
+            public void visitContent(int row, int column, Content content) {
+                visits.add("content " + CellAddress.toString(CellAddress.of(row, column)) + " " + content.getValueAsString());
+            }
+        });
+        return visits;
+    }
+
+    private static CellStorage.Visitor copyInto(CellStorage storage) {
+        return new CellStorage.Visitor() {
+            @Override
+            public void visitNumber(int row, int column, double value) {
+                storage.setContent(CellAddress.of(row, column), new NumericContent(value));
+            }
+
+            @Override
+            public void visitContent(int row, int column, Content content) {
+                storage.setContent(CellAddress.of(row, column), content);
+            }
+        };
+    }
+
+    // Pages of a storage held in memory
+    private static final class StorageSource implements PagedCellStorage.Source {
+        private final CellStorage storage;
+
+        StorageSource(CellStorage storage) {
+            this.storage = storage;
+        }
+
+        @Override
+        public int getRowsPerPage() {
+            return ROWS_PER_PAGE;
+        }
+
+        @Override
+        public int getPageCount() {
+            return (storage.getMaxRow() + ROWS_PER_PAGE - 1) / ROWS_PER_PAGE;
+        }
+
+        @Override
+        public int getCellCount() {
+            return storage.size();
+        }
+
+        @Override
+        public int getMaxRow() {
+            return storage.getMaxRow();
+        }
+
+        @Override
+        public int getMaxColumn() {
+            return storage.getMaxColumn();
+        }
+
+        @Override
+        public void readPage(int page, CellStorage.Visitor visitor) {
+            int firstRow = page * ROWS_PER_PAGE + 1;
+            storage.forEachCell(new CellStorage.Visitor() {
+                @Override
+                public void visitNumber(int row, int column, double value) {
+                    if (row >= firstRow && row < firstRow + ROWS_PER_PAGE) {
+                        visitor.visitNumber(row, column, value);
+                    }
+                }
+
+                @Override
+                public void visitContent(int row, int column, Content content) {
+                    if (row >= firstRow && row < firstRow + ROWS_PER_PAGE) {
+                        visitor.visitContent(row, column, content);
+                    }
+                }
+            });
+        }
+    }
+}
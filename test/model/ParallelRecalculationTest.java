@@ -0,0 +1,89 @@
+package model;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ParallelRecalculationTest {
+
+    private static final int ROWS = 2000;
+
+    @Test
+    void matchesSerialRecalculation() throws Exception {
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            // The parallel sheet builds the column of the totals before its first read, while the
+            // serial one scans it first; both must still add the same numbers in the same order
+            Spreadsheet serial = sheet(null);
+            Spreadsheet parallel = sheet(pool);
+            assertSameValues(serial, parallel);
+
+            for (Spreadsheet spreadsheet : new Spreadsheet[]{serial, parallel}) {
+                spreadsheet.addOrModifyCell(1, 0, new NumericContent(1234.567));
+            }
+            assertEquals(serial.getLastEvaluationCount(), parallel.getLastEvaluationCount());
+            assertEquals(serial.getLastDirtyCount(), parallel.getLastDirtyCount());
+            assertSameValues(serial, parallel);
+
+            for (Spreadsheet spreadsheet : new Spreadsheet[]{serial, parallel}) {
+                spreadsheet.addOrModifyCell(7, 0, new TextContent("x"));
+            }
+            assertEquals(serial.getLastEvaluationCount(), parallel.getLastEvaluationCount());
+            for (int row = 1; row <= ROWS; row++) {
+                for (int column = 1; column <= 3; column++) {
+                    assertEquals(serial.getCell(row, column).getValueAsString(),
+                            parallel.getCell(row, column).getValueAsString(), CellAddress.toString(CellAddress.of(row, column)));
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    void buildsTheColumnsOfTallRangesBeforeTheLevel() throws Exception {
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            Spreadsheet serial = sheet(null);
+            Spreadsheet parallel = sheet(null);
+            parallel.setParallelRecalculation(pool, 1);
+            for (Spreadsheet spreadsheet : new Spreadsheet[]{serial, parallel}) {
+                spreadsheet.addOrModifyCell(2, 0, new NumericContent(-5.3));
+            }
+
+            // Every total matches the serial one, so each saw the column fully updated
+            assertSameValues(serial, parallel);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private static void assertSameValues(Spreadsheet serial, Spreadsheet parallel) throws Exception {
+        for (int row = 1; row <= ROWS; row++) {
+            for (int column = 1; column <= 3; column++) {
+                assertEquals(Double.doubleToRawLongBits(serial.get(row, column)), Double.doubleToRawLongBits(parallel.get(row, column)),
+                        CellAddress.toString(CellAddress.of(row, column)));
+            }
+        }
+    }
+
+    // Column A holds numbers of mixed magnitudes, B doubles them, C adds a tall total of B and
+    // D reads C; the sheet is loaded on the pool, if any
+    private static Spreadsheet sheet(ForkJoinPool pool) {
+        Spreadsheet spreadsheet = new Spreadsheet(new TiledCellStorage());
+        if (pool != null) {
+            spreadsheet.setParallelRecalculation(pool, 1);
+        }
+        spreadsheet.beginBatch();
+        for (int row = 1; row <= ROWS; row++) {
+            spreadsheet.addOrModifyCell(row, 0, new NumericContent(Math.sin(row) * Math.pow(10, row % 16)));
+            spreadsheet.addOrModifyCell(row, 1, new FormulaContent("=A" + row + "*2"));
+            spreadsheet.addOrModifyCell(row, 2, new FormulaContent("=SUMA(B1:B100)+A" + row));
+            spreadsheet.addOrModifyCell(row, 3, new FormulaContent("=C" + row + "-B" + row));
+        }
+        spreadsheet.commit();
+        return spreadsheet;
+    }
+}
@@ -0,0 +1,120 @@
+package model;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RangeIndexTest {
+
+    private static final long A1 = CellAddress.of(1, 0);
+    private static final long B1 = CellAddress.of(1, 1);
+    private static final long C1 = CellAddress.of(1, 2);
+
+    @Test
+    void findsRangesContainingTheCellUpToTheirBoundaries() {
+        RangeIndex index = new RangeIndex();
+        index.add(A1, 10, 2, 20, 4);
+
+        assertEquals(List.of(A1), observers(index, 10, 2));
+        assertEquals(List.of(A1), observers(index, 20, 4));
+        assertEquals(List.of(A1), observers(index, 15, 3));
+        assertEquals(List.of(), observers(index, 9, 2));
+        assertEquals(List.of(), observers(index, 21, 4));
+        assertEquals(List.of(), observers(index, 10, 1));
+        assertEquals(List.of(), observers(index, 20, 5));
+    }
+
+    @Test
+    void reportsNestedAndOverlappingRangesOncePerRange() {
+        RangeIndex index = new RangeIndex();
+        index.add(A1, 1, 0, 100, 0);      // A1:A100
+        index.add(B1, 10, 0, 20, 0);      // Nested in it
+        index.add(B1, 15, 0, 30, 1);      // Overlapping both, from the same owner
+        index.add(C1, 100, 0, 100, 0);    // A single cell on the last row of the first
+
+        assertEquals(4, index.size());
+        assertEquals(List.of(A1, B1, B1), sorted(observers(index, 15, 0)));
+        assertEquals(List.of(A1, B1, B1), sorted(observers(index, 20, 0)));
+        assertEquals(List.of(A1, B1), sorted(observers(index, 21, 0)));
+        assertEquals(List.of(B1), observers(index, 30, 1));
+        assertEquals(List.of(A1, C1), sorted(observers(index, 100, 0)));
+        assertEquals(List.of(), observers(index, 101, 0));
+    }
+
+    @Test
+    void removesEveryRangeOfAnOwner() {
+        RangeIndex index = new RangeIndex();
+        index.add(A1, 1, 0, 100, 0);
+        index.add(B1, 10, 0, 20, 0);
+        index.add(B1, 15, 0, 30, 1);
+
+        index.removeOwner(B1);
+        assertEquals(1, index.size());
+        assertEquals(List.of(A1), observers(index, 15, 0));
+        assertEquals(List.of(), observers(index, 30, 1));
+        index.forEachRange(B1, (startRow, startColumn, endRow, endColumn) -> fail());
+
+        // Removing an unknown owner changes nothing
+        index.removeOwner(C1);
+        assertEquals(1, index.size());
+
+        List<int[]> ranges = new ArrayList<>();
+        index.forEachRange(A1, (startRow, startColumn, endRow, endColumn) ->
+                ranges.add(new int[]{startRow, startColumn, endRow, endColumn}));
+        assertEquals(1, ranges.size());
+        assertArrayEquals(new int[]{1, 0, 100, 0}, ranges.get(0));
+    }
+
+    @Test
+    void matchesABruteForceScan() {
+        RangeIndex index = new RangeIndex();
+        List<int[]> ranges = new ArrayList<>();   // owner row, start row, start column, end row, end column
+        Random random = new Random(9);
+
+        for (int step = 0; step < 3000; step++) {
+            int owner = 1 + random.nextInt(300);
+            if (random.nextInt(4) == 0) {
+                index.removeOwner(CellAddress.of(owner, 0));
+                ranges.removeIf(range -> range[0] == owner);
+            } else {
+                int startRow = 1 + random.nextInt(500);
+                int endRow = startRow + random.nextInt(random.nextBoolean() ? 5 : 200);
+                int startColumn = random.nextInt(5);
+                int endColumn = startColumn + random.nextInt(3);
+                index.add(CellAddress.of(owner, 0), startRow, startColumn, endRow, endColumn);
+                ranges.add(new int[]{owner, startRow, startColumn, endRow, endColumn});
+            }
+            assertEquals(ranges.size(), index.size());
+
+            if (step % 100 == 0) {
+                for (int row = 1; row <= 710; row += 7) {
+                    for (int column = 0; column < 8; column++) {
+                        List<Long> expected = new ArrayList<>();
+                        for (int[] range : ranges) {
+                            if (range[1] <= row && row <= range[3] && range[2] <= column && column <= range[4]) {
+                                expected.add(CellAddress.of(range[0], 0));
+                            }
+                        }
+                        assertEquals(sorted(expected), sorted(observers(index, row, column)));
+                    }
+                }
+            }
+        }
+    }
+
+    private static List<Long> observers(RangeIndex index, int row, int column) {
+        List<Long> owners = new ArrayList<>();
+        index.forEachObserver(row, column, owners::add);
+        return owners;
+    }
+
+    private static List<Long> sorted(List<Long> owners) {
+        List<Long> copy = new ArrayList<>(owners);
+        copy.sort(null);
+        return copy;
+    }
+}
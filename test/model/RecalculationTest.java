@@ -0,0 +1,117 @@
+package model;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RecalculationTest {
+
+    @Test
+    void evaluatesEachDependentOnceAfterItsInputs() throws Exception {
+        // A diamond: B1 and C1 read A1, D1 reads both, E1 reads D1 through a range
+        Spreadsheet spreadsheet = new Spreadsheet();
+        spreadsheet.addOrModifyCell("A1", new NumericContent(1));
+        spreadsheet.addOrModifyCell("E1", new FormulaContent("=SUMA(D1:D1)+1"));
+        spreadsheet.addOrModifyCell("D1", new FormulaContent("=B1*C1"));
+        spreadsheet.addOrModifyCell("B1", new FormulaContent("=A1+1"));
+        spreadsheet.addOrModifyCell("C1", new FormulaContent("=A1+2"));
+
+        spreadsheet.addOrModifyCell("A1", new NumericContent(3));
+        assertEquals(4, spreadsheet.getLastEvaluationCount());
+        assertEquals(5, spreadsheet.getLastDirtyCount());
+        assertEquals(20, spreadsheet.get(1, 3));
+        assertEquals(21, spreadsheet.get(1, 4));
+    }
+
+    @Test
+    void ordersFormulasAfterTheFormulasTheyRead() {
+        Spreadsheet spreadsheet = new Spreadsheet();
+        spreadsheet.addOrModifyCell("C1", new FormulaContent("=B1+1"));
+        spreadsheet.addOrModifyCell("B1", new FormulaContent("=A1+1"));
+        spreadsheet.addOrModifyCell("A1", new FormulaContent("=5"));
+        spreadsheet.addOrModifyCell("D1", new FormulaContent("=SUMA(A1:C1)"));
+
+        long[] order = spreadsheet.getFormulasInOrder();
+        assertArrayEquals(new long[]{CellAddress.of(1, 0), CellAddress.of(1, 1), CellAddress.of(1, 2), CellAddress.of(1, 3)},
+                order);
+    }
+
+    @Test
+    void recalculatesFormulasThatNoLongerReadAnEditedCell() throws Exception {
+        Spreadsheet spreadsheet = new Spreadsheet();
+        spreadsheet.addOrModifyCell("A1", new NumericContent(1));
+        spreadsheet.addOrModifyCell("B1", new FormulaContent("=A1*10"));
+        spreadsheet.addOrModifyCell("B1", new NumericContent(7));
+
+        spreadsheet.addOrModifyCell("A1", new NumericContent(2));
+        assertEquals(0, spreadsheet.getLastEvaluationCount());
+        assertEquals(7, spreadsheet.get(1, 1));
+    }
+
+    @Test
+    void rejectsFormulasClosingACycle() throws Exception {
+        Spreadsheet spreadsheet = new Spreadsheet();
+        spreadsheet.addOrModifyCell("A1", new NumericContent(1));
+        spreadsheet.addOrModifyCell("B1", new FormulaContent("=A1+1"));
+        spreadsheet.addOrModifyCell("C1", new FormulaContent("=SUMA(A1:B1)"));
+        spreadsheet.addOrModifyCell("D1", new FormulaContent("=C1*2"));
+
+        assertTrue(spreadsheet.hasCircularDependency("A1", new FormulaContent("=D1")));
+        assertTrue(spreadsheet.hasCircularDependency("B1", new FormulaContent("=SUMA(A1:D1)")));
+        assertTrue(spreadsheet.hasCircularDependency("E1", new FormulaContent("=E1")));
+        assertFalse(spreadsheet.hasCircularDependency("E1", new FormulaContent("=D1+A1")));
+
+        // The rejected formula leaves the cell and the order as they were
+        spreadsheet.addOrModifyCell("A1", new FormulaContent("=D1"));
+        assertEquals(1, spreadsheet.get(1, 0));
+        spreadsheet.addOrModifyCell("A1", new NumericContent(2));
+        assertEquals(10, spreadsheet.get(1, 3));
+    }
+
+    @Test
+    void acceptsFormulasOnceAnEditBreaksTheCycle() throws Exception {
+        Spreadsheet spreadsheet = new Spreadsheet();
+        spreadsheet.addOrModifyCell("B1", new FormulaContent("=A1+1"));
+        spreadsheet.addOrModifyCell("C1", new FormulaContent("=B1+1"));
+        assertTrue(spreadsheet.hasCircularDependency("A1", new FormulaContent("=C1")));
+
+        // C1 no longer reads B1, so A1 may now read C1, which moves ahead of it in the order
+        spreadsheet.addOrModifyCell("C1", new FormulaContent("=10"));
+        spreadsheet.addOrModifyCell("A1", new FormulaContent("=C1"));
+        assertEquals(11, spreadsheet.get(1, 1));
+        assertArrayEquals(new long[]{CellAddress.of(1, 2), CellAddress.of(1, 0), CellAddress.of(1, 1)},
+                spreadsheet.getFormulasInOrder());
+    }
+
+    @Test
+    void recalculatesABatchOnceAtCommit() throws Exception {
+        Spreadsheet spreadsheet = new Spreadsheet();
+        spreadsheet.addOrModifyCell("A1", new NumericContent(1));
+        spreadsheet.addOrModifyCell("B1", new FormulaContent("=A1*2"));
+        spreadsheet.addOrModifyCell("C1", new FormulaContent("=A1+B1+A2"));
+
+        long before = spreadsheet.getTotalEvaluationCount();
+        spreadsheet.beginBatch();
+        spreadsheet.addOrModifyCell("A1", new NumericContent(5));
+        spreadsheet.addOrModifyCell("A2", new NumericContent(100));
+        spreadsheet.beginBatch();
+        spreadsheet.addOrModifyCell("A1", new NumericContent(6));
+        spreadsheet.commit();
+
+        // Nothing is recalculated until the outermost commit
+        assertTrue(spreadsheet.isInBatch());
+        assertEquals(before, spreadsheet.getTotalEvaluationCount());
+        assertEquals(2, spreadsheet.get(1, 1));
+
+        spreadsheet.commit();
+        assertFalse(spreadsheet.isInBatch());
+        assertEquals(2, spreadsheet.getLastEvaluationCount());
+        assertEquals(12, spreadsheet.get(1, 1));
+        assertEquals(118, spreadsheet.get(1, 2));
+    }
+
+    @Test
+    void rejectsCommitsWithoutABatch() {
+        assertThrows(IllegalStateException.class, () -> new Spreadsheet().commit());
+    }
+}
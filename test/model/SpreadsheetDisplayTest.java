@@ -0,0 +1,44 @@
+package model;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class SpreadsheetDisplayTest {
+
+    @Test
+    void printsEveryRowAndColumnOfTheGrid() {
+        String n = System.lineSeparator();
+        for (CellStorage storage : new CellStorage[]{new TiledCellStorage(), new HashCellStorage()}) {
+            Spreadsheet spreadsheet = new Spreadsheet(storage);
+            spreadsheet.addOrModifyCell("B1", new NumericContent(2));
+            spreadsheet.addOrModifyCell("A3", new TextContent("x"));
+            spreadsheet.addOrModifyCell("C3", new FormulaContent("=B1*2"));
+
+            assertEquals("    A         B         C         " + n
+                    + "1             2.0                 " + n
+                    + "2                                 " + n
+                    + "3   x                   4.0       " + n, display(spreadsheet));
+        }
+    }
+
+    @Test
+    void printsOnlyTheHeaderOfAnEmptySheet() {
+        assertEquals("    " + System.lineSeparator(), display(new Spreadsheet(new TiledCellStorage())));
+    }
+
+    private static String display(Spreadsheet spreadsheet) {
+        PrintStream out = System.out;
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(bytes, true));
+        try {
+            spreadsheet.displaySpreadsheet();
+        } finally {
+            System.setOut(out);
+        }
+        return bytes.toString();
+    }
+}
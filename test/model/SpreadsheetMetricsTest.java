@@ -0,0 +1,93 @@
+package model;
+
+import io.FileManager;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SpreadsheetMetricsTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void countsEditsRecalculationsAndEvaluations() {
+        SpreadsheetMetrics metrics = new SpreadsheetMetrics();
+        Spreadsheet spreadsheet = new Spreadsheet();
+        spreadsheet.setMetrics(metrics);
+        assertSame(metrics, spreadsheet.getMetrics());
+
+        spreadsheet.addOrModifyCell("A1", new NumericContent(1));
+        spreadsheet.addOrModifyCell("B1", new FormulaContent("=A1*2"));
+        spreadsheet.addOrModifyCell("C1", new FormulaContent("=A1+B1"));
+        assertEquals(3, metrics.getEdits());
+        long recalculations = metrics.getRecalculatedCells().getCount();
+        long evaluations = metrics.getEvaluationNanos().getCount();
+
+        spreadsheet.addOrModifyCell("A1", new NumericContent(5));
+        assertEquals(4, metrics.getEdits());
+        assertEquals(recalculations + 1, metrics.getRecalculatedCells().getCount());
+        assertEquals(recalculations + 1, metrics.getRecalculationNanos().getCount());
+        assertEquals(2, metrics.getRecalculatedCells().getMax());
+        assertEquals(evaluations + 2, metrics.getEvaluationNanos().getCount());
+
+        long cycleChecks = metrics.getCycleCheckNanos().getCount();
+        assertTrue(spreadsheet.hasCircularDependency("A1", new FormulaContent("=C1")));
+        assertEquals(cycleChecks + 1, metrics.getCycleCheckNanos().getCount());
+
+        // Nothing moves once the spreadsheet stops collecting
+        spreadsheet.setMetrics(null);
+        spreadsheet.addOrModifyCell("A1", new NumericContent(6));
+        assertEquals(4, metrics.getEdits());
+        assertEquals(evaluations + 2, metrics.getEvaluationNanos().getCount());
+    }
+
+    @Test
+    void countsLoadsAndSaves() throws Exception {
+        SpreadsheetMetrics metrics = new SpreadsheetMetrics();
+        FileManager fileManager = new FileManager();
+        fileManager.setMetrics(metrics);
+        String file = directory.resolve("sheet.s2v").toString();
+
+        Spreadsheet spreadsheet = new Spreadsheet();
+        spreadsheet.addOrModifyCell("A1", new NumericContent(1));
+        spreadsheet.addOrModifyCell("B1", new FormulaContent("=A1*2"));
+        fileManager.saveSpreadsheet(file, spreadsheet);
+        assertEquals(1, metrics.getSaveNanos().getCount());
+        assertEquals(Files.size(Path.of(file)), metrics.getSaveBytes());
+        assertEquals(0, metrics.getEdits());
+
+        // The loaded spreadsheet keeps collecting into the same metrics
+        Spreadsheet loaded = fileManager.loadSpreadsheet(file);
+        assertEquals(1, metrics.getLoadNanos().getCount());
+        assertEquals(Files.size(Path.of(file)), metrics.getLoadBytes());
+        assertSame(metrics, loaded.getMetrics());
+        long edits = metrics.getEdits();
+        loaded.addOrModifyCell("A1", new NumericContent(3));
+        assertEquals(edits + 1, metrics.getEdits());
+    }
+
+    @Test
+    void summarizesValuesInPowerOfTwoBuckets() {
+        SpreadsheetMetrics.Histogram histogram = new SpreadsheetMetrics().getEvaluationNanos();
+        assertEquals(0, histogram.getPercentile(0.5));
+        assertEquals(0, histogram.getMean());
+
+        for (long value : new long[]{1, 2, 3, 100, 1000, -5}) {
+            histogram.record(value);
+        }
+        assertEquals(6, histogram.getCount());
+        assertEquals(1106, histogram.getSum());
+        assertEquals(1000, histogram.getMax());
+        assertEquals(1106 / 6.0, histogram.getMean());
+
+        // The median 2 falls in the bucket of 2 and 3, and the top value is capped by the maximum
+        assertEquals(3, histogram.getPercentile(0.5));
+        assertEquals(1000, histogram.getPercentile(0.99));
+        assertEquals(0, histogram.getPercentile(0.1));
+    }
+}
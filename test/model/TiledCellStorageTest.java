@@ -0,0 +1,110 @@
+package model;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TiledCellStorageTest {
+
+    @Test
+    void holdsTheSameCellsAsTheHashEngine() throws Exception {
+        CellStorage tiled = new TiledCellStorage();
+        CellStorage hash = new HashCellStorage();
+        Random random = new Random(4);
+        for (int i = 0; i < 5000; i++) {
+            long address = CellAddress.of(1 + random.nextInt(300), random.nextInt(200));
+            Content content = randomContent(random);
+            tiled.setContent(address, content);
+            hash.setContent(address, content);
+        }
+
+        assertEquals(hash.size(), tiled.size());
+        assertEquals(hash.getMaxRow(), tiled.getMaxRow());
+        assertEquals(hash.getMaxColumn(), tiled.getMaxColumn());
+        assertEquals(visits(hash), visits(tiled));
+        for (int row = 1; row <= 300; row++) {
+            for (int column = 0; column < 200; column++) {
+                Content expected = hash.getContent(CellAddress.of(row, column));
+                Content actual = tiled.getContent(CellAddress.of(row, column));
+                assertEquals(expected == null ? null : expected.getValueAsString(),
+                        actual == null ? null : actual.getValueAsString());
+            }
+        }
+    }
+
+    @Test
+    void visitsRangesInRowMajorOrderLikeTheHashEngine() throws Exception {
+        CellStorage tiled = new TiledCellStorage();
+        CellStorage hash = new HashCellStorage();
+        Random random = new Random(7);
+        for (int i = 0; i < 20000; i++) {
+            long address = CellAddress.of(1 + random.nextInt(500), random.nextInt(300));
+            NumericContent content = new NumericContent(random.nextDouble() * 1e6);
+            tiled.setContent(address, content);
+            hash.setContent(address, content);
+        }
+
+        // Ranges inside a tile, across bands of tiles, and larger than the sheet
+        int[][] ranges = {{1, 0, 10, 5}, {3, 60, 140, 200}, {1, 0, 500, 299}, {1, 0, 100000, 100000}, {450, 250, 900, 400}};
+        for (int[] range : ranges) {
+            List<Double> expected = new ArrayList<>();
+            List<Double> actual = new ArrayList<>();
+            hash.forEachInRange(range[0], range[1], range[2], range[3], expected::add);
+            tiled.forEachInRange(range[0], range[1], range[2], range[3], actual::add);
+            assertEquals(expected, actual);
+        }
+    }
+
+    @Test
+    void keepsTextAndFormulaContents() {
+        TiledCellStorage storage = new TiledCellStorage();
+        long text = CellAddress.of(1, 0);
+        long formula = CellAddress.of(2, 0);
+        storage.setContent(text, new TextContent("hola"));
+        storage.setContent(formula, new FormulaContent("=1+1"));
+
+        assertSame(storage.getContent(text), storage.getContent(text));
+        assertSame(storage.getContent(formula), storage.getContent(formula));
+    }
+
+    @Test
+    void emptiesCellsAndTiles() {
+        TiledCellStorage storage = new TiledCellStorage();
+        long address = CellAddress.of(70, 70);
+        storage.setContent(address, new NumericContent(1));
+        storage.setContent(address, null);
+
+        assertNull(storage.getContent(address));
+        assertEquals(0, storage.size());
+        assertEquals(0, storage.getMaxRow());
+        assertEquals(-1, storage.getMaxColumn());
+    }
+
+    private static Content randomContent(Random random) {
+        switch (random.nextInt(4)) {
+            case 0: return new TextContent("t" + random.nextInt(100));
+            case 1: return null;
+            default: return new NumericContent(random.nextInt(1000) / 8.0);
+        }
+    }
+
+    static List<String> visits(CellStorage storage) {
+        List<String> visits = new ArrayList<>();
+        storage.forEachCell(new CellStorage.Visitor() {
+            @Override
+            public void visitNumber(int row, int column, double value) {
+                visits.add("number " + CellAddress.toString(CellAddress.of(row, column)) + " " + value);
+            }
+
+            @Override
+            public void visitContent(int row, int column, Content content) {
+                visits.add("content " + CellAddress.toString(CellAddress.of(row, column)) + " " + content.getValueAsString());
+            }
+        });
+        return visits;
+    }
+}
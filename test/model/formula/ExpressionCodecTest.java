@@ -0,0 +1,78 @@
+package model.formula;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ExpressionCodecTest {
+
+    @Test
+    void roundTripsEveryKindOfNode() throws Exception {
+        Expression expression = FormulaParser.parse("=-(A1+B2*3.5)/SUMA(A1:C10;2)-POTENCIA(ABS(D4);2)");
+        Expression decoded = decode(encode(expression));
+        assertEquals(expression.toString(), decoded.toString());
+    }
+
+    @Test
+    void roundTripsMissingExpression() throws Exception {
+        assertNull(decode(encode(null)));
+    }
+
+    @Test
+    void storesBuiltInFunctionsByIdentifier() throws Exception {
+        byte[] bytes = encode(FormulaParser.parse("=MAX(A1)"));
+        // Function tag, then the identifier of MAX
+        assertEquals(6, bytes[0]);
+        assertEquals(FunctionRegistry.forName("MAX").getId(), bytes[1]);
+    }
+
+    @Test
+    void storesRegisteredFunctionsByName() throws Exception {
+        // Enough functions for identifiers not to fit in a byte
+        FormulaFunction last = null;
+        for (int i = 0; i < 300; i++) {
+            last = FunctionRegistry.registerUnary("CODEC" + letters(i), x -> x + 1);
+        }
+        assertTrue(last.getId() > 255);
+
+        Expression expression = FormulaParser.parse("=" + last.getName() + "(A1)");
+        FunctionCall decoded = (FunctionCall) decode(encode(expression));
+        assertSame(last, decoded.getFunction());
+    }
+
+    @Test
+    void rejectsUnknownFunctionNames() {
+        // A call without arguments to a function registered in another run
+        ByteBuffer bytes = ByteBuffer.allocate(15).put((byte) 7).putShort((short) 8).put("CODECNOT".getBytes()).putInt(0);
+        IOException error = assertThrows(IOException.class, () -> decode(bytes.array()));
+        assertTrue(error.getMessage().contains("CODECNOT"), error.getMessage());
+    }
+
+    // A name made of letters for a number, e.g. 0 -> "A", 26 -> "BA"
+    private static String letters(int value) {
+        StringBuilder name = new StringBuilder();
+        do {
+            name.insert(0, (char) ('A' + value % 26));
+            value /= 26;
+        } while (value > 0);
+        return name.toString();
+    }
+
+    private static byte[] encode(Expression expression) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ExpressionCodec.write(expression, new DataOutputStream(bytes));
+        return bytes.toByteArray();
+    }
+
+    private static Expression decode(byte[] bytes) throws IOException {
+        ByteBuffer in = ByteBuffer.wrap(bytes);
+        Expression expression = ExpressionCodec.read(in);
+        assertFalse(in.hasRemaining());
+        return expression;
+    }
+}
@@ -0,0 +1,189 @@
+package model.formula;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.DoubleConsumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FormulaCompilerTest {
+
+    private static final double[] OPERANDS = {0.0, -0.0, 1.0, -1.0, 7.5, -2.25, 1e300, Double.NaN};
+
+    // Cell values derived from their coordinates, so a wrong row or column shows in the result
+    private static final CellValues VALUES = new CellValues() {
+        @Override
+        public double get(int row, int column) throws Exception {
+            if (column == 25) {
+                throw new Exception("Not a number: Z" + row);
+            }
+            return row * 1000.0 + column;
+        }
+
+        @Override
+        public void forEachInRange(int startRow, int startColumn, int endRow, int endColumn,
+                                   DoubleConsumer consumer) throws Exception {
+            for (int row = startRow; row <= endRow; row++) {
+                for (int column = startColumn; column <= endColumn; column++) {
+                    consumer.accept(get(row, column));
+                }
+            }
+        }
+    };
+
+    @AfterEach
+    void restoreDefaults() {
+        FormulaCompiler.setEnabled(true);
+        FormulaCompiler.setThreshold(1000);
+    }
+
+    @Test
+    void matchesTheInterpreterForEveryOperator() throws Exception {
+        for (char operator : "+-*/%".toCharArray()) {
+            for (double left : OPERANDS) {
+                for (double right : OPERANDS) {
+                    assertSameResult(new BinaryOperation(operator, new NumberLiteral(left), new NumberLiteral(right)));
+                }
+            }
+        }
+    }
+
+    @Test
+    void failsLikeTheInterpreterOnDivisionByZero() throws Exception {
+        for (char operator : "/%".toCharArray()) {
+            for (double zero : new double[]{0.0, -0.0}) {
+                Expression expression = new BinaryOperation(operator, cell(1, 0), new NumberLiteral(zero));
+                Exception error = assertThrows(Exception.class, () -> compile(expression).eval(VALUES));
+                assertEquals("Division by zero", error.getMessage());
+            }
+        }
+    }
+
+    @Test
+    void keepsTheSignOfLiteralsAndNegations() throws Exception {
+        for (double value : OPERANDS) {
+            assertSameResult(new NumberLiteral(value));
+            assertSameResult(new Negation(new NumberLiteral(value)));
+            assertSameResult(new Negation(new Negation(new NumberLiteral(value))));
+        }
+        assertEquals(Double.doubleToRawLongBits(-0.0), Double.doubleToRawLongBits(compile(new NumberLiteral(-0.0)).eval(VALUES)));
+    }
+
+    @Test
+    void loadsCellsAtEveryConstantSize() throws Exception {
+        // iconst, bipush, sipush and ldc_w operands for the row and the column
+        int[] coordinates = {0, 5, 6, 127, 128, 32767, 32768, 1_000_000};
+        for (int row : coordinates) {
+            for (int column : coordinates) {
+                if (row > 0 && column != 25) {
+                    assertEquals(row * 1000.0 + column, compile(cell(row, column)).eval(VALUES));
+                }
+            }
+        }
+    }
+
+    @Test
+    void delegatesFunctionCallsToTheInterpreter() throws Exception {
+        assertSameResult(FormulaParser.parse("=SUMA(A1:C3)+MIN(-2;A2)*MAX(A1;B7)"));
+        assertSameResult(FormulaParser.parse("=-PROMEDIO(A1:A4)/(1+MIN(2;3))"));
+
+        // More delegated nodes than bipush can index
+        StringBuilder formula = new StringBuilder("=0");
+        for (int i = 1; i <= 200; i++) {
+            formula.append("+MAX(A").append(i).append(')');
+        }
+        assertSameResult(FormulaParser.parse(formula.toString()));
+    }
+
+    @Test
+    void reportsErrorsOfReferencedCells() throws Exception {
+        Expression expression = FormulaParser.parse("=Z3*2");
+        Exception error = assertThrows(Exception.class, () -> compile(expression).eval(VALUES));
+        assertEquals("Not a number: Z3", error.getMessage());
+    }
+
+    @Test
+    void returnsNullWhenCompilationFails() {
+        long failures = FormulaCompiler.getCompilationFailures();
+        assertNull(FormulaCompiler.compile(new BinaryOperation('^', new NumberLiteral(2), new NumberLiteral(3))));
+        assertEquals(failures + 1, FormulaCompiler.getCompilationFailures());
+
+        // Too much code for one method
+        Expression sum = cell(1, 0);
+        for (int row = 2; row <= 10_000; row++) {
+            sum = new BinaryOperation('+', sum, cell(row, 0));
+        }
+        assertNull(FormulaCompiler.compile(sum));
+        assertEquals(failures + 2, FormulaCompiler.getCompilationFailures());
+    }
+
+    @Test
+    void compilesOnceTheThresholdIsReached() throws Exception {
+        FormulaCompiler.setThreshold(3);
+        Expression expression = FormulaParser.parse("=A1*2+B2");
+        FormulaCompiler.Tier tier = new FormulaCompiler.Tier();
+
+        List<Double> results = new ArrayList<>();
+        for (int i = 0; i < 2; i++) {
+            results.add(FormulaCompiler.evaluate(expression, tier, VALUES));
+        }
+        assertFalse(tier.isCompiled());
+
+        long compiled = FormulaCompiler.getCompiledEvaluations();
+        results.add(FormulaCompiler.evaluate(expression, tier, VALUES));
+        assertTrue(tier.isCompiled());
+        assertEquals(compiled, FormulaCompiler.getCompiledEvaluations());
+
+        results.add(FormulaCompiler.evaluate(expression, tier, VALUES));
+        assertEquals(compiled + 1, FormulaCompiler.getCompiledEvaluations());
+        assertEquals(List.of(4001.0, 4001.0, 4001.0, 4001.0), results);
+    }
+
+    @Test
+    void staysInterpretedWhileDisabled() throws Exception {
+        FormulaCompiler.setThreshold(0);
+        FormulaCompiler.setEnabled(false);
+        Expression expression = FormulaParser.parse("=A1+1");
+        FormulaCompiler.Tier tier = new FormulaCompiler.Tier();
+        for (int i = 0; i < 10; i++) {
+            FormulaCompiler.evaluate(expression, tier, VALUES);
+        }
+        assertFalse(tier.isCompiled());
+
+        FormulaCompiler.setEnabled(true);
+        FormulaCompiler.evaluate(expression, tier, VALUES);
+        assertTrue(tier.isCompiled());
+    }
+
+    private static CellReference cell(int row, int column) {
+        return new CellReference(row, column);
+    }
+
+    private static CompiledFormula compile(Expression expression) {
+        CompiledFormula compiled = FormulaCompiler.compile(expression);
+        assertNotNull(compiled, expression.toString());
+        return compiled;
+    }
+
+    private static void assertSameResult(Expression expression) throws Exception {
+        CompiledFormula compiled = compile(expression);
+        Exception expectedError = null;
+        double expected = 0;
+        try {
+            expected = expression.evaluate(VALUES);
+        } catch (Exception e) {
+            expectedError = e;
+        }
+
+        if (expectedError != null) {
+            Exception error = assertThrows(Exception.class, () -> compiled.eval(VALUES), expression.toString());
+            assertEquals(expectedError.getMessage(), error.getMessage(), expression.toString());
+        } else {
+            assertEquals(Double.doubleToRawLongBits(expected), Double.doubleToRawLongBits(compiled.eval(VALUES)),
+                    expression.toString());
+        }
+    }
+}
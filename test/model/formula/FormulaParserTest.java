@@ -0,0 +1,57 @@
+package model.formula;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FormulaParserTest {
+
+    private final CellValues empty = new MapCellValues(new HashMap<>());
+
+    @Test
+    void followsOperatorPrecedence() throws Exception {
+        assertEquals(7, FormulaParser.parse("=1+2*3").evaluate(empty));
+        assertEquals(9, FormulaParser.parse("=(1+2)*3").evaluate(empty));
+        assertEquals(-1, FormulaParser.parse("=-(4-3)").evaluate(empty));
+        assertEquals(1.5, FormulaParser.parse("=3/2").evaluate(empty));
+    }
+
+    @Test
+    void parsesReferencesCaseInsensitively() throws Exception {
+        CellReference reference = (CellReference) FormulaParser.parse("=aa10");
+        assertEquals(10, reference.getRow());
+        assertEquals(26, reference.getColumn());
+
+        RangeReference range = (RangeReference) ((FunctionCall) FormulaParser.parse("=SUMA(B2:zzzzzz3)")).getArguments().get(0);
+        assertEquals(1, range.getStartColumn());
+        assertEquals(321272405, range.getEndColumn());
+    }
+
+    @Test
+    void rejectsReferencesOutOfRange() {
+        // Seven letters or more would overflow the column index
+        assertThrows(Exception.class, () -> FormulaParser.parse("=AAAAAAAAAAAAA1"));
+        assertThrows(Exception.class, () -> FormulaParser.parse("=AAAAAAA1"));
+        assertThrows(Exception.class, () -> FormulaParser.parse("=SUMA(A1:AAAAAAAAAAAAA1)"));
+        assertThrows(Exception.class, () -> FormulaParser.parse("=A99999999999"));
+        assertThrows(Exception.class, () -> FormulaParser.parse("=A0"));
+    }
+
+    @Test
+    void checksFunctionArguments() {
+        assertThrows(Exception.class, () -> FormulaParser.parse("=NOEXISTE(1)"));
+        assertThrows(Exception.class, () -> FormulaParser.parse("=ABS(1;2)"));
+        assertThrows(Exception.class, () -> FormulaParser.parse("=ABS(A1:A3)"));
+        assertThrows(Exception.class, () -> FormulaParser.parse("=SUMA(1+2:A3)"));
+    }
+
+    @Test
+    void evaluatesFunctions() throws Exception {
+        assertEquals(6, FormulaParser.parse("=SUMA(1;2;3)").evaluate(empty));
+        assertEquals(2, FormulaParser.parse("=PROMEDIO(1,2,3)").evaluate(empty));
+        assertEquals(8, FormulaParser.parse("=POTENCIA(2;ABS(-3))").evaluate(empty));
+        assertThrows(Exception.class, () -> FormulaParser.parse("=MIN(A1:A3)").evaluate(empty));
+    }
+}